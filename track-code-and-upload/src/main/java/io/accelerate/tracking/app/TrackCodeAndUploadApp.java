@@ -2,10 +2,14 @@ package io.accelerate.tracking.app;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
+import io.accelerate.tracking.app.commands.DaemonCommand;
+import io.accelerate.tracking.app.commands.ExportMetricsCommand;
 import io.accelerate.tracking.app.commands.HasHelp;
+import io.accelerate.tracking.app.commands.InspectCommand;
 import io.accelerate.tracking.app.commands.SelfTestCommand;
 import io.accelerate.tracking.app.commands.TrackAndUploadCommand;
 import io.accelerate.tracking.app.util.CliUtil;
+import io.accelerate.tracking.app.util.StartupTimings;
 import org.slf4j.Logger;
 
 import static io.accelerate.tracking.app.util.CliUtil.printAvailableCommands;
@@ -15,7 +19,8 @@ public class TrackCodeAndUploadApp {
     private static final Logger log = getLogger(TrackCodeAndUploadApp.class);
     
     public static void main(String[] args) {
-        log.info("Starting the source code tracking app");
+        log.info("Starting the source code tracking app, {} ms after the process started",
+                StartupTimings.millisSinceProcessStart());
 
         JCommander commander = new JCommander();
         commander.setProgramName("TrackCodeAndUploadApp"); // Set program name in usage output
@@ -23,10 +28,16 @@ public class TrackCodeAndUploadApp {
         // Create Command objects
         SelfTestCommand selfTestCommand = new SelfTestCommand();
         TrackAndUploadCommand trackAndUploadCommand = new TrackAndUploadCommand();
+        DaemonCommand daemonCommand = new DaemonCommand();
+        InspectCommand inspectCommand = new InspectCommand();
+        ExportMetricsCommand exportMetricsCommand = new ExportMetricsCommand();
 
         // Add commands to JCommander
         commander.addCommand("self-test", selfTestCommand);
         commander.addCommand("track-and-upload", trackAndUploadCommand);
+        commander.addCommand("daemon", daemonCommand);
+        commander.addCommand("inspect", inspectCommand);
+        commander.addCommand("export-metrics", exportMetricsCommand);
 
         try {
             if (args.length == 0) {
@@ -50,6 +61,24 @@ public class TrackCodeAndUploadApp {
                     System.exit(0);
                 }
                 trackAndUploadCommand.run();
+            } else if ("daemon".equals(parsedCommand)) {
+                if (daemonCommand.isHelpRequested()) {
+                    commander.usage("daemon");
+                    System.exit(0);
+                }
+                daemonCommand.run();
+            } else if ("inspect".equals(parsedCommand)) {
+                if (inspectCommand.isHelpRequested()) {
+                    commander.usage("inspect");
+                    System.exit(0);
+                }
+                inspectCommand.run();
+            } else if ("export-metrics".equals(parsedCommand)) {
+                if (exportMetricsCommand.isHelpRequested()) {
+                    commander.usage("export-metrics");
+                    System.exit(0);
+                }
+                exportMetricsCommand.run();
             } else {
                 throw new ParameterException("Invalid command provided."); // Invalid command scenario
             }
@@ -0,0 +1,131 @@
+package io.accelerate.tracking.app.commands;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+import com.beust.jcommander.validators.PositiveInteger;
+import io.accelerate.tracking.app.session.TrackingSession;
+import io.accelerate.tracking.app.session.TrackingSessionHost;
+import io.accelerate.tracking.app.sourcecode.RecordingDurability;
+import io.accelerate.tracking.app.tasks.HealthCheckTask;
+import io.accelerate.tracking.app.tasks.ResourceGovernor;
+import io.accelerate.tracking.app.upload.S3ClientFactory;
+import io.accelerate.tracking.app.util.ExitWatchdog;
+import org.slf4j.Logger;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+@Parameters(commandDescription = "Host many tracking sessions, added and removed over HTTP")
+public class DaemonCommand implements HasHelp {
+    private static final Logger log = getLogger(DaemonCommand.class);
+
+    @Parameter(names = {"-h", "--help"}, help = true, description = "Show help for this command")
+    private boolean help;
+
+    //~~ Upload params, shared by all the sessions
+
+    @ParametersDelegate
+    private S3ClientOptions s3ClientOptions = new S3ClientOptions();
+
+    //~~ Resource budgets
+
+    @Parameter(names = {"--cpu-budget-percent"}, validateWith = PositiveInteger.class, description = "CPU the captures and the upload workers of all the sessions may use, in percent of one core. The S3 client threads are not capped. 0, the default, for no limit")
+    private int cpuBudgetPercent = 0;
+
+    @Parameter(names = {"--disk-read-budget-mb"}, validateWith = PositiveInteger.class, description = "Disk reads the captures and the uploads of all the sessions may do, in MB per second. 0, the default, for no limit")
+    private long diskReadBudgetMB = 0;
+
+    //~~ Recording params, shared by all the sessions
+
+    @Parameter(names = {"--min-snapshot-spacing-seconds"}, validateWith = PositiveInteger.class, description = "Snapshots requested through the /snapshot endpoint of a session are taken at least this far apart, requests arriving sooner wait")
+    private int minSnapshotSpacingSeconds = (int) TrackingSession.DEFAULT_MIN_SNAPSHOT_SPACING.toSeconds();
+
+    //~~ Durability, shared by all the sessions
+
+    @ParametersDelegate
+    private DurabilityOptions durabilityOptions = new DurabilityOptions();
+
+    //~~ Supervision
+
+    @Parameter(names = {"--stall-deadline-seconds"}, validateWith = StrictlyPositiveInteger.class, description = "A recorder or an upload of any session making no progress for this long is restarted")
+    private int stallDeadlineSeconds = (int) HealthCheckTask.DEFAULT_STALL_DEADLINE.toSeconds();
+
+    @Parameter(names = {"--max-restarts"}, description = "Restarts of a failed or stuck recorder or upload within half an hour, before the whole session is stopped", validateWith = PositiveInteger.class)
+    private int maxRestarts = HealthCheckTask.DEFAULT_MAX_RESTARTS;
+
+    //~~ Control server security
+
+    @Parameter(names = {"--store-root"}, required = true, description = "The folder the stores of the sessions must be under")
+    private String storeRoot;
+
+    @Parameter(names = {"--control-token"}, description = "The token the requests to the control server must carry, as \"Authorization: Bearer <token>\". By default a new token is written to daemon.token in the store root, readable by the user only")
+    private String controlToken;
+
+    //~~ Webserver params
+
+    @Parameter(names = {"--listening-host"}, description = "Listening host to be used for the control server")
+    private String listeningHost = "127.0.0.1";
+
+    @Parameter(names = {"--listening-port"}, description = "Listening port to be used for the control server")
+    private int listeningPort = 41380;
+
+    //~~ Test helpers
+
+    @Parameter(names = "--soft-stop", description = "Return without ever halting the JVM, for running in the JVM of a test")
+    private boolean doSoftStop = false;
+
+    @Override
+    public boolean isHelpRequested() {
+        return help;
+    }
+
+    public void run() {
+        try {
+            S3ClientFactory s3ClientFactory = s3ClientOptions.createS3ClientFactory();
+            ResourceGovernor resourceGovernor = new ResourceGovernor(cpuBudgetPercent / 100.0,
+                    diskReadBudgetMB * 1024 * 1024);
+            RecordingDurability recordingDurability = durabilityOptions.createRecordingDurability();
+            String currentControlToken = controlToken != null ? controlToken
+                    : TrackingSessionHost.writeNewControlToken(Paths.get(storeRoot));
+            TrackingSessionHost trackingSessionHost = new TrackingSessionHost(listeningHost, listeningPort,
+                    currentControlToken, Paths.get(storeRoot), s3ClientFactory, resourceGovernor, recordingDurability);
+            trackingSessionHost.useSupervision(Duration.ofSeconds(stallDeadlineSeconds), maxRestarts);
+            trackingSessionHost.useMinSnapshotSpacing(Duration.ofSeconds(minSnapshotSpacingSeconds));
+            recordingDurability.start();
+            try {
+                trackingSessionHost.start();
+
+                // Wait for the stop signal and let every session finish its upload
+                registerShutdownHook(trackingSessionHost);
+                trackingSessionHost.join();
+            } finally {
+                recordingDurability.stop();
+            }
+            log.warn("~~~~~~ Daemon stopped ~~~~~~");
+        } catch (Exception e) {
+            log.error("Exception encountered. Stopping now.", e);
+        } finally {
+            if (!doSoftStop) {
+                // Safety net in case a third-party thread is still holding the JVM
+                ExitWatchdog.haltIfStillRunningAfter(ExitWatchdog.DEFAULT_GRACE_PERIOD);
+            }
+        }
+    }
+
+    private static void registerShutdownHook(TrackingSessionHost trackingSessionHost) {
+        final Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            log.warn("Shutdown signal received - please wait for the uploads to complete");
+            trackingSessionHost.signalStop();
+
+            try {
+                mainThread.join();
+            } catch (InterruptedException e) {
+                log.error("Could not join main thread.  Stopping now.", e);
+            }
+        }, "Shutdown"));
+    }
+}
@@ -0,0 +1,22 @@
+package io.accelerate.tracking.app.commands;
+
+import com.beust.jcommander.Parameter;
+import io.accelerate.tracking.app.sourcecode.RecordingDurability;
+
+import java.time.Duration;
+
+/**
+ * How hard the recordings are pushed to the disk, shared by the commands that record
+ */
+class DurabilityOptions {
+
+    @Parameter(names = {"--durability"}, description = "How hard the recordings are pushed to the disk: none, group-commit or per-snapshot")
+    private String durability = "group-commit";
+
+    @Parameter(names = {"--group-commit-interval-ms"}, validateWith = StrictlyPositiveInteger.class, description = "With group-commit, how often the recordings are flushed to the disk. At most this much is lost on a power cut")
+    private int groupCommitIntervalMillis = 1000;
+
+    RecordingDurability createRecordingDurability() {
+        return RecordingDurability.parse(durability, Duration.ofMillis(groupCommitIntervalMillis));
+    }
+}
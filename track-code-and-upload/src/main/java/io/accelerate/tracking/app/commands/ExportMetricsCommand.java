@@ -0,0 +1,53 @@
+package io.accelerate.tracking.app.commands;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import io.accelerate.tracking.app.metrics.MetricsFile;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+@Parameters(commandDescription = "Export the metrics recorded by a session to CSV")
+public class ExportMetricsCommand implements HasHelp {
+    private static final Logger log = getLogger(ExportMetricsCommand.class);
+
+    @Parameter(names = {"-h", "--help"}, help = true, description = "Show help for this command")
+    private boolean help;
+
+    @Parameter(names = {"--metrics"}, required = true, description = "The .metrics file from the store")
+    private String metricsFile;
+
+    @Parameter(names = {"--output"}, description = "The CSV file to write, the standard output by default")
+    private String outputFile;
+
+    @Override
+    public boolean isHelpRequested() {
+        return help;
+    }
+
+    public void run() {
+        Path metrics = Paths.get(metricsFile);
+        try {
+            MetricsFile sessionMetrics = MetricsFile.read(metrics);
+            if (outputFile == null) {
+                StringBuilder csv = new StringBuilder();
+                sessionMetrics.writeCsv(csv);
+                System.out.print(csv);
+            } else {
+                try (Writer writer = Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8)) {
+                    sessionMetrics.writeCsv(writer);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Could not export {}. Reason: {}", metrics.getFileName(), e.getMessage());
+            System.exit(-1);
+        }
+    }
+}
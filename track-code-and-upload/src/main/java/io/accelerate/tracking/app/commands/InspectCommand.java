@@ -0,0 +1,122 @@
+package io.accelerate.tracking.app.commands;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import io.accelerate.tracking.app.sourcecode.RecordingIndex;
+import io.accelerate.tracking.code.snapshot.file.SnapshotFileSegment;
+import io.accelerate.tracking.code.snapshot.file.SrcsReader;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+@Parameters(commandDescription = "Find your way in a source code recording, using its index")
+public class InspectCommand implements HasHelp {
+    private static final Logger log = getLogger(InspectCommand.class);
+    private static final DateTimeFormatter wallClockFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    @Parameter(names = {"-h", "--help"}, help = true, description = "Show help for this command")
+    private boolean help;
+
+    @Parameter(names = {"--recording"}, required = true, description = "The .srcs file, its .srcs.idx index is expected next to it")
+    private String recordingFile;
+
+    @Parameter(names = {"--at-minute"}, description = "Locate the snapshot taken at this minute of the recording")
+    private Long atMinute;
+
+    @Parameter(names = {"--export-to"}, description = "Folder to write the files into, as they were at the snapshot of --at-minute")
+    private String exportFolder;
+
+    @Parameter(names = {"--tags"}, description = "List the tags of the recording")
+    private boolean listTags = false;
+
+    @Override
+    public boolean isHelpRequested() {
+        return help;
+    }
+
+    public void run() {
+        Path recording = Paths.get(recordingFile);
+        if (!Files.exists(RecordingIndex.indexFileFor(recording))) {
+            log.error("No index for {}, only the recordings made since the index was introduced have one",
+                    recording.getFileName());
+            System.exit(-1);
+        }
+
+        try (RecordingIndex recordingIndex = RecordingIndex.open(recording)) {
+            printSummary(recording, recordingIndex);
+            if (atMinute != null) {
+                RecordingIndex.Snapshot target = printSnapshotAt(recordingIndex, Duration.ofMinutes(atMinute));
+                if (target != null && exportFolder != null) {
+                    exportFilesAt(recording, target, Paths.get(exportFolder));
+                }
+            }
+            if (listTags) {
+                printTags(recordingIndex);
+            }
+        } catch (IOException e) {
+            log.error("Could not read the index of {}. Reason: {}", recording.getFileName(), e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    private static void printSummary(Path recording, RecordingIndex recordingIndex) throws IOException {
+        int snapshotCount = recordingIndex.getSnapshotCount();
+        Duration length = snapshotCount > 0
+                ? recordingIndex.snapshot(snapshotCount - 1).getElapsed() : Duration.ZERO;
+        System.out.printf("%s: %d snapshots over %s, a key snapshot every %d, %d bytes%n",
+                recording.getFileName(), snapshotCount, format(length), recordingIndex.getKeySnapshotSpacing(),
+                Files.size(recording));
+    }
+
+    private static RecordingIndex.Snapshot printSnapshotAt(RecordingIndex recordingIndex, Duration elapsed)
+            throws IOException {
+        RecordingIndex.Snapshot target = recordingIndex.snapshotAt(elapsed);
+        if (target == null) {
+            System.out.printf("No snapshot before %s%n", format(elapsed));
+            return null;
+        }
+        System.out.printf("At %s: snapshot #%d, taken %s (%s into the recording), bytes %d to %d of the recording%n",
+                format(elapsed), target.getNumber(), wallClockFormatter.format(Instant.ofEpochMilli(target.getEpochMillis())),
+                format(target.getElapsed()), target.getOffset(), target.getEndOffset());
+        return target;
+    }
+
+    private static void exportFilesAt(Path recording, RecordingIndex.Snapshot target, Path exportFolder) {
+        // The reader of the recording knows its key snapshots, it replays the changes from the one before the target
+        try (SrcsReader srcsReader = new SrcsReader(recording)) {
+            List<SnapshotFileSegment> segments = srcsReader.getReplayableSnapshotSegmentsUntil(target.getNumber());
+            Files.createDirectories(exportFolder);
+            for (SnapshotFileSegment segment : segments) {
+                segment.getSnapshot().restoreSnapshot(exportFolder);
+            }
+            System.out.printf("Files of snapshot #%d written to %s, replayed from %d snapshot(s)%n",
+                    target.getNumber(), exportFolder, segments.size());
+        } catch (Exception e) {
+            log.error("Could not replay {} up to snapshot #{}. Reason: {}", recording.getFileName(),
+                    target.getNumber(), e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    private static void printTags(RecordingIndex recordingIndex) throws IOException {
+        for (RecordingIndex.Tag tag : recordingIndex.tags()) {
+            System.out.printf("%10s  snapshot #%-5d %s%n", format(tag.getElapsed()), tag.getSnapshotNumber(),
+                    tag.getPayload());
+        }
+    }
+
+    private static String format(Duration duration) {
+        return String.format("%dh%02dm%02ds", duration.toHours(), duration.toMinutesPart(), duration.toSecondsPart());
+    }
+}
@@ -0,0 +1,26 @@
+package io.accelerate.tracking.app.commands;
+
+import com.beust.jcommander.Parameter;
+import io.accelerate.tracking.app.upload.S3ClientFactory;
+
+import java.time.Duration;
+
+/**
+ * The S3 client settings, shared by the commands that upload
+ */
+class S3ClientOptions {
+
+    @Parameter(names = {"--s3-http-engine"}, description = "The http client used for S3: netty or crt")
+    private String s3HttpEngine = "netty";
+
+    @Parameter(names = {"--s3-max-connections"}, description = "Maximum number of open connections to S3, per account")
+    private int s3MaxConnections = 50;
+
+    @Parameter(names = {"--s3-connection-ttl-seconds"}, description = "How long an S3 connection is reused before being replaced. Netty only")
+    private int s3ConnectionTimeToLiveSeconds = 300;
+
+    S3ClientFactory createS3ClientFactory() {
+        return new S3ClientFactory(S3ClientFactory.HttpEngine.parse(s3HttpEngine),
+                s3MaxConnections, Duration.ofSeconds(s3ConnectionTimeToLiveSeconds));
+    }
+}
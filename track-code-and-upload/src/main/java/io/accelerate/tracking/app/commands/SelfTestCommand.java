@@ -2,14 +2,15 @@ package io.accelerate.tracking.app.commands;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
+import io.accelerate.tracking.app.upload.S3ClientFactory;
 import io.accelerate.tracking.app.util.DiskSpaceUtil;
 import io.accelerate.tracking.code.record.SourceCodeRecorder;
 import org.slf4j.Logger;
-import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
 
+import java.net.URI;
+
 import static org.slf4j.LoggerFactory.getLogger;
 
 @Parameters(commandDescription = "Run internal checks")
@@ -23,6 +24,9 @@ public class SelfTestCommand implements HasHelp {
     @Parameter(names = "--minimum-required-diskspace-gb", description = "Minimum required diskspace (in GB) on the current volume for the app to run")
     private long minimumRequiredDiskspaceInGB = 1;
 
+    @Parameter(names = "--s3-endpoint", description = "Probe an S3 compatible service instead of AWS, like a local stand-in")
+    private String s3Endpoint;
+
     @Override
     public boolean isHelpRequested() {
         return help;
@@ -35,24 +39,27 @@ public class SelfTestCommand implements HasHelp {
         
         log.info("~~~~~~ Self test starting ~~~~~~");
         log.info("Checking S3 connectivity");
-        runS3SanityCheck();
+        runS3SanityCheck(s3Endpoint != null ? URI.create(s3Endpoint) : null);
         log.info("Checking source code tracking");
         SourceCodeRecorder.runSanityCheck();
         log.info("~~~~~~ Self test completed successfully ~~~~~~");
     }
 
-    public static void runS3SanityCheck() {
+    /**
+     * @param endpoint null for AWS itself
+     */
+    public static void runS3SanityCheck(URI endpoint) {
         // Touch S3 to fail fast if the service is unreachable in this environment.
         // Using anonymous creds mirrors the v1 “null creds” idea without needing real IAM.
-        try (S3Client s3 = S3Client.builder()
-                .region(Region.EU_WEST_2)
-                .credentialsProvider(AnonymousCredentialsProvider.create())
-                .build()) {
+        // Goes through the same client stack as the uploads.
+        try (S3ClientFactory s3ClientFactory = S3ClientFactory.withDefaults()) {
 
             // Cheapest probe
-            s3.headBucket(HeadBucketRequest.builder()
-                    .bucket(TEST_PUBLIC_READONLY_BUCKET)
-                    .build());
+            s3ClientFactory.anonymousClientFor(Region.EU_WEST_2, endpoint)
+                    .headBucket(HeadBucketRequest.builder()
+                            .bucket(TEST_PUBLIC_READONLY_BUCKET)
+                            .build())
+                    .join();
         }
     }
 }
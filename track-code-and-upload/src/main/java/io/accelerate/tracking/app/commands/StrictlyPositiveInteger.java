@@ -0,0 +1,23 @@
+package io.accelerate.tracking.app.commands;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Like {@link com.beust.jcommander.validators.PositiveInteger}, for the counts and durations where 0 makes no sense
+ */
+public class StrictlyPositiveInteger implements IParameterValidator {
+
+    @Override
+    public void validate(String name, String value) throws ParameterException {
+        int n;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ParameterException("Parameter " + name + " should be a number (found " + value + ")");
+        }
+        if (n < 1) {
+            throw new ParameterException("Parameter " + name + " should be at least 1 (found " + value + ")");
+        }
+    }
+}
@@ -3,29 +3,26 @@ package io.accelerate.tracking.app.commands;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterDescription;
+import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParametersDelegate;
+import com.beust.jcommander.validators.PositiveInteger;
 import io.accelerate.tracking.app.events.ExternalEventServerThread;
-import io.accelerate.tracking.app.logging.LocalFileLogging;
-import io.accelerate.tracking.app.sourcecode.NoOpSourceCodeThread;
-import io.accelerate.tracking.app.sourcecode.SourceCodeRecordingThread;
-import io.accelerate.tracking.app.tasks.*;
+import io.accelerate.tracking.app.session.TrackingSession;
+import io.accelerate.tracking.app.sourcecode.RecordingDurability;
+import io.accelerate.tracking.app.sourcecode.Workspace;
+import io.accelerate.tracking.app.tasks.HealthCheckTask;
+import io.accelerate.tracking.app.tasks.ResourceGovernor;
 import io.accelerate.tracking.app.upload.*;
 import io.accelerate.tracking.app.util.DiskSpaceUtil;
-import io.accelerate.tracking.sync.credentials.AWSSecretProperties;
-import io.accelerate.tracking.sync.sync.progress.UploadStatsProgressListener;
+import io.accelerate.tracking.app.util.ExitWatchdog;
 import org.slf4j.Logger;
+import software.amazon.awssdk.regions.Region;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -33,7 +30,6 @@ import static org.slf4j.LoggerFactory.getLogger;
 @Parameters(commandDescription = "Start tracking source code and uploading")
 public class TrackAndUploadCommand implements HasHelp {
     private static final Logger log = getLogger(TrackAndUploadCommand.class);
-    private static final DateTimeFormatter fileTimestampFormatter = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
 
     @Parameter(names = {"-h", "--help"}, help = true, description = "Show help for this command")
     private boolean help;
@@ -49,14 +45,51 @@ public class TrackAndUploadCommand implements HasHelp {
     @Parameter(names = {"--config"}, required = true, description = "The file containing the AWS parameters")
     private String configFile;
 
-    @Parameter(names = {"--sourcecode"}, required = true, description = "The folder that contains the source code that needs to be tracked")
-    private String localSourceCodeFolder;
+    @Parameter(names = {"--sourcecode"}, description = "The folder that contains the source code that needs to be tracked. Repeat it (optionally as name=folder) to track several workspaces")
+    private List<String> localSourceCodeFolders = new ArrayList<>();
+
+    @Parameter(names = {"--sourcecode-config"}, description = "File listing the workspaces to track, one folder (or name=folder) per line. Alternative to --sourcecode")
+    private String sourceCodeConfigFile;
 
     //~~ Minimum requirements
 
     @Parameter(names = {"--minimum-required-diskspace-gb"}, description = "Minimum required diskspace (in GB) on the current volume (or drive) for the app to run")
     private long minimumRequiredDiskspaceInGB = 1;
 
+    //~~ Recording params
+
+    @Parameter(names = {"--key-snapshot-spacing"}, validateWith = StrictlyPositiveInteger.class, description = "Snapshots between two full (key) snapshots, the ones in between only store the changes. Larger saves disk and upload, smaller makes the recording more robust")
+    private int keySnapshotSpacing = TrackingSession.DEFAULT_KEY_SNAPSHOT_SPACING;
+
+    @Parameter(names = {"--min-snapshot-spacing-seconds"}, validateWith = PositiveInteger.class, description = "Snapshots requested through the /snapshot endpoint are taken at least this far apart, requests arriving sooner wait")
+    private int minSnapshotSpacingSeconds = (int) TrackingSession.DEFAULT_MIN_SNAPSHOT_SPACING.toSeconds();
+
+    //~~ Durability
+
+    @ParametersDelegate
+    private DurabilityOptions durabilityOptions = new DurabilityOptions();
+
+    //~~ Supervision
+
+    @Parameter(names = {"--stall-deadline-seconds"}, validateWith = StrictlyPositiveInteger.class, description = "A recorder or an upload making no progress for this long is restarted")
+    private int stallDeadlineSeconds = (int) HealthCheckTask.DEFAULT_STALL_DEADLINE.toSeconds();
+
+    @Parameter(names = {"--max-restarts"}, description = "Restarts of a failed or stuck recorder or upload within half an hour, before the whole session is stopped", validateWith = PositiveInteger.class)
+    private int maxRestarts = HealthCheckTask.DEFAULT_MAX_RESTARTS;
+
+    //~~ Upload params
+
+    @ParametersDelegate
+    private S3ClientOptions s3ClientOptions = new S3ClientOptions();
+
+    //~~ Resource budgets
+
+    @Parameter(names = {"--cpu-budget-percent"}, validateWith = PositiveInteger.class, description = "CPU the capture and the upload workers may use, in percent of one core. The S3 client threads are not capped. 0, the default, for no limit")
+    private int cpuBudgetPercent = 0;
+
+    @Parameter(names = {"--disk-read-budget-mb"}, validateWith = PositiveInteger.class, description = "Disk reads the capture and the uploads may do, in MB per second. 0, the default, for no limit")
+    private long diskReadBudgetMB = 0;
+
     //~~ Webserver params
 
     @Parameter(names = {"--listening-host"}, description = "Listening host to be used for the event server")
@@ -65,79 +98,80 @@ public class TrackAndUploadCommand implements HasHelp {
     @Parameter(names = {"--listening-port"}, description = "Listening port to be used for the event server")
     private int listeningPort = 41375;
 
+    //~~ Diagnostics
+
+    @Parameter(names = "--profile", description = "Keep a low overhead flight recording, saved as .jfr files in the store and uploaded with the rest")
+    private boolean profile = false;
+
     //~~ Test helpers
 
-    @Parameter(names = "--soft-stop", description = "Attempt to stop without killing the JVM")
+    @Parameter(names = "--soft-stop", description = "Return without ever halting the JVM, for running in the JVM of a test")
     private boolean doSoftStop = false;
 
+    @Parameter(names = "--cds-training-run", hidden = true, description = "Start up, stop straight away and exit normally, so the JVM can archive the loaded classes")
+    private boolean cdsTrainingRun = false;
+
     @Override
     public boolean isHelpRequested() {
         return help;
     }
     
     public void run() {
-        if (!DiskSpaceUtil.hasEnoughFreeDiskspace(minimumRequiredDiskspaceInGB)) {
+        if (localSourceCodeFolders.isEmpty() && sourceCodeConfigFile == null) {
+            throw new ParameterException("Either --sourcecode or --sourcecode-config is required");
+        }
+
+        if (!DiskSpaceUtil.hasEnoughFreeDiskspace(Paths.get(localStorageFolder), minimumRequiredDiskspaceInGB)) {
             System.exit(-1);
         }
         
         try {
-            // Prepare source folder
-            createMissingParentDirectories(localStorageFolder);
-            removeOldLocks(localStorageFolder);
-            LocalFileLogging localFileLogging = new LocalFileLogging(localStorageFolder);
-            localFileLogging.start();
-
-
-            // Prepare remote destination
-            boolean doNotSync = "none".equals(configFile);
-            RemoteDestination uploadDestination;
-            if (doNotSync) {
-                uploadDestination = new NoOpDestination();
-            } else {
-                AWSSecretProperties awsSecretProperties = AWSSecretProperties
-                        .fromPlainTextFile(Paths.get(configFile));
-                uploadDestination = new S3BucketDestination(awsSecretProperties.createClient(),
-                        awsSecretProperties.getS3Bucket(),
-                        awsSecretProperties.getS3Prefix());
-            }
-
-
-            // Validate destination
-            log.info("Start S3 Sync session");
-            uploadDestination.startS3SyncSession();
-
-            // Timestamp
-            String timestamp = LocalDateTime.now().format(fileTimestampFormatter);
+            // Source code recording, one recorder per workspace
+            boolean doNotTrackSourcecode = sourceCodeConfigFile == null
+                    && localSourceCodeFolders.size() == 1 && "none".equals(localSourceCodeFolders.get(0));
+            List<Workspace> workspaces = doNotTrackSourcecode ? List.of() : resolveWorkspaces();
+            RecordingDurability recordingDurability = durabilityOptions.createRecordingDurability();
+
+            // The session has the process, the event server and the uploads to itself
+            ResourceGovernor resourceGovernor = new ResourceGovernor(cpuBudgetPercent / 100.0,
+                    diskReadBudgetMB * 1024 * 1024);
+            UploadScheduler uploadScheduler = UploadScheduler.withDefaults();
+            uploadScheduler.useResourceGovernor(resourceGovernor);
+            S3ClientFactory s3ClientFactory = s3ClientOptions.createS3ClientFactory();
+            TrackingSession trackingSession = new TrackingSession(null,
+                    localStorageFolder,
+                    workspaces,
+                    minimumRequiredDiskspaceInGB,
+                    () -> createRemoteDestination(s3ClientFactory),
+                    (statusBoard, progressEventStream) -> new ExternalEventServerThread(
+                            listeningHost, listeningPort, statusBoard, progressEventStream),
+                    uploadScheduler
+            );
 
-            // Source code recording
-            boolean doNotTrackSourcecode = "none".equals(localSourceCodeFolder);
-            MonitoredBackgroundTask sourceCodeRecordingTask;
-            if (doNotTrackSourcecode) {
-                sourceCodeRecordingTask = new NoOpSourceCodeThread();
+            trackingSession.useResourceGovernor(resourceGovernor);
+            trackingSession.useKeySnapshotSpacing(keySnapshotSpacing);
+            trackingSession.useMinSnapshotSpacing(Duration.ofSeconds(minSnapshotSpacingSeconds));
+            trackingSession.useRecordingDurability(recordingDurability);
+            trackingSession.useSupervision(Duration.ofSeconds(stallDeadlineSeconds), maxRestarts);
+            if (profile) {
+                trackingSession.enableProfiling();
+            }
+            if (cdsTrainingRun) {
+                // Load the S3 client stack as well, without a config there would be no client
+                s3ClientFactory.anonymousClientFor(Region.EU_WEST_2);
+                trackingSession.stopAfterStartup();
             } else {
-                Path sourceCodeFolder = Paths.get(localSourceCodeFolder);
-                Path sourceCodeRecordingFile = Paths.get(
-                        localStorageFolder,
-                        String.format("sourcecode_%s.srcs", timestamp)
-                );
-                sourceCodeRecordingTask = new SourceCodeRecordingThread(sourceCodeFolder, sourceCodeRecordingFile);
+                // Wait for the stop signal and trigger a graceful shutdown
+                registerShutdownHook(trackingSession);
             }
-
-            // Start processing
-            runAllTasks(localStorageFolder,
-                    listeningHost,
-                    listeningPort,
-                    localFileLogging,
-                    uploadDestination,
-                    sourceCodeRecordingTask
-            );
-
-            // Stop the additional file logging
-            localFileLogging.stop();
-
-            // Stop the S3 Sync session from above
-            log.info("Stop S3 Sync session");
-            uploadDestination.stopS3SyncSession();
+            recordingDurability.start();
+            try {
+                trackingSession.run();
+            } finally {
+                recordingDurability.stop();
+            }
+            uploadScheduler.shutdown();
+            s3ClientFactory.close();
         } catch (DestinationOperationException e) {
             if (debug) {
                 log.error("User does not have enough permissions to upload.", e);
@@ -147,83 +181,34 @@ public class TrackAndUploadCommand implements HasHelp {
         } catch (Exception e) {
             log.error("Exception encountered. Stopping now.", e);
         } finally {
-            boolean hardStop = !doSoftStop;
-            if (hardStop) {
-                // Forcefully stop. A problem with Jetty finalisation might prevent the JVM from stopping
-                Runtime.getRuntime().halt(0);
+            if (cdsTrainingRun) {
+                // The class archive is written on a normal exit only
+                System.exit(0);
+            } else if (!doSoftStop) {
+                // Safety net in case a third-party thread is still holding the JVM
+                ExitWatchdog.haltIfStillRunningAfter(ExitWatchdog.DEFAULT_GRACE_PERIOD);
             }
         }
     }
 
-    // ~~~~~ The main execution logic
-
-    private static void runAllTasks(String localStorageFolder,
-                    String listeningHost,
-                    int listeningPort,
-                    LocalFileLogging localFileLogging, RemoteDestination remoteDestination,
-                    MonitoredBackgroundTask sourceCodeRecordingTask) throws Exception {
-        List<Stoppable> serviceThreadsToStop = new ArrayList<>();
-        List<MonitoredSubject> monitoredSubjects = new ArrayList<>();
-        ExternalEventServerThread externalEventServerThread = new ExternalEventServerThread(listeningHost, listeningPort);
-
-        // Start background tasks
-        for (MonitoredBackgroundTask monitoredBackgroundTask:
-                Collections.singletonList(sourceCodeRecordingTask)) {
-            monitoredBackgroundTask.start();
-            serviceThreadsToStop.add(monitoredBackgroundTask);
-            monitoredSubjects.add(monitoredBackgroundTask);
-            externalEventServerThread.addNotifyListener(monitoredBackgroundTask);
-            externalEventServerThread.addStopListener(eventPayload -> monitoredBackgroundTask.signalStop());
+    private RemoteDestination createRemoteDestination(S3ClientFactory s3ClientFactory) throws Exception {
+        boolean doNotSync = "none".equals(configFile);
+        if (doNotSync) {
+            return new NoOpDestination();
         }
 
-        // Start sync folder
-        UploadStatsProgressListener uploadStatsProgressListener = new UploadStatsProgressListener();
-        BackgroundRemoteSyncTask remoteSyncTask = new BackgroundRemoteSyncTask(
-                localStorageFolder, remoteDestination, uploadStatsProgressListener);
-        remoteSyncTask.scheduleSyncEvery(Duration.of(5, ChronoUnit.MINUTES));
-        monitoredSubjects.add(new UploadStatsProgressStatus(uploadStatsProgressListener));
-
-        // Start the metrics reporting
-        MetricsReportingTask metricsReportingTask = new MetricsReportingTask(monitoredSubjects);
-        metricsReportingTask.scheduleReportMetricsEvery(Duration.of(3, ChronoUnit.SECONDS));
-
-        // Start the health check thread
-        HealthCheckTask healthCheckTask = new HealthCheckTask(serviceThreadsToStop);
-        healthCheckTask.scheduleHealthCheckEvery(Duration.of(3, ChronoUnit.SECONDS));
-        externalEventServerThread.addStopListener(eventPayload -> healthCheckTask.cancel());
-
-        // Start the event server
-        externalEventServerThread.start();
-
-        // Wait for the stop signal and trigger a graceful shutdown
-        registerShutdownHook(serviceThreadsToStop, healthCheckTask);
-        for (Stoppable stoppable : serviceThreadsToStop) {
-            stoppable.join();
-        }
-        healthCheckTask.cancel();
-
-        // If all are joined, signal the event thread to stop
-        externalEventServerThread.signalStop();
-
-        // Finalise the upload and cancel tasks
-        localFileLogging.forceRotation(); // <-- to close the current log file and get it to upload cleanly
-        remoteSyncTask.finalRun();
-        metricsReportingTask.cancel();
-
-        // Join the event thread
-        externalEventServerThread.join();
-        log.warn("~~~~~~ Stopped ~~~~~~");
+        S3Settings s3Settings = S3Settings.fromPlainTextFile(Paths.get(configFile));
+        return S3BucketDestination.sharingClient(s3ClientFactory.clientFor(s3Settings),
+                s3Settings.getS3Bucket(),
+                s3Settings.getS3Prefix());
     }
 
-    private static void registerShutdownHook(List<Stoppable> servicesToStop, HealthCheckTask healthCheckTask) {
+    private static void registerShutdownHook(TrackingSession trackingSession) {
         final Thread mainThread = Thread.currentThread();
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             log.warn("Shutdown signal received - please wait for the upload to complete");
             try {
-                for (Stoppable stoppable : servicesToStop) {
-                    stoppable.signalStop();
-                }
-                healthCheckTask.cancel();
+                trackingSession.signalStop();
             } catch (Exception e) {
                 log.error("Error sending the stop signals.", e);
             }
@@ -238,32 +223,21 @@ public class TrackAndUploadCommand implements HasHelp {
     
     // ~~~~~ Helpers
 
-
-    private static void createMissingParentDirectories(String storageFolder) throws IOException {
-        File folder = new File(storageFolder);
-        if (folder.exists()) {
-            return;
+    private List<Workspace> resolveWorkspaces() throws IOException {
+        List<Workspace> workspaces = new ArrayList<>();
+        for (String localSourceCodeFolder : localSourceCodeFolders) {
+            workspaces.add(Workspace.parse(localSourceCodeFolder));
         }
-
-        boolean folderCreated = folder.mkdirs();
-        if(!folderCreated) {
-            throw new IOException("Failed to created storage folder");
+        if (sourceCodeConfigFile != null) {
+            workspaces.addAll(Workspace.fromConfigFile(Paths.get(sourceCodeConfigFile)));
         }
-    }
-
-    private static void removeOldLocks(String localStorageFolder) {
-        Path rootPath = Paths.get(localStorageFolder);
-        try {
-            //noinspection ResultOfMethodCallIgnored
-            Files.walk(rootPath)
-                    .filter(path -> path.getFileName().toString().endsWith(".lock"))
-                    .map(Path::toFile)
-                    .forEach(File::delete);
-        } catch (IOException e) {
-            log.error("Failed to clean old locks", e);
+        if (workspaces.isEmpty()) {
+            throw new IOException("No workspace to track in " + sourceCodeConfigFile);
         }
+        return Workspace.withUniqueNames(workspaces);
     }
 
+
     private static void printRequiredOnly(JCommander jc) {
         System.err.println("Required parameters:");
         for (ParameterDescription pd : jc.getParameters()) {
@@ -0,0 +1,16 @@
+package io.accelerate.tracking.app.events;
+
+/**
+ * The events waiting for one listener. An event stays at the head of the feed until acknowledged.
+ */
+interface EventFeed {
+
+    /**
+     * @return the event at the head of the feed, null if nothing arrived in time
+     */
+    String poll(long timeoutMillis) throws InterruptedException;
+
+    void acknowledge();
+
+    boolean hasPending();
+}
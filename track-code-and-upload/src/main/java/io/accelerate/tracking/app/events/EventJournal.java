@@ -0,0 +1,213 @@
+package io.accelerate.tracking.app.events;
+
+import io.accelerate.tracking.app.upload.ContentChecksum;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Append-only, memory-mapped log of the external events received during a session.
+ * Records are a length prefix followed by the target workspace and the payload, a zero length marks the end.
+ * An empty target addresses every workspace.
+ * The checksum of the records is kept as they are appended, and saved for the upload once the journal is trimmed.
+ */
+public class EventJournal implements ExternalEventListener {
+    private static final Logger log = getLogger(EventJournal.class);
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    private static final int LENGTH_PREFIX_BYTES = Integer.BYTES;
+    private static final String ALL_TARGETS = "";
+
+    private final Path journalFile;
+    private final FileChannel channel;
+    private final ContentChecksum journalChecksum;
+    private volatile MappedByteBuffer mappedBuffer;
+    private volatile int committedPosition;
+    private final Object newRecordSignal;
+    private volatile boolean closed;
+
+    public EventJournal(Path journalFile) throws IOException {
+        this.journalFile = journalFile;
+        Files.write(lockFor(journalFile), new byte[0], CREATE);
+        this.channel = FileChannel.open(journalFile, CREATE_NEW, READ, WRITE);
+        this.mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY);
+        this.committedPosition = 0;
+        this.journalChecksum = new ContentChecksum(journalFile);
+        this.newRecordSignal = new Object();
+        this.closed = false;
+    }
+
+    public Path getJournalFile() {
+        return journalFile;
+    }
+
+    // ~~~~ Writing
+
+    @Override
+    public void onExternalEvent(String eventPayload) throws IOException {
+        append(ALL_TARGETS, eventPayload);
+    }
+
+    @Override
+    public void onExternalEvent(String workspace, String eventPayload) throws IOException {
+        append(workspace, eventPayload);
+    }
+
+    public void append(String eventPayload) throws IOException {
+        append(ALL_TARGETS, eventPayload);
+    }
+
+    public synchronized void append(String target, String eventPayload) throws IOException {
+        if (closed) {
+            throw new IOException("Event journal is closed");
+        }
+
+        byte[] targetBytes = (target != null ? target : ALL_TARGETS).getBytes(StandardCharsets.UTF_8);
+        byte[] payload = eventPayload.getBytes(StandardCharsets.UTF_8);
+        int recordLength = LENGTH_PREFIX_BYTES + targetBytes.length + payload.length;
+        ensureCapacity(committedPosition + LENGTH_PREFIX_BYTES + recordLength + LENGTH_PREFIX_BYTES);
+
+        // Write the content first, the length makes the record visible
+        MappedByteBuffer buffer = mappedBuffer;
+        int contentPosition = committedPosition + LENGTH_PREFIX_BYTES;
+        buffer.putInt(contentPosition, targetBytes.length);
+        buffer.put(contentPosition + LENGTH_PREFIX_BYTES, targetBytes);
+        buffer.put(contentPosition + LENGTH_PREFIX_BYTES + targetBytes.length, payload);
+        buffer.putInt(committedPosition, recordLength);
+        journalChecksum.update(buffer.slice(committedPosition, LENGTH_PREFIX_BYTES + recordLength));
+        committedPosition += LENGTH_PREFIX_BYTES + recordLength;
+
+        wakeUpReaders();
+    }
+
+    private void ensureCapacity(int requiredCapacity) throws IOException {
+        int capacity = mappedBuffer.capacity();
+        if (requiredCapacity <= capacity) {
+            return;
+        }
+
+        int newCapacity = capacity;
+        while (newCapacity < requiredCapacity) {
+            newCapacity *= 2;
+        }
+        mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, newCapacity);
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            mappedBuffer.force();
+            // Drop the unused tail so the uploaded file only holds the records
+            channel.truncate(committedPosition);
+            journalChecksum.saveQuietly();
+        } catch (IOException e) {
+            log.warn("Could not trim the event journal: {}", e.getMessage());
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed to close the event journal", e);
+        }
+        try {
+            Files.delete(lockFor(journalFile));
+        } catch (IOException ignored) {}
+
+        wakeUpReaders();
+    }
+
+    // ~~~~ Reading
+
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Independent read position, each consumer moves through the journal at its own pace
+     */
+    public class Cursor {
+        private int position;
+
+        private Cursor() {
+            this.position = 0;
+        }
+
+        public boolean hasNext() {
+            return position < committedPosition;
+        }
+
+        /**
+         * Read the payload under the cursor without moving it
+         */
+        public String peek() {
+            MappedByteBuffer buffer = mappedBuffer;
+            int recordLength = buffer.getInt(position);
+            int targetLength = buffer.getInt(position + LENGTH_PREFIX_BYTES);
+            byte[] payload = new byte[recordLength - LENGTH_PREFIX_BYTES - targetLength];
+            buffer.get(position + 2 * LENGTH_PREFIX_BYTES + targetLength, payload);
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Workspace the record under the cursor is addressed to, empty for all of them
+         */
+        public String peekTarget() {
+            MappedByteBuffer buffer = mappedBuffer;
+            int targetLength = buffer.getInt(position + LENGTH_PREFIX_BYTES);
+            byte[] target = new byte[targetLength];
+            buffer.get(position + 2 * LENGTH_PREFIX_BYTES, target);
+            return new String(target, StandardCharsets.UTF_8);
+        }
+
+        int getPosition() {
+            return position;
+        }
+
+        public void advance() {
+            int length = mappedBuffer.getInt(position);
+            position += LENGTH_PREFIX_BYTES + length;
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    int getCommittedPosition() {
+        return committedPosition;
+    }
+
+    void awaitRecordsAfter(int knownPosition, long timeoutMillis) throws InterruptedException {
+        synchronized (newRecordSignal) {
+            if (committedPosition == knownPosition && !closed) {
+                newRecordSignal.wait(timeoutMillis);
+            }
+        }
+    }
+
+    void wakeUpReaders() {
+        synchronized (newRecordSignal) {
+            newRecordSignal.notifyAll();
+        }
+    }
+
+    //~~~~ Helper
+
+    private static Path lockFor(Path journalFile) {
+        return Paths.get(journalFile + ".lock");
+    }
+}
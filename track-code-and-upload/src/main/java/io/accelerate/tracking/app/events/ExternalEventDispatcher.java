@@ -0,0 +1,259 @@
+package io.accelerate.tracking.app.events;
+
+import io.accelerate.tracking.app.profiling.NotifyDispatchEvent;
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.tasks.MonitoredSubject;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Hands the external events to the listeners without making the caller wait for them.
+ * Every listener has its own feed and worker, so a slow or failing listener only delays itself.
+ */
+public class ExternalEventDispatcher implements ExternalEventListener, MonitoredSubject {
+    private static final Logger log = getLogger(ExternalEventDispatcher.class);
+    private static final long POLL_MILLIS = 500;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final String statusKey;
+    private final EventJournal eventJournal;
+    private final Duration listenerTimeout;
+    private final List<ListenerWorker> listenerWorkers;
+    private final ExecutorService callExecutor;
+    private volatile boolean isRunning;
+
+    private ExternalEventDispatcher(String statusKey, EventJournal eventJournal, Duration listenerTimeout) {
+        this.statusKey = statusKey;
+        this.eventJournal = eventJournal;
+        this.listenerTimeout = listenerTimeout;
+        this.listenerWorkers = new CopyOnWriteArrayList<>();
+        this.callExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(statusKey + "-call-", 0).factory());
+        this.isRunning = true;
+    }
+
+    /**
+     * Events are held in a bounded queue per listener, and dropped for a listener whose queue is full
+     */
+    public static ExternalEventDispatcher inMemory(String statusKey, Duration listenerTimeout) {
+        return new ExternalEventDispatcher(statusKey, null, listenerTimeout);
+    }
+
+    /**
+     * Events are appended to the journal, each listener reads it with its own cursor
+     */
+    public static ExternalEventDispatcher journaled(String statusKey, EventJournal eventJournal, Duration listenerTimeout) {
+        return new ExternalEventDispatcher(statusKey, eventJournal, listenerTimeout);
+    }
+
+    /**
+     * The listener receives every event
+     */
+    public void addListener(String name, ExternalEventListener externalEventListener) {
+        addListener(name, null, externalEventListener);
+    }
+
+    /**
+     * The listener receives the events addressed to its workspace, and those addressed to all
+     */
+    public void addListener(String name, String workspace, ExternalEventListener externalEventListener) {
+        EventFeed eventFeed = eventJournal != null ? new JournalEventFeed(eventJournal, workspace)
+                : new QueueEventFeed(QUEUE_CAPACITY);
+        ListenerWorker listenerWorker = new ListenerWorker(name, workspace, externalEventListener, eventFeed);
+        listenerWorkers.add(listenerWorker);
+        listenerWorker.thread.start();
+    }
+
+    @Override
+    public void onExternalEvent(String eventPayload) throws IOException {
+        onExternalEvent(null, eventPayload);
+    }
+
+    @Override
+    public void onExternalEvent(String workspace, String eventPayload) throws IOException {
+        if (workspace != null && !hasWorkspace(workspace)) {
+            throw new IllegalArgumentException("Unknown workspace: " + workspace);
+        }
+
+        if (eventJournal != null) {
+            eventJournal.append(workspace, eventPayload);
+            return;
+        }
+
+        for (ListenerWorker listenerWorker : listenerWorkers) {
+            if (!listenerWorker.takes(workspace)) {
+                continue;
+            }
+            QueueEventFeed queueEventFeed = (QueueEventFeed) listenerWorker.eventFeed;
+            if (!queueEventFeed.offer(eventPayload)) {
+                listenerWorker.dropped.incrementAndGet();
+                log.warn("Listener {} is not keeping up. Event dropped.", listenerWorker.name);
+            }
+        }
+    }
+
+    private boolean hasWorkspace(String workspace) {
+        for (ListenerWorker listenerWorker : listenerWorkers) {
+            if (workspace.equals(listenerWorker.workspace)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deliver what has already been received, then stop the workers
+     */
+    public void signalStop() {
+        isRunning = false;
+        if (eventJournal != null) {
+            eventJournal.wakeUpReaders();
+        }
+    }
+
+    public void join() throws InterruptedException {
+        for (ListenerWorker listenerWorker : listenerWorkers) {
+            listenerWorker.thread.join();
+        }
+        callExecutor.shutdown();
+    }
+
+    private class ListenerWorker implements Runnable {
+        private final String name;
+        private final String workspace;
+        private final ExternalEventListener listener;
+        private final EventFeed eventFeed;
+        private final Thread thread;
+        private final AtomicLong delivered;
+        private final AtomicLong failed;
+        private final AtomicLong timedOut;
+        private final AtomicLong dropped;
+        private volatile long lastLatencyMillis;
+
+        ListenerWorker(String name, String workspace, ExternalEventListener listener, EventFeed eventFeed) {
+            this.name = name;
+            this.workspace = workspace;
+            this.listener = listener;
+            this.eventFeed = eventFeed;
+            this.thread = Thread.ofVirtual().name(statusKey + "-" + name).unstarted(this);
+            this.delivered = new AtomicLong();
+            this.failed = new AtomicLong();
+            this.timedOut = new AtomicLong();
+            this.dropped = new AtomicLong();
+            this.lastLatencyMillis = 0;
+        }
+
+        boolean takes(String eventWorkspace) {
+            return workspace == null || eventWorkspace == null || workspace.equals(eventWorkspace);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (isRunning || eventFeed.hasPending()) {
+                    String eventPayload = eventFeed.poll(POLL_MILLIS);
+                    if (eventPayload != null) {
+                        deliver(eventPayload);
+                        eventFeed.acknowledge();
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Dispatch to {} interrupted", name);
+            }
+        }
+
+        private void deliver(String eventPayload) throws InterruptedException {
+            NotifyDispatchEvent notifyDispatchEvent = new NotifyDispatchEvent();
+            notifyDispatchEvent.begin();
+            notifyDispatchEvent.dispatcher = statusKey;
+            notifyDispatchEvent.listener = name;
+            notifyDispatchEvent.payloadBytes = eventPayload.length();
+            try {
+                notifyDispatchEvent.outcome = deliverWithRetries(eventPayload, notifyDispatchEvent);
+            } finally {
+                notifyDispatchEvent.commit();
+            }
+        }
+
+        private String deliverWithRetries(String eventPayload, NotifyDispatchEvent notifyDispatchEvent)
+                throws InterruptedException {
+            for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+                notifyDispatchEvent.attempts = attempt;
+                long startNanos = System.nanoTime();
+                Future<?> call = callExecutor.submit(() -> {
+                    listener.onExternalEvent(eventPayload);
+                    return null;
+                });
+                try {
+                    call.get(listenerTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                    delivered.incrementAndGet();
+                    return "delivered";
+                } catch (TimeoutException e) {
+                    // The call might still land, retrying could deliver the event twice
+                    call.cancel(true);
+                    timedOut.incrementAndGet();
+                    log.warn("Listener {} did not take the event within {} ms. Moving on.",
+                            name, listenerTimeout.toMillis());
+                    return "timedOut";
+                } catch (ExecutionException e) {
+                    log.warn("Listener {} failed to take the event (attempt {} of {}). Reason: {}",
+                            name, attempt, MAX_ATTEMPTS, e.getCause().getMessage());
+                } finally {
+                    lastLatencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                }
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+            failed.incrementAndGet();
+            return "failed";
+        }
+    }
+
+    // ~~~~ Implement the monitored interface
+
+    @Override
+    public String getStatusKey() {
+        return statusKey;
+    }
+
+    @Override
+    public boolean isActive() {
+        return false;
+    }
+
+    @Override
+    public void displayErrors(Logger log) {
+        // Failures are logged by the workers
+    }
+
+    @Override
+    public void displayMetrics(StringBuilder displayBuffer) {
+        // Only published on the status endpoint
+    }
+
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        for (ListenerWorker listenerWorker : listenerWorkers) {
+            String prefix = listenerWorker.name + ".";
+            statusSection.put(prefix + "delivered", listenerWorker.delivered.get());
+            statusSection.put(prefix + "failed", listenerWorker.failed.get());
+            statusSection.put(prefix + "timedOut", listenerWorker.timedOut.get());
+            statusSection.put(prefix + "dropped", listenerWorker.dropped.get());
+            statusSection.put(prefix + "pending", listenerWorker.eventFeed.hasPending());
+            statusSection.put(prefix + "lastLatencyMillis", listenerWorker.lastLatencyMillis);
+        }
+    }
+}
@@ -2,4 +2,11 @@ package io.accelerate.tracking.app.events;
 
 public interface ExternalEventListener {
     void onExternalEvent(String eventPayload) throws Exception;
+
+    /**
+     * Event addressed to a single workspace. Listeners that do not route just take the payload.
+     */
+    default void onExternalEvent(String workspace, String eventPayload) throws Exception {
+        onExternalEvent(eventPayload);
+    }
 }
@@ -1,70 +1,178 @@
 package io.accelerate.tracking.app.events;
 
-import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.server.ServerConnector;
-import org.eclipse.jetty.servlet.ServletHandler;
-import org.eclipse.jetty.servlet.ServletHolder;
-import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.accelerate.tracking.app.logging.SessionLogContext;
+import io.accelerate.tracking.app.status.Json;
+import io.accelerate.tracking.app.status.StatusBoard;
+import io.accelerate.tracking.app.status.StatusSnapshot;
 import io.accelerate.tracking.app.tasks.Stoppable;
 
-import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class ExternalEventServerThread implements Stoppable {
-    private final Server server;
+    private static final int STOP_DELAY_SECONDS = 1;
+    private static final byte[] ACK_RESPONSE = "ACK\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] KEEP_ALIVE_FRAME = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final int KEEP_ALIVE_SECONDS = 15;
+    private static final int SNAPSHOT_TIMEOUT_SECONDS = 120;
+    private static final String WORKSPACE_PARAMETER = "workspace";
+
+    private final HttpServer server;
+    private final InetSocketAddress listeningAddress;
+    private final String pathPrefix;
+    private final boolean ownsServer;
+    private final String sessionId;
+    private final StatusBoard statusBoard;
+    private final ProgressEventStream progressEventStream;
+    private final ExecutorService handlerExecutor;
+    private final CountDownLatch stopped;
     private final List<ExternalEventListener> notifyListeners;
     private final List<ExternalEventListener> stopListeners;
+    private volatile SnapshotRequestListener snapshotListener;
+    private volatile boolean running;
+    private boolean stopSignalled;
 
-    public ExternalEventServerThread(String listeningHost, int listeningPort) {
-        // Create the server
-        QueuedThreadPool threadPool = new QueuedThreadPool(16, 1);
-        threadPool.setName("ExEvent");
-        server = new Server(threadPool);
-        server.setStopTimeout(1000);
+    public ExternalEventServerThread(String listeningHost, int listeningPort,
+                                     StatusBoard statusBoard,
+                                     ProgressEventStream progressEventStream) throws IOException {
+        // Create the server, the JDK server keeps connections alive and serves them over HTTP/1.1.
+        // It is bound when started, a server never started has no port to let go of
+        this(HttpServer.create(), new InetSocketAddress(listeningHost, listeningPort), "", true, null, null,
+                statusBoard, progressEventStream);
+    }
 
-        // Add the http connector
-        ServerConnector http = new ServerConnector(server);
-        http.setHost(listeningHost);
-        http.setPort(listeningPort);
-        server.addConnector(http);
+    /**
+     * Serve the endpoints under a path of a server owned by someone else, like the daemon control server.
+     * The requests are handled in the logging context of the session.
+     */
+    public static ExternalEventServerThread mountedOn(HttpServer server, String pathPrefix, String sessionId,
+                                                      StatusBoard statusBoard,
+                                                      ProgressEventStream progressEventStream) {
+        return mountedOn(server, pathPrefix, sessionId, null, statusBoard, progressEventStream);
+    }
+
+    /**
+     * Like {@link #mountedOn(HttpServer, String, String, StatusBoard, ProgressEventStream)},
+     * the requests must get past the authenticator of the server
+     */
+    public static ExternalEventServerThread mountedOn(HttpServer server, String pathPrefix, String sessionId,
+                                                      Authenticator authenticator,
+                                                      StatusBoard statusBoard,
+                                                      ProgressEventStream progressEventStream) {
+        return new ExternalEventServerThread(server, null, pathPrefix, false, sessionId, authenticator,
+                statusBoard, progressEventStream);
+    }
+
+    private ExternalEventServerThread(HttpServer server, InetSocketAddress listeningAddress, String pathPrefix,
+                                      boolean ownsServer, String sessionId,
+                                      Authenticator authenticator,
+                                      StatusBoard statusBoard,
+                                      ProgressEventStream progressEventStream) {
+        this.server = server;
+        this.listeningAddress = listeningAddress;
+        this.pathPrefix = pathPrefix;
+        this.ownsServer = ownsServer;
+        this.sessionId = sessionId;
+        this.statusBoard = statusBoard;
+        this.progressEventStream = progressEventStream;
+
+        if (ownsServer) {
+            handlerExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ExEvent-", 0).factory());
+            server.setExecutor(handlerExecutor);
+        } else {
+            handlerExecutor = null;
+        }
+        stopped = new CountDownLatch(1);
 
         // Prepare listeners
-        notifyListeners = new ArrayList<>();
-        stopListeners = new ArrayList<>();
+        notifyListeners = new CopyOnWriteArrayList<>();
+        stopListeners = new CopyOnWriteArrayList<>();
 
-        // Register the servlets
-        ServletHandler handler = new ServletHandler();
-        server.setHandler(handler);
-        handler.addServletWithMapping(new ServletHolder(new StatusServlet()),
-                "/status");
-        handler.addServletWithMapping(new ServletHolder(new PostEventServlet(notifyListeners)),
-                "/notify");
-        handler.addServletWithMapping(new ServletHolder(new PostEventServlet(stopListeners)),
-                "/stop");
+        // Register the handlers
+        mount("/status", new StatusHandler(), authenticator);
+        mount("/events", new ProgressStreamHandler(), authenticator);
+        mount("/notify", new PostEventHandler(notifyListeners), authenticator);
+        mount("/stop", new PostEventHandler(stopListeners), authenticator);
+        mount("/snapshot", new SnapshotHandler(), authenticator);
     }
 
-    public void start() throws Exception {
-        server.start();
+    private void mount(String path, HttpHandler httpHandler, Authenticator authenticator) {
+        HttpContext httpContext = server.createContext(pathPrefix + path, inSessionContext(httpHandler));
+        if (authenticator != null) {
+            httpContext.setAuthenticator(authenticator);
+        }
+    }
+
+    public synchronized void start() throws Exception {
+        if (stopSignalled) {
+            return;
+        }
+        if (ownsServer) {
+            server.bind(listeningAddress, 0);
+            server.start();
+        }
+        running = true;
     }
 
     @Override
     public boolean isAlive() {
-        return server.isRunning();
+        return running;
     }
 
     @Override
     public void join() throws InterruptedException {
-        server.join();
+        stopped.await();
     }
 
     @Override
-    public void signalStop() throws Exception {
-        server.stop();
+    public synchronized void signalStop() throws Exception {
+        if (stopSignalled) {
+            return;
+        }
+        stopSignalled = true;
+        boolean started = running;
+        running = false;
+        progressEventStream.closeAll();
+
+        // A stop request can arrive through the server itself, so stop from outside the handler threads
+        Thread.ofPlatform().name("ExEventStop").start(() -> {
+            try {
+                if (ownsServer) {
+                    if (started) {
+                        server.stop(STOP_DELAY_SECONDS);
+                    }
+                    handlerExecutor.shutdown();
+                } else {
+                    removeContexts();
+                }
+            } finally {
+                stopped.countDown();
+            }
+        });
+    }
+
+    private void removeContexts() {
+        for (String path : List.of("/status", "/events", "/notify", "/stop", "/snapshot")) {
+            server.removeContext(pathPrefix + path);
+        }
     }
 
     //~~~~~~~~~ The listeners
@@ -77,42 +185,216 @@ public class ExternalEventServerThread implements Stoppable {
         stopListeners.add(externalEventListener);
     }
 
+    public void useSnapshotListener(SnapshotRequestListener snapshotRequestListener) {
+        this.snapshotListener = snapshotRequestListener;
+    }
+
     //~~~~~~~~~ The commands that are being handled
 
-    private class StatusServlet extends HttpServlet {
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        // A length of 0 would send the response chunked
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    private HttpHandler inSessionContext(HttpHandler httpHandler) {
+        if (sessionId == null) {
+            return httpHandler;
+        }
+        // The handler threads belong to the server, not to the session
+        return exchange -> {
+            SessionLogContext.enter(sessionId);
+            try {
+                httpHandler.handle(exchange);
+            } finally {
+                SessionLogContext.leave();
+            }
+        };
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery == null) {
+            return null;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0 && name.equals(pair.substring(0, separator))) {
+                return URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private class StatusHandler implements HttpHandler {
 
         @Override
-        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-            resp.setContentType("text/plain");
-            resp.setStatus(HttpServletResponse.SC_OK);
-            resp.getWriter().println("OK");
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_METHOD, new byte[0]);
+                return;
+            }
+            // Served from the last published snapshot, never from the live tasks
+            StatusSnapshot statusSnapshot = statusBoard.current();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, statusSnapshot.getLength());
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                statusSnapshot.writeTo(responseBody);
+            }
         }
     }
 
-    private class PostEventServlet extends HttpServlet {
-        private List<ExternalEventListener> listeners;
+    private class ProgressStreamHandler implements HttpHandler {
 
-        PostEventServlet(List<ExternalEventListener> listeners) {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_METHOD, new byte[0]);
+                return;
+            }
+
+            ProgressEventStream.Subscriber subscriber = progressEventStream.subscribe();
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+                responseBody.flush();
+
+                while (running && !subscriber.isClosed()) {
+                    ProgressEvent progressEvent = subscriber.next(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+                    if (progressEvent != null) {
+                        responseBody.write(progressEvent.getFrame());
+                    } else if (!subscriber.isClosed()) {
+                        responseBody.write(KEEP_ALIVE_FRAME);
+                    }
+                    responseBody.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // The subscriber has gone away
+            } finally {
+                subscriber.close();
+            }
+        }
+    }
+
+    private class PostEventHandler implements HttpHandler {
+        private final List<ExternalEventListener> listeners;
+
+        PostEventHandler(List<ExternalEventListener> listeners) {
             this.listeners = listeners;
         }
 
         @Override
-        protected void doPost(HttpServletRequest req, HttpServletResponse resp)
-                throws IOException {
-            String body = req.getReader().lines().collect(Collectors.joining(System.lineSeparator()));
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_METHOD, new byte[0]);
+                return;
+            }
+
+            String body;
+            try (InputStream requestBody = exchange.getRequestBody()) {
+                body = new String(requestBody.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            String workspace = queryParameter(exchange, WORKSPACE_PARAMETER);
 
             try {
                 for (ExternalEventListener externalEventListener : listeners) {
-                    externalEventListener.onExternalEvent(body.trim());
+                    if (workspace != null) {
+                        externalEventListener.onExternalEvent(workspace, body.trim());
+                    } else {
+                        externalEventListener.onExternalEvent(body.trim());
+                    }
                 }
-                resp.setContentType("text/plain");
-                resp.setStatus(HttpServletResponse.SC_OK);
-                resp.getWriter().println("ACK");
+                respond(exchange, HttpURLConnection.HTTP_OK, ACK_RESPONSE);
+            } catch (IllegalArgumentException e) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_REQUEST,
+                        (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
             } catch (Exception e) {
-                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-                resp.getWriter().println(e.getMessage());
+                respond(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR,
+                        (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
             }
         }
+    }
+
+    /**
+     * Takes a snapshot right away and answers with its id, a body is recorded as a tag first, like a notify.
+     * The requests arriving together share one snapshot.
+     */
+    private class SnapshotHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_METHOD, new byte[0]);
+                return;
+            }
+            SnapshotRequestListener currentSnapshotListener = snapshotListener;
+            if (currentSnapshotListener == null) {
+                respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE,
+                        "Source code not tracked\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            String body;
+            try (InputStream requestBody = exchange.getRequestBody()) {
+                body = new String(requestBody.readAllBytes(), StandardCharsets.UTF_8).trim();
+            }
+            String workspace = queryParameter(exchange, WORKSPACE_PARAMETER);
+            // Nothing is tagged for a request that cannot be served
+            if (!currentSnapshotListener.isTracked(workspace)) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_REQUEST,
+                        ("Unknown workspace: " + workspace + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            }
 
+            try {
+                if (!body.isEmpty()) {
+                    for (ExternalEventListener externalEventListener : notifyListeners) {
+                        if (workspace != null) {
+                            externalEventListener.onExternalEvent(workspace, body);
+                        } else {
+                            externalEventListener.onExternalEvent(body);
+                        }
+                    }
+                }
+                List<String> snapshotIds = currentSnapshotListener.onSnapshotRequest(workspace)
+                        .get(SNAPSHOT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+                StringBuilder response = new StringBuilder("{\"snapshots\":[");
+                for (int i = 0; i < snapshotIds.size(); i++) {
+                    if (i > 0) {
+                        response.append(',');
+                    }
+                    Json.appendString(response, snapshotIds.get(i));
+                }
+                response.append("]}\n");
+                byte[] responseBytes = response.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, responseBytes.length);
+                try (OutputStream responseBody = exchange.getResponseBody()) {
+                    responseBody.write(responseBytes);
+                }
+            } catch (IllegalArgumentException e) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_REQUEST,
+                        (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (TimeoutException e) {
+                respond(exchange, HttpURLConnection.HTTP_GATEWAY_TIMEOUT,
+                        "Snapshot not taken in time\n".getBytes(StandardCharsets.UTF_8));
+            } catch (ExecutionException e) {
+                respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE,
+                        (e.getCause().getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, new byte[0]);
+            } catch (Exception e) {
+                respond(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR,
+                        (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
     }
 }
@@ -0,0 +1,46 @@
+package io.accelerate.tracking.app.events;
+
+class JournalEventFeed implements EventFeed {
+    private final EventJournal eventJournal;
+    private final EventJournal.Cursor cursor;
+    private final String workspace;
+
+    /**
+     * @param workspace only take the records addressed to this workspace (or to all), null to take everything
+     */
+    JournalEventFeed(EventJournal eventJournal, String workspace) {
+        this.eventJournal = eventJournal;
+        this.cursor = eventJournal.newCursor();
+        this.workspace = workspace;
+    }
+
+    @Override
+    public String poll(long timeoutMillis) throws InterruptedException {
+        skipRecordsForOtherWorkspaces();
+        if (!cursor.hasNext()) {
+            eventJournal.awaitRecordsAfter(cursor.getPosition(), timeoutMillis);
+            skipRecordsForOtherWorkspaces();
+        }
+        return cursor.hasNext() ? cursor.peek() : null;
+    }
+
+    private void skipRecordsForOtherWorkspaces() {
+        while (cursor.hasNext() && !isAddressedToUs(cursor.peekTarget())) {
+            cursor.advance();
+        }
+    }
+
+    private boolean isAddressedToUs(String target) {
+        return workspace == null || target.isEmpty() || target.equals(workspace);
+    }
+
+    @Override
+    public void acknowledge() {
+        cursor.advance();
+    }
+
+    @Override
+    public boolean hasPending() {
+        return cursor.hasNext();
+    }
+}
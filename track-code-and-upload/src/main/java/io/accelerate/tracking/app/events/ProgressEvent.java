@@ -0,0 +1,24 @@
+package io.accelerate.tracking.app.events;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One entry of the progress stream, encoded once as a Server-Sent Events frame
+ */
+public final class ProgressEvent {
+    private final String type;
+    private final byte[] frame;
+
+    ProgressEvent(String type, String jsonData) {
+        this.type = type;
+        this.frame = ("event: " + type + "\ndata: " + jsonData + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    byte[] getFrame() {
+        return frame;
+    }
+}
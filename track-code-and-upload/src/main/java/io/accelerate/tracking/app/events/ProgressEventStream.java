@@ -0,0 +1,128 @@
+package io.accelerate.tracking.app.events;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.tasks.MonitoredSubject;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Fans out progress events to any number of subscribers.
+ * Each event is encoded once, subscribers that fall behind their buffer are dropped.
+ */
+public class ProgressEventStream implements MonitoredSubject {
+    private static final Logger log = getLogger(ProgressEventStream.class);
+    private static final int SUBSCRIBER_BUFFER_SIZE = 256;
+    private static final ProgressEvent END_OF_STREAM = new ProgressEvent("end", "{}");
+
+    private final List<Subscriber> subscribers;
+    private final AtomicLong publishedEvents;
+    private final AtomicLong droppedSubscribers;
+
+    public ProgressEventStream() {
+        this.subscribers = new CopyOnWriteArrayList<>();
+        this.publishedEvents = new AtomicLong();
+        this.droppedSubscribers = new AtomicLong();
+    }
+
+    public void publish(String type, String jsonData) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        ProgressEvent progressEvent = new ProgressEvent(type, jsonData);
+        publishedEvents.incrementAndGet();
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.buffer.offer(progressEvent)) {
+                log.warn("Progress subscriber is too slow. Dropping it.");
+                droppedSubscribers.incrementAndGet();
+                subscriber.close();
+            }
+        }
+    }
+
+    public Subscriber subscribe() {
+        Subscriber subscriber = new Subscriber();
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public void closeAll() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    public class Subscriber {
+        private final BlockingQueue<ProgressEvent> buffer;
+        private volatile boolean closed;
+
+        private Subscriber() {
+            this.buffer = new ArrayBlockingQueue<>(SUBSCRIBER_BUFFER_SIZE);
+            this.closed = false;
+        }
+
+        /**
+         * @return the next event, null if nothing arrived in time or the subscription has ended
+         */
+        ProgressEvent next(long timeout, TimeUnit unit) throws InterruptedException {
+            if (closed) {
+                return null;
+            }
+            ProgressEvent progressEvent = buffer.poll(timeout, unit);
+            return progressEvent == END_OF_STREAM ? null : progressEvent;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscribers.remove(this);
+            // Wake up the reader, the buffer might be full so make room first
+            buffer.clear();
+            buffer.offer(END_OF_STREAM);
+        }
+    }
+
+    // ~~~~ Implement the monitored interface
+
+    @Override
+    public String getStatusKey() {
+        return "progressStream";
+    }
+
+    @Override
+    public boolean isActive() {
+        return false;
+    }
+
+    @Override
+    public void displayErrors(Logger log) {
+        // Dropped subscribers are logged as they happen
+    }
+
+    @Override
+    public void displayMetrics(StringBuilder displayBuffer) {
+        displayBuffer.append(String.format("%d progress subscriber%s", subscribers.size(),
+                subscribers.size() != 1 ? "s" : ""));
+    }
+
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        statusSection.put("subscribers", subscribers.size());
+        statusSection.put("publishedEvents", publishedEvents.get());
+        statusSection.put("droppedSubscribers", droppedSubscribers.get());
+    }
+}
@@ -0,0 +1,41 @@
+package io.accelerate.tracking.app.events;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class QueueEventFeed implements EventFeed {
+    private final BlockingQueue<String> queue;
+    // Read by the status tick through hasPending
+    private volatile String head;
+
+    QueueEventFeed(int capacity) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.head = null;
+    }
+
+    /**
+     * @return false if the feed is full
+     */
+    boolean offer(String eventPayload) {
+        return queue.offer(eventPayload);
+    }
+
+    @Override
+    public String poll(long timeoutMillis) throws InterruptedException {
+        if (head == null) {
+            head = queue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return head;
+    }
+
+    @Override
+    public void acknowledge() {
+        head = null;
+    }
+
+    @Override
+    public boolean hasPending() {
+        return head != null || !queue.isEmpty();
+    }
+}
@@ -0,0 +1,22 @@
+package io.accelerate.tracking.app.events;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface SnapshotRequestListener {
+
+    /**
+     * @param workspace null for every workspace
+     * @return false when there is no such workspace
+     */
+    boolean isTracked(String workspace);
+
+    /**
+     * Capture the source code as it is now
+     *
+     * @param workspace null for every workspace
+     * @return the ids of the snapshots taken, once they are in the recordings
+     * @throws IllegalArgumentException when there is no such workspace
+     */
+    CompletableFuture<List<String>> onSnapshotRequest(String workspace);
+}
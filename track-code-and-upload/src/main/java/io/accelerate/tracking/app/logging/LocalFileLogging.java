@@ -7,14 +7,23 @@ import static org.slf4j.LoggerFactory.getILoggerFactory;
 public class LocalFileLogging {
 
     private final String localStorageFolder;
+    private final String sessionId;
 
     public LocalFileLogging(String localStorageFolder) {
+        this(localStorageFolder, null);
+    }
+
+    /**
+     * Keep the log of one session when several sessions share the process
+     */
+    public LocalFileLogging(String localStorageFolder, String sessionId) {
         this.localStorageFolder = localStorageFolder;
+        this.sessionId = sessionId;
     }
 
     public void start() {
         LoggerContext loggerContext = (LoggerContext) getILoggerFactory();
-        LockableFileLoggingAppender.addToContext(loggerContext, localStorageFolder);
+        LockableFileLoggingAppender.addToContext(loggerContext, localStorageFolder, sessionId);
     }
 
     public void forceRotation() {
@@ -24,7 +33,7 @@ public class LocalFileLogging {
 
     public void stop() {
         LoggerContext loggerContext = (LoggerContext) getILoggerFactory();
-        LockableFileLoggingAppender.removeFromContext(loggerContext);
+        LockableFileLoggingAppender.removeFromContext(loggerContext, sessionId);
     }
 }
 
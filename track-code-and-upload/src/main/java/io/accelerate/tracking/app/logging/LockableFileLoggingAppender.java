@@ -6,8 +6,12 @@ import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.FileAppender;
+import io.accelerate.tracking.app.profiling.LogWriteEvent;
+import io.accelerate.tracking.app.upload.ContentChecksum;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -19,10 +23,25 @@ import static java.nio.file.StandardOpenOption.CREATE;
 public class LockableFileLoggingAppender<E> extends FileAppender<E> {
     private static final String APPENDER_NAME = "REMOTE_SYNC_FILE";
 
+    private ContentChecksum logChecksum;
+
     public static void addToContext(LoggerContext loggerContext, String localStorageFolder) {
+        addToContext(loggerContext, localStorageFolder, null);
+    }
+
+    /**
+     * With a session id, only the lines logged by the threads of that session go to the file
+     */
+    public static void addToContext(LoggerContext loggerContext, String localStorageFolder, String sessionId) {
         LockableFileLoggingAppender<ILoggingEvent> fileAppender = new LockableFileLoggingAppender<>();
         fileAppender.setContext(loggerContext);
-        fileAppender.setName(APPENDER_NAME);
+        fileAppender.setName(appenderNameFor(sessionId));
+        if (sessionId != null) {
+            SessionLogFilter sessionLogFilter = new SessionLogFilter(sessionId);
+            sessionLogFilter.setContext(loggerContext);
+            sessionLogFilter.start();
+            fileAppender.addFilter(sessionLogFilter);
+        }
 
         // set the file name
         String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss"));
@@ -42,8 +61,12 @@ public class LockableFileLoggingAppender<E> extends FileAppender<E> {
     }
 
     public static void removeFromContext(LoggerContext loggerContext) {
+        removeFromContext(loggerContext, null);
+    }
+
+    public static void removeFromContext(LoggerContext loggerContext, String sessionId) {
         Logger logbackLogger = loggerContext.getLogger(Logger.ROOT_LOGGER_NAME);
-        Appender<ILoggingEvent> appender = logbackLogger.getAppender(APPENDER_NAME);
+        Appender<ILoggingEvent> appender = logbackLogger.getAppender(appenderNameFor(sessionId));
         if (appender != null) {
             LockableFileLoggingAppender<ILoggingEvent> lockableAppender = (LockableFileLoggingAppender<ILoggingEvent>) appender;
             logbackLogger.detachAppender(lockableAppender);
@@ -55,12 +78,48 @@ public class LockableFileLoggingAppender<E> extends FileAppender<E> {
     public void openFile(String file_name) throws IOException {
         //create *.lock file
         Files.write(lockFor(file_name), new byte[0], CREATE);
+        logChecksum = new ContentChecksum(Paths.get(file_name));
         super.openFile(file_name);
     }
 
+    /**
+     * The lines are checksummed on their way to the file, the checksum is saved for the upload when the file closes
+     */
+    @Override
+    public void setOutputStream(OutputStream outputStream) {
+        ContentChecksum checksum = logChecksum;
+        super.setOutputStream(checksum == null ? outputStream : new FilterOutputStream(outputStream) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+                checksum.update(bytes, offset, length);
+            }
+
+            @Override
+            public void write(int oneByte) throws IOException {
+                out.write(oneByte);
+                checksum.update(new byte[]{(byte) oneByte}, 0, 1);
+            }
+        });
+    }
+
+    @Override
+    protected void subAppend(E event) {
+        LogWriteEvent logWriteEvent = new LogWriteEvent();
+        logWriteEvent.begin();
+        super.subAppend(event);
+        if (logWriteEvent.shouldCommit()) {
+            logWriteEvent.appender = getName();
+            logWriteEvent.commit();
+        }
+    }
+
     @Override
     public void stop() {
         super.stop();
+        if (logChecksum != null) {
+            logChecksum.saveQuietly();
+        }
         try {
             Files.delete(lockFor(fileName));
         } catch (IOException ignored) {}
@@ -68,6 +127,10 @@ public class LockableFileLoggingAppender<E> extends FileAppender<E> {
 
     //~~~~ Helper
 
+    private static String appenderNameFor(String sessionId) {
+        return sessionId != null ? APPENDER_NAME + "-" + sessionId : APPENDER_NAME;
+    }
+
     private static Path lockFor(String first) {
         return Paths.get(first + ".lock");
     }
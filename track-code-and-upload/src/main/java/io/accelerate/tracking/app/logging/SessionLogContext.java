@@ -0,0 +1,23 @@
+package io.accelerate.tracking.app.logging;
+
+/**
+ * Remembers which session a thread works for. The threads started by a session inherit it.
+ */
+public final class SessionLogContext {
+    private static final InheritableThreadLocal<String> currentSessionId = new InheritableThreadLocal<>();
+
+    private SessionLogContext() {
+    }
+
+    public static void enter(String sessionId) {
+        currentSessionId.set(sessionId);
+    }
+
+    public static void leave() {
+        currentSessionId.remove();
+    }
+
+    public static String currentSessionId() {
+        return currentSessionId.get();
+    }
+}
@@ -0,0 +1,21 @@
+package io.accelerate.tracking.app.logging;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/**
+ * Lets through the lines logged by the threads of one session
+ */
+class SessionLogFilter extends Filter<ILoggingEvent> {
+    private final String sessionId;
+
+    SessionLogFilter(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    public FilterReply decide(ILoggingEvent event) {
+        return sessionId.equals(SessionLogContext.currentSessionId()) ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+}
@@ -0,0 +1,175 @@
+package io.accelerate.tracking.app.metrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * The metrics of a session as a gzipped, column by column time series:
+ * <pre>
+ * [magic][version][column count][column names...]
+ * [tier count] then per tier: [resolution ms][row count][timestamps...][values of column 0...][values of column 1...]...
+ * </pre>
+ * Every tier has all the columns, a value a subject did not report is a NaN.
+ */
+public final class MetricsFile {
+    public static final String EXTENSION = ".metrics";
+    private static final int MAGIC = 0x54524b4d; // "TRKM"
+    private static final int VERSION = 1;
+
+    private final List<String> columnNames;
+    private final List<Tier> tiers;
+
+    private MetricsFile(List<String> columnNames, List<Tier> tiers) {
+        this.columnNames = columnNames;
+        this.tiers = tiers;
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Finest resolution first
+     */
+    public List<Tier> getTiers() {
+        return tiers;
+    }
+
+    public static final class Tier {
+        private final long resolutionMillis;
+        private final long[] timestamps;
+        private final double[][] columns;
+
+        Tier(long resolutionMillis, long[] timestamps, double[][] columns) {
+            this.resolutionMillis = resolutionMillis;
+            this.timestamps = timestamps;
+            this.columns = columns;
+        }
+
+        public long getResolutionMillis() {
+            return resolutionMillis;
+        }
+
+        public int getRowCount() {
+            return timestamps.length;
+        }
+
+        public long getTimestampMillis(int row) {
+            return timestamps[row];
+        }
+
+        public double getValue(int column, int row) {
+            return columns[column][row];
+        }
+    }
+
+    // ~~~~ Writing
+
+    /**
+     * Replaces the file in one go, the upload never picks up half of it
+     */
+    static void write(Path metricsFile, List<String> columnNames, List<Tier> tiers) throws IOException {
+        Path tempFile = Paths.get(metricsFile + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tempFile))))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(columnNames.size());
+            for (String columnName : columnNames) {
+                output.writeUTF(columnName);
+            }
+            output.writeInt(tiers.size());
+            for (Tier tier : tiers) {
+                output.writeLong(tier.resolutionMillis);
+                output.writeInt(tier.timestamps.length);
+                for (long timestamp : tier.timestamps) {
+                    output.writeLong(timestamp);
+                }
+                for (int column = 0; column < columnNames.size(); column++) {
+                    for (double value : tier.columns[column]) {
+                        output.writeDouble(value);
+                    }
+                }
+            }
+        }
+        Files.move(tempFile, metricsFile, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    // ~~~~ Reading
+
+    public static MetricsFile read(Path metricsFile) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(metricsFile))))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a metrics file");
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported metrics file version " + version);
+            }
+            int columnCount = input.readInt();
+            List<String> columnNames = new ArrayList<>(columnCount);
+            for (int column = 0; column < columnCount; column++) {
+                columnNames.add(input.readUTF());
+            }
+            int tierCount = input.readInt();
+            List<Tier> tiers = new ArrayList<>(tierCount);
+            for (int tier = 0; tier < tierCount; tier++) {
+                long resolutionMillis = input.readLong();
+                int rowCount = input.readInt();
+                long[] timestamps = new long[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    timestamps[row] = input.readLong();
+                }
+                double[][] columns = new double[columnCount][rowCount];
+                for (int column = 0; column < columnCount; column++) {
+                    for (int row = 0; row < rowCount; row++) {
+                        columns[column][row] = input.readDouble();
+                    }
+                }
+                tiers.add(new Tier(resolutionMillis, timestamps, columns));
+            }
+            return new MetricsFile(Collections.unmodifiableList(columnNames), Collections.unmodifiableList(tiers));
+        }
+    }
+
+    /**
+     * One row per sample of every tier, the resolution column tells the tiers apart. Missing values are left empty.
+     */
+    public void writeCsv(Appendable output) throws IOException {
+        output.append("resolutionMillis,timestampMillis");
+        for (String columnName : columnNames) {
+            output.append(',').append(columnName);
+        }
+        output.append('\n');
+        for (Tier tier : tiers) {
+            for (int row = 0; row < tier.getRowCount(); row++) {
+                output.append(Long.toString(tier.resolutionMillis)).append(',')
+                        .append(Long.toString(tier.getTimestampMillis(row)));
+                for (int column = 0; column < columnNames.size(); column++) {
+                    output.append(',');
+                    double value = tier.getValue(column, row);
+                    if (!Double.isNaN(value)) {
+                        output.append(value == Math.rint(value) && Math.abs(value) < 1e15
+                                ? Long.toString((long) value) : Double.toString(value));
+                    }
+                }
+                output.append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package io.accelerate.tracking.app.metrics;
+
+import io.accelerate.tracking.app.status.StatusSampler;
+import io.accelerate.tracking.app.status.StatusSection;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the numbers the monitored subjects report at every status tick in ring buffers, for the whole session.
+ * The recent samples are kept as they are, the older ones as averages per minute.
+ * The rings are saved to a metrics file in the store every so often and on stop, it is uploaded with the logs.
+ * The file holds a lock until the stop, so the upload keeps picking up the new saves.
+ * <p>
+ * Text values are left out, booleans are recorded as 0 or 1.
+ */
+public class MetricsRecorder implements StatusSampler {
+    private static final Logger log = getLogger(MetricsRecorder.class);
+    public static final Duration SAMPLE_INTERVAL = Duration.of(3, ChronoUnit.SECONDS);
+    private static final Duration RECENT_HISTORY = Duration.of(20, ChronoUnit.MINUTES);
+    private static final Duration DOWNSAMPLED_RESOLUTION = Duration.of(1, ChronoUnit.MINUTES);
+    private static final Duration DOWNSAMPLED_HISTORY = Duration.of(24, ChronoUnit.HOURS);
+    private static final int INITIAL_COLUMNS = 64;
+
+    private final Path metricsFile;
+    private final Timer saveTimer;
+    private final SamplingSection samplingSection;
+    private final MetricsRing recentRing;
+    private final MetricsRing downsampledRing;
+    private final List<String> columnNames;
+    private final Map<String, Map<String, Integer>> columnsBySubject;
+    private double[] currentRow;
+    private double[] bucketSums;
+    private int[] bucketCounts;
+    private long bucketStartMillis;
+    private long sampleMillis;
+    private boolean stopped;
+
+    /**
+     * @see #SAMPLE_INTERVAL for how often the status ticks should come
+     */
+    public MetricsRecorder(Path metricsFile) throws IOException {
+        this.metricsFile = metricsFile;
+        Files.write(lockFor(metricsFile), new byte[0], CREATE);
+        this.saveTimer = new Timer("MetricsRecorder");
+        this.samplingSection = new SamplingSection();
+        this.recentRing = new MetricsRing(SAMPLE_INTERVAL.toMillis(),
+                (int) (RECENT_HISTORY.toMillis() / SAMPLE_INTERVAL.toMillis()));
+        this.downsampledRing = new MetricsRing(DOWNSAMPLED_RESOLUTION.toMillis(),
+                (int) (DOWNSAMPLED_HISTORY.toMillis() / DOWNSAMPLED_RESOLUTION.toMillis()));
+        this.columnNames = new ArrayList<>();
+        this.columnsBySubject = new HashMap<>();
+        this.currentRow = new double[INITIAL_COLUMNS];
+        this.bucketSums = new double[INITIAL_COLUMNS];
+        this.bucketCounts = new int[INITIAL_COLUMNS];
+        this.bucketStartMillis = -1;
+    }
+
+    public void scheduleSaveEvery(Duration saveInterval) {
+        saveTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                saveQuietly();
+            }
+        }, saveInterval.toMillis(), saveInterval.toMillis());
+    }
+
+    /**
+     * Save everything sampled so far, including the minute in progress, so it makes it into the final upload.
+     * Then release the lock of the file, nothing is sampled after.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            closeBucket();
+        }
+        saveTimer.cancel();
+        saveQuietly();
+        try {
+            Files.delete(lockFor(metricsFile));
+        } catch (IOException ignored) {}
+    }
+
+    // ~~~~ Implement the status sampler interface
+
+    @Override
+    public synchronized void sampleStarted(long takenAtMillis) {
+        Arrays.fill(currentRow, Double.NaN);
+        sampleMillis = takenAtMillis;
+    }
+
+    @Override
+    public synchronized StatusSection sectionOf(String statusKey) {
+        samplingSection.subjectColumns = columnsBySubject.computeIfAbsent(statusKey, key -> new HashMap<>());
+        samplingSection.subjectKey = statusKey;
+        return samplingSection;
+    }
+
+    @Override
+    public synchronized void sampleEnded() {
+        if (stopped) {
+            return;
+        }
+        long nowMillis = sampleMillis;
+        int columnCount = columnNames.size();
+        recentRing.append(nowMillis, currentRow, columnCount);
+
+        long sampleBucketStartMillis = nowMillis - nowMillis % DOWNSAMPLED_RESOLUTION.toMillis();
+        if (sampleBucketStartMillis != bucketStartMillis) {
+            closeBucket();
+            bucketStartMillis = sampleBucketStartMillis;
+        }
+        for (int column = 0; column < columnCount; column++) {
+            if (!Double.isNaN(currentRow[column])) {
+                bucketSums[column] += currentRow[column];
+                bucketCounts[column]++;
+            }
+        }
+    }
+
+    synchronized void save() throws IOException {
+        int columnCount = columnNames.size();
+        MetricsFile.write(metricsFile, new ArrayList<>(columnNames),
+                List.of(recentRing.toTier(columnCount), downsampledRing.toTier(columnCount)));
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            log.warn("Failed to save the metrics to {}. Reason: {}", metricsFile.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * The averages of the minute go to the downsampled ring
+     */
+    private void closeBucket() {
+        if (bucketStartMillis < 0) {
+            return;
+        }
+        int columnCount = columnNames.size();
+        double[] averages = new double[columnCount];
+        boolean hasSamples = false;
+        for (int column = 0; column < columnCount; column++) {
+            averages[column] = bucketCounts[column] > 0 ? bucketSums[column] / bucketCounts[column] : Double.NaN;
+            hasSamples |= bucketCounts[column] > 0;
+        }
+        if (hasSamples) {
+            downsampledRing.append(bucketStartMillis, averages, columnCount);
+        }
+        Arrays.fill(bucketSums, 0);
+        Arrays.fill(bucketCounts, 0);
+        bucketStartMillis = -1;
+    }
+
+    private static Path lockFor(Path metricsFile) {
+        return Paths.get(metricsFile + ".lock");
+    }
+
+    private int columnFor(Map<String, Integer> subjectColumns, String subjectKey, String key) {
+        Integer column = subjectColumns.get(key);
+        if (column != null) {
+            return column;
+        }
+        int newColumn = columnNames.size();
+        columnNames.add(subjectKey + "." + key);
+        subjectColumns.put(key, newColumn);
+        if (newColumn >= currentRow.length) {
+            int capacity = currentRow.length * 2;
+            int previousCapacity = currentRow.length;
+            currentRow = Arrays.copyOf(currentRow, capacity);
+            Arrays.fill(currentRow, previousCapacity, capacity, Double.NaN);
+            bucketSums = Arrays.copyOf(bucketSums, capacity);
+            bucketCounts = Arrays.copyOf(bucketCounts, capacity);
+        }
+        return newColumn;
+    }
+
+    /**
+     * Puts the numbers of the subject being sampled into the current row
+     */
+    private class SamplingSection implements StatusSection {
+        private Map<String, Integer> subjectColumns;
+        private String subjectKey;
+
+        @Override
+        public void put(String key, boolean value) {
+            put(key, value ? 1.0 : 0.0);
+        }
+
+        @Override
+        public void put(String key, long value) {
+            put(key, (double) value);
+        }
+
+        @Override
+        public void put(String key, double value) {
+            synchronized (MetricsRecorder.this) {
+                currentRow[columnFor(subjectColumns, subjectKey, key)] = value;
+            }
+        }
+
+        @Override
+        public void put(String key, String value) {
+            // Not a number
+        }
+    }
+}
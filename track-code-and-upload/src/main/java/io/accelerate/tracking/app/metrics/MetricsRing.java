@@ -0,0 +1,67 @@
+package io.accelerate.tracking.app.metrics;
+
+import java.util.Arrays;
+
+/**
+ * The latest rows of the metrics at one resolution, the oldest row is overwritten once the ring is full.
+ * Stored column by column in primitive arrays, a missing value is a NaN.
+ */
+final class MetricsRing {
+    private final long resolutionMillis;
+    private final long[] timestamps;
+    private double[][] columns;
+    private int next;
+    private int size;
+
+    MetricsRing(long resolutionMillis, int capacity) {
+        this.resolutionMillis = resolutionMillis;
+        this.timestamps = new long[capacity];
+        this.columns = new double[0][];
+        this.next = 0;
+        this.size = 0;
+    }
+
+    /**
+     * @param row the value of every column, only the first columnCount are used
+     */
+    void append(long timestampMillis, double[] row, int columnCount) {
+        ensureColumns(columnCount);
+        timestamps[next] = timestampMillis;
+        for (int column = 0; column < columns.length; column++) {
+            columns[column][next] = column < columnCount ? row[column] : Double.NaN;
+        }
+        next = (next + 1) % timestamps.length;
+        size = Math.min(size + 1, timestamps.length);
+    }
+
+    /**
+     * The rows oldest first, copied out of the ring
+     */
+    MetricsFile.Tier toTier(int columnCount) {
+        ensureColumns(columnCount);
+        int oldest = size < timestamps.length ? 0 : next;
+        long[] tierTimestamps = new long[size];
+        double[][] tierColumns = new double[columnCount][size];
+        for (int row = 0; row < size; row++) {
+            int slot = (oldest + row) % timestamps.length;
+            tierTimestamps[row] = timestamps[slot];
+            for (int column = 0; column < columnCount; column++) {
+                tierColumns[column][row] = columns[column][slot];
+            }
+        }
+        return new MetricsFile.Tier(resolutionMillis, tierTimestamps, tierColumns);
+    }
+
+    private void ensureColumns(int columnCount) {
+        if (columnCount <= columns.length) {
+            return;
+        }
+        int previousCount = columns.length;
+        columns = Arrays.copyOf(columns, columnCount);
+        for (int column = previousCount; column < columnCount; column++) {
+            // The rows from before the column appeared have no value
+            columns[column] = new double[timestamps.length];
+            Arrays.fill(columns[column], Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.accelerate.tracking.app.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps a flight recording running with the low overhead "default" settings, plus the events of the app.
+ * The recording is cut into chunks, each dumped into the store as a .jfr file and uploaded with the other files.
+ * <p>
+ * The log writes are only recorded when slow, every line would drown the rest.
+ */
+public class ContinuousProfiler {
+    private static final Logger log = getLogger(ContinuousProfiler.class);
+    private static final DateTimeFormatter fileTimestampFormatter = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    private static final long MAX_CHUNK_SIZE_BYTES = 32L * 1024 * 1024;
+    private static final Duration SLOW_LOG_WRITE_THRESHOLD = Duration.of(1, ChronoUnit.MILLIS);
+
+    private final Path localStorageFolder;
+    private final Timer rotationTimer;
+    private Recording currentRecording;
+    private int chunkNumber;
+
+    public ContinuousProfiler(Path localStorageFolder) {
+        this.localStorageFolder = localStorageFolder;
+        this.rotationTimer = new Timer("Profile");
+    }
+
+    public synchronized void start() throws IOException, ParseException {
+        log.info("Profiling to the store");
+        currentRecording = newRecording();
+    }
+
+    public void scheduleRotationEvery(Duration interval) {
+        rotationTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                rotate();
+            }
+        }, interval.toMillis(), interval.toMillis());
+    }
+
+    /**
+     * Dump the last chunk, so it makes it into the final upload
+     */
+    public synchronized void stop() {
+        rotationTimer.cancel();
+        if (currentRecording != null) {
+            dumpAndClose(currentRecording);
+            currentRecording = null;
+        }
+    }
+
+    private synchronized void rotate() {
+        if (currentRecording == null) {
+            return;
+        }
+        try {
+            // Start the next chunk before closing this one, so nothing falls in between
+            Recording finishedRecording = currentRecording;
+            currentRecording = newRecording();
+            dumpAndClose(finishedRecording);
+        } catch (IOException | ParseException e) {
+            log.error("Failed to start the next profiling chunk", e);
+        }
+    }
+
+    private Recording newRecording() throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("track-code-and-upload");
+        recording.setToDisk(true);
+        recording.setMaxSize(MAX_CHUNK_SIZE_BYTES);
+        recording.enable(SnapshotCaptureEvent.class);
+        recording.enable(UploadRequestEvent.class);
+        recording.enable(NotifyDispatchEvent.class);
+        recording.enable(LogWriteEvent.class).withThreshold(SLOW_LOG_WRITE_THRESHOLD);
+        recording.start();
+        return recording;
+    }
+
+    private void dumpAndClose(Recording recording) {
+        chunkNumber++;
+        String fileName = String.format("profile_%s_%03d.jfr", LocalDateTime.now().format(fileTimestampFormatter),
+                chunkNumber);
+        Path partialFile = localStorageFolder.resolve(fileName + ".part");
+        try {
+            // The upload only picks the chunk up once it is complete
+            recording.dump(partialFile);
+            Files.move(partialFile, localStorageFolder.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to save the profiling chunk", e);
+        } finally {
+            recording.close();
+        }
+    }
+}
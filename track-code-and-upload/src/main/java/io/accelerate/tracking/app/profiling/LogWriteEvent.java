@@ -0,0 +1,16 @@
+package io.accelerate.tracking.app.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.accelerate.tracking.LogWrite")
+@Label("Log Write")
+@Category({"Track Code And Upload", "Logging"})
+@Description("A line written and flushed to the log file of the store")
+public class LogWriteEvent extends Event {
+    @Label("Appender")
+    public String appender;
+}
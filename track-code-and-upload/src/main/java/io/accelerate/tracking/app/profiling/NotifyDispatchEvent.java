@@ -0,0 +1,30 @@
+package io.accelerate.tracking.app.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.accelerate.tracking.NotifyDispatch")
+@Label("Notify Dispatch")
+@Category({"Track Code And Upload", "Events"})
+@Description("Delivery of an external event to one listener")
+public class NotifyDispatchEvent extends Event {
+    @Label("Dispatcher")
+    public String dispatcher;
+
+    @Label("Listener")
+    public String listener;
+
+    @Label("Payload")
+    @DataAmount
+    public long payloadBytes;
+
+    @Label("Attempts")
+    public int attempts;
+
+    @Label("Outcome")
+    public String outcome;
+}
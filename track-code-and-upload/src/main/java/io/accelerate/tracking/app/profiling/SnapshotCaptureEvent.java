@@ -0,0 +1,29 @@
+package io.accelerate.tracking.app.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("io.accelerate.tracking.SnapshotCapture")
+@Label("Snapshot Capture")
+@Category({"Track Code And Upload", "Capture"})
+@Description("Source code snapshots taken since the previous metrics tick")
+public class SnapshotCaptureEvent extends Event {
+    @Label("Source")
+    public String source;
+
+    @Label("Snapshots")
+    public long snapshots;
+
+    @Label("Recording Growth")
+    @DataAmount
+    public long recordingBytesAdded;
+
+    @Label("Last Snapshot Processing Time")
+    @Timespan
+    public long lastSnapshotProcessingTime;
+}
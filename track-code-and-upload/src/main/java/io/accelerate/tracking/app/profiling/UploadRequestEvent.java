@@ -0,0 +1,27 @@
+package io.accelerate.tracking.app.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("io.accelerate.tracking.UploadRequest")
+@Label("Upload Request")
+@Category({"Track Code And Upload", "Upload"})
+@Description("One call to S3, retries included")
+public class UploadRequestEvent extends Event {
+    @Label("Operation")
+    public String operation;
+
+    @Label("Request Body")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Status Code")
+    public int statusCode;
+
+    @Label("Failure")
+    public String failure;
+}
@@ -0,0 +1,60 @@
+package io.accelerate.tracking.app.profiling;
+
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.http.SdkHttpRequest;
+
+/**
+ * Times every S3 call as an {@link UploadRequestEvent}. Does nothing while the event is not recorded.
+ */
+public class UploadRequestEventInterceptor implements ExecutionInterceptor {
+    private static final ExecutionAttribute<UploadRequestEvent> EVENT =
+            new ExecutionAttribute<>("io.accelerate.tracking.UploadRequestEvent");
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        UploadRequestEvent event = new UploadRequestEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.begin();
+        executionAttributes.putAttribute(EVENT, event);
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        UploadRequestEvent event = executionAttributes.getAttribute(EVENT);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        event.statusCode = context.httpResponse().statusCode();
+        commit(event, context.httpRequest(), executionAttributes);
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        UploadRequestEvent event = executionAttributes.getAttribute(EVENT);
+        if (event == null) {
+            return;
+        }
+        event.end();
+        context.httpResponse().ifPresent(httpResponse -> event.statusCode = httpResponse.statusCode());
+        event.failure = context.exception().getClass().getSimpleName() + ": " + context.exception().getMessage();
+        commit(event, context.httpRequest().orElse(null), executionAttributes);
+    }
+
+    private static void commit(UploadRequestEvent event, SdkHttpRequest httpRequest,
+                               ExecutionAttributes executionAttributes) {
+        event.operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        if (httpRequest != null) {
+            event.requestBytes = httpRequest.firstMatchingHeader("Content-Length")
+                    .map(Long::parseLong)
+                    .orElse(0L);
+        }
+        event.commit();
+    }
+}
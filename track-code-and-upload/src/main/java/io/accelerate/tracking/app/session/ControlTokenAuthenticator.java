@@ -0,0 +1,65 @@
+package io.accelerate.tracking.app.session;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+
+/**
+ * Lets through the requests to the daemon that carry its control token, as "Authorization: Bearer &lt;token&gt;".
+ * A web page open in the browser of the user can reach the loopback address too, but it cannot set that header
+ * without the daemon agreeing to it first. A request with an Origin header comes from a page, it is turned away.
+ */
+class ControlTokenAuthenticator extends Authenticator {
+    private static final int TOKEN_BYTES = 32;
+    private final byte[] expectedAuthorization;
+
+    ControlTokenAuthenticator(String controlToken) {
+        if (controlToken == null || controlToken.isBlank()) {
+            throw new IllegalArgumentException("The control token cannot be empty");
+        }
+        this.expectedAuthorization = ("Bearer " + controlToken).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a new token to a file only the user can read, for the tools driving the daemon
+     */
+    static String writeNewToken(Path tokenFile) throws IOException {
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(tokenBytes);
+        String controlToken = HexFormat.of().formatHex(tokenBytes);
+
+        Files.deleteIfExists(tokenFile);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        Files.writeString(tokenFile, controlToken + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return controlToken;
+    }
+
+    @Override
+    public Result authenticate(HttpExchange exchange) {
+        if (exchange.getRequestHeaders().containsKey("Origin")) {
+            return new Failure(HttpURLConnection.HTTP_FORBIDDEN);
+        }
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null
+                || !MessageDigest.isEqual(authorization.getBytes(StandardCharsets.UTF_8), expectedAuthorization)) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            return new Failure(HttpURLConnection.HTTP_UNAUTHORIZED);
+        }
+        return new Success(new HttpPrincipal("control", "daemon"));
+    }
+}
@@ -0,0 +1,136 @@
+package io.accelerate.tracking.app.session;
+
+import io.accelerate.tracking.app.sourcecode.Workspace;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * What the daemon needs to start a session, posted as properties:
+ * <pre>
+ * id=alice
+ * store=/data/alice
+ * sourcecode=/code/alice/api, ui=/code/alice/ui
+ * config=/etc/trk/aws.properties
+ * prefix=alice/
+ * key-snapshot-spacing=10
+ * </pre>
+ * The sourcecode takes a comma separated list of folders (or name=folder), or "none".
+ * The config can be "none" as well, the prefix is added to the s3_prefix of the config.
+ * The key-snapshot-spacing is optional, see {@link TrackingSession#useKeySnapshotSpacing(int)}.
+ */
+public final class SessionSpec {
+    private static final String VALID_ID = "[A-Za-z0-9_-]+";
+
+    private final String sessionId;
+    private final String localStorageFolder;
+    private final List<Workspace> workspaces;
+    private final String configFile;
+    private final String destinationPrefix;
+    private final long minimumRequiredDiskspaceInGB;
+    private final int keySnapshotSpacing;
+
+    private SessionSpec(String sessionId, String localStorageFolder, List<Workspace> workspaces,
+                        String configFile, String destinationPrefix, long minimumRequiredDiskspaceInGB,
+                        int keySnapshotSpacing) {
+        this.sessionId = sessionId;
+        this.localStorageFolder = localStorageFolder;
+        this.workspaces = workspaces;
+        this.configFile = configFile;
+        this.destinationPrefix = destinationPrefix;
+        this.minimumRequiredDiskspaceInGB = minimumRequiredDiskspaceInGB;
+        this.keySnapshotSpacing = keySnapshotSpacing;
+    }
+
+    public static SessionSpec fromProperties(String text) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new StringReader(text));
+
+        String sessionId = required(properties, "id");
+        if (!sessionId.matches(VALID_ID)) {
+            throw new IllegalArgumentException("The session id can only use letters, digits, _ and -");
+        }
+        String localStorageFolder = required(properties, "store");
+        String configFile = required(properties, "config");
+        String sourceCode = required(properties, "sourcecode");
+
+        List<Workspace> workspaces = new ArrayList<>();
+        if (!"none".equals(sourceCode)) {
+            for (String specification : sourceCode.split(",")) {
+                if (!specification.isBlank()) {
+                    workspaces.add(Workspace.parse(specification));
+                }
+            }
+            if (workspaces.isEmpty()) {
+                throw new IllegalArgumentException("No workspace to track for session " + sessionId);
+            }
+        }
+
+        long minimumRequiredDiskspaceInGB;
+        try {
+            minimumRequiredDiskspaceInGB = Long.parseLong(
+                    properties.getProperty("minimum-required-diskspace-gb", "1").trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid minimum-required-diskspace-gb", e);
+        }
+
+        int keySnapshotSpacing;
+        try {
+            keySnapshotSpacing = Integer.parseInt(properties.getProperty("key-snapshot-spacing",
+                    String.valueOf(TrackingSession.DEFAULT_KEY_SNAPSHOT_SPACING)).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid key-snapshot-spacing", e);
+        }
+        if (keySnapshotSpacing < 1) {
+            throw new IllegalArgumentException("The key-snapshot-spacing must be at least 1");
+        }
+
+        return new SessionSpec(sessionId,
+                Paths.get(localStorageFolder).toAbsolutePath().normalize().toString(),
+                Workspace.withUniqueNames(workspaces),
+                configFile,
+                properties.getProperty("prefix", sessionId + "/").trim(),
+                minimumRequiredDiskspaceInGB,
+                keySnapshotSpacing);
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing session property: " + key);
+        }
+        return value.trim();
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getLocalStorageFolder() {
+        return localStorageFolder;
+    }
+
+    public List<Workspace> getWorkspaces() {
+        return workspaces;
+    }
+
+    public String getConfigFile() {
+        return configFile;
+    }
+
+    public String getDestinationPrefix() {
+        return destinationPrefix;
+    }
+
+    public long getMinimumRequiredDiskspaceInGB() {
+        return minimumRequiredDiskspaceInGB;
+    }
+
+    public int getKeySnapshotSpacing() {
+        return keySnapshotSpacing;
+    }
+}
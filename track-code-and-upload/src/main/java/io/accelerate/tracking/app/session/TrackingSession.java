@@ -0,0 +1,636 @@
+package io.accelerate.tracking.app.session;
+
+import io.accelerate.tracking.app.events.EventJournal;
+import io.accelerate.tracking.app.events.ExternalEventDispatcher;
+import io.accelerate.tracking.app.events.ExternalEventServerThread;
+import io.accelerate.tracking.app.events.ProgressEventStream;
+import io.accelerate.tracking.app.events.SnapshotRequestListener;
+import io.accelerate.tracking.app.logging.LocalFileLogging;
+import io.accelerate.tracking.app.logging.SessionLogContext;
+import io.accelerate.tracking.app.metrics.MetricsFile;
+import io.accelerate.tracking.app.metrics.MetricsRecorder;
+import io.accelerate.tracking.app.profiling.ContinuousProfiler;
+import io.accelerate.tracking.app.sourcecode.NoOpSourceCodeThread;
+import io.accelerate.tracking.app.sourcecode.RecordingDurability;
+import io.accelerate.tracking.app.sourcecode.RecordingIndex;
+import io.accelerate.tracking.app.sourcecode.SourceCodeRecordingThread;
+import io.accelerate.tracking.app.sourcecode.SupervisedRecordingTask;
+import io.accelerate.tracking.app.sourcecode.Workspace;
+import io.accelerate.tracking.app.status.StatusBoard;
+import io.accelerate.tracking.app.tasks.*;
+import io.accelerate.tracking.app.upload.BackgroundRemoteSyncTask;
+import io.accelerate.tracking.app.upload.DestinationOperationException;
+import io.accelerate.tracking.app.upload.RemoteDestination;
+import io.accelerate.tracking.app.upload.UploadScheduler;
+import io.accelerate.tracking.app.util.StartupTimings;
+import io.accelerate.tracking.code.time.SystemMonotonicTimeSource;
+import io.accelerate.tracking.code.time.TimeSource;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Records the workspaces of one store and uploads it, until told to stop.
+ * The track-and-upload command runs a single session, the daemon runs many side by side.
+ */
+public class TrackingSession {
+    private static final Logger log = getLogger(TrackingSession.class);
+    private static final DateTimeFormatter fileTimestampFormatter = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    public static final int DEFAULT_KEY_SNAPSHOT_SPACING = 10;
+    private static final Duration LISTENER_TIMEOUT = Duration.of(10, ChronoUnit.SECONDS);
+    private static final String LOCAL_SESSION_KEY = "local";
+    private static final Duration DEFAULT_SYNC_INTERVAL = Duration.of(5, ChronoUnit.MINUTES);
+    public static final Duration DEFAULT_MIN_SNAPSHOT_SPACING = Duration.of(5, ChronoUnit.SECONDS);
+
+    public interface DestinationFactory {
+        RemoteDestination create() throws Exception;
+    }
+
+    public interface EventServerFactory {
+        ExternalEventServerThread create(StatusBoard statusBoard, ProgressEventStream progressEventStream) throws IOException;
+    }
+
+    private final String sessionId;
+    private final String localStorageFolder;
+    private final List<Workspace> workspaces;
+    private final long minimumRequiredDiskspaceInGB;
+    private final DestinationFactory destinationFactory;
+    private final EventServerFactory eventServerFactory;
+    private final UploadScheduler uploadScheduler;
+    private final List<Stoppable> serviceThreadsToStop;
+    private volatile HealthCheckTask healthCheckTask;
+    private volatile boolean stopRequested;
+    private volatile boolean stopAfterStartup;
+    private volatile boolean profilingEnabled;
+    private volatile TimeSource timeSource;
+    private volatile Duration syncInterval;
+    private volatile ResourceGovernor resourceGovernor;
+    private volatile int keySnapshotSpacing;
+    private volatile Duration minSnapshotSpacing;
+    private volatile RecordingDurability recordingDurability;
+    private volatile Duration stallDeadline;
+    private volatile int maxRestarts;
+    private volatile boolean running;
+    private volatile DestinationOperationException sessionStartFailure;
+
+    /**
+     * @param sessionId null when the session has the process to itself
+     * @param workspaces empty when the source code is not tracked
+     */
+    public TrackingSession(String sessionId,
+                           String localStorageFolder,
+                           List<Workspace> workspaces,
+                           long minimumRequiredDiskspaceInGB,
+                           DestinationFactory destinationFactory,
+                           EventServerFactory eventServerFactory,
+                           UploadScheduler uploadScheduler) {
+        this.sessionId = sessionId;
+        this.localStorageFolder = localStorageFolder;
+        this.workspaces = workspaces;
+        this.minimumRequiredDiskspaceInGB = minimumRequiredDiskspaceInGB;
+        this.destinationFactory = destinationFactory;
+        this.eventServerFactory = eventServerFactory;
+        this.uploadScheduler = uploadScheduler;
+        this.serviceThreadsToStop = new CopyOnWriteArrayList<>();
+        this.timeSource = new SystemMonotonicTimeSource();
+        this.syncInterval = DEFAULT_SYNC_INTERVAL;
+        this.resourceGovernor = ResourceGovernor.unlimited();
+        this.keySnapshotSpacing = DEFAULT_KEY_SNAPSHOT_SPACING;
+        this.minSnapshotSpacing = DEFAULT_MIN_SNAPSHOT_SPACING;
+        this.recordingDurability = RecordingDurability.none();
+        this.stallDeadline = HealthCheckTask.DEFAULT_STALL_DEADLINE;
+        this.maxRestarts = HealthCheckTask.DEFAULT_MAX_RESTARTS;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public String getLocalStorageFolder() {
+        return localStorageFolder;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void run() throws Exception {
+        running = true;
+        if (sessionId != null) {
+            // Every thread started from here on logs into this session's file
+            SessionLogContext.enter(sessionId);
+        }
+        StartupTimings startupTimings = new StartupTimings();
+        CompletableFuture<RemoteDestination> destinationInit = null;
+        ContinuousProfiler continuousProfiler = null;
+        DiskPressureMonitorTask diskPressureMonitorTask = null;
+        try {
+            // Prepare source folder
+            createMissingParentDirectories(localStorageFolder);
+            recoverInterruptedRecordings(localStorageFolder);
+            removeOldLocks(localStorageFolder);
+            LocalFileLogging localFileLogging = new LocalFileLogging(localStorageFolder, sessionId);
+            localFileLogging.start();
+            if (profilingEnabled) {
+                continuousProfiler = new ContinuousProfiler(Paths.get(localStorageFolder));
+                continuousProfiler.start();
+                continuousProfiler.scheduleRotationEvery(Duration.of(5, ChronoUnit.MINUTES));
+            }
+            startupTimings.phaseEnded("store and logging");
+
+            // Keep an eye on the volume holding the store
+            diskPressureMonitorTask = new DiskPressureMonitorTask(
+                    Paths.get(localStorageFolder), minimumRequiredDiskspaceInGB);
+
+            // The S3 client and the event server are slow to build, they come up while the recording starts
+            destinationInit = initInBackground("S3 client", destinationFactory::create, startupTimings);
+            ProgressEventStream progressEventStream = new ProgressEventStream();
+            StatusBoard statusBoard = new StatusBoard();
+            CompletableFuture<ExternalEventServerThread> eventServerInit = initInBackground("event server",
+                    () -> eventServerFactory.create(statusBoard, progressEventStream), startupTimings);
+
+            // Timestamp
+            String timestamp = LocalDateTime.now().format(fileTimestampFormatter);
+
+            // Journal the external events, so they survive a busy or failing recorder
+            EventJournal eventJournal = new EventJournal(Paths.get(
+                    localStorageFolder,
+                    String.format("events_%s.journal", timestamp)
+            ));
+
+            // Source code recording, one recorder per workspace
+            Map<String, MonitoredBackgroundTask> sourceCodeRecordingTasks = new LinkedHashMap<>();
+            if (workspaces.isEmpty()) {
+                sourceCodeRecordingTasks.put(null, new NoOpSourceCodeThread());
+            } else {
+                boolean isSingleWorkspace = workspaces.size() == 1;
+                int currentKeySnapshotSpacing = diskPressureMonitorTask.getCurrentLevel()
+                        .keySnapshotSpacing(keySnapshotSpacing);
+                for (Workspace workspace : workspaces) {
+                    log.info("Tracking workspace {}", workspace);
+                    SupervisedRecordingTask sourceCodeRecordingTask = new SupervisedRecordingTask(restarts -> {
+                        // A restarted recorder starts a file of its own
+                        String fileTimestamp = restarts == 0 ? timestamp
+                                : LocalDateTime.now().format(fileTimestampFormatter) + "_" + restarts;
+                        Path sourceCodeRecordingFile = Paths.get(
+                                localStorageFolder,
+                                isSingleWorkspace ? String.format("sourcecode_%s.srcs", fileTimestamp)
+                                        : String.format("sourcecode_%s_%s.srcs", workspace.getName(), fileTimestamp)
+                        );
+                        return new SourceCodeRecordingThread(
+                                isSingleWorkspace ? "SourceTrk" : "SourceTrk-" + workspace.getName(),
+                                isSingleWorkspace ? "sourcecode" : "sourcecode." + workspace.getName(),
+                                workspace.getSourceCodeFolder(), sourceCodeRecordingFile,
+                                currentKeySnapshotSpacing, timeSource, minSnapshotSpacing, resourceGovernor,
+                                recordingDurability, progressEventStream);
+                    });
+                    sourceCodeRecordingTasks.put(workspace.getName(), sourceCodeRecordingTask);
+                }
+            }
+            startupTimings.phaseEnded("recorders prepared");
+
+            // Start processing
+            runAllTasks(localFileLogging,
+                    continuousProfiler,
+                    destinationInit,
+                    eventServerInit,
+                    startupTimings,
+                    diskPressureMonitorTask,
+                    statusBoard,
+                    progressEventStream,
+                    eventJournal,
+                    Paths.get(localStorageFolder, String.format("metrics_%s%s", timestamp, MetricsFile.EXTENSION)),
+                    sourceCodeRecordingTasks
+            );
+
+            // Stop the additional file logging
+            localFileLogging.stop();
+
+            // The stop marker went up with the final upload
+            if (sessionStartFailure != null) {
+                throw sessionStartFailure;
+            }
+        } finally {
+            if (continuousProfiler != null) {
+                // Already stopped before the final upload, unless the session failed
+                continuousProfiler.stop();
+            }
+            if (diskPressureMonitorTask != null) {
+                diskPressureMonitorTask.cancel();
+            }
+            if (destinationInit != null) {
+                closeWhenReady(destinationInit);
+            }
+            if (sessionId != null) {
+                SessionLogContext.leave();
+            }
+            running = false;
+        }
+    }
+
+    /**
+     * The clock of the recorders, a virtual one lets a test go through hours of recording in minutes
+     */
+    public void useTimeSource(TimeSource timeSource) {
+        this.timeSource = timeSource;
+    }
+
+    public void useSyncInterval(Duration syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    /**
+     * Captures between two key snapshots. The captures in between only store what changed since the previous one,
+     * the key snapshots store every file in full.
+     */
+    public void useKeySnapshotSpacing(int keySnapshotSpacing) {
+        this.keySnapshotSpacing = keySnapshotSpacing;
+    }
+
+    /**
+     * The snapshots requested through the API are taken at least this far apart, and from the scheduled ones
+     */
+    public void useMinSnapshotSpacing(Duration minSnapshotSpacing) {
+        this.minSnapshotSpacing = minSnapshotSpacing;
+    }
+
+    /**
+     * How hard the recordings are pushed to the disk, the caller starts and stops it
+     */
+    public void useRecordingDurability(RecordingDurability recordingDurability) {
+        this.recordingDurability = recordingDurability;
+    }
+
+    /**
+     * A recorder or an upload making no progress for longer than the stall deadline is restarted,
+     * up to maxRestarts times within half an hour before the whole session is stopped
+     */
+    public void useSupervision(Duration stallDeadline, int maxRestarts) {
+        this.stallDeadline = stallDeadline;
+        this.maxRestarts = maxRestarts;
+    }
+
+    /**
+     * Keep the captures within the CPU and disk budgets, the governor is shared with the uploads
+     */
+    public void useResourceGovernor(ResourceGovernor resourceGovernor) {
+        this.resourceGovernor = resourceGovernor;
+    }
+
+    /**
+     * Keep a flight recording of the session, saved to the store in chunks and uploaded with the rest
+     */
+    public void enableProfiling() {
+        profilingEnabled = true;
+    }
+
+    /**
+     * Go through the whole start-up, then stop straight away, like for a class data sharing training run
+     */
+    public void stopAfterStartup() {
+        stopAfterStartup = true;
+    }
+
+    /**
+     * Ask the recorders to stop, the session then uploads what is left and returns from run
+     */
+    public void signalStop() throws Exception {
+        stopRequested = true;
+        for (Stoppable stoppable : serviceThreadsToStop) {
+            stoppable.signalStop();
+        }
+        HealthCheckTask currentHealthCheckTask = healthCheckTask;
+        if (currentHealthCheckTask != null) {
+            currentHealthCheckTask.cancel();
+        }
+    }
+
+    // ~~~~~ The main execution logic
+
+    private void runAllTasks(LocalFileLogging localFileLogging,
+                             ContinuousProfiler continuousProfiler,
+                             CompletableFuture<RemoteDestination> destinationInit,
+                             CompletableFuture<ExternalEventServerThread> eventServerInit,
+                             StartupTimings startupTimings,
+                             DiskPressureMonitorTask diskPressureMonitorTask,
+                             StatusBoard statusBoard,
+                             ProgressEventStream progressEventStream,
+                             EventJournal eventJournal,
+                             Path metricsFile,
+                             Map<String, MonitoredBackgroundTask> sourceCodeRecordingTasks) throws Exception {
+        List<MonitoredSubject> monitoredSubjects = new ArrayList<>();
+        ExternalEventDispatcher notifyDispatcher = ExternalEventDispatcher.journaled("notifyDispatch",
+                eventJournal, LISTENER_TIMEOUT);
+        ExternalEventDispatcher stopDispatcher = ExternalEventDispatcher.inMemory("stopDispatch",
+                LISTENER_TIMEOUT);
+        monitoredSubjects.add(notifyDispatcher);
+        monitoredSubjects.add(stopDispatcher);
+
+        // A workspace stopped on its own is no longer checked, the session ends with the last one
+        healthCheckTask = new HealthCheckTask(serviceThreadsToStop, stallDeadline, maxRestarts);
+        HealthCheckTask currentHealthCheckTask = healthCheckTask;
+        ExternalEventServerThread externalEventServerThread = null;
+        BackgroundRemoteSyncTask remoteSyncTask = null;
+        MetricsReportingTask metricsReportingTask = null;
+        MetricsRecorder metricsRecorder = null;
+        try {
+            // Start background tasks first, the capture does not wait for the rest of the start-up.
+            // Tags and stops are routed by workspace
+            for (Map.Entry<String, MonitoredBackgroundTask> workspaceTask : sourceCodeRecordingTasks.entrySet()) {
+                MonitoredBackgroundTask monitoredBackgroundTask = workspaceTask.getValue();
+                monitoredBackgroundTask.start();
+                serviceThreadsToStop.add(monitoredBackgroundTask);
+                monitoredSubjects.add(monitoredBackgroundTask);
+                notifyDispatcher.addListener(monitoredBackgroundTask.getStatusKey(), workspaceTask.getKey(),
+                        monitoredBackgroundTask);
+                stopDispatcher.addListener(monitoredBackgroundTask.getStatusKey(), workspaceTask.getKey(),
+                        eventPayload -> {
+                            currentHealthCheckTask.release(monitoredBackgroundTask);
+                            monitoredBackgroundTask.signalStop();
+                        });
+            }
+            startupTimings.phaseEnded("recorders started");
+
+            // The events reach the dispatchers once the server is up
+            externalEventServerThread = awaitInit(eventServerInit);
+            externalEventServerThread.addNotifyListener(notifyDispatcher);
+            externalEventServerThread.addStopListener(stopDispatcher);
+            if (!workspaces.isEmpty()) {
+                externalEventServerThread.useSnapshotListener(snapshotRequestListenerFor(sourceCodeRecordingTasks));
+            }
+
+            // The permissions are validated while the rest of the start-up goes on
+            RemoteDestination remoteDestination = awaitInit(destinationInit);
+            log.info("Start S3 Sync session");
+            CompletableFuture<Void> sessionStart = remoteDestination.startS3SyncSession();
+
+            // Start sync folder, the uploads share the scheduler with the other sessions
+            remoteSyncTask = new BackgroundRemoteSyncTask(
+                    sessionId != null ? sessionId : LOCAL_SESSION_KEY, localStorageFolder, remoteDestination,
+                    uploadScheduler, progressEventStream);
+            remoteSyncTask.scheduleSyncEvery(syncInterval);
+            monitoredSubjects.add(remoteSyncTask.getUploadProgress());
+            monitoredSubjects.add(remoteSyncTask.getStatus());
+            monitoredSubjects.add(remoteSyncTask.getCircuitBreaker());
+            monitoredSubjects.add(uploadScheduler);
+            monitoredSubjects.add(resourceGovernor);
+
+            // Start the disk pressure monitoring, uploads get priority when space runs low
+            diskPressureMonitorTask.addListener(remoteSyncTask);
+            diskPressureMonitorTask.scheduleCheckEvery(Duration.of(10, ChronoUnit.SECONDS));
+            monitoredSubjects.add(diskPressureMonitorTask);
+            monitoredSubjects.add(progressEventStream);
+
+            // Keep the numbers of the whole session in the store, for the analysis across sessions
+            metricsRecorder = new MetricsRecorder(metricsFile);
+            metricsRecorder.scheduleSaveEvery(Duration.of(5, ChronoUnit.MINUTES));
+
+            // Start the metrics reporting, every tick is also a sample of the recorder
+            metricsReportingTask = new MetricsReportingTask(monitoredSubjects, statusBoard,
+                    progressEventStream);
+            metricsReportingTask.useStatusSampler(metricsRecorder);
+            metricsReportingTask.scheduleReportMetricsEvery(MetricsRecorder.SAMPLE_INTERVAL);
+
+            // Start the health check thread
+            for (MonitoredBackgroundTask sourceCodeRecordingTask : sourceCodeRecordingTasks.values()) {
+                if (sourceCodeRecordingTask instanceof Restartable) {
+                    healthCheckTask.supervise((Restartable) sourceCodeRecordingTask);
+                }
+            }
+            healthCheckTask.supervise(remoteSyncTask);
+            healthCheckTask.scheduleHealthCheckEvery(Duration.of(3, ChronoUnit.SECONDS));
+
+            // Start the event server, notifications go through the journal
+            externalEventServerThread.start();
+            startupTimings.completed();
+
+            // A destination that refuses the start marker will refuse the uploads, stop recording early
+            sessionStart.whenComplete((ignored, failure) -> {
+                if (failure != null) {
+                    stopOnRefusedStart(failure);
+                }
+            });
+
+            // Wait for the stop signal and trigger a graceful shutdown
+            if (stopRequested || stopAfterStartup) {
+                signalStop();
+            }
+            for (Stoppable stoppable : serviceThreadsToStop) {
+                stoppable.join();
+            }
+            healthCheckTask.cancel();
+
+            // If all are joined, signal the event thread to stop
+            externalEventServerThread.signalStop();
+
+            // Deliver what is left in the journal and close it before the last upload
+            notifyDispatcher.signalStop();
+            notifyDispatcher.join();
+            eventJournal.close();
+            stopDispatcher.signalStop();
+            stopDispatcher.join();
+
+            // Finalise the upload
+            localFileLogging.forceRotation(); // <-- to close the current log file and get it to upload cleanly
+            if (continuousProfiler != null) {
+                continuousProfiler.stop();
+            }
+            metricsRecorder.stop();
+            if (sessionStartFailure == null) {
+                remoteSyncTask.finalRun();
+            } else {
+                log.warn("Skipping the final upload, the destination refused the session");
+            }
+        } catch (Exception e) {
+            // The recorders may already be running, stop them before reporting the failure
+            signalStop();
+            for (Stoppable stoppable : serviceThreadsToStop) {
+                stoppable.join();
+            }
+            throw e;
+        } finally {
+            // Cancel the tasks, whichever of them got started
+            currentHealthCheckTask.cancel();
+            if (remoteSyncTask != null) {
+                remoteSyncTask.cancel();
+            }
+            if (metricsReportingTask != null) {
+                metricsReportingTask.cancel();
+            }
+            if (metricsRecorder != null) {
+                // Already stopped before the final upload, unless the session failed
+                metricsRecorder.stop();
+            }
+            if (externalEventServerThread == null) {
+                externalEventServerThread = eventServerInit.exceptionally(failure -> null).join();
+            }
+            if (externalEventServerThread != null) {
+                externalEventServerThread.signalStop();
+                externalEventServerThread.join();
+            }
+        }
+        log.warn("~~~~~~ Stopped ~~~~~~");
+    }
+
+    /**
+     * Snapshots are routed by workspace like the tags, a request for no workspace in particular goes to all of them
+     */
+    private static SnapshotRequestListener snapshotRequestListenerFor(
+            Map<String, MonitoredBackgroundTask> sourceCodeRecordingTasks) {
+        return new SnapshotRequestListener() {
+            @Override
+            public boolean isTracked(String workspace) {
+                return !recordersOf(workspace).isEmpty();
+            }
+
+            @Override
+            public CompletableFuture<List<String>> onSnapshotRequest(String workspace) {
+                List<CompletableFuture<String>> snapshotRequests = new ArrayList<>();
+                for (SupervisedRecordingTask recorder : recordersOf(workspace)) {
+                    snapshotRequests.add(recorder.requestSnapshot());
+                }
+                if (snapshotRequests.isEmpty()) {
+                    throw new IllegalArgumentException("Unknown workspace: " + workspace);
+                }
+                return CompletableFuture.allOf(snapshotRequests.toArray(new CompletableFuture[0]))
+                        .thenApply(ignored -> snapshotRequests.stream().map(CompletableFuture::join).toList());
+            }
+
+            private List<SupervisedRecordingTask> recordersOf(String workspace) {
+                List<SupervisedRecordingTask> recorders = new ArrayList<>();
+                for (Map.Entry<String, MonitoredBackgroundTask> workspaceTask : sourceCodeRecordingTasks.entrySet()) {
+                    if ((workspace == null || workspace.equals(workspaceTask.getKey()))
+                            && workspaceTask.getValue() instanceof SupervisedRecordingTask recorder) {
+                        recorders.add(recorder);
+                    }
+                }
+                return recorders;
+            }
+        };
+    }
+
+    private interface Initialiser<T> {
+        T create() throws Exception;
+    }
+
+    private static <T> CompletableFuture<T> initInBackground(String phase, Initialiser<T> initialiser,
+                                                             StartupTimings startupTimings) {
+        CompletableFuture<T> init = new CompletableFuture<>();
+        Thread.ofPlatform().name("Init-" + phase.replace(' ', '-')).daemon(true).start(() -> {
+            long phaseStartNanos = System.nanoTime();
+            try {
+                init.complete(initialiser.create());
+                startupTimings.parallelPhaseEnded(phase, phaseStartNanos);
+            } catch (Exception e) {
+                init.completeExceptionally(e);
+            }
+        });
+        return init;
+    }
+
+    private <T> T awaitInit(CompletableFuture<T> init) throws Exception {
+        try {
+            return init.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * The start-up may have failed before the destination was ready, it is closed all the same
+     */
+    private static void closeWhenReady(CompletableFuture<RemoteDestination> destinationInit) {
+        try {
+            destinationInit.join().close();
+        } catch (CompletionException e) {
+            // Never ready, nothing to close
+        }
+    }
+
+    private void stopOnRefusedStart(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        sessionStartFailure = cause instanceof DestinationOperationException
+                ? (DestinationOperationException) cause
+                : new DestinationOperationException("Failed to start the S3 Sync session", cause);
+        try {
+            signalStop();
+        } catch (Exception e) {
+            log.error("Failed to stop the session", e);
+        }
+    }
+
+    // ~~~~~ Helpers
+
+    private static void createMissingParentDirectories(String storageFolder) throws IOException {
+        File folder = new File(storageFolder);
+        if (folder.exists()) {
+            return;
+        }
+
+        boolean folderCreated = folder.mkdirs();
+        if(!folderCreated) {
+            throw new IOException("Failed to created storage folder");
+        }
+    }
+
+    /**
+     * A recording still holding its index lock was cut short, bring it back to its last whole snapshot
+     */
+    private static void recoverInterruptedRecordings(String localStorageFolder) {
+        try (Stream<Path> paths = Files.walk(Paths.get(localStorageFolder))) {
+            List<Path> indexLocks = paths
+                    .filter(path -> path.getFileName().toString().endsWith(".srcs" + RecordingIndex.LOCK_SUFFIX))
+                    .toList();
+            for (Path indexLock : indexLocks) {
+                String lockName = indexLock.getFileName().toString();
+                Path recording = indexLock.resolveSibling(
+                        lockName.substring(0, lockName.length() - RecordingIndex.LOCK_SUFFIX.length()));
+                if (!Files.exists(recording) || !Files.exists(RecordingIndex.indexFileFor(recording))) {
+                    continue;
+                }
+                try {
+                    long bytesCut = RecordingIndex.recover(recording);
+                    log.warn("Recovered interrupted recording {}, {} bytes past the last whole snapshot removed",
+                            recording.getFileName(), bytesCut);
+                } catch (IOException e) {
+                    log.error("Failed to recover {}. Reason: {}", recording.getFileName(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to look for interrupted recordings", e);
+        }
+    }
+
+    private static void removeOldLocks(String localStorageFolder) {
+        Path rootPath = Paths.get(localStorageFolder);
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            Files.walk(rootPath)
+                    .filter(path -> path.getFileName().toString().endsWith(".lock"))
+                    .map(Path::toFile)
+                    .forEach(File::delete);
+        } catch (IOException e) {
+            log.error("Failed to clean old locks", e);
+        }
+    }
+}
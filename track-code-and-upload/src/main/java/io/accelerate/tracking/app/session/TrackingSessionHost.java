@@ -0,0 +1,373 @@
+package io.accelerate.tracking.app.session;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.accelerate.tracking.app.events.ExternalEventServerThread;
+import io.accelerate.tracking.app.sourcecode.RecordingDurability;
+import io.accelerate.tracking.app.status.Json;
+import io.accelerate.tracking.app.tasks.HealthCheckTask;
+import io.accelerate.tracking.app.tasks.ResourceGovernor;
+import io.accelerate.tracking.app.tasks.Stoppable;
+import io.accelerate.tracking.app.upload.NoOpDestination;
+import io.accelerate.tracking.app.upload.RemoteDestination;
+import io.accelerate.tracking.app.upload.S3BucketDestination;
+import io.accelerate.tracking.app.upload.S3ClientFactory;
+import io.accelerate.tracking.app.upload.S3Settings;
+import io.accelerate.tracking.app.upload.UploadScheduler;
+import io.accelerate.tracking.app.util.DiskSpaceUtil;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs many tracking sessions in one process, added and removed over HTTP:
+ * <ul>
+ *     <li>GET /sessions lists the sessions</li>
+ *     <li>POST /sessions starts a session, see {@link SessionSpec} for the body</li>
+ *     <li>DELETE /sessions/&lt;id&gt; stops a session, it uploads what is left before going away</li>
+ *     <li>POST /shutdown stops all the sessions, then the daemon</li>
+ * </ul>
+ * Each session serves its own status, events, notify and stop endpoints under /sessions/&lt;id&gt;.
+ * Every request must carry the control token, see {@link ControlTokenAuthenticator},
+ * and the stores of the sessions must be under the store root, the sessions delete and truncate files in them.
+ * The sessions using the same S3 account share one client from the factory, and its connection pool.
+ * All the sessions queue their uploads on one scheduler, no new session is taken while its backlog is over the limit.
+ * They also share one resource governor, the budgets are for the whole daemon,
+ * and one recording durability, a group commit covers the recordings of all the sessions.
+ */
+public class TrackingSessionHost implements Stoppable {
+    private static final Logger log = getLogger(TrackingSessionHost.class);
+    private static final String SESSIONS_PATH = "/sessions";
+    private static final String CONTROL_TOKEN_FILE = "daemon.token";
+    private static final int STOP_DELAY_SECONDS = 1;
+
+    private final HttpServer controlServer;
+    private final ControlTokenAuthenticator authenticator;
+    private final Path storeRoot;
+    private final ExecutorService handlerExecutor;
+    private final Map<String, HostedSession> sessions;
+    private final S3ClientFactory s3ClientFactory;
+    private final UploadScheduler uploadScheduler;
+    private final ResourceGovernor resourceGovernor;
+    private final RecordingDurability recordingDurability;
+    private final CountDownLatch stopped;
+    private volatile Duration minSnapshotSpacing;
+    private volatile Duration stallDeadline;
+    private volatile int maxRestarts;
+    private volatile boolean running;
+
+    public TrackingSessionHost(String listeningHost, int listeningPort,
+                               String controlToken, Path storeRoot,
+                               S3ClientFactory s3ClientFactory,
+                               ResourceGovernor resourceGovernor,
+                               RecordingDurability recordingDurability) throws IOException {
+        authenticator = new ControlTokenAuthenticator(controlToken);
+        Files.createDirectories(storeRoot);
+        this.storeRoot = storeRoot.toRealPath();
+        controlServer = HttpServer.create(new InetSocketAddress(listeningHost, listeningPort), 0);
+        handlerExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Control-", 0).factory());
+        controlServer.setExecutor(handlerExecutor);
+        sessions = new ConcurrentHashMap<>();
+        this.s3ClientFactory = s3ClientFactory;
+        uploadScheduler = UploadScheduler.withDefaults();
+        uploadScheduler.useResourceGovernor(resourceGovernor);
+        this.resourceGovernor = resourceGovernor;
+        this.recordingDurability = recordingDurability;
+        minSnapshotSpacing = TrackingSession.DEFAULT_MIN_SNAPSHOT_SPACING;
+        stallDeadline = HealthCheckTask.DEFAULT_STALL_DEADLINE;
+        maxRestarts = HealthCheckTask.DEFAULT_MAX_RESTARTS;
+        stopped = new CountDownLatch(1);
+
+        controlServer.createContext(SESSIONS_PATH, new SessionsHandler()).setAuthenticator(authenticator);
+        controlServer.createContext("/shutdown", new ShutdownHandler()).setAuthenticator(authenticator);
+    }
+
+    /**
+     * Write a new control token to the store root, readable by the user only
+     */
+    public static String writeNewControlToken(Path storeRoot) throws IOException {
+        Files.createDirectories(storeRoot);
+        Path tokenFile = storeRoot.resolve(CONTROL_TOKEN_FILE);
+        String controlToken = ControlTokenAuthenticator.writeNewToken(tokenFile);
+        log.info("Control token written to {}", tokenFile);
+        return controlToken;
+    }
+
+    /**
+     * How far apart the snapshots requested from the sessions started from now on are taken
+     */
+    public void useMinSnapshotSpacing(Duration minSnapshotSpacing) {
+        this.minSnapshotSpacing = minSnapshotSpacing;
+    }
+
+    /**
+     * How long the recorders and uploads of the sessions started from now on may stall before they are restarted
+     */
+    public void useSupervision(Duration stallDeadline, int maxRestarts) {
+        this.stallDeadline = stallDeadline;
+        this.maxRestarts = maxRestarts;
+    }
+
+    public void start() {
+        controlServer.start();
+        running = true;
+        log.info("Daemon listening on {}", controlServer.getAddress());
+    }
+
+    // ~~~~~ The sessions
+
+    public void startSession(SessionSpec sessionSpec) {
+        if (!running) {
+            throw new IllegalStateException("The daemon is stopping");
+        }
+        if (uploadScheduler.isOverBacklogLimit()) {
+            throw new IllegalStateException("The upload backlog is over the limit, try again later");
+        }
+        String sessionId = sessionSpec.getSessionId();
+        if (!isUnderStoreRoot(Paths.get(sessionSpec.getLocalStorageFolder()))) {
+            throw new IllegalArgumentException("The store must be under " + storeRoot);
+        }
+        for (HostedSession hostedSession : sessions.values()) {
+            if (hostedSession.trackingSession.getLocalStorageFolder().equals(sessionSpec.getLocalStorageFolder())) {
+                throw new IllegalArgumentException("Store already used by session " + hostedSession.trackingSession.getSessionId());
+            }
+        }
+        if (!DiskSpaceUtil.hasEnoughFreeDiskspace(Paths.get(sessionSpec.getLocalStorageFolder()),
+                sessionSpec.getMinimumRequiredDiskspaceInGB())) {
+            throw new IllegalArgumentException("Not enough disk space for the store of session " + sessionId);
+        }
+
+        TrackingSession trackingSession = new TrackingSession(sessionId,
+                sessionSpec.getLocalStorageFolder(),
+                sessionSpec.getWorkspaces(),
+                sessionSpec.getMinimumRequiredDiskspaceInGB(),
+                () -> createRemoteDestination(sessionSpec),
+                (statusBoard, progressEventStream) -> ExternalEventServerThread.mountedOn(
+                        controlServer, SESSIONS_PATH + "/" + sessionId, sessionId, authenticator,
+                        statusBoard, progressEventStream),
+                uploadScheduler
+        );
+        trackingSession.useResourceGovernor(resourceGovernor);
+        trackingSession.useRecordingDurability(recordingDurability);
+        trackingSession.useSupervision(stallDeadline, maxRestarts);
+        trackingSession.useKeySnapshotSpacing(sessionSpec.getKeySnapshotSpacing());
+        trackingSession.useMinSnapshotSpacing(minSnapshotSpacing);
+        Thread sessionThread = Thread.ofPlatform().name("Session-" + sessionId).unstarted(() -> {
+            try {
+                trackingSession.run();
+            } catch (Exception e) {
+                log.error("Session {} failed. Reason: {}", sessionId, e.getMessage(), e);
+            } finally {
+                sessions.remove(sessionId);
+                log.info("Session {} removed", sessionId);
+            }
+        });
+
+        if (sessions.putIfAbsent(sessionId, new HostedSession(trackingSession, sessionThread)) != null) {
+            throw new IllegalArgumentException("Session already exists: " + sessionId);
+        }
+        log.info("Starting session {} in {}", sessionId, sessionSpec.getLocalStorageFolder());
+        sessionThread.start();
+    }
+
+    public void stopSession(String sessionId) throws Exception {
+        HostedSession hostedSession = sessions.get(sessionId);
+        if (hostedSession == null) {
+            throw new IllegalArgumentException("Unknown session: " + sessionId);
+        }
+        log.info("Stopping session {}", sessionId);
+        hostedSession.trackingSession.signalStop();
+    }
+
+    /**
+     * Follows the links of the part of the path that exists, so a link under the root cannot lead out of it
+     */
+    private boolean isUnderStoreRoot(Path store) {
+        Path existingPart = store.toAbsolutePath().normalize();
+        Path missingPart = existingPart.getFileSystem().getPath("");
+        while (existingPart != null && !Files.exists(existingPart)) {
+            missingPart = existingPart.getFileName().resolve(missingPart);
+            existingPart = existingPart.getParent();
+        }
+        if (existingPart == null) {
+            return false;
+        }
+        Path realStore;
+        try {
+            realStore = existingPart.toRealPath().resolve(missingPart).normalize();
+        } catch (IOException e) {
+            return false;
+        }
+        return realStore.startsWith(storeRoot) && !realStore.equals(storeRoot);
+    }
+
+    private RemoteDestination createRemoteDestination(SessionSpec sessionSpec) throws Exception {
+        if ("none".equals(sessionSpec.getConfigFile())) {
+            return new NoOpDestination();
+        }
+
+        S3Settings s3Settings = S3Settings.fromPlainTextFile(Paths.get(sessionSpec.getConfigFile()));
+        return S3BucketDestination.sharingClient(s3ClientFactory.clientFor(s3Settings),
+                s3Settings.getS3Bucket(),
+                s3Settings.getS3Prefix() + sessionSpec.getDestinationPrefix());
+    }
+
+    // ~~~~~ Stoppable
+
+    @Override
+    public boolean isAlive() {
+        return running;
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stop every session and wait for their last upload before closing the shared clients
+     */
+    @Override
+    public void signalStop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        log.warn("Stopping all sessions - please wait for the uploads to complete");
+
+        // A stop request can arrive through the control server itself, so stop from outside the handler threads
+        Thread.ofPlatform().name("DaemonStop").start(() -> {
+            try {
+                List<HostedSession> hostedSessions = new ArrayList<>(sessions.values());
+                for (HostedSession hostedSession : hostedSessions) {
+                    try {
+                        hostedSession.trackingSession.signalStop();
+                    } catch (Exception e) {
+                        log.error("Error sending the stop signal to session {}",
+                                hostedSession.trackingSession.getSessionId(), e);
+                    }
+                }
+                for (HostedSession hostedSession : hostedSessions) {
+                    hostedSession.thread.join();
+                }
+                uploadScheduler.shutdown();
+            } catch (InterruptedException e) {
+                log.error("Interrupted while waiting for the sessions to stop", e);
+            } finally {
+                controlServer.stop(STOP_DELAY_SECONDS);
+                handlerExecutor.shutdown();
+                s3ClientFactory.close();
+                stopped.countDown();
+            }
+        });
+    }
+
+    private static final class HostedSession {
+        private final TrackingSession trackingSession;
+        private final Thread thread;
+
+        HostedSession(TrackingSession trackingSession, Thread thread) {
+            this.trackingSession = trackingSession;
+            this.thread = thread;
+        }
+    }
+
+    //~~~~~~~~~ The commands that are being handled
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", body.startsWith("{") ? "application/json" : "text/plain");
+        // A length of 0 would send the response chunked
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    private String listSessions() {
+        StringBuilder buffer = new StringBuilder("{\"sessions\":[");
+        boolean first = true;
+        for (HostedSession hostedSession : sessions.values()) {
+            if (!first) {
+                buffer.append(',');
+            }
+            first = false;
+            TrackingSession trackingSession = hostedSession.trackingSession;
+            buffer.append("{\"id\":").append(Json.quote(trackingSession.getSessionId()))
+                    .append(",\"store\":").append(Json.quote(trackingSession.getLocalStorageFolder()))
+                    .append(",\"running\":").append(trackingSession.isRunning())
+                    .append('}');
+        }
+        return buffer.append("]}").toString();
+    }
+
+    private class SessionsHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            String sessionId = path.length() > SESSIONS_PATH.length() + 1
+                    ? path.substring(SESSIONS_PATH.length() + 1) : null;
+            String method = exchange.getRequestMethod();
+
+            try {
+                if (sessionId == null && "GET".equals(method)) {
+                    respond(exchange, HttpURLConnection.HTTP_OK, listSessions());
+                } else if (sessionId == null && "POST".equals(method)) {
+                    String body;
+                    try (InputStream requestBody = exchange.getRequestBody()) {
+                        body = new String(requestBody.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                    SessionSpec sessionSpec = SessionSpec.fromProperties(body);
+                    startSession(sessionSpec);
+                    respond(exchange, HttpURLConnection.HTTP_CREATED, sessionSpec.getSessionId() + "\n");
+                } else if (sessionId != null && !sessionId.contains("/") && "DELETE".equals(method)) {
+                    stopSession(sessionId);
+                    respond(exchange, HttpURLConnection.HTTP_ACCEPTED, sessionId + "\n");
+                } else if (sessionId != null && !sessions.containsKey(sessionId.split("/")[0])) {
+                    respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, "Unknown session\n");
+                } else {
+                    respond(exchange, HttpURLConnection.HTTP_BAD_METHOD, "");
+                }
+            } catch (IllegalArgumentException e) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_REQUEST, e.getMessage() + "\n");
+            } catch (IllegalStateException e) {
+                respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, e.getMessage() + "\n");
+            } catch (Exception e) {
+                respond(exchange, HttpURLConnection.HTTP_INTERNAL_ERROR, e.getMessage() + "\n");
+            }
+        }
+    }
+
+    private class ShutdownHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, HttpURLConnection.HTTP_BAD_METHOD, "");
+                return;
+            }
+            signalStop();
+            respond(exchange, HttpURLConnection.HTTP_ACCEPTED, "ACK\n");
+        }
+    }
+}
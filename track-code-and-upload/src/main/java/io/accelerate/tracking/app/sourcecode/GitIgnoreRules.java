@@ -0,0 +1,145 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The ignore patterns of a git working tree, from the .gitignore at its top and the info/exclude of the repository,
+ * read again when either changes. See gitignore for the format.
+ * <p>
+ * They keep the walk of the untracked files out of the build output and the dependencies. When in doubt a path
+ * counts as not ignored, it is then only walked for nothing: the .gitignore files of the sub folders are not read,
+ * and a pattern Java cannot match is skipped.
+ */
+class GitIgnoreRules {
+    private final List<Path> ruleFiles;
+    private final List<List<Object>> ruleFileStats;
+    private List<Rule> rules;
+
+    private static class Rule {
+        private final PathMatcher matcher;
+        private final PathMatcher matcherAtAnyDepth;
+        private final boolean matchesName;
+        private final boolean directoryOnly;
+        private final boolean negated;
+
+        Rule(PathMatcher matcher, PathMatcher matcherAtAnyDepth, boolean matchesName,
+             boolean directoryOnly, boolean negated) {
+            this.matcher = matcher;
+            this.matcherAtAnyDepth = matcherAtAnyDepth;
+            this.matchesName = matchesName;
+            this.directoryOnly = directoryOnly;
+            this.negated = negated;
+        }
+
+        boolean matches(Path relativePath, boolean isDirectory) {
+            if (directoryOnly && !isDirectory) {
+                return false;
+            }
+            Path candidate = matchesName ? relativePath.getFileName() : relativePath;
+            return matcher.matches(candidate) || (matcherAtAnyDepth != null && matcherAtAnyDepth.matches(candidate));
+        }
+    }
+
+    GitIgnoreRules(Path workTree, Path commonDir) {
+        this.ruleFiles = List.of(commonDir.resolve("info").resolve("exclude"), workTree.resolve(".gitignore"));
+        this.ruleFileStats = new ArrayList<>();
+        this.rules = List.of();
+    }
+
+    /**
+     * @param relativePath from the top of the working tree
+     */
+    synchronized boolean isIgnored(Path relativePath, boolean isDirectory) {
+        // The last pattern that matches decides, a negated one brings the path back
+        boolean ignored = false;
+        for (Rule rule : rules) {
+            if (rule.matches(relativePath, isDirectory)) {
+                ignored = !rule.negated;
+            }
+        }
+        return ignored;
+    }
+
+    synchronized void refreshIfChanged() throws IOException {
+        List<List<Object>> currentStats = new ArrayList<>();
+        for (Path ruleFile : ruleFiles) {
+            currentStats.add(statOf(ruleFile));
+        }
+        if (currentStats.equals(ruleFileStats)) {
+            return;
+        }
+        List<Rule> parsedRules = new ArrayList<>();
+        for (Path ruleFile : ruleFiles) {
+            if (Files.isRegularFile(ruleFile)) {
+                for (String line : Files.readAllLines(ruleFile)) {
+                    Rule rule = parse(line);
+                    if (rule != null) {
+                        parsedRules.add(rule);
+                    }
+                }
+            }
+        }
+        rules = parsedRules;
+        ruleFileStats.clear();
+        ruleFileStats.addAll(currentStats);
+    }
+
+    // ~~~~ Helpers
+
+    private static Rule parse(String line) {
+        String pattern = line.stripTrailing();
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return null;
+        }
+        boolean negated = pattern.startsWith("!");
+        if (negated) {
+            pattern = pattern.substring(1);
+        } else if (pattern.startsWith("\\#") || pattern.startsWith("\\!")) {
+            pattern = pattern.substring(1);
+        }
+        boolean directoryOnly = pattern.endsWith("/");
+        if (directoryOnly) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        // A pattern with a slash left is relative to the top, one without matches a name at any depth
+        boolean matchesName = !pattern.contains("/");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return null;
+        }
+        // Braces are plain characters to git, they group alternatives in a Java glob
+        String glob = pattern.replace("{", "\\{").replace("}", "\\}");
+        try {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            // A leading **/ also matches at the top, where the Java glob wants a slash
+            PathMatcher matcherAtAnyDepth = glob.startsWith("**/")
+                    ? FileSystems.getDefault().getPathMatcher("glob:" + glob.substring(3)) : null;
+            return new Rule(matcher, matcherAtAnyDepth, matchesName, directoryOnly, negated);
+        } catch (PatternSyntaxException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return empty when there is no such file
+     */
+    private static List<Object> statOf(Path path) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return List.of(attributes.lastModifiedTime(), attributes.size());
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+    }
+}
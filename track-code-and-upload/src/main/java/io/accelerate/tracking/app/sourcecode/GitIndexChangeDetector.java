@@ -0,0 +1,331 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Tells whether a git working tree changed, from the stat data git keeps in .git/index.
+ * <p>
+ * Each tracked file is compared with its index entry, a clean file adds nothing to the signature,
+ * a modified or deleted one adds its path and stat. The folders holding tracked files add their modification time,
+ * which moves when a file is created, deleted or renamed in them.
+ * The untracked files add their path and stat, unless {@link GitIgnoreRules} says they are ignored:
+ * the ignored trees (build output, dependencies) are never walked. No file is read.
+ * <p>
+ * Not seen: a change to an ignored file, or to a file held by an ignored folder.
+ * The index is parsed again only when it changes.
+ */
+class GitIndexChangeDetector {
+    private static final Logger log = getLogger(GitIndexChangeDetector.class);
+    private static final int SIGNATURE = 0x44495243; // DIRC
+    private static final int SHA1_BYTES = 20;
+    private static final int SHA256_BYTES = 32;
+    private static final int FLAG_EXTENDED = 0x4000;
+    private static final int NAME_LENGTH_MASK = 0x0FFF;
+    private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+    private static final int MODE_TYPE_MASK = 0170000;
+    private static final int MODE_GITLINK = 0160000;
+
+    private final Path workTree;
+    private final Path indexFile;
+    private final int objectIdBytes;
+    private final GitIgnoreRules ignoreRules;
+    private FileTime parsedIndexModified;
+    private long parsedIndexSize;
+    private List<Entry> entries;
+    private List<Path> folders;
+    private Set<Path> trackedPaths;
+
+    private static class Entry {
+        private final Path path;
+        private final long mtimeSeconds;
+        private final int mtimeNanos;
+        private final long size;
+
+        Entry(Path path, long mtimeSeconds, int mtimeNanos, long size) {
+            this.path = path;
+            this.mtimeSeconds = mtimeSeconds;
+            this.mtimeNanos = mtimeNanos;
+            this.size = size;
+        }
+    }
+
+    private GitIndexChangeDetector(Path workTree, Path gitDir, Path commonDir, int objectIdBytes) {
+        this.workTree = workTree;
+        this.indexFile = gitDir.resolve("index");
+        this.objectIdBytes = objectIdBytes;
+        this.ignoreRules = new GitIgnoreRules(workTree, commonDir);
+        this.entries = List.of();
+        this.folders = List.of();
+        this.trackedPaths = Set.of();
+    }
+
+    /**
+     * @return null when the folder is not the top of a git working tree, it is then captured on every interval
+     */
+    static GitIndexChangeDetector forFolder(Path folder) {
+        try {
+            Path gitDir = gitDirOf(folder);
+            if (gitDir == null || !Files.isRegularFile(gitDir.resolve("index"))) {
+                return null;
+            }
+            Path commonDir = commonDirOf(gitDir);
+            return new GitIndexChangeDetector(folder, gitDir, commonDir, objectIdBytesOf(commonDir));
+        } catch (IOException e) {
+            log.warn("Not using the git index of {}. Reason: {}", folder, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Changes when anything in the working tree changes, as far as the index and the folder times can tell
+     */
+    synchronized long signature() throws IOException {
+        BasicFileAttributes indexAttributes = Files.readAttributes(indexFile, BasicFileAttributes.class);
+        if (!indexAttributes.lastModifiedTime().equals(parsedIndexModified) || indexAttributes.size() != parsedIndexSize) {
+            parseIndex();
+            parsedIndexModified = indexAttributes.lastModifiedTime();
+            parsedIndexSize = indexAttributes.size();
+        }
+
+        long signature = mix(indexAttributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), indexAttributes.size());
+        for (Entry entry : entries) {
+            BasicFileAttributes attributes = statOrNull(workTree.resolve(entry.path));
+            if (attributes == null) {
+                signature = mix(signature, entry.path.hashCode());
+            } else if (!matches(entry, attributes)) {
+                signature = mix(signature, entry.path.hashCode());
+                signature = mix(signature, attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+                signature = mix(signature, attributes.size());
+            }
+        }
+        ignoreRules.refreshIfChanged();
+        long untrackedSignature = 0;
+        for (Path folder : folders) {
+            BasicFileAttributes attributes = statOrNull(workTree.resolve(folder));
+            signature = mix(signature, attributes != null ? attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) : -1);
+            if (attributes != null && attributes.isDirectory()) {
+                untrackedSignature += untrackedSignatureOf(folder);
+            }
+        }
+        return mix(signature, untrackedSignature);
+    }
+
+    /**
+     * The untracked files of a folder, in any order: the folder listing has none
+     */
+    private long untrackedSignatureOf(Path folder) throws IOException {
+        long untrackedSignature = 0;
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(workTree.resolve(folder))) {
+            for (Path child : children) {
+                Path path = folder.resolve(child.getFileName());
+                if (folder.toString().isEmpty() && child.getFileName().toString().equals(".git")) {
+                    continue;
+                }
+                BasicFileAttributes attributes = statOrNull(child);
+                if (attributes == null || trackedPaths.contains(path)
+                        || ignoreRules.isIgnored(path, attributes.isDirectory())) {
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    // The folders holding tracked files are tracked paths, they are listed on their own
+                    untrackedSignature += untrackedSignatureOf(path);
+                    continue;
+                }
+                untrackedSignature += mix(mix(path.hashCode(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)),
+                        attributes.size());
+            }
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            // Gone since it was listed
+        }
+        return untrackedSignature;
+    }
+
+    synchronized int getTrackedFileCount() {
+        return entries.size();
+    }
+
+    // ~~~~ The index, see gitformat-index
+
+    private void parseIndex() throws IOException {
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        if (index.getInt() != SIGNATURE) {
+            throw new IOException("Not a git index: " + indexFile);
+        }
+        int version = index.getInt();
+        if (version < 2 || version > 4) {
+            throw new IOException("Unsupported git index version " + version);
+        }
+        int entryCount = index.getInt();
+
+        List<Entry> parsedEntries = new ArrayList<>(entryCount);
+        Set<Path> parsedFolders = new LinkedHashSet<>();
+        parsedFolders.add(Path.of(""));
+        byte[] previousName = new byte[0];
+        for (int i = 0; i < entryCount; i++) {
+            int entryStart = index.position();
+            index.position(entryStart + 2 * Integer.BYTES);
+            long mtimeSeconds = Integer.toUnsignedLong(index.getInt());
+            int mtimeNanos = index.getInt();
+            index.position(index.position() + 2 * Integer.BYTES);
+            int mode = index.getInt();
+            index.position(index.position() + 2 * Integer.BYTES);
+            long size = Integer.toUnsignedLong(index.getInt());
+            index.position(index.position() + objectIdBytes);
+            int flags = Short.toUnsignedInt(index.getShort());
+            int extendedFlags = (flags & FLAG_EXTENDED) != 0 ? Short.toUnsignedInt(index.getShort()) : 0;
+
+            byte[] name;
+            if (version == 4) {
+                int removedBytes = (int) readOffsetVarint(index);
+                byte[] suffix = readUntilNul(index);
+                name = new byte[previousName.length - removedBytes + suffix.length];
+                System.arraycopy(previousName, 0, name, 0, previousName.length - removedBytes);
+                System.arraycopy(suffix, 0, name, previousName.length - removedBytes, suffix.length);
+            } else {
+                int nameLength = flags & NAME_LENGTH_MASK;
+                if (nameLength < NAME_LENGTH_MASK) {
+                    name = new byte[nameLength];
+                    index.get(name);
+                } else {
+                    // Too long for the flags, the name ends at its NUL
+                    name = readUntilNul(index);
+                    index.position(index.position() - 1);
+                }
+                // One to eight NULs, up to a multiple of eight bytes
+                int entryLength = index.position() - entryStart;
+                index.position(entryStart + ((entryLength + 8) & ~7));
+            }
+            previousName = name;
+
+            boolean isSubmodule = (mode & MODE_TYPE_MASK) == MODE_GITLINK;
+            boolean isOutsideSparseCheckout = (extendedFlags & EXTENDED_FLAG_SKIP_WORKTREE) != 0;
+            if (isSubmodule || isOutsideSparseCheckout) {
+                continue;
+            }
+            Path path = Path.of(new String(name, StandardCharsets.UTF_8));
+            parsedEntries.add(new Entry(path, mtimeSeconds, mtimeNanos, size));
+            for (Path folder = path.getParent(); folder != null; folder = folder.getParent()) {
+                if (!parsedFolders.add(folder)) {
+                    break;
+                }
+            }
+        }
+        entries = parsedEntries;
+        folders = new ArrayList<>(parsedFolders);
+        Set<Path> parsedTrackedPaths = new HashSet<>(parsedFolders);
+        for (Entry entry : parsedEntries) {
+            parsedTrackedPaths.add(entry.path);
+        }
+        trackedPaths = parsedTrackedPaths;
+        log.debug("Parsed the git index of {}, {} tracked files in {} folders", workTree, entries.size(), folders.size());
+    }
+
+    private static boolean matches(Entry entry, BasicFileAttributes attributes) {
+        // The index holds the low 32 bits of the size, and no nanoseconds when git is built without them
+        if ((attributes.size() & 0xFFFFFFFFL) != entry.size) {
+            return false;
+        }
+        long modifiedNanos = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        long modifiedSeconds = Math.floorDiv(modifiedNanos, TimeUnit.SECONDS.toNanos(1));
+        if ((modifiedSeconds & 0xFFFFFFFFL) != entry.mtimeSeconds) {
+            return false;
+        }
+        return entry.mtimeNanos == 0
+                || Math.floorMod(modifiedNanos, TimeUnit.SECONDS.toNanos(1)) == entry.mtimeNanos;
+    }
+
+    private static long readOffsetVarint(ByteBuffer buffer) {
+        int next = Byte.toUnsignedInt(buffer.get());
+        long value = next & 0x7F;
+        while ((next & 0x80) != 0) {
+            next = Byte.toUnsignedInt(buffer.get());
+            value = ((value + 1) << 7) | (next & 0x7F);
+        }
+        return value;
+    }
+
+    private static byte[] readUntilNul(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = start;
+        while (buffer.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        buffer.get();
+        return bytes;
+    }
+
+    // ~~~~ Helpers
+
+    private static Path gitDirOf(Path folder) throws IOException {
+        Path dotGit = folder.resolve(".git");
+        if (Files.isDirectory(dotGit)) {
+            return dotGit;
+        }
+        if (Files.isRegularFile(dotGit)) {
+            // Linked worktrees and submodules point to their git dir
+            String content = Files.readString(dotGit).trim();
+            if (content.startsWith("gitdir:")) {
+                return folder.resolve(content.substring("gitdir:".length()).trim()).normalize();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A linked worktree has a git dir of its own, the config and the objects are in the common dir
+     */
+    private static Path commonDirOf(Path gitDir) throws IOException {
+        Path commonDirFile = gitDir.resolve("commondir");
+        if (Files.isRegularFile(commonDirFile)) {
+            return gitDir.resolve(Files.readString(commonDirFile).trim()).normalize();
+        }
+        return gitDir;
+    }
+
+    private static int objectIdBytesOf(Path commonDir) throws IOException {
+        Path config = commonDir.resolve("config");
+        if (Files.isRegularFile(config)) {
+            for (String line : Files.readAllLines(config)) {
+                String setting = line.replace(" ", "").replace("\t", "").toLowerCase();
+                if (setting.equals("objectformat=sha256")) {
+                    return SHA256_BYTES;
+                }
+            }
+        }
+        return SHA1_BYTES;
+    }
+
+    private static BasicFileAttributes statOrNull(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static long mix(long signature, long value) {
+        return 31 * signature + value;
+    }
+}
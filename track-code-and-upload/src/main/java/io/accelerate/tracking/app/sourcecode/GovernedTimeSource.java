@@ -0,0 +1,45 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.app.tasks.ResourceGovernor;
+import io.accelerate.tracking.code.time.TimeSource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The clock of a recorder, holding the next capture back until the resource governor lets it through.
+ * The recorder wakes up once per capture, so the CPU of the last capture is charged right before the next one.
+ */
+class GovernedTimeSource implements TimeSource {
+    private final TimeSource timeSource;
+    private final ResourceGovernor resourceGovernor;
+    private volatile boolean released;
+
+    GovernedTimeSource(TimeSource timeSource, ResourceGovernor resourceGovernor) {
+        this.timeSource = timeSource;
+        this.resourceGovernor = resourceGovernor;
+        this.released = false;
+    }
+
+    @Override
+    public long currentTimeNano() {
+        return timeSource.currentTimeNano();
+    }
+
+    @Override
+    public void wakeUpAt(long timeMark, TimeUnit timeUnit) throws InterruptedException {
+        timeSource.wakeUpAt(timeMark, timeUnit);
+        resourceGovernor.deferWhileBusy(this::isReleased);
+        resourceGovernor.pace(this::isReleased);
+    }
+
+    /**
+     * Stop holding the captures back, the last one goes through without waiting
+     */
+    void release() {
+        released = true;
+    }
+
+    private boolean isReleased() {
+        return released;
+    }
+}
@@ -0,0 +1,35 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.app.tasks.Heartbeat;
+import io.accelerate.tracking.code.time.TimeSource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The clock of a recorder, marking the captures on a {@link Heartbeat}.
+ * Whatever the recorder does between two waits is one capture, the wait itself is not.
+ */
+class HeartbeatTimeSource implements TimeSource {
+    private final TimeSource timeSource;
+    private final Heartbeat heartbeat;
+
+    HeartbeatTimeSource(TimeSource timeSource, Heartbeat heartbeat) {
+        this.timeSource = timeSource;
+        this.heartbeat = heartbeat;
+    }
+
+    @Override
+    public long currentTimeNano() {
+        return timeSource.currentTimeNano();
+    }
+
+    @Override
+    public void wakeUpAt(long timeMark, TimeUnit timeUnit) throws InterruptedException {
+        heartbeat.stepEnded();
+        try {
+            timeSource.wakeUpAt(timeMark, timeUnit);
+        } finally {
+            heartbeat.stepStarted();
+        }
+    }
+}
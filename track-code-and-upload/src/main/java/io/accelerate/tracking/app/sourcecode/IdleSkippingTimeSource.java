@@ -0,0 +1,80 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.code.time.TimeSource;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The clock of a recorder tracking a git working tree, it lets the recorder sleep through the intervals
+ * where the {@link GitIndexChangeDetector} sees no change, so an idle repo is not copied every time.
+ * A capture still goes through every maxSkippedCaptures intervals, for what the detector cannot see,
+ * and whenever one was requested.
+ */
+class IdleSkippingTimeSource implements TimeSource {
+    private static final Logger log = getLogger(IdleSkippingTimeSource.class);
+
+    private final OnDemandTimeSource timeSource;
+    private final GitIndexChangeDetector changeDetector;
+    private final long snapshotIntervalNanos;
+    private final int maxSkippedCaptures;
+    private final AtomicLong skippedCaptures;
+    private volatile boolean released;
+
+    IdleSkippingTimeSource(OnDemandTimeSource timeSource, GitIndexChangeDetector changeDetector,
+                           Duration snapshotInterval, int maxSkippedCaptures) {
+        this.timeSource = timeSource;
+        this.changeDetector = changeDetector;
+        this.snapshotIntervalNanos = snapshotInterval.toNanos();
+        this.maxSkippedCaptures = maxSkippedCaptures;
+        this.skippedCaptures = new AtomicLong();
+        this.released = false;
+    }
+
+    @Override
+    public long currentTimeNano() {
+        return timeSource.currentTimeNano();
+    }
+
+    @Override
+    public void wakeUpAt(long timeMark, TimeUnit timeUnit) throws InterruptedException {
+        // The recorder just took a snapshot, that is the state to compare with
+        Long lastCapturedSignature = signatureOrNull();
+        long nextMarkNanos = timeUnit.toNanos(timeMark);
+        for (int skipped = 0; ; skipped++) {
+            timeSource.wakeUpAt(nextMarkNanos, TimeUnit.NANOSECONDS);
+            if (released || timeSource.isServingRequest() || skipped >= maxSkippedCaptures
+                    || lastCapturedSignature == null || !lastCapturedSignature.equals(signatureOrNull())) {
+                return;
+            }
+            skippedCaptures.incrementAndGet();
+            nextMarkNanos = Math.max(nextMarkNanos, currentTimeNano()) + snapshotIntervalNanos;
+        }
+    }
+
+    /**
+     * Stop holding the captures back, the recorder is on its way out
+     */
+    void release() {
+        released = true;
+    }
+
+    long getSkippedCaptures() {
+        return skippedCaptures.get();
+    }
+
+    private Long signatureOrNull() {
+        try {
+            return changeDetector.signature();
+        } catch (IOException | RuntimeException e) {
+            // Capture as usual, the detector can be back at the next interval
+            log.debug("Could not check the git index for changes. Reason: {}", e.getMessage());
+            return null;
+        }
+    }
+}
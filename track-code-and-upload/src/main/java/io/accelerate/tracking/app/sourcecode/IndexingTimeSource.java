@@ -0,0 +1,152 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.app.events.ProgressEventStream;
+import io.accelerate.tracking.app.status.Json;
+import io.accelerate.tracking.code.time.TimeSource;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The clock of a recorder, indexing the snapshots as they go by.
+ * The recorder takes a snapshot, then sleeps until the next one, so each wake-up ends the snapshot before it:
+ * it started where the recording file ended after the previous wake-up.
+ * <p>
+ * The index is a convenience for the readers, the recording goes on without it if it cannot be written.
+ * <p>
+ * A snapshot taken on request is handed its number once indexed, that is once the recorder is done with it.
+ * Its record is committed right away rather than at the next group commit, the number is only handed out
+ * once the index on the disk has it. The progress subscribers hear of each snapshot at the same point.
+ */
+class IndexingTimeSource implements TimeSource {
+    private static final Logger log = getLogger(IndexingTimeSource.class);
+
+    private final TimeSource timeSource;
+    private final String statusKey;
+    private final ProgressEventStream progressEventStream;
+    private final OnDemandTimeSource onDemandTimeSource;
+    private final Path recordingFile;
+    private final int keySnapshotSpacing;
+    private final RecordingDurability recordingDurability;
+    private RecordingIndexWriter recordingIndexWriter;
+    private long recordingStartNanos;
+    private long snapshotStartNanos;
+    private long snapshotStartEpochMillis;
+    private long snapshotStartOffset;
+    private int snapshotNumber;
+    private CompletableFuture<Integer> snapshotRequest;
+
+    IndexingTimeSource(TimeSource timeSource, String statusKey, ProgressEventStream progressEventStream,
+                       OnDemandTimeSource onDemandTimeSource, Path recordingFile,
+                       int keySnapshotSpacing, RecordingDurability recordingDurability) {
+        this.timeSource = timeSource;
+        this.statusKey = statusKey;
+        this.progressEventStream = progressEventStream;
+        this.onDemandTimeSource = onDemandTimeSource;
+        this.recordingFile = recordingFile;
+        this.keySnapshotSpacing = keySnapshotSpacing;
+        this.recordingDurability = recordingDurability;
+    }
+
+    @Override
+    public long currentTimeNano() {
+        return timeSource.currentTimeNano();
+    }
+
+    @Override
+    public void wakeUpAt(long timeMark, TimeUnit timeUnit) throws InterruptedException {
+        indexSnapshotTaken();
+        timeSource.wakeUpAt(timeMark, timeUnit);
+        snapshotStarting(sizeOfRecording());
+    }
+
+    synchronized void recordingStarting() {
+        try {
+            recordingIndexWriter = new RecordingIndexWriter(recordingFile, keySnapshotSpacing, recordingDurability);
+        } catch (IOException e) {
+            log.warn("Recording {} without an index. Reason: {}", recordingFile.getFileName(), e.getMessage());
+        }
+        recordingStartNanos = currentTimeNano();
+        snapshotNumber = -1;
+        snapshotStarting(0);
+    }
+
+    synchronized void tagged(String payload) {
+        if (recordingIndexWriter == null) {
+            return;
+        }
+        try {
+            recordingIndexWriter.tagged(currentTimeNano() - recordingStartNanos, payload);
+        } catch (IOException e) {
+            log.warn("Failed to index a tag. Reason: {}", e.getMessage());
+        }
+    }
+
+    synchronized void recordingEnded() {
+        if (recordingIndexWriter != null) {
+            // The recorder may take a last snapshot on its way out
+            if (sizeOfRecording() > snapshotStartOffset) {
+                indexSnapshotTaken();
+            }
+            recordingIndexWriter.close();
+        }
+        if (snapshotRequest != null) {
+            snapshotRequest.completeExceptionally(new IllegalStateException("The recording ended before the snapshot"));
+            snapshotRequest = null;
+        }
+        onDemandTimeSource.recordingEnded();
+    }
+
+    private synchronized void snapshotStarting(long offset) {
+        snapshotStartNanos = currentTimeNano();
+        snapshotStartEpochMillis = System.currentTimeMillis();
+        snapshotStartOffset = offset;
+        snapshotNumber++;
+        snapshotRequest = onDemandTimeSource.takeServedRequest();
+    }
+
+    private synchronized void indexSnapshotTaken() {
+        long snapshotEndOffset = sizeOfRecording();
+        long snapshotDurationNanos = currentTimeNano() - snapshotStartNanos;
+        IOException indexFailure = null;
+        if (recordingIndexWriter != null) {
+            try {
+                recordingIndexWriter.snapshotTaken(snapshotStartNanos - recordingStartNanos, snapshotStartEpochMillis,
+                        snapshotStartOffset, snapshotEndOffset);
+                if (snapshotRequest != null) {
+                    recordingIndexWriter.commit();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to index a snapshot. Reason: {}", e.getMessage());
+                indexFailure = e;
+            }
+        }
+        progressEventStream.publish("snapshotTaken", String.format(
+                "{\"source\":%s,\"snapshot\":%d,\"totalCaptures\":%d,\"bytes\":%d,\"durationMillis\":%d}",
+                Json.quote(statusKey), snapshotNumber, snapshotNumber + 1,
+                Math.max(0, snapshotEndOffset - snapshotStartOffset),
+                TimeUnit.NANOSECONDS.toMillis(snapshotDurationNanos)));
+        if (snapshotRequest != null) {
+            if (indexFailure != null) {
+                snapshotRequest.completeExceptionally(indexFailure);
+            } else {
+                snapshotRequest.complete(snapshotNumber);
+            }
+            snapshotRequest = null;
+        }
+    }
+
+    private long sizeOfRecording() {
+        try {
+            return Files.size(recordingFile);
+        } catch (IOException e) {
+            return snapshotStartOffset;
+        }
+    }
+}
@@ -5,7 +5,7 @@ import io.accelerate.tracking.app.util.NoOpThread;
 public class NoOpSourceCodeThread extends NoOpThread {
 
     public NoOpSourceCodeThread() {
-        super((tick, event) -> String.format("frame no. %2d, source code tracking disabled (%s)", tick, event));
+        super("sourcecode", (tick, event) -> String.format("frame no. %2d, source code tracking disabled (%s)", tick, event));
     }
 
 
@@ -0,0 +1,120 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.code.time.TimeSource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The clock of a recorder, waking it up before the next mark when a snapshot is requested.
+ * The requests made while the recorder sleeps share the next capture, a capture already under way may have
+ * read the files before the request, so it does not count.
+ * The captures stay at least minSpacing apart, a request arriving sooner waits for it.
+ * <p>
+ * The recorder is woken up by interrupting its wait, the interrupt never reaches the capture itself.
+ */
+class OnDemandTimeSource implements TimeSource {
+    private final TimeSource timeSource;
+    private final long minSpacingNanos;
+    private CompletableFuture<Integer> pendingRequest;
+    private CompletableFuture<Integer> servedRequest;
+    private Thread waitingThread;
+    private boolean interruptIssued;
+    private long lastWakeUpNanos;
+    private boolean ended;
+
+    OnDemandTimeSource(TimeSource timeSource, long minSpacingNanos) {
+        this.timeSource = timeSource;
+        this.minSpacingNanos = minSpacingNanos;
+        // The recording starts with a capture
+        this.lastWakeUpNanos = timeSource.currentTimeNano();
+    }
+
+    @Override
+    public long currentTimeNano() {
+        return timeSource.currentTimeNano();
+    }
+
+    @Override
+    public void wakeUpAt(long timeMark, TimeUnit timeUnit) throws InterruptedException {
+        long markNanos = timeUnit.toNanos(timeMark);
+        while (true) {
+            long targetNanos;
+            synchronized (this) {
+                long nowNanos = currentTimeNano();
+                long earliestOnDemandNanos = lastWakeUpNanos + minSpacingNanos;
+                if (nowNanos >= markNanos || (pendingRequest != null && nowNanos >= earliestOnDemandNanos)) {
+                    wokeUp(nowNanos);
+                    return;
+                }
+                targetNanos = pendingRequest != null ? Math.min(markNanos, earliestOnDemandNanos) : markNanos;
+                waitingThread = Thread.currentThread();
+            }
+            try {
+                timeSource.wakeUpAt(targetNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                synchronized (this) {
+                    if (!interruptIssued) {
+                        throw e;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    waitingThread = null;
+                    if (interruptIssued) {
+                        interruptIssued = false;
+                        //noinspection ResultOfMethodCallIgnored
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of the snapshot taken for the request, once it is in the recording
+     */
+    synchronized CompletableFuture<Integer> requestSnapshot() {
+        if (ended) {
+            return CompletableFuture.failedFuture(new IllegalStateException("The recording has ended"));
+        }
+        if (pendingRequest == null) {
+            pendingRequest = new CompletableFuture<>();
+            if (waitingThread != null && !interruptIssued) {
+                interruptIssued = true;
+                waitingThread.interrupt();
+            }
+        }
+        return pendingRequest;
+    }
+
+    /**
+     * @return true when the capture starting now was requested
+     */
+    synchronized boolean isServingRequest() {
+        return servedRequest != null;
+    }
+
+    /**
+     * Hand over the request of the capture starting now, null when it is a scheduled one
+     */
+    synchronized CompletableFuture<Integer> takeServedRequest() {
+        CompletableFuture<Integer> request = servedRequest;
+        servedRequest = null;
+        return request;
+    }
+
+    synchronized void recordingEnded() {
+        ended = true;
+        if (pendingRequest != null) {
+            pendingRequest.completeExceptionally(new IllegalStateException("The recording ended before the snapshot"));
+            pendingRequest = null;
+        }
+    }
+
+    private void wokeUp(long nowNanos) {
+        lastWakeUpNanos = nowNanos;
+        servedRequest = pendingRequest;
+        pendingRequest = null;
+    }
+}
@@ -0,0 +1,118 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * How hard the recordings are pushed to the disk:
+ * <ul>
+ *     <li>none: left to the operating system, a power loss can take the last seconds of recording</li>
+ *     <li>group-commit: every interval, one fsync per file for everything written since, at most an interval is lost</li>
+ *     <li>per-snapshot: an fsync after every snapshot, nothing indexed is lost</li>
+ * </ul>
+ * With group-commit and per-snapshot, the index only vouches for recording bytes forced to the disk before it,
+ * so after a crash the recovery can cut the recording back to the last snapshot it knows is whole.
+ * <p>
+ * One instance can be shared by all the recorders of the process, a group commit then covers them all.
+ */
+public class RecordingDurability {
+    private static final Logger log = getLogger(RecordingDurability.class);
+
+    public enum Policy {
+        NONE, GROUP_COMMIT, PER_SNAPSHOT
+    }
+
+    interface Committable {
+        void commit() throws IOException;
+    }
+
+    private final Policy policy;
+    private final Duration groupCommitInterval;
+    private final List<Committable> committables;
+    private Timer commitTimer;
+
+    private RecordingDurability(Policy policy, Duration groupCommitInterval) {
+        this.policy = policy;
+        this.groupCommitInterval = groupCommitInterval;
+        this.committables = new CopyOnWriteArrayList<>();
+    }
+
+    public static RecordingDurability none() {
+        return new RecordingDurability(Policy.NONE, Duration.ZERO);
+    }
+
+    public static RecordingDurability perSnapshot() {
+        return new RecordingDurability(Policy.PER_SNAPSHOT, Duration.ZERO);
+    }
+
+    public static RecordingDurability groupCommitEvery(Duration groupCommitInterval) {
+        if (groupCommitInterval.toMillis() < 1) {
+            throw new IllegalArgumentException("The group commit interval must be at least 1 ms");
+        }
+        return new RecordingDurability(Policy.GROUP_COMMIT, groupCommitInterval);
+    }
+
+    public static RecordingDurability parse(String policyName, Duration groupCommitInterval) {
+        return switch (policyName.trim().toLowerCase()) {
+            case "none" -> none();
+            case "group-commit" -> groupCommitEvery(groupCommitInterval);
+            case "per-snapshot" -> perSnapshot();
+            default -> throw new IllegalArgumentException("Unknown durability: " + policyName
+                    + ". Use none, group-commit or per-snapshot");
+        };
+    }
+
+    Policy getPolicy() {
+        return policy;
+    }
+
+    public synchronized void start() {
+        if (policy != Policy.GROUP_COMMIT || commitTimer != null) {
+            return;
+        }
+        commitTimer = new Timer("GroupCommit");
+        commitTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                commitAll();
+            }
+        }, groupCommitInterval.toMillis(), groupCommitInterval.toMillis());
+    }
+
+    /**
+     * Commit what is pending one last time
+     */
+    public synchronized void stop() {
+        if (commitTimer != null) {
+            commitTimer.cancel();
+            commitTimer = null;
+        }
+        commitAll();
+    }
+
+    void register(Committable committable) {
+        committables.add(committable);
+    }
+
+    void unregister(Committable committable) {
+        committables.remove(committable);
+    }
+
+    private void commitAll() {
+        for (Committable committable : committables) {
+            try {
+                committable.commit();
+            } catch (IOException e) {
+                log.error("Failed to flush a recording to disk. Reason: {}", e.getMessage());
+            }
+        }
+    }
+}
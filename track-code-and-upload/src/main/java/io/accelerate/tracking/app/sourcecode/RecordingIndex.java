@@ -0,0 +1,312 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Sidecar index of a .srcs recording, so a reader can go straight to a point in time.
+ * <p>
+ * The .srcs.idx file starts with a header (magic, version, key snapshot spacing),
+ * followed by one fixed size record per snapshot: CRC32C of the rest of the record, elapsed time since
+ * the recording started, wall clock time, start and end offsets of the snapshot in the recording,
+ * snapshot number and a reserved int. The records are in time order, so finding a time is a binary search over the file.
+ * Which snapshots are key snapshots is only known to the recorder, the reader of the recording finds them.
+ * <p>
+ * The .srcs.tags file holds the tags: length prefix, CRC32C of the rest of the record, elapsed time,
+ * number of the snapshot the tag goes with and the payload.
+ * <p>
+ * Only whole records with a matching checksum count, the torn tail a crash may leave is ignored.
+ * The index never gets ahead of what the recording holds, so it also tells where the recording is known to be whole,
+ * see {@link #recover(Path)}.
+ */
+public class RecordingIndex implements AutoCloseable {
+    static final String INDEX_SUFFIX = ".idx";
+    static final String TAGS_SUFFIX = ".tags";
+    /**
+     * Held next to the recording while it is being written, still there after a crash
+     */
+    public static final String LOCK_SUFFIX = INDEX_SUFFIX + ".lock";
+    static final long MAGIC = 0x5352435349445831L; // SRCSIDX1
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    static final int RECORD_BYTES = Integer.BYTES + 4 * Long.BYTES + 2 * Integer.BYTES;
+    static final int TAG_HEADER_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final Path recordingFile;
+    private final FileChannel indexChannel;
+    private final int keySnapshotSpacing;
+    private final int snapshotCount;
+
+    public static class Snapshot {
+        private final int number;
+        private final Duration elapsed;
+        private final long epochMillis;
+        private final long offset;
+        private final long endOffset;
+
+        Snapshot(int number, Duration elapsed, long epochMillis, long offset, long endOffset) {
+            this.number = number;
+            this.elapsed = elapsed;
+            this.epochMillis = epochMillis;
+            this.offset = offset;
+            this.endOffset = endOffset;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public long getEpochMillis() {
+            return epochMillis;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getEndOffset() {
+            return endOffset;
+        }
+    }
+
+    public static class Tag {
+        private final Duration elapsed;
+        private final int snapshotNumber;
+        private final String payload;
+
+        Tag(Duration elapsed, int snapshotNumber, String payload) {
+            this.elapsed = elapsed;
+            this.snapshotNumber = snapshotNumber;
+            this.payload = payload;
+        }
+
+        public Duration getElapsed() {
+            return elapsed;
+        }
+
+        public int getSnapshotNumber() {
+            return snapshotNumber;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+    }
+
+    private RecordingIndex(Path recordingFile, FileChannel indexChannel, int keySnapshotSpacing, int snapshotCount) {
+        this.recordingFile = recordingFile;
+        this.indexChannel = indexChannel;
+        this.keySnapshotSpacing = keySnapshotSpacing;
+        this.snapshotCount = snapshotCount;
+    }
+
+    public static RecordingIndex open(Path recordingFile) throws IOException {
+        FileChannel indexChannel = FileChannel.open(indexFileFor(recordingFile), READ);
+        try {
+            int keySnapshotSpacing = readHeader(recordingFile, indexChannel);
+            int snapshotCount = validSnapshotCount(indexChannel, Files.size(recordingFile));
+            return new RecordingIndex(recordingFile, indexChannel, keySnapshotSpacing, snapshotCount);
+        } catch (IOException | RuntimeException e) {
+            indexChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * After a crash, drop the torn tail of the index and the tags,
+     * then cut the recording back to the end of the last snapshot the index vouches for.
+     * Only the tail of the index is read, however long the recording.
+     *
+     * @return the number of bytes cut from the recording
+     */
+    public static long recover(Path recordingFile) throws IOException {
+        long recordingSize = Files.size(recordingFile);
+        long validRecordingSize;
+        try (FileChannel indexChannel = FileChannel.open(indexFileFor(recordingFile), READ, WRITE)) {
+            readHeader(recordingFile, indexChannel);
+            int snapshotCount = validSnapshotCount(indexChannel, recordingSize);
+            indexChannel.truncate(HEADER_BYTES + (long) snapshotCount * RECORD_BYTES);
+            // Without a snapshot there is no known good end, the recording is left as it is
+            validRecordingSize = snapshotCount > 0
+                    ? readSnapshot(indexChannel, snapshotCount - 1).getEndOffset() : recordingSize;
+        }
+        recoverTags(tagsFileFor(recordingFile));
+
+        if (validRecordingSize >= recordingSize) {
+            return 0;
+        }
+        try (FileChannel recordingChannel = FileChannel.open(recordingFile, WRITE)) {
+            recordingChannel.truncate(validRecordingSize);
+            recordingChannel.force(true);
+        }
+        return recordingSize - validRecordingSize;
+    }
+
+    public static Path indexFileFor(Path recordingFile) {
+        return Paths.get(recordingFile + INDEX_SUFFIX);
+    }
+
+    public static Path tagsFileFor(Path recordingFile) {
+        return Paths.get(recordingFile + TAGS_SUFFIX);
+    }
+
+    public int getKeySnapshotSpacing() {
+        return keySnapshotSpacing;
+    }
+
+    public int getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    public Snapshot snapshot(int number) throws IOException {
+        return readSnapshot(indexChannel, number);
+    }
+
+    /**
+     * The last snapshot taken at or before the given time, null if the recording starts later
+     */
+    public Snapshot snapshotAt(Duration elapsed) throws IOException {
+        int low = 0;
+        int high = snapshotCount - 1;
+        Snapshot found = null;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Snapshot snapshot = snapshot(middle);
+            if (snapshot.getElapsed().compareTo(elapsed) <= 0) {
+                found = snapshot;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return found;
+    }
+
+    public List<Tag> tags() throws IOException {
+        List<Tag> tags = new ArrayList<>();
+        Path tagsFile = tagsFileFor(recordingFile);
+        if (!Files.exists(tagsFile)) {
+            return tags;
+        }
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(tagsFile));
+        while (isValidTagAt(content)) {
+            int recordLength = content.getInt();
+            content.getInt();
+            Duration elapsed = Duration.ofNanos(content.getLong());
+            int snapshotNumber = content.getInt();
+            byte[] payload = new byte[recordLength - TAG_HEADER_BYTES];
+            content.get(payload);
+            tags.add(new Tag(elapsed, snapshotNumber, new String(payload, StandardCharsets.UTF_8)));
+        }
+        return tags;
+    }
+
+    @Override
+    public void close() throws IOException {
+        indexChannel.close();
+    }
+
+    // ~~~~ Framing
+
+    static int checksumOf(byte[] bytes, int from, int to) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, from, to - from);
+        return (int) crc.getValue();
+    }
+
+    private static int readHeader(Path recordingFile, FileChannel indexChannel) throws IOException {
+        ByteBuffer header = readFully(indexChannel, 0, HEADER_BYTES);
+        if (header.getLong() != MAGIC) {
+            throw new IOException("Not a recording index: " + indexFileFor(recordingFile));
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported recording index version " + version);
+        }
+        return header.getInt();
+    }
+
+    private static int validSnapshotCount(FileChannel indexChannel, long recordingSize) throws IOException {
+        // The records are appended, only the last ones can be torn or ahead of the recording
+        int snapshotCount = (int) ((indexChannel.size() - HEADER_BYTES) / RECORD_BYTES);
+        while (snapshotCount > 0) {
+            ByteBuffer record = readFully(indexChannel, HEADER_BYTES + (long) (snapshotCount - 1) * RECORD_BYTES,
+                    RECORD_BYTES);
+            long endOffset = record.getLong(Integer.BYTES + 3 * Long.BYTES);
+            if (isValidRecord(record) && endOffset <= recordingSize) {
+                break;
+            }
+            snapshotCount--;
+        }
+        return snapshotCount;
+    }
+
+    private static boolean isValidRecord(ByteBuffer record) {
+        return record.getInt(0) == checksumOf(record.array(), Integer.BYTES, RECORD_BYTES);
+    }
+
+    private static Snapshot readSnapshot(FileChannel indexChannel, int number) throws IOException {
+        ByteBuffer record = readFully(indexChannel, HEADER_BYTES + (long) number * RECORD_BYTES, RECORD_BYTES);
+        record.getInt();
+        Duration elapsed = Duration.ofNanos(record.getLong());
+        long epochMillis = record.getLong();
+        long offset = record.getLong();
+        long endOffset = record.getLong();
+        int recordedNumber = record.getInt();
+        return new Snapshot(recordedNumber, elapsed, epochMillis, offset, endOffset);
+    }
+
+    private static boolean isValidTagAt(ByteBuffer content) {
+        if (content.remaining() < 2 * Integer.BYTES) {
+            return false;
+        }
+        int position = content.position();
+        int recordLength = content.getInt(position);
+        if (recordLength < TAG_HEADER_BYTES || recordLength > content.remaining() - Integer.BYTES) {
+            return false;
+        }
+        return content.getInt(position + Integer.BYTES) == checksumOf(content.array(),
+                position + 2 * Integer.BYTES, position + Integer.BYTES + recordLength);
+    }
+
+    private static void recoverTags(Path tagsFile) throws IOException {
+        if (!Files.exists(tagsFile)) {
+            return;
+        }
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(tagsFile));
+        while (isValidTagAt(content)) {
+            content.position(content.position() + Integer.BYTES + content.getInt(content.position()));
+        }
+        if (content.hasRemaining()) {
+            try (FileChannel tagsChannel = FileChannel.open(tagsFile, WRITE)) {
+                tagsChannel.truncate(content.position());
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Recording index ends at " + (position + buffer.position()));
+            }
+        }
+        return buffer.flip();
+    }
+}
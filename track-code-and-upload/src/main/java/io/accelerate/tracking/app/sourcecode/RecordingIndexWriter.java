@@ -0,0 +1,216 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.app.upload.ContentChecksum;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Appends to the sidecar index of a recording as the snapshots are taken, see {@link RecordingIndex} for the format.
+ * <p>
+ * The index and the tags each hold a lock until the recording ends, so the upload keeps picking up what they gain.
+ * <p>
+ * A snapshot is indexed once the recording bytes it covers are on the disk, as far as the durability asks for it.
+ * With group-commit, the records wait in memory for the next commit: recording first, then index and tags.
+ * The checksums of the index and the tags are kept as they are written, for the upload.
+ */
+class RecordingIndexWriter implements RecordingDurability.Committable {
+    private static final Logger log = getLogger(RecordingIndexWriter.class);
+
+    private final Path recordingFile;
+    private final Path indexFile;
+    private final FileChannel indexChannel;
+    private final FileChannel tagsChannel;
+    private final ContentChecksum indexChecksum;
+    private final ContentChecksum tagsChecksum;
+    private final int keySnapshotSpacing;
+    private final RecordingDurability recordingDurability;
+    private final List<ByteBuffer> pendingRecords;
+    private final List<ByteBuffer> pendingTags;
+    private FileChannel recordingChannel;
+    private int snapshotCount;
+    private boolean closed;
+
+    RecordingIndexWriter(Path recordingFile, int keySnapshotSpacing,
+                         RecordingDurability recordingDurability) throws IOException {
+        this.recordingFile = recordingFile;
+        this.indexFile = RecordingIndex.indexFileFor(recordingFile);
+        this.keySnapshotSpacing = keySnapshotSpacing;
+        this.recordingDurability = recordingDurability;
+        this.pendingRecords = new ArrayList<>();
+        this.pendingTags = new ArrayList<>();
+        Files.write(lockFor(recordingFile), new byte[0], CREATE);
+        Files.write(tagsLockFor(recordingFile), new byte[0], CREATE);
+        this.indexChannel = FileChannel.open(indexFile, CREATE_NEW, WRITE);
+        this.tagsChannel = FileChannel.open(RecordingIndex.tagsFileFor(recordingFile), CREATE_NEW, WRITE);
+        this.indexChecksum = new ContentChecksum(indexFile);
+        this.tagsChecksum = new ContentChecksum(RecordingIndex.tagsFileFor(recordingFile));
+        this.snapshotCount = 0;
+
+        ByteBuffer header = ByteBuffer.allocate(RecordingIndex.HEADER_BYTES);
+        header.putLong(RecordingIndex.MAGIC);
+        header.putInt(RecordingIndex.VERSION);
+        header.putInt(keySnapshotSpacing);
+        append(indexChannel, indexChecksum, header.flip());
+        recordingDurability.register(this);
+    }
+
+    synchronized void snapshotTaken(long elapsedNanos, long epochMillis,
+                                    long startOffset, long endOffset) throws IOException {
+        if (closed) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RecordingIndex.RECORD_BYTES);
+        record.position(Integer.BYTES);
+        record.putLong(elapsedNanos);
+        record.putLong(epochMillis);
+        record.putLong(startOffset);
+        record.putLong(endOffset);
+        record.putInt(snapshotCount);
+        record.putInt(0);
+        record.putInt(0, RecordingIndex.checksumOf(record.array(), Integer.BYTES, RecordingIndex.RECORD_BYTES));
+        snapshotCount++;
+
+        switch (recordingDurability.getPolicy()) {
+            case NONE -> {
+                append(indexChannel, indexChecksum, record.flip());
+                indexChecksum.saveQuietly();
+            }
+            case PER_SNAPSHOT -> {
+                forceRecording();
+                append(indexChannel, indexChecksum, record.flip());
+                indexChannel.force(false);
+                indexChecksum.saveQuietly();
+            }
+            case GROUP_COMMIT -> pendingRecords.add(record.flip());
+        }
+    }
+
+    /**
+     * The tag goes with the next snapshot
+     */
+    synchronized void tagged(long elapsedNanos, String payload) throws IOException {
+        if (closed) {
+            return;
+        }
+        byte[] payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RecordingIndex.TAG_HEADER_BYTES + payloadBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + recordLength);
+        record.putInt(recordLength);
+        record.position(2 * Integer.BYTES);
+        record.putLong(elapsedNanos);
+        record.putInt(snapshotCount);
+        record.put(payloadBytes);
+        record.putInt(Integer.BYTES,
+                RecordingIndex.checksumOf(record.array(), 2 * Integer.BYTES, Integer.BYTES + recordLength));
+
+        switch (recordingDurability.getPolicy()) {
+            case NONE -> {
+                append(tagsChannel, tagsChecksum, record.flip());
+                tagsChecksum.saveQuietly();
+            }
+            case PER_SNAPSHOT -> {
+                append(tagsChannel, tagsChecksum, record.flip());
+                tagsChannel.force(false);
+                tagsChecksum.saveQuietly();
+            }
+            case GROUP_COMMIT -> pendingTags.add(record.flip());
+        }
+    }
+
+    @Override
+    public synchronized void commit() throws IOException {
+        if (pendingRecords.isEmpty() && pendingTags.isEmpty()) {
+            return;
+        }
+        // The recording goes first, the index must not get ahead of it
+        if (!pendingRecords.isEmpty()) {
+            forceRecording();
+            for (ByteBuffer record : pendingRecords) {
+                append(indexChannel, indexChecksum, record);
+            }
+            indexChannel.force(false);
+            indexChecksum.saveQuietly();
+            pendingRecords.clear();
+        }
+        if (!pendingTags.isEmpty()) {
+            for (ByteBuffer record : pendingTags) {
+                append(tagsChannel, tagsChecksum, record);
+            }
+            tagsChannel.force(false);
+            tagsChecksum.saveQuietly();
+            pendingTags.clear();
+        }
+    }
+
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        recordingDurability.unregister(this);
+
+        try {
+            commit();
+            if (recordingDurability.getPolicy() != RecordingDurability.Policy.NONE) {
+                forceRecording();
+            }
+        } catch (IOException e) {
+            log.error("Failed to flush the recording index", e);
+        }
+        indexChecksum.saveQuietly();
+        tagsChecksum.saveQuietly();
+        try {
+            indexChannel.close();
+            tagsChannel.close();
+            if (recordingChannel != null) {
+                recordingChannel.close();
+            }
+        } catch (IOException e) {
+            log.error("Failed to close the recording index", e);
+        }
+        try {
+            Files.delete(lockFor(recordingFile));
+            Files.delete(tagsLockFor(recordingFile));
+        } catch (IOException ignored) {}
+    }
+
+    private void forceRecording() throws IOException {
+        // Opened for writing, some platforms only flush through a writable handle. Nothing is written through it.
+        if (recordingChannel == null) {
+            if (!Files.exists(recordingFile)) {
+                return;
+            }
+            recordingChannel = FileChannel.open(recordingFile, WRITE);
+        }
+        recordingChannel.force(false);
+    }
+
+    private static void append(FileChannel channel, ContentChecksum checksum, ByteBuffer buffer) throws IOException {
+        checksum.update(buffer);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static Path lockFor(Path recordingFile) {
+        return Paths.get(recordingFile + RecordingIndex.LOCK_SUFFIX);
+    }
+
+    static Path tagsLockFor(Path recordingFile) {
+        return Paths.get(RecordingIndex.tagsFileFor(recordingFile) + ".lock");
+    }
+}
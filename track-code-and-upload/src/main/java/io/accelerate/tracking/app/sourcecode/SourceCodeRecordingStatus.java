@@ -1,16 +1,33 @@
 package io.accelerate.tracking.app.sourcecode;
 
+import io.accelerate.tracking.app.profiling.SnapshotCaptureEvent;
+import io.accelerate.tracking.app.status.StatusSection;
 import org.slf4j.Logger;
 import io.accelerate.tracking.code.metrics.SourceCodeRecordingMetricsCollector;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.concurrent.TimeUnit;
 
 class SourceCodeRecordingStatus  {
 
+    private final String statusKey;
     private SourceCodeRecordingMetricsCollector sourceCodeRecordingMetricsCollector;
+    private final Path sourceCodeRecordingFile;
+    private long lastSeenTotalSnapshots;
+    private long lastCaptureSeenAtMillis;
+    private long lastSeenRecordingBytes;
 
-    SourceCodeRecordingStatus(SourceCodeRecordingMetricsCollector sourceCodeRecordingMetricsCollector) {
+    SourceCodeRecordingStatus(String statusKey,
+                              SourceCodeRecordingMetricsCollector sourceCodeRecordingMetricsCollector,
+                              Path sourceCodeRecordingFile) {
+        this.statusKey = statusKey;
         this.sourceCodeRecordingMetricsCollector = sourceCodeRecordingMetricsCollector;
+        this.sourceCodeRecordingFile = sourceCodeRecordingFile;
+        this.lastSeenTotalSnapshots = 0;
+        this.lastCaptureSeenAtMillis = 0;
+        this.lastSeenRecordingBytes = 0;
     }
 
     boolean isActive() {
@@ -30,6 +47,44 @@ class SourceCodeRecordingStatus  {
         );
     }
 
+    void reportStatus(StatusSection statusSection) {
+        // The collector only counts captures, the time is taken when the metrics tick first sees a new one
+        long totalSnapshots = sourceCodeRecordingMetricsCollector.getTotalSnapshots();
+        if (totalSnapshots != lastSeenTotalSnapshots) {
+            recordSnapshotCaptureEvent(totalSnapshots - lastSeenTotalSnapshots);
+            lastSeenTotalSnapshots = totalSnapshots;
+            lastCaptureSeenAtMillis = System.currentTimeMillis();
+        }
+
+        statusSection.put("totalCaptures", totalSnapshots);
+        statusSection.put("lastCaptureAtMillis", lastCaptureSeenAtMillis);
+        statusSection.put("lastCaptureDurationMillis",
+                TimeUnit.NANOSECONDS.toMillis(sourceCodeRecordingMetricsCollector.getLastSnapshotProcessingTimeNano()));
+    }
+
+    private void recordSnapshotCaptureEvent(long newSnapshots) {
+        SnapshotCaptureEvent snapshotCaptureEvent = new SnapshotCaptureEvent();
+        if (!snapshotCaptureEvent.isEnabled()) {
+            return;
+        }
+        long recordingBytes = recordingSize();
+        snapshotCaptureEvent.source = statusKey;
+        snapshotCaptureEvent.snapshots = newSnapshots;
+        snapshotCaptureEvent.recordingBytesAdded = Math.max(0, recordingBytes - lastSeenRecordingBytes);
+        snapshotCaptureEvent.lastSnapshotProcessingTime =
+                sourceCodeRecordingMetricsCollector.getLastSnapshotProcessingTimeNano();
+        snapshotCaptureEvent.commit();
+        lastSeenRecordingBytes = recordingBytes;
+    }
+
+    private long recordingSize() {
+        try {
+            return Files.size(sourceCodeRecordingFile);
+        } catch (IOException e) {
+            return lastSeenRecordingBytes;
+        }
+    }
+
     private static String maybePlural(long value) {
         return value > 1 ? "s" : "";
     }
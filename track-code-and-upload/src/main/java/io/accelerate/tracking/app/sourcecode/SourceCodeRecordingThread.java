@@ -1,37 +1,77 @@
 package io.accelerate.tracking.app.sourcecode;
 
+import io.accelerate.tracking.app.events.ProgressEventStream;
+import io.accelerate.tracking.app.status.Json;
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.tasks.Heartbeat;
+import io.accelerate.tracking.app.tasks.ResourceGovernor;
 import org.slf4j.Logger;
 import io.accelerate.tracking.code.content.CopyFromDirectorySourceCodeProvider;
 import io.accelerate.tracking.code.metrics.SourceCodeRecordingMetricsCollector;
 import io.accelerate.tracking.code.record.SourceCodeRecorder;
-import io.accelerate.tracking.code.time.SystemMonotonicTimeSource;
+import io.accelerate.tracking.code.time.TimeSource;
 import io.accelerate.tracking.app.tasks.MonitoredBackgroundTask;
 
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.slf4j.LoggerFactory.*;
 
 public class SourceCodeRecordingThread extends Thread implements MonitoredBackgroundTask {
     private static final Duration MAX_RECORDING_DURATION = Duration.of(12, ChronoUnit.HOURS);
+    private static final Duration SNAPSHOT_INTERVAL = Duration.of(3, ChronoUnit.MINUTES);
+    // The git index does not see every change, an idle git repo is still captured every other interval
+    private static final int MAX_SKIPPED_CAPTURES = 1;
     private static final Logger log = getLogger(SourceCodeRecordingThread.class);
 
+    private final String statusKey;
+    private final Path sourceCodeRecordingFile;
+    private final OnDemandTimeSource onDemandTimeSource;
+    private final IdleSkippingTimeSource idleSkippingTimeSource;
+    private final GovernedTimeSource governedTimeSource;
+    private final IndexingTimeSource indexingTimeSource;
+    private final Heartbeat heartbeat;
     private final SourceCodeRecorder sourceCodeRecorder;
     private final SourceCodeRecordingStatus sourceCodeRecordingStatus;
-
-    public SourceCodeRecordingThread(Path sourceCodeFolder, Path sourceCodeRecordingFile) {
-        super("SourceTrk");
+    private final ProgressEventStream progressEventStream;
+    private volatile boolean failed;
+
+    public SourceCodeRecordingThread(String threadName, String statusKey,
+                                     Path sourceCodeFolder, Path sourceCodeRecordingFile, int keySnapshotSpacing,
+                                     TimeSource timeSource, Duration minSnapshotSpacing,
+                                     ResourceGovernor resourceGovernor, RecordingDurability recordingDurability,
+                                     ProgressEventStream progressEventStream) {
+        super(threadName);
+        this.statusKey = statusKey;
+        this.sourceCodeRecordingFile = sourceCodeRecordingFile;
+        this.progressEventStream = progressEventStream;
 
         SourceCodeRecordingMetricsCollector sourceCodeRecordingMetricsCollector = new SourceCodeRecordingMetricsCollector();
-        sourceCodeRecordingStatus = new SourceCodeRecordingStatus(sourceCodeRecordingMetricsCollector);
+        sourceCodeRecordingStatus = new SourceCodeRecordingStatus(statusKey, sourceCodeRecordingMetricsCollector,
+                sourceCodeRecordingFile);
         CopyFromDirectorySourceCodeProvider sourceCodeProvider = new CopyFromDirectorySourceCodeProvider(
                 sourceCodeFolder, 1);
+        onDemandTimeSource = new OnDemandTimeSource(timeSource, minSnapshotSpacing.toNanos());
+        GitIndexChangeDetector changeDetector = GitIndexChangeDetector.forFolder(sourceCodeFolder);
+        if (changeDetector != null) {
+            log.info("{} is a git working tree, an idle interval in two is not captured", sourceCodeFolder);
+            idleSkippingTimeSource = new IdleSkippingTimeSource(onDemandTimeSource, changeDetector, SNAPSHOT_INTERVAL,
+                    MAX_SKIPPED_CAPTURES);
+        } else {
+            idleSkippingTimeSource = null;
+        }
+        governedTimeSource = new GovernedTimeSource(
+                idleSkippingTimeSource != null ? idleSkippingTimeSource : onDemandTimeSource, resourceGovernor);
+        indexingTimeSource = new IndexingTimeSource(governedTimeSource, statusKey, progressEventStream,
+                onDemandTimeSource, sourceCodeRecordingFile, keySnapshotSpacing, recordingDurability);
+        heartbeat = new Heartbeat();
         sourceCodeRecorder = new SourceCodeRecorder.Builder(sourceCodeProvider, sourceCodeRecordingFile)
-                .withTimeSource(new SystemMonotonicTimeSource())
-                .withSnapshotEvery(3, TimeUnit.MINUTES)
-                .withKeySnapshotSpacing(10)
+                .withTimeSource(new HeartbeatTimeSource(indexingTimeSource, heartbeat))
+                .withSnapshotEvery((int) SNAPSHOT_INTERVAL.toMinutes(), TimeUnit.MINUTES)
+                .withKeySnapshotSpacing(keySnapshotSpacing)
                 .withRecordingListener(sourceCodeRecordingMetricsCollector)
                 .build();
     }
@@ -39,21 +79,66 @@ public class SourceCodeRecordingThread extends Thread implements MonitoredBackgr
     @Override
     public void run() {
         try {
-            sourceCodeRecorder.start(MAX_RECORDING_DURATION);
-            sourceCodeRecorder.close();
+            indexingTimeSource.recordingStarting();
+            heartbeat.stepStarted();
+            try {
+                sourceCodeRecorder.start(MAX_RECORDING_DURATION);
+                sourceCodeRecorder.close();
+            } finally {
+                heartbeat.stepEnded();
+                indexingTimeSource.recordingEnded();
+            }
+            progressEventStream.publish("fileClosed", "{\"source\":" + Json.quote(statusKey)
+                    + ",\"file\":" + Json.quote(sourceCodeRecordingFile.getFileName().toString()) + "}");
         } catch (Exception e) {
+            failed = true;
             log.error("SourceCode tracking encountered exception. Tracking has been stopped.", e);
         }
     }
 
+    /**
+     * The captures in progress, a capture going on for too long without an end means the recorder is stuck
+     */
+    public Heartbeat getHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * Capture the code as it is now, without waiting for the next scheduled snapshot
+     *
+     * @return the id of the snapshot, the recording file and the number of the snapshot in it,
+     * once the snapshot is in the recording
+     */
+    public CompletableFuture<String> requestSnapshot() {
+        String recordingName = sourceCodeRecordingFile.getFileName().toString();
+        return onDemandTimeSource.requestSnapshot()
+                .thenApply(snapshotNumber -> recordingName + "#" + snapshotNumber);
+    }
+
+    /**
+     * @return true when the recording ended on an exception rather than on a stop or the maximum duration
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
     @Override
     public void signalStop() {
+        if (idleSkippingTimeSource != null) {
+            idleSkippingTimeSource.release();
+        }
+        governedTimeSource.release();
         sourceCodeRecorder.stop();
     }
 
 
     // ~~~~ Implement the monitored interface
 
+    @Override
+    public String getStatusKey() {
+        return statusKey;
+    }
+
     @Override
     public boolean isActive() {
         return sourceCodeRecordingStatus.isActive();
@@ -69,10 +154,21 @@ public class SourceCodeRecordingThread extends Thread implements MonitoredBackgr
         sourceCodeRecordingStatus.displayMetrics(displayBuffer);
     }
 
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        sourceCodeRecordingStatus.reportStatus(statusSection);
+        if (idleSkippingTimeSource != null) {
+            statusSection.put("skippedIdleCaptures", idleSkippingTimeSource.getSkippedCaptures());
+        }
+    }
+
     // ~~~~ Implement the external events interface
 
     @Override
     public void onExternalEvent(String eventPayload) {
         sourceCodeRecorder.tagCurrentState(eventPayload);
+        indexingTimeSource.tagged(eventPayload);
+        progressEventStream.publish("tagRecorded", "{\"source\":" + Json.quote(statusKey)
+                + ",\"tag\":" + Json.quote(eventPayload) + "}");
     }
 }
@@ -0,0 +1,159 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.tasks.MonitoredBackgroundTask;
+import io.accelerate.tracking.app.tasks.Restartable;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The recorder of one workspace, replaced by a fresh one on a new recording file when it fails or gets stuck.
+ * The file of the replaced recorder keeps what it captured and is uploaded like any other.
+ */
+public class SupervisedRecordingTask implements MonitoredBackgroundTask, Restartable {
+    private static final Logger log = getLogger(SupervisedRecordingTask.class);
+    // A replaced recorder stuck in a capture closes its file once the capture ends, if ever
+    private static final Duration REPLACED_RECORDER_JOIN_TIMEOUT = Duration.ofSeconds(30);
+
+    public interface RecorderFactory {
+        /**
+         * @param restarts 0 for the first recorder of the session
+         */
+        SourceCodeRecordingThread create(int restarts);
+    }
+
+    private final RecorderFactory recorderFactory;
+    private final AtomicInteger restarts;
+    private final List<SourceCodeRecordingThread> replacedRecorders;
+    private volatile SourceCodeRecordingThread current;
+    private volatile boolean stopRequested;
+
+    public SupervisedRecordingTask(RecorderFactory recorderFactory) {
+        this.recorderFactory = recorderFactory;
+        this.restarts = new AtomicInteger();
+        this.replacedRecorders = new CopyOnWriteArrayList<>();
+        this.current = recorderFactory.create(0);
+        this.stopRequested = false;
+    }
+
+    @Override
+    public void start() {
+        current.start();
+    }
+
+    @Override
+    public boolean isAlive() {
+        return current.isAlive();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        // A restart can swap the recorder while waiting on it
+        SourceCodeRecordingThread joined;
+        do {
+            joined = current;
+            joined.join();
+        } while (joined != current);
+
+        // The files of the replaced recorders are uploaded with the rest, they should not be written to anymore
+        long deadlineNanos = System.nanoTime() + REPLACED_RECORDER_JOIN_TIMEOUT.toNanos();
+        for (SourceCodeRecordingThread replaced : replacedRecorders) {
+            long remainingMillis = Math.max(1, (deadlineNanos - System.nanoTime()) / 1_000_000);
+            replaced.join(remainingMillis);
+            if (replaced.isAlive()) {
+                log.warn("{} replaced recorder still running after {} seconds, its file may be uploaded incomplete",
+                        replaced.getName(), REPLACED_RECORDER_JOIN_TIMEOUT.toSeconds());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void signalStop() {
+        stopRequested = true;
+        current.signalStop();
+    }
+
+    /**
+     * @see SourceCodeRecordingThread#requestSnapshot()
+     */
+    public CompletableFuture<String> requestSnapshot() {
+        return current.requestSnapshot();
+    }
+
+    // ~~~~ Implement the restartable interface
+
+    @Override
+    public String checkHealth(long nowNanos, Duration stallDeadline) {
+        if (stopRequested) {
+            return null;
+        }
+        SourceCodeRecordingThread recorder = current;
+        if (recorder.hasFailed()) {
+            return "Recorder failed";
+        }
+        long stalledNanos = recorder.getHeartbeat().stalledNanos(nowNanos);
+        if (stalledNanos > stallDeadline.toNanos()) {
+            return "Capture stuck for " + Duration.ofNanos(stalledNanos).toSeconds() + " seconds";
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void restart() {
+        if (stopRequested) {
+            return;
+        }
+        SourceCodeRecordingThread previous = current;
+        previous.signalStop();
+        // Wake up a capture blocked on the disk, the recorder closes its file on the way out
+        previous.interrupt();
+        replacedRecorders.add(previous);
+
+        SourceCodeRecordingThread replacement = recorderFactory.create(restarts.incrementAndGet());
+        replacement.start();
+        current = replacement;
+        log.info("{} recording again in a new file", getStatusKey());
+    }
+
+    // ~~~~ Implement the monitored interface
+
+    @Override
+    public String getStatusKey() {
+        return current.getStatusKey();
+    }
+
+    @Override
+    public boolean isActive() {
+        return current.isActive();
+    }
+
+    @Override
+    public void displayErrors(Logger log) {
+        current.displayErrors(log);
+    }
+
+    @Override
+    public void displayMetrics(StringBuilder displayBuffer) {
+        current.displayMetrics(displayBuffer);
+    }
+
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        current.reportStatus(statusSection);
+        statusSection.put("restarts", restarts.get());
+    }
+
+    // ~~~~ Implement the external events interface
+
+    @Override
+    public void onExternalEvent(String eventPayload) {
+        current.onExternalEvent(eventPayload);
+    }
+}
@@ -0,0 +1,86 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A source code folder tracked by the session. The name routes the tags and tells the recordings apart.
+ */
+public final class Workspace {
+    private static final String NAME_SEPARATOR = "=";
+
+    private final String name;
+    private final Path sourceCodeFolder;
+
+    private Workspace(String name, Path sourceCodeFolder) {
+        this.name = name;
+        this.sourceCodeFolder = sourceCodeFolder;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Path getSourceCodeFolder() {
+        return sourceCodeFolder;
+    }
+
+    /**
+     * Accepts either {@code name=path} or a plain path, in which case the folder name is used
+     */
+    public static Workspace parse(String specification) {
+        String trimmed = specification.trim();
+        int separator = trimmed.indexOf(NAME_SEPARATOR);
+        if (separator > 0) {
+            return new Workspace(trimmed.substring(0, separator).trim(),
+                    Paths.get(trimmed.substring(separator + 1).trim()));
+        }
+
+        Path sourceCodeFolder = Paths.get(trimmed);
+        Path folderName = sourceCodeFolder.toAbsolutePath().normalize().getFileName();
+        return new Workspace(folderName != null ? folderName.toString() : "root", sourceCodeFolder);
+    }
+
+    /**
+     * One workspace per line, blank lines and lines starting with # are ignored
+     */
+    public static List<Workspace> fromConfigFile(Path configFile) throws IOException {
+        List<Workspace> workspaces = new ArrayList<>();
+        for (String line : Files.readAllLines(configFile)) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                workspaces.add(parse(trimmed));
+            }
+        }
+        return workspaces;
+    }
+
+    /**
+     * Make the names unique and safe to use in file names
+     */
+    public static List<Workspace> withUniqueNames(List<Workspace> workspaces) {
+        List<Workspace> uniqueWorkspaces = new ArrayList<>();
+        Set<String> usedNames = new HashSet<>();
+        for (Workspace workspace : workspaces) {
+            String baseName = workspace.name.replaceAll("[^A-Za-z0-9_.-]", "_");
+            String uniqueName = baseName;
+            int suffix = 2;
+            while (!usedNames.add(uniqueName)) {
+                uniqueName = baseName + "-" + suffix++;
+            }
+            uniqueWorkspaces.add(new Workspace(uniqueName, workspace.sourceCodeFolder));
+        }
+        return uniqueWorkspaces;
+    }
+
+    @Override
+    public String toString() {
+        return name + NAME_SEPARATOR + sourceCodeFolder;
+    }
+}
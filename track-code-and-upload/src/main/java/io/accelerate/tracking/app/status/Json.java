@@ -0,0 +1,34 @@
+package io.accelerate.tracking.app.status;
+
+public final class Json {
+
+    private Json() {
+    }
+
+    public static String quote(String value) {
+        StringBuilder buffer = new StringBuilder(value.length() + 2);
+        appendString(buffer, value);
+        return buffer.toString();
+    }
+
+    public static void appendString(StringBuilder buffer, String value) {
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': buffer.append("\\\""); break;
+                case '\\': buffer.append("\\\\"); break;
+                case '\n': buffer.append("\\n"); break;
+                case '\r': buffer.append("\\r"); break;
+                case '\t': buffer.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        buffer.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        buffer.append(c);
+                    }
+            }
+        }
+        buffer.append('"');
+    }
+}
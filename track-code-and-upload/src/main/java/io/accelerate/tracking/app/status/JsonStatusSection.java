@@ -0,0 +1,64 @@
+package io.accelerate.tracking.app.status;
+
+/**
+ * Writes the fields of one section as a JSON object into a shared buffer
+ */
+class JsonStatusSection implements StatusSection {
+    private final StringBuilder buffer;
+    private boolean isFirstField;
+
+    JsonStatusSection(StringBuilder buffer) {
+        this.buffer = buffer;
+        this.isFirstField = true;
+    }
+
+    void open() {
+        buffer.append('{');
+        isFirstField = true;
+    }
+
+    void close() {
+        buffer.append('}');
+    }
+
+    @Override
+    public void put(String key, boolean value) {
+        appendKey(key);
+        buffer.append(value);
+    }
+
+    @Override
+    public void put(String key, long value) {
+        appendKey(key);
+        buffer.append(value);
+    }
+
+    @Override
+    public void put(String key, double value) {
+        appendKey(key);
+        if (Double.isFinite(value)) {
+            buffer.append(value);
+        } else {
+            buffer.append("null");
+        }
+    }
+
+    @Override
+    public void put(String key, String value) {
+        appendKey(key);
+        if (value == null) {
+            buffer.append("null");
+        } else {
+            Json.appendString(buffer, value);
+        }
+    }
+
+    private void appendKey(String key) {
+        if (!isFirstField) {
+            buffer.append(',');
+        }
+        isFirstField = false;
+        Json.appendString(buffer, key);
+        buffer.append(':');
+    }
+}
@@ -0,0 +1,22 @@
+package io.accelerate.tracking.app.status;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the latest status snapshot. Written by the metrics tick, read by any number of pollers.
+ */
+public class StatusBoard {
+    private final AtomicReference<StatusSnapshot> currentSnapshot;
+
+    public StatusBoard() {
+        this.currentSnapshot = new AtomicReference<>(StatusSnapshot.initial());
+    }
+
+    public void publish(StatusSnapshot statusSnapshot) {
+        currentSnapshot.set(statusSnapshot);
+    }
+
+    public StatusSnapshot current() {
+        return currentSnapshot.get();
+    }
+}
@@ -0,0 +1,16 @@
+package io.accelerate.tracking.app.status;
+
+/**
+ * Gets the fields of the subjects as a {@link StatusSnapshot} captures them, the subjects report once for both
+ */
+public interface StatusSampler {
+
+    void sampleStarted(long takenAtMillis);
+
+    /**
+     * Where the fields of the subject go, on top of the snapshot
+     */
+    StatusSection sectionOf(String statusKey);
+
+    void sampleEnded();
+}
@@ -0,0 +1,12 @@
+package io.accelerate.tracking.app.status;
+
+public interface StatusSection {
+
+    void put(String key, boolean value);
+
+    void put(String key, long value);
+
+    void put(String key, double value);
+
+    void put(String key, String value);
+}
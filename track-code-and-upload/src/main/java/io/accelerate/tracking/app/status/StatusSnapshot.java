@@ -0,0 +1,113 @@
+package io.accelerate.tracking.app.status;
+
+import io.accelerate.tracking.app.tasks.MonitoredSubject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, pre-encoded view of all the monitored subjects at a given tick
+ */
+public final class StatusSnapshot {
+    private final int tick;
+    private final long takenAtMillis;
+    private final Map<String, String> subjectsJson;
+    private final byte[] json;
+
+    private StatusSnapshot(int tick, long takenAtMillis, Map<String, String> subjectsJson, byte[] json) {
+        this.tick = tick;
+        this.takenAtMillis = takenAtMillis;
+        this.subjectsJson = subjectsJson;
+        this.json = json;
+    }
+
+    public static StatusSnapshot initial() {
+        return new StatusSnapshot(-1, System.currentTimeMillis(), Collections.emptyMap(),
+                "{\"tick\":-1,\"subjects\":{}}\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static StatusSnapshot capture(int tick, List<MonitoredSubject> monitoredSubjects) {
+        return capture(tick, System.currentTimeMillis(), monitoredSubjects, null);
+    }
+
+    /**
+     * @param statusSampler also gets the fields, null for none
+     */
+    public static StatusSnapshot capture(int tick, long takenAtMillis, List<MonitoredSubject> monitoredSubjects,
+                                         StatusSampler statusSampler) {
+        Map<String, String> subjectsJson = new LinkedHashMap<>();
+        StringBuilder sectionBuffer = new StringBuilder(128);
+        JsonStatusSection jsonSection = new JsonStatusSection(sectionBuffer);
+        TeeStatusSection teeSection = new TeeStatusSection(jsonSection);
+        if (statusSampler != null) {
+            statusSampler.sampleStarted(takenAtMillis);
+        }
+        for (MonitoredSubject monitoredSubject : monitoredSubjects) {
+            StatusSection section = jsonSection;
+            if (statusSampler != null) {
+                teeSection.useSecond(statusSampler.sectionOf(monitoredSubject.getStatusKey()));
+                section = teeSection;
+            }
+            sectionBuffer.setLength(0);
+            jsonSection.open();
+            section.put("isActive", monitoredSubject.isActive());
+            monitoredSubject.reportStatus(section);
+            jsonSection.close();
+            subjectsJson.put(monitoredSubject.getStatusKey(), sectionBuffer.toString());
+        }
+        if (statusSampler != null) {
+            statusSampler.sampleEnded();
+        }
+
+        StringBuilder buffer = new StringBuilder(256);
+        buffer.append("{\"tick\":").append(tick)
+                .append(",\"timestampMillis\":").append(takenAtMillis)
+                .append(",\"subjects\":{");
+        boolean isFirstSubject = true;
+        for (Map.Entry<String, String> subjectJson : subjectsJson.entrySet()) {
+            if (!isFirstSubject) {
+                buffer.append(',');
+            }
+            isFirstSubject = false;
+            Json.appendString(buffer, subjectJson.getKey());
+            buffer.append(':').append(subjectJson.getValue());
+        }
+        buffer.append("}}\n");
+        return new StatusSnapshot(tick, takenAtMillis, Collections.unmodifiableMap(subjectsJson),
+                buffer.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * JSON objects of the subjects that are new or changed compared to a previous snapshot
+     */
+    public Map<String, String> changedSince(StatusSnapshot previous) {
+        Map<String, String> changedSubjects = new LinkedHashMap<>();
+        for (Map.Entry<String, String> subjectJson : subjectsJson.entrySet()) {
+            if (!subjectJson.getValue().equals(previous.subjectsJson.get(subjectJson.getKey()))) {
+                changedSubjects.put(subjectJson.getKey(), subjectJson.getValue());
+            }
+        }
+        return changedSubjects;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+
+    public int getLength() {
+        return json.length;
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(json);
+    }
+}
@@ -0,0 +1,41 @@
+package io.accelerate.tracking.app.status;
+
+/**
+ * Writes every field to two sections
+ */
+class TeeStatusSection implements StatusSection {
+    private final StatusSection first;
+    private StatusSection second;
+
+    TeeStatusSection(StatusSection first) {
+        this.first = first;
+    }
+
+    void useSecond(StatusSection second) {
+        this.second = second;
+    }
+
+    @Override
+    public void put(String key, boolean value) {
+        first.put(key, value);
+        second.put(key, value);
+    }
+
+    @Override
+    public void put(String key, long value) {
+        first.put(key, value);
+        second.put(key, value);
+    }
+
+    @Override
+    public void put(String key, double value) {
+        first.put(key, value);
+        second.put(key, value);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        first.put(key, value);
+        second.put(key, value);
+    }
+}
@@ -0,0 +1,133 @@
+package io.accelerate.tracking.app.tasks;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.util.DiskPressureLevel;
+import io.accelerate.tracking.app.util.DiskPressureListener;
+import io.accelerate.tracking.app.util.DiskSpaceUtil;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+public class DiskPressureMonitorTask implements MonitoredSubject {
+    private static final Logger log = getLogger(DiskPressureMonitorTask.class);
+    private static final long ONE_MB = 1024 * 1024;
+    private static final long ONE_GB = 1024 * ONE_MB;
+    private static final long MINIMUM_CRITICAL_THRESHOLD = 256 * ONE_MB;
+
+    interface UsableSpace {
+        long bytes() throws IOException;
+    }
+
+    private final Timer diskCheckTimer;
+    private final UsableSpace usableSpace;
+    private final long criticalThresholdBytes;
+    private final long elevatedThresholdBytes;
+    private final List<DiskPressureListener> listeners;
+    private volatile DiskPressureLevel currentLevel;
+    private volatile long lastUsableBytes;
+
+    public DiskPressureMonitorTask(Path localStorageFolder, long minimumRequiredDiskspaceInGB) throws IOException {
+        // Resolve the volume once, each sample is then a single statfs call
+        this(DiskSpaceUtil.getFileStoreFor(localStorageFolder)::getUsableSpace, minimumRequiredDiskspaceInGB);
+    }
+
+    DiskPressureMonitorTask(UsableSpace usableSpace, long minimumRequiredDiskspaceInGB) throws IOException {
+        this.diskCheckTimer = new Timer("DiskCheck");
+        this.usableSpace = usableSpace;
+        this.criticalThresholdBytes = Math.max(minimumRequiredDiskspaceInGB * ONE_GB, MINIMUM_CRITICAL_THRESHOLD);
+        this.elevatedThresholdBytes = 2 * criticalThresholdBytes;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.currentLevel = DiskPressureLevel.NORMAL;
+        sample();
+    }
+
+    public void addListener(DiskPressureListener diskPressureListener) {
+        listeners.add(diskPressureListener);
+    }
+
+    public DiskPressureLevel getCurrentLevel() {
+        return currentLevel;
+    }
+
+    public void scheduleCheckEvery(Duration delayBetweenRuns) {
+        diskCheckTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    sample();
+                } catch (Exception e) {
+                    log.error("Unexpected problem while checking disk space: {}", e.getMessage());
+                }
+            }
+        }, delayBetweenRuns.toMillis(), delayBetweenRuns.toMillis());
+    }
+
+    void sample() throws IOException {
+        lastUsableBytes = usableSpace.bytes();
+        DiskPressureLevel newLevel = levelFor(lastUsableBytes);
+        DiskPressureLevel previousLevel = currentLevel;
+        if (newLevel == previousLevel) {
+            return;
+        }
+
+        currentLevel = newLevel;
+        log.warn("Disk pressure on the store volume changed from {} to {} ({} MB free)",
+                previousLevel, newLevel, lastUsableBytes / ONE_MB);
+        for (DiskPressureListener listener : listeners) {
+            try {
+                listener.onDiskPressureChanged(previousLevel, newLevel);
+            } catch (Exception e) {
+                log.error("Disk pressure listener failed", e);
+            }
+        }
+    }
+
+    private DiskPressureLevel levelFor(long usableBytes) {
+        if (usableBytes < criticalThresholdBytes) {
+            return DiskPressureLevel.CRITICAL;
+        } else if (usableBytes < elevatedThresholdBytes) {
+            return DiskPressureLevel.ELEVATED;
+        }
+        return DiskPressureLevel.NORMAL;
+    }
+
+    public void cancel() {
+        diskCheckTimer.cancel();
+    }
+
+    // ~~~~ Implement the monitored interface
+
+    @Override
+    public String getStatusKey() {
+        return "disk";
+    }
+
+    @Override
+    public boolean isActive() {
+        return currentLevel.isUnderPressure();
+    }
+
+    @Override
+    public void displayErrors(Logger log) {
+        // Level changes are reported as they happen
+    }
+
+    @Override
+    public void displayMetrics(StringBuilder displayBuffer) {
+        displayBuffer.append(String.format("disk %s, %5d MB free", currentLevel.name().toLowerCase(), lastUsableBytes / ONE_MB));
+    }
+
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        statusSection.put("pressure", currentLevel.name());
+        statusSection.put("usableBytes", lastUsableBytes);
+    }
+}
@@ -3,31 +3,74 @@ package io.accelerate.tracking.app.tasks;
 import org.slf4j.Logger;
 
 import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
+/**
+ * Restarts a supervised component that failed or stalled, the rest of the session carries on.
+ * A component failing more than maxRestarts times within the restart window, or any other thread dying,
+ * still stops all the threads.
+ */
 public class HealthCheckTask {
     private static final Logger log = getLogger(HealthCheckTask.class);
+    public static final Duration DEFAULT_STALL_DEADLINE = Duration.of(5, ChronoUnit.MINUTES);
+    public static final int DEFAULT_MAX_RESTARTS = 3;
+    private static final Duration RESTART_WINDOW = Duration.of(30, ChronoUnit.MINUTES);
+
     private final Timer metricsTimer;
     private final List<Stoppable> serviceThreads;
+    private final List<Restartable> restartables;
+    private final Duration stallDeadline;
+    private final int maxRestarts;
+    private final Map<Restartable, Deque<Long>> restartTimes;
+    private final Set<Stoppable> released;
+    private boolean cancelled;
 
     public HealthCheckTask(List<Stoppable> recordingThreads) {
+        this(recordingThreads, DEFAULT_STALL_DEADLINE, DEFAULT_MAX_RESTARTS);
+    }
+
+    public HealthCheckTask(List<Stoppable> recordingThreads, Duration stallDeadline, int maxRestarts) {
         this.metricsTimer = new Timer("HealthCheck");
         this.serviceThreads = recordingThreads;
+        this.restartables = new CopyOnWriteArrayList<>();
+        this.stallDeadline = stallDeadline;
+        this.maxRestarts = maxRestarts;
+        this.restartTimes = new ConcurrentHashMap<>();
+        this.released = ConcurrentHashMap.newKeySet();
+    }
+
+    public void supervise(Restartable restartable) {
+        restartables.add(restartable);
+    }
+
+    /**
+     * The thread was stopped on purpose, the others carry on without it
+     */
+    public void release(Stoppable serviceThread) {
+        released.add(serviceThread);
     }
 
-    public void scheduleHealthCheckEvery(Duration delayBetweenRuns) {
+    public synchronized void scheduleHealthCheckEvery(Duration delayBetweenRuns) {
+        // The session may be stopped before the checks start
+        if (cancelled) {
+            return;
+        }
         metricsTimer.schedule(new TimerTask() {
             @Override
             public void run() {
                 try {
-                    if (!allServiceThreadsAlive()) {
-                        log.warn("One or more threads are not running correctly. Stopping all threads.");
-                        stopAllThreads();
-                    }
+                    checkHealth(System.nanoTime());
                 } catch (Exception e) {
                     log.error("Unexpected problem running health checks: {}", e.getMessage());
                 }
@@ -35,10 +78,50 @@ public class HealthCheckTask {
         }, 0, delayBetweenRuns.toMillis());
     }
 
+    void checkHealth(long nowNanos) {
+        for (Restartable restartable : restartables) {
+            String problem = restartable.checkHealth(nowNanos, stallDeadline);
+            if (problem == null) {
+                continue;
+            }
+            if (!takeRestart(restartable, nowNanos)) {
+                log.warn("{}: {}. Restarted {} times in the last {} minutes already. Stopping all threads.",
+                        restartable.getStatusKey(), problem, maxRestarts, RESTART_WINDOW.toMinutes());
+                stopAllThreads();
+                return;
+            }
+            log.warn("{}: {}. Restarting it.", restartable.getStatusKey(), problem);
+            try {
+                restartable.restart();
+            } catch (Exception e) {
+                log.error("Failed to restart {}. Stopping all threads.", restartable.getStatusKey(), e);
+                stopAllThreads();
+                return;
+            }
+        }
+
+        if (!allServiceThreadsAlive()) {
+            log.warn("One or more threads are not running correctly. Stopping all threads.");
+            stopAllThreads();
+        }
+    }
+
+    private boolean takeRestart(Restartable restartable, long nowNanos) {
+        Deque<Long> times = restartTimes.computeIfAbsent(restartable, key -> new ArrayDeque<>());
+        while (!times.isEmpty() && nowNanos - times.peekFirst() > RESTART_WINDOW.toNanos()) {
+            times.removeFirst();
+        }
+        if (times.size() >= maxRestarts) {
+            return false;
+        }
+        times.addLast(nowNanos);
+        return true;
+    }
+
     private boolean allServiceThreadsAlive() {
         boolean isHealthy = true;
         for (Stoppable serviceThread : serviceThreads) {
-            isHealthy &= serviceThread.isAlive();
+            isHealthy &= serviceThread.isAlive() || released.contains(serviceThread);
         }
         return isHealthy;
     }
@@ -53,7 +136,11 @@ public class HealthCheckTask {
         });
     }
 
-    public void cancel() {
+    public synchronized void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
         log.info("Stopping health check timer");
         metricsTimer.cancel();
     }
@@ -0,0 +1,58 @@
+package io.accelerate.tracking.app.tasks;
+
+/**
+ * Progress of a task that works in steps, like a capture or an upload run.
+ * The task is stalled when a step goes on for too long without progress, waiting between steps is not a stall.
+ */
+public class Heartbeat {
+    private long lastProgressNanos;
+    private Thread stepThread;
+    private boolean stepInterrupted;
+
+    public synchronized void stepStarted() {
+        lastProgressNanos = System.nanoTime();
+        stepThread = Thread.currentThread();
+    }
+
+    public synchronized void progressed() {
+        progressedAt(System.nanoTime());
+    }
+
+    /**
+     * @param nowNanos on the clock of {@link #stalledNanos(long)}, for a progress seen by a check
+     */
+    public synchronized void progressedAt(long nowNanos) {
+        if (stepThread != null) {
+            lastProgressNanos = nowNanos;
+        }
+    }
+
+    public synchronized void stepEnded() {
+        stepThread = null;
+        if (stepInterrupted) {
+            // The interrupt was for the step only, the thread goes on with its next one
+            stepInterrupted = false;
+            //noinspection ResultOfMethodCallIgnored
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * @return how long the current step has gone without progress, 0 between steps
+     */
+    public synchronized long stalledNanos(long nowNanos) {
+        return stepThread != null ? nowNanos - lastProgressNanos : 0;
+    }
+
+    /**
+     * Interrupt the thread running the current step, nothing happens between steps
+     */
+    public synchronized boolean interruptStep() {
+        if (stepThread == null) {
+            return false;
+        }
+        stepInterrupted = true;
+        stepThread.interrupt();
+        return true;
+    }
+}
@@ -1,9 +1,15 @@
 package io.accelerate.tracking.app.tasks;
 
+import io.accelerate.tracking.app.events.ProgressEventStream;
+import io.accelerate.tracking.app.status.Json;
+import io.accelerate.tracking.app.status.StatusBoard;
+import io.accelerate.tracking.app.status.StatusSampler;
+import io.accelerate.tracking.app.status.StatusSnapshot;
 import org.slf4j.Logger;
 
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -14,15 +20,28 @@ public class MetricsReportingTask {
     private final Timer metricsTimer;
     private final StringBuilder displayBuffer;
     private final List<MonitoredSubject> monitoredSubjects;
+    private final StatusBoard statusBoard;
+    private final ProgressEventStream progressEventStream;
+    private volatile StatusSampler statusSampler;
     private int tick;
 
-    public MetricsReportingTask(List<MonitoredSubject> monitoredSubjects) {
+    public MetricsReportingTask(List<MonitoredSubject> monitoredSubjects, StatusBoard statusBoard,
+                                ProgressEventStream progressEventStream) {
         this.metricsTimer = new Timer("Metrics");
         this.displayBuffer = new StringBuilder();
         this.monitoredSubjects = monitoredSubjects;
+        this.statusBoard = statusBoard;
+        this.progressEventStream = progressEventStream;
         this.tick = 0;
     }
 
+    /**
+     * Hand the numbers of every tick to the sampler too, the subjects report once for both
+     */
+    public void useStatusSampler(StatusSampler statusSampler) {
+        this.statusSampler = statusSampler;
+    }
+
     public void scheduleReportMetricsEvery(Duration delayBetweenRuns) {
         metricsTimer.schedule(new TimerTask() {
             @Override
@@ -30,8 +49,12 @@ public class MetricsReportingTask {
                 try {
                     displayErrors();
                     displayMetrics();
+                    publishStatus();
                 } catch (Exception e) {
                     log.error("Unexpected problem while gathering metrics: {}", e.getMessage());
+                } finally {
+                    // The log line and the status of a run carry the same tick
+                    tick++;
                 }
             }
         }, 0, delayBetweenRuns.toMillis());
@@ -46,8 +69,7 @@ public class MetricsReportingTask {
     private void displayMetrics() {
         displayBuffer.setLength(0);
         displayBuffer.append(String.format("tick %4d", tick));
-        tick ++;
-        
+
         for (MonitoredSubject monitoredSubject : monitoredSubjects) {
             if (monitoredSubject.isActive()) {
                 if (!displayBuffer.isEmpty()) {
@@ -60,6 +82,32 @@ public class MetricsReportingTask {
         log.info(displayBuffer.toString());
     }
 
+    private void publishStatus() {
+        StatusSnapshot previousSnapshot = statusBoard.current();
+        StatusSnapshot currentSnapshot = StatusSnapshot.capture(tick, System.currentTimeMillis(), monitoredSubjects,
+                statusSampler);
+        statusBoard.publish(currentSnapshot);
+
+        // Stream only the subjects that moved since the last tick
+        Map<String, String> changedSubjects = currentSnapshot.changedSince(previousSnapshot);
+        if (changedSubjects.isEmpty()) {
+            return;
+        }
+        StringBuilder delta = new StringBuilder(256);
+        delta.append("{\"tick\":").append(currentSnapshot.getTick()).append(",\"subjects\":{");
+        boolean isFirstSubject = true;
+        for (Map.Entry<String, String> changedSubject : changedSubjects.entrySet()) {
+            if (!isFirstSubject) {
+                delta.append(',');
+            }
+            isFirstSubject = false;
+            Json.appendString(delta, changedSubject.getKey());
+            delta.append(':').append(changedSubject.getValue());
+        }
+        delta.append("}}");
+        progressEventStream.publish("metrics", delta.toString());
+    }
+
     public void cancel() {
         metricsTimer.cancel();
     }
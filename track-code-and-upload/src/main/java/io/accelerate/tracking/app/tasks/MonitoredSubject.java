@@ -1,9 +1,15 @@
 package io.accelerate.tracking.app.tasks;
 
+import io.accelerate.tracking.app.status.StatusSection;
 import org.slf4j.Logger;
 
 public interface MonitoredSubject {
 
+    /**
+     * Key used for this subject in the status document
+     */
+    String getStatusKey();
+
     /**
      * Flag to indicate that the thread is actively doing work
      */
@@ -11,4 +17,9 @@ public interface MonitoredSubject {
 
     void displayErrors(Logger log);
     void displayMetrics(StringBuilder displayBuffer);
+
+    /**
+     * Machine readable version of the metrics, published on the /status endpoint
+     */
+    void reportStatus(StatusSection statusSection);
 }
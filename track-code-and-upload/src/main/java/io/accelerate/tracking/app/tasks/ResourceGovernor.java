@@ -0,0 +1,280 @@
+package io.accelerate.tracking.app.tasks;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps the capture and the uploads within a CPU and a disk read budget, so the IDE stays responsive.
+ * <p>
+ * The budgets are token buckets refilled with the wall clock. The governed threads call in between two pieces of work:
+ * the CPU they used since their last call (from the ThreadMXBean) and the bytes the process read from the disk
+ * (from /proc/self/io, when there is one) are taken out of the buckets, and the thread pauses until they are refilled.
+ * The captures are also put off while the machine is overloaded, for a bounded time.
+ * <p>
+ * Only the CPU of the governed threads is capped: the recorders, and the upload workers walking the store.
+ * The upload requests run on the I/O threads of the S3 client, their CPU is not charged to anyone,
+ * the uploads are held back by the in-flight bytes of the scheduler instead.
+ * The disk reads are those of the whole process, charged to whichever governed thread calls next.
+ * <p>
+ * One governor is shared by all the sessions of the process.
+ * The recent usage it reports is sampled by the governor over windows of its own, every session reads the same.
+ */
+public class ResourceGovernor implements MonitoredSubject {
+    private static final Logger log = getLogger(ResourceGovernor.class);
+    private static final double MAX_LOAD_PER_CPU = 1.0;
+    private static final Duration BURST = Duration.of(5, ChronoUnit.SECONDS);
+    private static final Duration MAX_PAUSE = Duration.of(30, ChronoUnit.SECONDS);
+    private static final Duration MAX_DEFERRAL = Duration.of(2, ChronoUnit.MINUTES);
+    private static final Duration WAIT_SLICE = Duration.of(1, ChronoUnit.SECONDS);
+    private static final Duration LOAD_CHECK_EVERY = Duration.of(5, ChronoUnit.SECONDS);
+    private static final Duration SHOWN_AFTER_THROTTLING = Duration.of(30, ChronoUnit.SECONDS);
+    private static final Duration USAGE_WINDOW = Duration.of(10, ChronoUnit.SECONDS);
+    private static final Path PROC_SELF_IO = Paths.get("/proc/self/io");
+    private static final long ONE_MB = 1024 * 1024;
+
+    private final double cpuBudgetCores;
+    private final long diskReadBudgetBytesPerSecond;
+    private final ThreadMXBean threadMXBean;
+    private final OperatingSystemMXBean operatingSystemMXBean;
+    private final boolean canMeasureCpu;
+    private final Map<Thread, Long> lastCpuNanosByThread;
+    private final AtomicLong throttledCount;
+    private final AtomicLong throttledNanos;
+    private final AtomicLong deferredCount;
+    private long lastRefillNanos;
+    private double cpuCreditNanos;
+    private double diskReadCreditBytes;
+    private long lastDiskReadBytes;
+
+    // Usage, for the metrics
+    private volatile long cpuUsedNanos;
+    private volatile long diskReadBytes;
+    private volatile long lastThrottledAtNanos;
+    private volatile double recentCpuShare;
+    private volatile long recentDiskReadBytesPerSecond;
+    private long usageWindowStartNanos;
+    private long usageWindowStartCpuUsedNanos;
+    private long usageWindowStartDiskReadBytes;
+
+    /**
+     * @param cpuBudgetCores share of one core, 0 for no CPU budget
+     * @param diskReadBudgetBytesPerSecond 0 for no disk read budget
+     */
+    public ResourceGovernor(double cpuBudgetCores, long diskReadBudgetBytesPerSecond) {
+        this.cpuBudgetCores = cpuBudgetCores;
+        this.diskReadBudgetBytesPerSecond = diskReadBudgetBytesPerSecond;
+        this.threadMXBean = ManagementFactory.getThreadMXBean();
+        this.operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
+        this.canMeasureCpu = threadMXBean.isCurrentThreadCpuTimeSupported();
+        this.lastCpuNanosByThread = new WeakHashMap<>();
+        this.throttledCount = new AtomicLong();
+        this.throttledNanos = new AtomicLong();
+        this.deferredCount = new AtomicLong();
+        this.lastRefillNanos = System.nanoTime();
+        this.cpuCreditNanos = cpuBudgetCores * BURST.toNanos();
+        this.diskReadCreditBytes = (double) diskReadBudgetBytesPerSecond * BURST.toSeconds();
+        this.lastDiskReadBytes = -1;
+        this.usageWindowStartNanos = lastRefillNanos;
+
+        if (cpuBudgetCores > 0 && !canMeasureCpu) {
+            log.warn("The CPU time of the threads cannot be measured on this JVM, the CPU budget is not enforced");
+        }
+    }
+
+    public static ResourceGovernor unlimited() {
+        return new ResourceGovernor(0, 0);
+    }
+
+    /**
+     * Charge the work done by this thread since its last call, then pause until the budgets allow more
+     */
+    public void pace(BooleanSupplier cancelled) throws InterruptedException {
+        if (cpuBudgetCores <= 0 && diskReadBudgetBytesPerSecond <= 0) {
+            return;
+        }
+        long cpuNanos = canMeasureCpu ? threadMXBean.getCurrentThreadCpuTime() : -1;
+        long pauseNanos = charge(System.nanoTime(), Thread.currentThread(), cpuNanos, readDiskBytes());
+        if (pauseNanos > 0) {
+            throttledCount.incrementAndGet();
+            lastThrottledAtNanos = System.nanoTime();
+            throttledNanos.addAndGet(waitFor(pauseNanos, cancelled));
+        }
+    }
+
+    /**
+     * Put off a capture while the machine is overloaded, but never for more than a couple of minutes
+     */
+    public void deferWhileBusy(BooleanSupplier cancelled) throws InterruptedException {
+        if (cpuBudgetCores <= 0) {
+            return;
+        }
+        long deferredNanos = 0;
+        while (isOverloaded() && deferredNanos < MAX_DEFERRAL.toNanos() && !cancelled.getAsBoolean()) {
+            if (deferredNanos == 0) {
+                deferredCount.incrementAndGet();
+                lastThrottledAtNanos = System.nanoTime();
+                log.debug("System load over {} per CPU, deferring the capture", MAX_LOAD_PER_CPU);
+            }
+            deferredNanos += waitFor(LOAD_CHECK_EVERY.toNanos(), cancelled);
+        }
+    }
+
+    /**
+     * Take the work out of the buckets
+     *
+     * @param cpuNanos the CPU time of the thread so far, negative if unknown
+     * @param totalDiskReadBytes the bytes read by the process so far, negative if unknown
+     * @return how long the thread should pause
+     */
+    synchronized long charge(long nowNanos, Thread thread, long cpuNanos, long totalDiskReadBytes) {
+        // Refill, a quiet period only saves up a short burst
+        long elapsedNanos = Math.max(0, nowNanos - lastRefillNanos);
+        lastRefillNanos = nowNanos;
+        cpuCreditNanos = Math.min(cpuCreditNanos + elapsedNanos * cpuBudgetCores,
+                cpuBudgetCores * BURST.toNanos());
+        diskReadCreditBytes = Math.min(diskReadCreditBytes + elapsedNanos * diskReadBudgetBytesPerSecond / 1e9,
+                (double) diskReadBudgetBytesPerSecond * BURST.toSeconds());
+
+        // The first call of a thread only sets its starting point
+        if (cpuNanos >= 0) {
+            Long lastCpuNanos = lastCpuNanosByThread.put(thread, cpuNanos);
+            if (lastCpuNanos != null) {
+                long usedNanos = Math.max(0, cpuNanos - lastCpuNanos);
+                cpuCreditNanos -= usedNanos;
+                cpuUsedNanos += usedNanos;
+            }
+        }
+        if (totalDiskReadBytes >= 0) {
+            if (lastDiskReadBytes >= 0) {
+                long readBytes = Math.max(0, totalDiskReadBytes - lastDiskReadBytes);
+                diskReadCreditBytes -= readBytes;
+                diskReadBytes += readBytes;
+            }
+            lastDiskReadBytes = totalDiskReadBytes;
+        }
+
+        double pauseNanos = 0;
+        if (cpuBudgetCores > 0 && cpuCreditNanos < 0) {
+            pauseNanos = -cpuCreditNanos / cpuBudgetCores;
+        }
+        if (diskReadBudgetBytesPerSecond > 0 && diskReadCreditBytes < 0) {
+            pauseNanos = Math.max(pauseNanos, -diskReadCreditBytes * 1e9 / diskReadBudgetBytesPerSecond);
+        }
+        sampleUsage(nowNanos);
+        return Math.min((long) pauseNanos, MAX_PAUSE.toNanos());
+    }
+
+    /**
+     * Close the usage window once it is long enough, the recent usage is that of the last closed window
+     */
+    synchronized void sampleUsage(long nowNanos) {
+        long elapsedNanos = nowNanos - usageWindowStartNanos;
+        if (elapsedNanos < USAGE_WINDOW.toNanos()) {
+            return;
+        }
+        recentCpuShare = (double) (cpuUsedNanos - usageWindowStartCpuUsedNanos) / elapsedNanos;
+        recentDiskReadBytesPerSecond = (long) ((diskReadBytes - usageWindowStartDiskReadBytes) * 1e9 / elapsedNanos);
+        usageWindowStartNanos = nowNanos;
+        usageWindowStartCpuUsedNanos = cpuUsedNanos;
+        usageWindowStartDiskReadBytes = diskReadBytes;
+    }
+
+    double getRecentCpuShare() {
+        return recentCpuShare;
+    }
+
+    // ~~~~ Helpers
+
+    private boolean isOverloaded() {
+        // Not available on every platform, negative then
+        double loadAverage = operatingSystemMXBean.getSystemLoadAverage();
+        return loadAverage >= 0
+                && loadAverage / operatingSystemMXBean.getAvailableProcessors() > MAX_LOAD_PER_CPU;
+    }
+
+    private static long waitFor(long nanos, BooleanSupplier cancelled) throws InterruptedException {
+        // In slices, a stopping recorder is not kept waiting
+        long startNanos = System.nanoTime();
+        long remainingNanos = nanos;
+        while (remainingNanos > 0 && !cancelled.getAsBoolean()) {
+            TimeUnit.NANOSECONDS.sleep(Math.min(remainingNanos, WAIT_SLICE.toNanos()));
+            remainingNanos = nanos - (System.nanoTime() - startNanos);
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    private long readDiskBytes() {
+        if (diskReadBudgetBytesPerSecond <= 0 || !Files.isReadable(PROC_SELF_IO)) {
+            return -1;
+        }
+        try {
+            for (String line : Files.readAllLines(PROC_SELF_IO)) {
+                if (line.startsWith("read_bytes:")) {
+                    return Long.parseLong(line.substring("read_bytes:".length()).trim());
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Could not read the I/O counters of the process: {}", e.getMessage());
+        }
+        return -1;
+    }
+
+    // ~~~~ Implement the monitored interface
+
+    @Override
+    public String getStatusKey() {
+        return "governor";
+    }
+
+    @Override
+    public boolean isActive() {
+        return throttledCount.get() + deferredCount.get() > 0
+                && System.nanoTime() - lastThrottledAtNanos < SHOWN_AFTER_THROTTLING.toNanos();
+    }
+
+    @Override
+    public void displayErrors(Logger log) {
+        // Throttling is expected, not an error
+    }
+
+    @Override
+    public void displayMetrics(StringBuilder displayBuffer) {
+        sampleUsage(System.nanoTime());
+        displayBuffer.append(String.format("governor cpu %3.0f%%/%3.0f%%, read %3d/%3d MB/s, throttled %d (%d s), deferred %d",
+                recentCpuShare * 100, cpuBudgetCores * 100,
+                recentDiskReadBytesPerSecond / ONE_MB, diskReadBudgetBytesPerSecond / ONE_MB,
+                throttledCount.get(), TimeUnit.NANOSECONDS.toSeconds(throttledNanos.get()), deferredCount.get()));
+    }
+
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        // A report only reads the window, however many sessions report
+        sampleUsage(System.nanoTime());
+        statusSection.put("cpuBudgetCores", cpuBudgetCores);
+        statusSection.put("diskReadBudgetBytesPerSecond", diskReadBudgetBytesPerSecond);
+        statusSection.put("recentCpuShare", recentCpuShare);
+        statusSection.put("recentDiskReadBytesPerSecond", recentDiskReadBytesPerSecond);
+        statusSection.put("cpuUsedNanos", cpuUsedNanos);
+        statusSection.put("diskReadBytes", diskReadBytes);
+        statusSection.put("throttledCount", throttledCount.get());
+        statusSection.put("throttledMillis", TimeUnit.NANOSECONDS.toMillis(throttledNanos.get()));
+        statusSection.put("deferredCount", deferredCount.get());
+    }
+}
@@ -0,0 +1,18 @@
+package io.accelerate.tracking.app.tasks;
+
+import java.time.Duration;
+
+/**
+ * A component the health check can bring back on its own when it fails or stalls, the rest of the session goes on
+ */
+public interface Restartable {
+
+    String getStatusKey();
+
+    /**
+     * @return what is wrong, null when the component is healthy or on its way out
+     */
+    String checkHealth(long nowNanos, Duration stallDeadline);
+
+    void restart() throws Exception;
+}
@@ -1,78 +1,330 @@
 package io.accelerate.tracking.app.upload;
 
+import io.accelerate.tracking.app.events.ProgressEventStream;
+import io.accelerate.tracking.app.logging.SessionLogContext;
+import io.accelerate.tracking.app.tasks.Heartbeat;
+import io.accelerate.tracking.app.tasks.Restartable;
+import io.accelerate.tracking.app.util.DiskPressureLevel;
+import io.accelerate.tracking.app.util.DiskPressureListener;
 import org.slf4j.Logger;
-import io.accelerate.tracking.sync.sync.Filters;
 import io.accelerate.tracking.sync.sync.RemoteSync;
 import io.accelerate.tracking.sync.sync.Source;
 import io.accelerate.tracking.sync.sync.progress.UploadStatsProgressListener;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import static org.slf4j.LoggerFactory.*;
 
-public class BackgroundRemoteSyncTask {
+public class BackgroundRemoteSyncTask implements DiskPressureListener, Restartable {
     private static final Logger log = getLogger(BackgroundRemoteSyncTask.class);
+    private static final Duration PROBE_CHECK_INTERVAL = Duration.of(2, ChronoUnit.SECONDS);
+    private final String sessionKey;
+    private final Path localStorageFolder;
     private final Timer syncTimer;
     private final Lock syncLock;
-    private final RemoteSync remoteSync;
+    private final UploadScheduler uploadScheduler;
+    private final RemoteDestination remoteDestination;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final Map<UploadFileClass, UploadStatsProgressListener> progressListeners;
+    private final Map<UploadFileClass, RemoteSync> remoteSyncs;
+    private final UploadHeartbeats heartbeats;
+    private final RemoteSyncStatus remoteSyncStatus;
+    private final ProgressEventStream progressEventStream;
+    private volatile List<UploadFileClass> stuckClasses;
 
-    public BackgroundRemoteSyncTask(String localStorageFolder,
+    /**
+     * Every file class of the store is synced by its own run, queued on the scheduler shared by the sessions
+     */
+    public BackgroundRemoteSyncTask(String sessionKey,
+                                    String localStorageFolder,
                                     RemoteDestination remoteDestination,
-                                    UploadStatsProgressListener uploadStatsProgressListener) {
-        Filters filters = Filters.getBuilder()
-                .include(Filters.endsWith(".mp4"))
-                .include(Filters.endsWith(".log"))
-                .include(Filters.endsWith(".srcs"))
-                .create();
-        Source localFolder = Source.getBuilder(Paths.get(localStorageFolder))
-                .setFilters(filters)
-                .create();
+                                    UploadScheduler uploadScheduler,
+                                    ProgressEventStream progressEventStream) {
+        this.sessionKey = sessionKey;
+        this.localStorageFolder = Paths.get(localStorageFolder);
+        this.uploadScheduler = uploadScheduler;
+        this.remoteDestination = remoteDestination;
+        this.retryPolicy = new RetryPolicy(4, Duration.of(1, ChronoUnit.SECONDS), Duration.of(30, ChronoUnit.SECONDS));
+        this.circuitBreaker = new CircuitBreaker(3, Duration.of(5, ChronoUnit.SECONDS), Duration.of(2, ChronoUnit.MINUTES));
 
-        remoteSync = new RemoteSync(localFolder,
-                remoteDestination.getClient(), 
-                remoteDestination.getS3Bucket(), 
-                remoteDestination.getS3Prefix());
-        remoteSync.setListener(uploadStatsProgressListener);
+        // A listener per class, so the progress of a run is told apart from the others
+        progressListeners = new EnumMap<>(UploadFileClass.class);
+        remoteSyncs = new EnumMap<>(UploadFileClass.class);
+        for (UploadFileClass uploadFileClass : UploadFileClass.values()) {
+            progressListeners.put(uploadFileClass, new UploadStatsProgressListener());
+            remoteSyncs.put(uploadFileClass, createRemoteSync(uploadFileClass));
+        }
+        heartbeats = new UploadHeartbeats(uploadFileClass -> progressListeners.get(uploadFileClass).getCurrentStats()
+                .map(stats -> stats.getUploadRatio() * stats.getTotalBytes()));
+        stuckClasses = List.of();
 
+        if (!remoteDestination.getS3Bucket().isEmpty()) {
+            ContentChecksumInterceptor.registerStore(remoteDestination.getS3Bucket(),
+                    remoteDestination.getS3Prefix(), this.localStorageFolder);
+        }
+        this.progressEventStream = progressEventStream;
+        remoteSyncStatus = new RemoteSyncStatus(this.localStorageFolder);
         syncTimer = new Timer("Upload");
         syncLock = new ReentrantLock();
     }
 
+    private RemoteSync createRemoteSync(UploadFileClass uploadFileClass) {
+        Source localFolder = Source.getBuilder(localStorageFolder)
+                .setFilters(uploadFileClass.createFilters())
+                .create();
+        RemoteSync remoteSync = new RemoteSync(localFolder,
+                remoteDestination.getClient(),
+                remoteDestination.getS3Bucket(),
+                remoteDestination.getS3Prefix());
+        remoteSync.setListener(progressListeners.get(uploadFileClass));
+        return remoteSync;
+    }
+
+    public RemoteSyncStatus getStatus() {
+        return remoteSyncStatus;
+    }
+
+    public UploadStatsProgressStatus getUploadProgress() {
+        return new UploadStatsProgressStatus(progressListeners.values());
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
     public void scheduleSyncEvery(Duration delayBetweenRuns) {
         syncTimer.schedule(new TimerTask() {
             @Override
             public void run() {
-                boolean shouldSync = syncLock.tryLock();
-                if (shouldSync) {
-                    try {
-                        log.info("Sync local files with remote");
-                        remoteSync.run();
-                    } catch (Exception e) {
-                        log.warn("Remote sync failed. Will retry later.", e);
-                    } finally {
-                        syncLock.unlock();
-                    }
-                } else {
-                    log.info("Sync already in progress. Skipping");
-                }
+                syncIfIdle();
             }
         }, 0, delayBetweenRuns.toMillis());
+
+        // While uploads are paused, probe so they resume within seconds of the destination coming back
+        syncTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                if (circuitBreaker.isProbeDue() && probe()) {
+                    syncIfIdle();
+                }
+            }
+        }, PROBE_CHECK_INTERVAL.toMillis(), PROBE_CHECK_INTERVAL.toMillis());
+    }
+
+    private boolean probe() {
+        try {
+            remoteDestination.probe();
+            circuitBreaker.recordSuccess();
+            return true;
+        } catch (DestinationOperationException e) {
+            log.info("Destination still unreachable. Reason: {}", e.getMessage());
+            circuitBreaker.recordFailure();
+            return false;
+        }
+    }
+
+    @Override
+    public void onDiskPressureChanged(DiskPressureLevel previousLevel, DiskPressureLevel currentLevel) {
+        if (currentLevel.compareTo(previousLevel) > 0) {
+            // Get the data off the disk before waiting for the next scheduled run
+            log.info("Disk pressure increased. Upload pending files now");
+            syncTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    syncIfIdle();
+                }
+            }, 0);
+        }
+    }
+
+    private void syncIfIdle() {
+        boolean shouldSync = syncLock.tryLock();
+        if (shouldSync) {
+            try {
+                log.info("Sync local files with remote");
+                runTrackedSync(false);
+            } catch (Exception e) {
+                log.warn("Remote sync failed. Will retry later.", e);
+            } finally {
+                syncLock.unlock();
+            }
+        } else {
+            log.info("Sync already in progress. Skipping");
+        }
     }
 
     public void finalRun() {
         log.info("Upload remaining parts and finalise recording session");
         syncLock.lock();
         try {
-            remoteSync.run();
+            runTrackedSync(true);
         } catch (Exception e) {
             log.error("File upload failed. Some files might not have been uploaded. Reason: ", e);
         } finally {
             syncLock.unlock();
         }
     }
+
+    private void runTrackedSync(boolean finalRun) throws Exception {
+        long startMillis = System.currentTimeMillis();
+        remoteSyncStatus.syncStarted(startMillis);
+        try {
+            // One walk of the store sizes the runs of every class, the status shows the same backlog
+            Map<UploadFileClass, Long> backlogBytes = remoteSyncStatus.refreshBacklog(startMillis);
+            // Queue every class first, so the scheduler can interleave them with the other sessions
+            List<CompletableFuture<Void>> uploadRuns = new ArrayList<>();
+            for (UploadFileClass uploadFileClass : remoteSyncs.keySet()) {
+                // Last chance, every class is tried even while the uploads are paused
+                uploadRuns.add(uploadWithRetries(uploadFileClass, backlogBytes.getOrDefault(uploadFileClass, 0L),
+                        finalRun));
+            }
+            if (finalRun) {
+                // The stop marker goes up with the last files instead of in a round trip of its own
+                uploadRuns.add(remoteDestination.stopS3SyncSession(SessionMarker.writeStopMarker(localStorageFolder)));
+            }
+            awaitAll(uploadRuns);
+            remoteSyncStatus.syncSucceeded(startMillis);
+            progressEventStream.publish("uploadCompleted",
+                    "{\"durationMillis\":" + (System.currentTimeMillis() - startMillis) + "}");
+        } catch (Exception e) {
+            remoteSyncStatus.syncFailed(startMillis, e);
+            throw e;
+        }
+    }
+
+    /**
+     * A failed run is queued again once the back-off is over, the worker moves on to the other sessions meanwhile
+     */
+    private CompletableFuture<Void> uploadWithRetries(UploadFileClass uploadFileClass, long estimatedBytes,
+                                                      boolean ignoreCircuitBreaker) {
+        CompletableFuture<Void> upload = new CompletableFuture<>();
+        queueAttempt(uploadFileClass, estimatedBytes, 1, ignoreCircuitBreaker, SessionLogContext.currentSessionId(),
+                upload);
+        return upload;
+    }
+
+    private void queueAttempt(UploadFileClass uploadFileClass, long estimatedBytes, int attempt,
+                              boolean ignoreCircuitBreaker, String sessionId, CompletableFuture<Void> upload) {
+        if (!ignoreCircuitBreaker && !circuitBreaker.allowsCalls()) {
+            upload.completeExceptionally(
+                    new DestinationOperationException("Uploads paused, the destination is unreachable", null));
+            return;
+        }
+        uploadScheduler.submit(sessionKey, uploadFileClass, estimatedBytes, () -> uploadOnce(uploadFileClass))
+                .whenComplete((ignored, failure) -> {
+                    if (failure == null) {
+                        upload.complete(null);
+                        return;
+                    }
+                    if (attempt >= retryPolicy.getMaxAttempts()) {
+                        upload.completeExceptionally(failure);
+                        return;
+                    }
+                    Duration delay = retryPolicy.delayAfter(attempt);
+                    log.warn("Upload of {} failed (attempt {} of {}). Retrying in {} ms. Reason: {}",
+                            uploadFileClass, attempt, retryPolicy.getMaxAttempts(), delay.toMillis(),
+                            failure.getMessage());
+                    CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+                        // The scheduler tells the sessions apart by the logging context
+                        if (sessionId != null) {
+                            SessionLogContext.enter(sessionId);
+                        }
+                        try {
+                            queueAttempt(uploadFileClass, estimatedBytes, attempt + 1, ignoreCircuitBreaker, sessionId,
+                                    upload);
+                        } finally {
+                            SessionLogContext.leave();
+                        }
+                    });
+                });
+    }
+
+    private void uploadOnce(UploadFileClass uploadFileClass) throws Exception {
+        // A restart may have replaced the sync since the last attempt
+        RemoteSync remoteSync;
+        synchronized (remoteSyncs) {
+            remoteSync = remoteSyncs.get(uploadFileClass);
+        }
+        Heartbeat heartbeat = heartbeats.of(uploadFileClass);
+        long startMillis = System.currentTimeMillis();
+        try {
+            heartbeat.stepStarted();
+            try {
+                remoteSync.run();
+            } finally {
+                heartbeat.stepEnded();
+            }
+            circuitBreaker.recordSuccess();
+        } catch (Exception e) {
+            circuitBreaker.recordFailure(startMillis);
+            throw e;
+        }
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> uploadRuns) throws Exception {
+        Exception firstFailure = null;
+        for (CompletableFuture<Void> uploadRun : uploadRuns) {
+            try {
+                uploadRun.get();
+            } catch (ExecutionException e) {
+                if (firstFailure == null) {
+                    firstFailure = e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
+
+    // ~~~~ Implement the restartable interface
+
+    @Override
+    public String getStatusKey() {
+        return "upload";
+    }
+
+    @Override
+    public String checkHealth(long nowNanos, Duration stallDeadline) {
+        List<UploadFileClass> currentlyStuck = heartbeats.stuckClasses(nowNanos, stallDeadline);
+        stuckClasses = currentlyStuck;
+        return currentlyStuck.isEmpty() ? null : "Upload of " + currentlyStuck + " stuck";
+    }
+
+    /**
+     * Cancel the requests of the runs found stuck by the last check, interrupt the runs
+     * and give their classes a fresh sync, the retry of the interrupted run picks it up
+     */
+    @Override
+    public void restart() {
+        for (UploadFileClass uploadFileClass : stuckClasses) {
+            synchronized (remoteSyncs) {
+                remoteSyncs.put(uploadFileClass, createRemoteSync(uploadFileClass));
+            }
+            UploadCancellationInterceptor.cancelUploads(remoteDestination.getS3Bucket(),
+                    remoteDestination.getS3Prefix(), uploadFileClass);
+            heartbeats.of(uploadFileClass).interruptStep();
+        }
+    }
+
+    public void cancel() {
+        syncTimer.cancel();
+        ContentChecksumInterceptor.unregisterStore(remoteDestination.getS3Bucket(), remoteDestination.getS3Prefix());
+        uploadScheduler.release(sessionKey);
+    }
 }
@@ -0,0 +1,148 @@
+package io.accelerate.tracking.app.upload;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.tasks.MonitoredSubject;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Pauses the uploads once the destination keeps failing.
+ * While open, the only calls are cheap probes. The first probe that succeeds closes the circuit,
+ * each failed probe keeps it open for twice as long, up to a ceiling.
+ * The calls that fail together, having started before the last failure, count as one failure.
+ */
+public class CircuitBreaker implements MonitoredSubject {
+    private static final Logger log = getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long initialOpenMillis;
+    private final long maxOpenMillis;
+    private final LongSupplier clockMillis;
+    private State state;
+    private int consecutiveFailures;
+    private long openMillis;
+    private long openUntilMillis;
+    private long lastFailureMillis;
+    private long timesOpened;
+    private long rejectedCalls;
+    private long failedProbes;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration, Duration maxOpenDuration) {
+        this(failureThreshold, openDuration, maxOpenDuration, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, Duration maxOpenDuration, LongSupplier clockMillis) {
+        this.failureThreshold = failureThreshold;
+        this.initialOpenMillis = openDuration.toMillis();
+        this.maxOpenMillis = maxOpenDuration.toMillis();
+        this.clockMillis = clockMillis;
+        this.state = State.CLOSED;
+        this.openMillis = initialOpenMillis;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * False while the circuit is open, the call should not be made
+     */
+    public synchronized boolean allowsCalls() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        rejectedCalls++;
+        return false;
+    }
+
+    /**
+     * True once the circuit has been open long enough, the caller should then probe and report the outcome
+     */
+    public synchronized boolean isProbeDue() {
+        if (state == State.OPEN && clockMillis.getAsLong() >= openUntilMillis) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Destination reachable again. Resuming uploads");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openMillis = initialOpenMillis;
+    }
+
+    public synchronized void recordFailure() {
+        recordFailure(clockMillis.getAsLong());
+    }
+
+    /**
+     * @param callStartMillis when the failed call was made, on the clock of the breaker
+     */
+    public synchronized void recordFailure(long callStartMillis) {
+        if (callStartMillis < lastFailureMillis) {
+            // Same outage as a failure already counted
+            return;
+        }
+        lastFailureMillis = clockMillis.getAsLong();
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN) {
+            failedProbes++;
+            openMillis = Math.min(openMillis * 2, maxOpenMillis);
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            timesOpened++;
+            log.warn("Destination failed {} times in a row. Pausing uploads", consecutiveFailures);
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntilMillis = clockMillis.getAsLong() + openMillis;
+    }
+
+    // ~~~~ Implement the monitored interface
+
+    @Override
+    public String getStatusKey() {
+        return "uploadCircuit";
+    }
+
+    @Override
+    public synchronized boolean isActive() {
+        return state != State.CLOSED;
+    }
+
+    @Override
+    public void displayErrors(Logger log) {
+        // Transitions are logged as they happen
+    }
+
+    @Override
+    public synchronized void displayMetrics(StringBuilder displayBuffer) {
+        long waitMillis = Math.max(0, openUntilMillis - clockMillis.getAsLong());
+        displayBuffer.append(String.format("uploads paused, next probe in %d sec", waitMillis / 1000));
+    }
+
+    @Override
+    public synchronized void reportStatus(StatusSection statusSection) {
+        statusSection.put("state", state.name());
+        statusSection.put("consecutiveFailures", consecutiveFailures);
+        statusSection.put("timesOpened", timesOpened);
+        statusSection.put("rejectedCalls", rejectedCalls);
+        statusSection.put("failedProbes", failedProbes);
+        statusSection.put("openUntilMillis", state == State.CLOSED ? 0 : openUntilMillis);
+    }
+}
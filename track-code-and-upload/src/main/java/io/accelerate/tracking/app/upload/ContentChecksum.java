@@ -0,0 +1,107 @@
+package io.accelerate.tracking.app.upload;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * CRC32C of a store file, kept up to date by its writer as the bytes go out and saved in a .crc32c sidecar,
+ * so the upload does not have to read the file again to checksum it, see {@link ContentChecksumInterceptor}.
+ * <p>
+ * The files of the store are only appended to, the checksum of the first bytes stays true as the file grows.
+ * The sidecar says how many bytes it covers, it is only used for an upload of exactly that many.
+ */
+public class ContentChecksum {
+    private static final Logger log = getLogger(ContentChecksum.class);
+    static final String SIDECAR_SUFFIX = ".crc32c";
+
+    private final Path sidecarFile;
+    private final CRC32C crc;
+    private long length;
+    private long savedLength;
+
+    public ContentChecksum(Path file) {
+        this.sidecarFile = sidecarFor(file);
+        this.crc = new CRC32C();
+        this.length = 0;
+        this.savedLength = -1;
+    }
+
+    public synchronized void update(byte[] bytes, int offset, int count) {
+        crc.update(bytes, offset, count);
+        length += count;
+    }
+
+    /**
+     * Leaves the position of the buffer where it was
+     */
+    public synchronized void update(ByteBuffer bytes) {
+        ByteBuffer view = bytes.duplicate();
+        length += view.remaining();
+        crc.update(view);
+    }
+
+    public synchronized long getLength() {
+        return length;
+    }
+
+    public synchronized void save() throws IOException {
+        if (length == savedLength) {
+            return;
+        }
+        // Readers see the old sidecar or the new one, never half of it
+        Path tempFile = Paths.get(sidecarFile + ".tmp");
+        Files.writeString(tempFile, length + " " + encode((int) crc.getValue()) + "\n");
+        Files.move(tempFile, sidecarFile, REPLACE_EXISTING, ATOMIC_MOVE);
+        savedLength = length;
+    }
+
+    /**
+     * The checksum is an optimisation, the file is uploaded without it if the sidecar cannot be written
+     */
+    public void saveQuietly() {
+        try {
+            save();
+        } catch (IOException e) {
+            log.warn("Failed to save the checksum of {}. Reason: {}", sidecarFile.getFileName(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return the CRC32C of the first length bytes of the file, base64 encoded like S3 expects it.
+     * Null when the sidecar does not cover exactly that many bytes.
+     */
+    public static String checksumOf(Path file, long length) {
+        Path sidecarFile = sidecarFor(file);
+        if (!Files.exists(sidecarFile)) {
+            return null;
+        }
+        try {
+            String[] lengthAndChecksum = Files.readString(sidecarFile).trim().split(" ");
+            if (lengthAndChecksum.length == 2 && Long.parseLong(lengthAndChecksum[0]) == length) {
+                return lengthAndChecksum[1];
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.debug("Unreadable checksum for {}. Reason: {}", file.getFileName(), e.getMessage());
+        }
+        return null;
+    }
+
+    public static Path sidecarFor(Path file) {
+        return Paths.get(file + SIDECAR_SUFFIX);
+    }
+
+    private static String encode(int crc) {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(Integer.BYTES).putInt(crc).array());
+    }
+}
@@ -0,0 +1,71 @@
+package io.accelerate.tracking.app.upload;
+
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends the CRC32C the writers saved next to a file as the x-amz-checksum-crc32c of its upload.
+ * S3 checks the body against it, and nothing reads the file a second time to compute it.
+ * <p>
+ * The clients are shared by the sessions, so each session registers where its store goes in the bucket.
+ * Only whole file puts are covered, the parts of a multipart upload are cut by the sync library.
+ */
+public class ContentChecksumInterceptor implements ExecutionInterceptor {
+    private static final Map<String, Path> storesByDestination = new ConcurrentHashMap<>();
+
+    public static void registerStore(String s3Bucket, String s3Prefix, Path localStorageFolder) {
+        storesByDestination.put(destinationOf(s3Bucket, s3Prefix), localStorageFolder);
+    }
+
+    public static void unregisterStore(String s3Bucket, String s3Prefix) {
+        storesByDestination.remove(destinationOf(s3Bucket, s3Prefix));
+    }
+
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes executionAttributes) {
+        if (!(context.request() instanceof PutObjectRequest)) {
+            return context.request();
+        }
+        PutObjectRequest request = (PutObjectRequest) context.request();
+        if (request.checksumCRC32C() != null || request.contentLength() == null) {
+            return request;
+        }
+        Path localFile = localFileFor(request.bucket(), request.key());
+        if (localFile == null) {
+            return request;
+        }
+        String checksum = ContentChecksum.checksumOf(localFile, request.contentLength());
+        if (checksum == null) {
+            return request;
+        }
+        return request.toBuilder()
+                .checksumCRC32C(checksum)
+                .build();
+    }
+
+    static Path localFileFor(String s3Bucket, String key) {
+        String object = destinationOf(s3Bucket, key);
+        Map.Entry<String, Path> longestMatch = null;
+        for (Map.Entry<String, Path> store : storesByDestination.entrySet()) {
+            if (object.startsWith(store.getKey())
+                    && (longestMatch == null || store.getKey().length() > longestMatch.getKey().length())) {
+                longestMatch = store;
+            }
+        }
+        if (longestMatch == null) {
+            return null;
+        }
+        return longestMatch.getValue().resolve(object.substring(longestMatch.getKey().length()));
+    }
+
+    private static String destinationOf(String s3Bucket, String s3Prefix) {
+        return s3Bucket + "/" + s3Prefix;
+    }
+}
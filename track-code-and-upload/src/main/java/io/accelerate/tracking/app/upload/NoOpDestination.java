@@ -2,6 +2,9 @@ package io.accelerate.tracking.app.upload;
 
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
 public class NoOpDestination implements RemoteDestination {
     @Override
     public S3AsyncClient getClient() {
@@ -19,12 +22,22 @@ public class NoOpDestination implements RemoteDestination {
     }
 
     @Override
-    public void startS3SyncSession() {
-        
+    public CompletableFuture<Void> startS3SyncSession() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> stopS3SyncSession(Path stopMarker) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void probe() {
+
     }
 
     @Override
-    public void stopS3SyncSession() {
+    public void close() {
 
     }
 }
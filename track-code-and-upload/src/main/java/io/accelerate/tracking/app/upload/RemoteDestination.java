@@ -2,6 +2,9 @@ package io.accelerate.tracking.app.upload;
 
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
 public interface RemoteDestination {
 
     S3AsyncClient getClient();
@@ -10,7 +13,22 @@ public interface RemoteDestination {
 
     String getS3Prefix();
     
-    void startS3SyncSession() throws DestinationOperationException;
+    /**
+     * Put the start marker without waiting for it.
+     * The future fails with a {@link DestinationOperationException} when the destination refuses the write.
+     */
+    CompletableFuture<Void> startS3SyncSession();
+
+    /**
+     * Put the stop marker written to the store, over the one of the previous session.
+     * The future fails with a {@link DestinationOperationException} when the destination refuses the write.
+     */
+    CompletableFuture<Void> stopS3SyncSession(Path stopMarker);
+
+    /**
+     * Cheapest call that tells whether the destination can be reached, with no more than the upload permissions
+     */
+    void probe() throws DestinationOperationException;
 
-    void stopS3SyncSession() throws DestinationOperationException;
+    void close();
 }
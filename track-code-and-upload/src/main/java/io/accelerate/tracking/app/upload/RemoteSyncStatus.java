@@ -0,0 +1,161 @@
+package io.accelerate.tracking.app.upload;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.tasks.MonitoredSubject;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The outcome of the sync runs and what is left to upload.
+ * The backlog takes a walk of the store. A sync walks it once to size its runs,
+ * the status reuses that walk and only walks again once a minute after a sync ended, not at every status tick.
+ */
+public class RemoteSyncStatus implements MonitoredSubject {
+    private static final Duration BACKLOG_REFRESH_INTERVAL = Duration.of(1, ChronoUnit.MINUTES);
+    // The modification times lag the wall clock by a tick, and some file systems only keep every other second
+    private static final Duration MODIFICATION_TIME_SLACK = Duration.of(2, ChronoUnit.SECONDS);
+    private final Path localStorageFolder;
+    private volatile long lastSyncStartMillis;
+    private volatile long lastSuccessfulSyncStartMillis;
+    private volatile long changedSinceMillis;
+    private volatile long lastSyncDurationMillis;
+    private volatile long totalFailedSyncs;
+    private volatile long consecutiveFailedSyncs;
+    private volatile String lastError;
+    private long backlogFiles;
+    private long backlogBytes;
+    private Map<UploadFileClass, Long> backlogBytesByClass;
+    private long backlogRefreshedAtMillis;
+
+    RemoteSyncStatus(Path localStorageFolder) {
+        this.localStorageFolder = localStorageFolder;
+        this.lastSyncStartMillis = 0;
+        this.lastSuccessfulSyncStartMillis = 0;
+        // What the previous sessions left behind is not held against this one
+        this.changedSinceMillis = System.currentTimeMillis();
+        this.lastSyncDurationMillis = 0;
+        this.totalFailedSyncs = 0;
+        this.consecutiveFailedSyncs = 0;
+        this.lastError = null;
+        this.backlogBytesByClass = Map.of();
+        this.backlogRefreshedAtMillis = -1;
+    }
+
+    // ~~~~ Updated by the sync task
+
+    void syncStarted(long startMillis) {
+        lastSyncStartMillis = startMillis;
+    }
+
+    void syncSucceeded(long startMillis) {
+        lastSuccessfulSyncStartMillis = startMillis;
+        changedSinceMillis = startMillis;
+        lastSyncDurationMillis = System.currentTimeMillis() - startMillis;
+        consecutiveFailedSyncs = 0;
+        backlogChanged();
+    }
+
+    void syncFailed(long startMillis, Exception e) {
+        lastSyncDurationMillis = System.currentTimeMillis() - startMillis;
+        totalFailedSyncs++;
+        consecutiveFailedSyncs++;
+        lastError = e.getMessage();
+        backlogChanged();
+    }
+
+    private synchronized void backlogChanged() {
+        backlogRefreshedAtMillis = -1;
+    }
+
+    synchronized void refreshBacklogIfStale(long nowMillis) {
+        if (backlogRefreshedAtMillis >= 0 && nowMillis - backlogRefreshedAtMillis < BACKLOG_REFRESH_INTERVAL.toMillis()) {
+            return;
+        }
+        refreshBacklog(nowMillis);
+    }
+
+    /**
+     * Anything changed since the start of the last good sync, or of the session, still needs to go up
+     *
+     * @return the bytes left to upload by each class, none when the store could not be walked
+     */
+    synchronized Map<UploadFileClass, Long> refreshBacklog(long nowMillis) {
+        long files = 0;
+        long bytes = 0;
+        Map<UploadFileClass, Long> bytesByClass = new EnumMap<>(UploadFileClass.class);
+        long modifiedSinceMillis = changedSinceMillis - MODIFICATION_TIME_SLACK.toMillis();
+        try (Stream<Path> paths = Files.walk(localStorageFolder)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                UploadFileClass uploadFileClass = UploadFileClass.of(path);
+                if (uploadFileClass != null && Files.isRegularFile(path)
+                        && Files.getLastModifiedTime(path).toMillis() >= modifiedSinceMillis) {
+                    long size = Files.size(path);
+                    files++;
+                    bytes += size;
+                    bytesByClass.merge(uploadFileClass, size, Long::sum);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            files = -1;
+            bytes = -1;
+            bytesByClass.clear();
+        }
+        backlogFiles = files;
+        backlogBytes = bytes;
+        backlogBytesByClass = Collections.unmodifiableMap(bytesByClass);
+        backlogRefreshedAtMillis = nowMillis;
+        return backlogBytesByClass;
+    }
+
+    // ~~~~ Implement the monitored interface
+
+    @Override
+    public String getStatusKey() {
+        return "upload";
+    }
+
+    @Override
+    public boolean isActive() {
+        return consecutiveFailedSyncs > 0;
+    }
+
+    @Override
+    public void displayErrors(Logger log) {
+        // Failures are logged by the sync task
+    }
+
+    @Override
+    public void displayMetrics(StringBuilder displayBuffer) {
+        displayBuffer.append(String.format("sync failing, %d attempt%s", consecutiveFailedSyncs,
+                consecutiveFailedSyncs > 1 ? "s" : ""));
+    }
+
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        long currentBacklogFiles;
+        long currentBacklogBytes;
+        synchronized (this) {
+            refreshBacklogIfStale(System.currentTimeMillis());
+            currentBacklogFiles = backlogFiles;
+            currentBacklogBytes = backlogBytes;
+        }
+
+        statusSection.put("backlogFiles", currentBacklogFiles);
+        statusSection.put("backlogBytes", currentBacklogBytes);
+        statusSection.put("lastSyncStartMillis", lastSyncStartMillis);
+        statusSection.put("lastSuccessfulSyncStartMillis", lastSuccessfulSyncStartMillis);
+        statusSection.put("lastSyncDurationMillis", lastSyncDurationMillis);
+        statusSection.put("totalFailedSyncs", totalFailedSyncs);
+        statusSection.put("consecutiveFailedSyncs", consecutiveFailedSyncs);
+        statusSection.put("lastError", lastError);
+    }
+}
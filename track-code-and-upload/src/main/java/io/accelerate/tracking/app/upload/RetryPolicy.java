@@ -0,0 +1,32 @@
+package io.accelerate.tracking.app.upload;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter, so the sessions hit by the same blip do not retry in step
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param failedAttempt starts at 1
+     */
+    public Duration delayAfter(int failedAttempt) {
+        long ceilingMillis = Math.min(maxDelay.toMillis(),
+                baseDelay.toMillis() << Math.min(failedAttempt - 1, 30));
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceilingMillis + 1));
+    }
+}
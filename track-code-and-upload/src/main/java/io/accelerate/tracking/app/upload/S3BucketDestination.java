@@ -2,21 +2,43 @@ package io.accelerate.tracking.app.upload;
 
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class S3BucketDestination implements RemoteDestination {
+    private static final Duration REQUEST_TIMEOUT = Duration.of(20, ChronoUnit.SECONDS);
     private final S3AsyncClient client;
     private final String s3Bucket;
     private final String s3Prefix;
+    private final boolean ownsClient;
 
     public S3BucketDestination(S3AsyncClient client, String s3Bucket, String s3Prefix) {
+        this(client, s3Bucket, s3Prefix, true);
+    }
+
+    private S3BucketDestination(S3AsyncClient client, String s3Bucket, String s3Prefix, boolean ownsClient) {
         this.client = client;
         this.s3Bucket = s3Bucket;
         this.s3Prefix = s3Prefix;
+        this.ownsClient = ownsClient;
+    }
+
+    /**
+     * The client, and its connection pool, stay open after the destination is closed
+     */
+    public static S3BucketDestination sharingClient(S3AsyncClient client, String s3Bucket, String s3Prefix) {
+        return new S3BucketDestination(client, s3Bucket, s3Prefix, false);
     }
 
     public S3AsyncClient getClient() {
@@ -32,38 +54,90 @@ public class S3BucketDestination implements RemoteDestination {
     }
 
     @Override
-    public void startS3SyncSession() throws DestinationOperationException {
-        putObjectWithTimestamp("last_sync_start.txt");
+    public CompletableFuture<Void> startS3SyncSession() {
+        // The caller carries on with the start-up, the answer tells whether the permissions are valid
+        return putMarker(SessionMarker.START_FILE, AsyncRequestBody.fromString(SessionMarker.timestampContent(),
+                StandardCharsets.UTF_8));
     }
 
     @Override
-    public void stopS3SyncSession() throws DestinationOperationException {
-        putObjectWithTimestamp("last_sync_stop.txt");
+    public CompletableFuture<Void> stopS3SyncSession(Path stopMarker) {
+        return putMarker(SessionMarker.STOP_FILE, AsyncRequestBody.fromFile(stopMarker));
     }
 
-    private void putObjectWithTimestamp(String key) throws DestinationOperationException {
-        String objectKey = s3Prefix + key;
-        String content = "timestamp: " + System.currentTimeMillis();
-
+    private CompletableFuture<Void> putMarker(String key, AsyncRequestBody content) {
         PutObjectRequest request = PutObjectRequest.builder()
                 .bucket(s3Bucket)
-                .key(objectKey)
+                .key(s3Prefix + key)
                 .build();
 
-        CompletableFuture<?> future = client.putObject(
-                request,
-                AsyncRequestBody.fromString(content, StandardCharsets.UTF_8)
-        );
+        return client.putObject(request, content)
+                .orTimeout(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((response, failure) -> {
+                    if (failure != null) {
+                        throw new CompletionException(asDestinationException(failure,
+                                "Failed to upload object to S3"));
+                    }
+                    return null;
+                });
+    }
 
+    /**
+     * Heads the start marker, under the prefix the upload credentials are scoped to.
+     * The credentials may still not be allowed to read it back, any answer that is not a server error will do.
+     */
+    @Override
+    public void probe() throws DestinationOperationException {
         try {
-            // Block until complete so we know permissions are valid
-            future.join();
-        } catch (Exception e) {
-            Throwable cause = e.getCause() != null ? e.getCause() : e;
-            if (cause instanceof S3Exception) {
-                throw new DestinationOperationException(cause.getMessage(), cause);
+            awaitResponse(client.headObject(HeadObjectRequest.builder()
+                    .bucket(s3Bucket)
+                    .key(s3Prefix + SessionMarker.START_FILE)
+                    .build()), "Failed to reach the S3 bucket");
+        } catch (DestinationOperationException e) {
+            if (!(e.getCause() instanceof S3Exception s3Exception) || !isClientError(s3Exception.statusCode())) {
+                throw e;
             }
-            throw new DestinationOperationException("Failed to upload object to S3", cause);
         }
     }
+
+    @Override
+    public void close() {
+        if (ownsClient) {
+            client.close();
+        }
+    }
+
+    private static void awaitResponse(CompletableFuture<?> future, String failureMessage)
+            throws DestinationOperationException {
+        try {
+            future.get(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new DestinationOperationException(failureMessage + ". No response within "
+                    + REQUEST_TIMEOUT.toSeconds() + " seconds", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DestinationOperationException(failureMessage + ". Interrupted", e);
+        } catch (ExecutionException e) {
+            throw asDestinationException(e.getCause() != null ? e.getCause() : e, failureMessage);
+        }
+    }
+
+    private static boolean isClientError(int statusCode) {
+        // Too many requests is the service pushing back, not an answer about the object
+        return statusCode >= 400 && statusCode < 500 && statusCode != 429;
+    }
+
+    private static DestinationOperationException asDestinationException(Throwable failure, String failureMessage) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (cause instanceof TimeoutException) {
+            return new DestinationOperationException(failureMessage + ". No response within "
+                    + REQUEST_TIMEOUT.toSeconds() + " seconds", cause);
+        }
+        if (cause instanceof S3Exception) {
+            return new DestinationOperationException(cause.getMessage(), cause);
+        }
+        return new DestinationOperationException(failureMessage, cause);
+    }
 }
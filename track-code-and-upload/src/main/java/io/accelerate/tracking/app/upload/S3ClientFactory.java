@@ -0,0 +1,168 @@
+package io.accelerate.tracking.app.upload;
+
+import io.accelerate.tracking.app.profiling.UploadRequestEventInterceptor;
+import org.slf4j.Logger;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.S3CrtAsyncClientBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Builds the S3 clients of the process, one per set of credentials, region and endpoint.
+ * Every destination and sync task using the same account gets the same client, and reuses its connections.
+ * S3 only speaks HTTP/1.1, so keeping the connections open is what saves the TLS handshakes.
+ * <p>
+ * The Netty clients run on one shared event loop group. The CRT client manages its own connections,
+ * it takes no connection time to live and addresses the buckets by host name, even on a compatible service.
+ * Only the Netty clients send the checksums saved by the writers and cancel the stuck uploads,
+ * the CRT client takes no interceptor.
+ */
+public class S3ClientFactory implements AutoCloseable {
+    private static final Logger log = getLogger(S3ClientFactory.class);
+    private static final int DEFAULT_MAX_CONNECTIONS = 50;
+    private static final Duration DEFAULT_CONNECTION_TIME_TO_LIVE = Duration.of(5, ChronoUnit.MINUTES);
+    private static final Duration CONNECTION_MAX_IDLE_TIME = Duration.of(60, ChronoUnit.SECONDS);
+    // A stuck request fails instead of holding the sync run, a part upload gets a minute per attempt
+    private static final Duration API_CALL_ATTEMPT_TIMEOUT = Duration.of(60, ChronoUnit.SECONDS);
+    private static final Duration API_CALL_TIMEOUT = Duration.of(3, ChronoUnit.MINUTES);
+
+    public enum HttpEngine {
+        NETTY, CRT;
+
+        public static HttpEngine parse(String name) {
+            HttpEngine httpEngine;
+            try {
+                httpEngine = valueOf(name.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown S3 http engine: " + name + ". Use netty or crt");
+            }
+            if (httpEngine == CRT && isNativeExecutable()) {
+                // The CRT loads its own native library, which the native executable does not bundle
+                throw new IllegalArgumentException("The crt http engine is not available in the native executable. Use netty");
+            }
+            return httpEngine;
+        }
+
+        private static boolean isNativeExecutable() {
+            return "runtime".equals(System.getProperty("org.graalvm.nativeimage.imagecode"));
+        }
+    }
+
+    private final HttpEngine httpEngine;
+    private final int maxConnections;
+    private final Duration connectionTimeToLive;
+    private final Map<String, S3AsyncClient> clients;
+    private volatile SdkEventLoopGroup sharedEventLoopGroup;
+
+    public S3ClientFactory(HttpEngine httpEngine, int maxConnections, Duration connectionTimeToLive) {
+        if (httpEngine == HttpEngine.CRT && !connectionTimeToLive.equals(DEFAULT_CONNECTION_TIME_TO_LIVE)) {
+            throw new IllegalArgumentException("The crt http engine does not take a connection time to live. Use netty");
+        }
+        this.httpEngine = httpEngine;
+        this.maxConnections = maxConnections;
+        this.connectionTimeToLive = connectionTimeToLive;
+        this.clients = new ConcurrentHashMap<>();
+    }
+
+    public static S3ClientFactory withDefaults() {
+        return new S3ClientFactory(HttpEngine.NETTY, DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECTION_TIME_TO_LIVE);
+    }
+
+    /**
+     * The client stays open until the factory is closed, do not close it after use
+     */
+    public S3AsyncClient clientFor(S3Settings s3Settings) {
+        String clientKey = s3Settings.getAccessKeyId() + "|" + s3Settings.getRegion() + "|" + s3Settings.getEndpoint();
+        return clients.computeIfAbsent(clientKey, key -> createClient(
+                Region.of(s3Settings.getRegion()),
+                StaticCredentialsProvider.create(AwsBasicCredentials.create(
+                        s3Settings.getAccessKeyId(), s3Settings.getSecretAccessKey())),
+                s3Settings.getEndpoint()));
+    }
+
+    /**
+     * For reading public buckets, like the connectivity probe of the self test
+     */
+    public S3AsyncClient anonymousClientFor(Region region) {
+        return anonymousClientFor(region, null);
+    }
+
+    /**
+     * @param endpoint null for AWS itself
+     */
+    public S3AsyncClient anonymousClientFor(Region region, URI endpoint) {
+        return clients.computeIfAbsent("anonymous|" + region.id() + "|" + endpoint, key -> createClient(
+                region, AnonymousCredentialsProvider.create(), endpoint));
+    }
+
+    private S3AsyncClient createClient(Region region, AwsCredentialsProvider credentialsProvider, URI endpoint) {
+        log.debug("Creating {} S3 client for {}", httpEngine, endpoint != null ? endpoint : region);
+        if (httpEngine == HttpEngine.CRT) {
+            S3CrtAsyncClientBuilder crtClientBuilder = S3AsyncClient.crtBuilder()
+                    .region(region)
+                    .credentialsProvider(credentialsProvider)
+                    .maxConcurrency(maxConnections);
+            if (endpoint != null) {
+                log.warn("The crt http engine addresses the buckets of {} by host name, use netty for path style access",
+                        endpoint);
+                crtClientBuilder.endpointOverride(endpoint);
+            }
+            return crtClientBuilder.build();
+        }
+
+        S3AsyncClientBuilder clientBuilder = S3AsyncClient.builder()
+                .region(region)
+                .credentialsProvider(credentialsProvider)
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallAttemptTimeout(API_CALL_ATTEMPT_TIMEOUT)
+                        .apiCallTimeout(API_CALL_TIMEOUT)
+                        .addExecutionInterceptor(new UploadRequestEventInterceptor())
+                        .addExecutionInterceptor(new ContentChecksumInterceptor())
+                        .addExecutionInterceptor(new UploadCancellationInterceptor())
+                        .build())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(maxConnections)
+                        .connectionTimeToLive(connectionTimeToLive)
+                        .connectionMaxIdleTime(CONNECTION_MAX_IDLE_TIME)
+                        .eventLoopGroup(sharedEventLoopGroup()));
+        if (endpoint != null) {
+            // Compatible services rarely have a DNS entry per bucket
+            clientBuilder.endpointOverride(endpoint)
+                    .serviceConfiguration(S3Configuration.builder().pathStyleAccessEnabled(true).build());
+        }
+        return clientBuilder.build();
+    }
+
+    private synchronized SdkEventLoopGroup sharedEventLoopGroup() {
+        if (sharedEventLoopGroup == null) {
+            sharedEventLoopGroup = SdkEventLoopGroup.builder().build();
+        }
+        return sharedEventLoopGroup;
+    }
+
+    @Override
+    public void close() {
+        clients.values().forEach(S3AsyncClient::close);
+        clients.clear();
+        if (sharedEventLoopGroup != null) {
+            // The clients do not own the group they were given
+            sharedEventLoopGroup.eventLoopGroup().shutdownGracefully();
+        }
+    }
+}
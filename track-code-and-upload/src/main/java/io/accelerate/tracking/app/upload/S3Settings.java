@@ -0,0 +1,101 @@
+package io.accelerate.tracking.app.upload;
+
+import io.accelerate.tracking.sync.credentials.AWSSecretProperties;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The S3 parameters from the config file, in Java properties format:
+ * <pre>
+ * aws_access_key_id=ABCDEFGHIJKLM
+ * aws_secret_access_key=ABCDEFGHIJKLM
+ * s3_region=ap-southeast-1
+ * s3_bucket=bucketname
+ * s3_prefix=prefix/
+ * </pre>
+ * An optional s3_endpoint points the client at an S3 compatible service.
+ * <p>
+ * The file is read by {@link AWSSecretProperties} first, so it is accepted on the same terms as before,
+ * the bucket and prefix come from there. Only what it keeps to itself is read here: the credentials and the region
+ * key the shared clients, and the endpoint is new.
+ */
+public final class S3Settings {
+    private final String accessKeyId;
+    private final String secretAccessKey;
+    private final String region;
+    private final String s3Bucket;
+    private final String s3Prefix;
+    private final URI endpoint;
+
+    private S3Settings(String accessKeyId, String secretAccessKey, String region,
+                       String s3Bucket, String s3Prefix, URI endpoint) {
+        this.accessKeyId = accessKeyId;
+        this.secretAccessKey = secretAccessKey;
+        this.region = region;
+        this.s3Bucket = s3Bucket;
+        this.s3Prefix = s3Prefix;
+        this.endpoint = endpoint;
+    }
+
+    public static S3Settings fromPlainTextFile(Path configFile) throws IOException {
+        AWSSecretProperties awsSecretProperties = AWSSecretProperties.fromPlainTextFile(configFile);
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(configFile)) {
+            properties.load(reader);
+        }
+
+        String s3Bucket = awsSecretProperties.getS3Bucket();
+        if (s3Bucket == null || s3Bucket.isBlank()) {
+            throw new IllegalArgumentException("Missing s3_bucket in " + configFile);
+        }
+        String s3Prefix = awsSecretProperties.getS3Prefix();
+        String endpoint = properties.getProperty("s3_endpoint");
+        return new S3Settings(
+                required(properties, "aws_access_key_id", configFile),
+                required(properties, "aws_secret_access_key", configFile),
+                required(properties, "s3_region", configFile),
+                s3Bucket,
+                s3Prefix != null ? s3Prefix : "",
+                endpoint == null || endpoint.isBlank() ? null : URI.create(endpoint.trim()));
+    }
+
+    private static String required(Properties properties, String key, Path configFile) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing " + key + " in " + configFile);
+        }
+        return value.trim();
+    }
+
+    public String getAccessKeyId() {
+        return accessKeyId;
+    }
+
+    public String getSecretAccessKey() {
+        return secretAccessKey;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public String getS3Bucket() {
+        return s3Bucket;
+    }
+
+    public String getS3Prefix() {
+        return s3Prefix;
+    }
+
+    /**
+     * @return null for AWS itself
+     */
+    public URI getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,34 @@
+package io.accelerate.tracking.app.upload;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The objects that tell the reader of the bucket when a recording session started and stopped.
+ * The start marker is put straight away, it proves the credentials can write.
+ * The stop marker is written to the store and put along with the final upload, over the marker of the last session.
+ * It is left out of the sync runs, they would not upload a file of the same name twice.
+ */
+public final class SessionMarker {
+    public static final String START_FILE = "last_sync_start.txt";
+    public static final String STOP_FILE = "last_sync_stop.txt";
+
+    private SessionMarker() {
+    }
+
+    static String timestampContent() {
+        return "timestamp: " + System.currentTimeMillis();
+    }
+
+    static Path writeStopMarker(Path localStorageFolder) throws IOException {
+        return writeStopMarker(localStorageFolder, System.currentTimeMillis());
+    }
+
+    static Path writeStopMarker(Path localStorageFolder, long stopMillis) throws IOException {
+        Path stopMarker = localStorageFolder.resolve(STOP_FILE);
+        Files.writeString(stopMarker, "timestamp: " + stopMillis, StandardCharsets.UTF_8);
+        return stopMarker;
+    }
+}
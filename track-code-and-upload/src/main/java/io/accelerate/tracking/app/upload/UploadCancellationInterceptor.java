@@ -0,0 +1,179 @@
+package io.accelerate.tracking.app.upload;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets a stuck upload run be cancelled, interrupting the thread of the run does not stop its request.
+ * The body of every put and part is tracked while it goes out, a cancelled body fails with a
+ * {@link CancellationException} and the HTTP client drops the request and its connection.
+ * <p>
+ * A request whose body is already sent waits for its response, up to the attempt timeout of the client.
+ * Only the Netty clients are covered, the CRT client takes no interceptor.
+ */
+public class UploadCancellationInterceptor implements ExecutionInterceptor {
+    private static final ExecutionAttribute<CancellableBody> BODY =
+            new ExecutionAttribute<>("io.accelerate.tracking.CancellableBody");
+    private static final Set<CancellableBody> bodiesInFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Cancel the requests going out for the files of a class, in the store at this destination
+     */
+    public static void cancelUploads(String s3Bucket, String s3Prefix, UploadFileClass uploadFileClass) {
+        for (CancellableBody body : bodiesInFlight) {
+            if (body.s3Bucket.equals(s3Bucket) && body.key.startsWith(s3Prefix)
+                    && uploadFileClass.matches(Path.of(body.key))) {
+                body.cancel();
+            }
+        }
+    }
+
+    @Override
+    public Optional<AsyncRequestBody> modifyAsyncHttpContent(Context.ModifyHttpRequest context,
+                                                             ExecutionAttributes executionAttributes) {
+        Optional<AsyncRequestBody> asyncRequestBody = context.asyncRequestBody();
+        SdkRequest request = context.request();
+        if (asyncRequestBody.isEmpty()) {
+            return asyncRequestBody;
+        }
+        CancellableBody body;
+        if (request instanceof PutObjectRequest putObjectRequest) {
+            body = track(putObjectRequest.bucket(), putObjectRequest.key(), asyncRequestBody.get());
+        } else if (request instanceof UploadPartRequest uploadPartRequest) {
+            body = track(uploadPartRequest.bucket(), uploadPartRequest.key(), asyncRequestBody.get());
+        } else {
+            return asyncRequestBody;
+        }
+        // A retried attempt wraps its body again
+        untrack(executionAttributes.getAttribute(BODY));
+        executionAttributes.putAttribute(BODY, body);
+        return Optional.of(body);
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        untrack(executionAttributes.getAttribute(BODY));
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        untrack(executionAttributes.getAttribute(BODY));
+    }
+
+    static CancellableBody track(String s3Bucket, String key, AsyncRequestBody body) {
+        CancellableBody cancellableBody = new CancellableBody(s3Bucket, key, body);
+        bodiesInFlight.add(cancellableBody);
+        return cancellableBody;
+    }
+
+    static void untrack(CancellableBody body) {
+        if (body != null) {
+            bodiesInFlight.remove(body);
+        }
+    }
+
+    // ~~~~ Helpers
+
+    static class CancellableBody implements AsyncRequestBody {
+        private final String s3Bucket;
+        private final String key;
+        private final AsyncRequestBody body;
+        private Subscriber<? super ByteBuffer> subscriber;
+        private Subscription subscription;
+        private boolean cancelled;
+        private boolean terminated;
+
+        CancellableBody(String s3Bucket, String key, AsyncRequestBody body) {
+            this.s3Bucket = s3Bucket;
+            this.key = key;
+            this.body = body;
+        }
+
+        @Override
+        public Optional<Long> contentLength() {
+            return body.contentLength();
+        }
+
+        @Override
+        public String contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super ByteBuffer> downstream) {
+            body.subscribe(new Subscriber<ByteBuffer>() {
+                @Override
+                public void onSubscribe(Subscription upstream) {
+                    boolean cancelledAlready;
+                    synchronized (CancellableBody.this) {
+                        subscriber = downstream;
+                        subscription = upstream;
+                        terminated = false;
+                        cancelledAlready = cancelled;
+                    }
+                    downstream.onSubscribe(upstream);
+                    if (cancelledAlready) {
+                        cancel();
+                    }
+                }
+
+                @Override
+                public void onNext(ByteBuffer byteBuffer) {
+                    synchronized (CancellableBody.this) {
+                        if (!terminated) {
+                            downstream.onNext(byteBuffer);
+                        }
+                    }
+                }
+
+                @Override
+                public void onError(Throwable failure) {
+                    synchronized (CancellableBody.this) {
+                        if (!terminated) {
+                            terminated = true;
+                            downstream.onError(failure);
+                        }
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    synchronized (CancellableBody.this) {
+                        if (!terminated) {
+                            terminated = true;
+                            downstream.onComplete();
+                        }
+                    }
+                }
+            });
+        }
+
+        /**
+         * Fail the body, now if it is going out, at its subscription otherwise
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (subscriber == null || terminated) {
+                return;
+            }
+            terminated = true;
+            subscription.cancel();
+            subscriber.onError(new CancellationException("Upload of " + key + " cancelled"));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.accelerate.tracking.app.upload;
+
+import io.accelerate.tracking.app.metrics.MetricsFile;
+import io.accelerate.tracking.sync.sync.Filters;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The kinds of files in the store, each uploaded by its own sync run.
+ * The weight is the share of the upload capacity a class gets when classes compete.
+ */
+public enum UploadFileClass {
+    SOURCECODE(4, ".srcs", ".srcs.idx", ".srcs.tags"),
+    LOGS(2, ".log", ".journal", MetricsFile.EXTENSION),
+    VIDEO(1, ".mp4"),
+    PROFILES(1, ".jfr");
+
+    private final int weight;
+    private final List<String> extensions;
+
+    UploadFileClass(int weight, String... extensions) {
+        this.weight = weight;
+        this.extensions = List.of(extensions);
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public List<String> getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * @return the class uploading the file, null for a file left in the store
+     */
+    static UploadFileClass of(Path path) {
+        for (UploadFileClass uploadFileClass : values()) {
+            if (uploadFileClass.matches(path)) {
+                return uploadFileClass;
+            }
+        }
+        return null;
+    }
+
+    Filters createFilters() {
+        var filtersBuilder = Filters.getBuilder();
+        for (String extension : extensions) {
+            filtersBuilder = filtersBuilder.include(Filters.endsWith(extension));
+        }
+        return filtersBuilder.create();
+    }
+
+    boolean matches(Path path) {
+        String fileName = path.getFileName().toString();
+        for (String extension : extensions) {
+            if (fileName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,58 @@
+package io.accelerate.tracking.app.upload;
+
+import io.accelerate.tracking.app.tasks.Heartbeat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The progress of the upload runs, one heartbeat per file class.
+ * A class progresses when the bytes sent by its own run move, the runs of the other classes do not count.
+ */
+class UploadHeartbeats {
+    private final Function<UploadFileClass, Optional<Double>> uploadedBytesOf;
+    private final Map<UploadFileClass, Heartbeat> heartbeats;
+    private final Map<UploadFileClass, Optional<Double>> lastUploadedBytes;
+
+    /**
+     * @param uploadedBytesOf what the current run of a class has sent of its current file
+     */
+    UploadHeartbeats(Function<UploadFileClass, Optional<Double>> uploadedBytesOf) {
+        this.uploadedBytesOf = uploadedBytesOf;
+        this.heartbeats = new EnumMap<>(UploadFileClass.class);
+        this.lastUploadedBytes = new EnumMap<>(UploadFileClass.class);
+        for (UploadFileClass uploadFileClass : UploadFileClass.values()) {
+            heartbeats.put(uploadFileClass, new Heartbeat());
+            lastUploadedBytes.put(uploadFileClass, Optional.empty());
+        }
+    }
+
+    Heartbeat of(UploadFileClass uploadFileClass) {
+        return heartbeats.get(uploadFileClass);
+    }
+
+    /**
+     * @return the classes whose run has sent nothing for longer than the deadline
+     */
+    synchronized List<UploadFileClass> stuckClasses(long nowNanos, Duration stallDeadline) {
+        List<UploadFileClass> stuckClasses = new ArrayList<>();
+        for (Map.Entry<UploadFileClass, Heartbeat> classHeartbeat : heartbeats.entrySet()) {
+            UploadFileClass uploadFileClass = classHeartbeat.getKey();
+            Heartbeat heartbeat = classHeartbeat.getValue();
+            Optional<Double> uploadedBytes = uploadedBytesOf.apply(uploadFileClass);
+            if (!uploadedBytes.equals(lastUploadedBytes.get(uploadFileClass))) {
+                lastUploadedBytes.put(uploadFileClass, uploadedBytes);
+                heartbeat.progressedAt(nowNanos);
+            }
+            if (heartbeat.stalledNanos(nowNanos) > stallDeadline.toNanos()) {
+                stuckClasses.add(uploadFileClass);
+            }
+        }
+        return stuckClasses;
+    }
+}
@@ -0,0 +1,347 @@
+package io.accelerate.tracking.app.upload;
+
+import io.accelerate.tracking.app.logging.SessionLogContext;
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.tasks.MonitoredSubject;
+import io.accelerate.tracking.app.tasks.ResourceGovernor;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Runs the sync runs of every session on a fixed number of upload workers.
+ * <p>
+ * Each session and file class is a flow. The waiting runs are served by weighted fair queuing,
+ * so a flow with a large backlog takes its share of the workers and no more.
+ * A run only starts while the bytes in flight stay within the budget.
+ * While the backlog is over the limit, a new run waits in {@link #submit} for it to drain,
+ * so the producers hold back, whether they are the sessions of a daemon or the only one of a process.
+ */
+public class UploadScheduler implements MonitoredSubject {
+    private static final Logger log = getLogger(UploadScheduler.class);
+    private static final int DEFAULT_CONCURRENT_RUNS = 2;
+    private static final long DEFAULT_IN_FLIGHT_BYTES_BUDGET = 256L * 1024 * 1024;
+    private static final long DEFAULT_BACKLOG_LIMIT_BYTES = 4L * 1024 * 1024 * 1024;
+    private static final double BYTES_PER_COST_UNIT = 1024 * 1024;
+
+    public interface UploadRun {
+        void run() throws Exception;
+    }
+
+    private final long inFlightBytesBudget;
+    private final long backlogLimitBytes;
+    private final Lock lock;
+    private final Condition workAvailable;
+    private final Condition backlogDrained;
+    private final Map<String, Flow> flows;
+    private final List<Thread> workers;
+    private final AtomicLong completedRuns;
+    private final AtomicLong failedRuns;
+    private double virtualTime;
+    private boolean shuttingDown;
+    private volatile ResourceGovernor resourceGovernor;
+    private volatile long queuedBytes;
+    private volatile long inFlightBytes;
+    private volatile int queuedRuns;
+    private volatile int runningRuns;
+    private volatile boolean overBacklogLimit;
+
+    public UploadScheduler(int maxConcurrentRuns, long inFlightBytesBudget, long backlogLimitBytes) {
+        this.inFlightBytesBudget = inFlightBytesBudget;
+        this.backlogLimitBytes = backlogLimitBytes;
+        this.lock = new ReentrantLock();
+        this.workAvailable = lock.newCondition();
+        this.backlogDrained = lock.newCondition();
+        this.flows = new HashMap<>();
+        this.completedRuns = new AtomicLong();
+        this.failedRuns = new AtomicLong();
+        this.virtualTime = 0;
+        this.resourceGovernor = ResourceGovernor.unlimited();
+
+        this.workers = new ArrayList<>();
+        for (int i = 0; i < maxConcurrentRuns; i++) {
+            Thread worker = Thread.ofPlatform().name("UploadWorker-" + i).daemon(true).unstarted(this::work);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public static UploadScheduler withDefaults() {
+        return new UploadScheduler(DEFAULT_CONCURRENT_RUNS, DEFAULT_IN_FLIGHT_BYTES_BUDGET,
+                DEFAULT_BACKLOG_LIMIT_BYTES);
+    }
+
+    /**
+     * The workers pace themselves between two runs, so the walks of the store keep within the CPU and disk budgets.
+     * The requests themselves run on the I/O threads of the S3 client, bounded by the in-flight bytes only.
+     */
+    public void useResourceGovernor(ResourceGovernor resourceGovernor) {
+        this.resourceGovernor = resourceGovernor;
+    }
+
+    /**
+     * Queue a sync run. A run uploads every file of its class,
+     * so while one is waiting for the same flow the callers share it.
+     * Otherwise the caller waits while the backlog is over the limit.
+     */
+    public CompletableFuture<Void> submit(String sessionKey, UploadFileClass uploadFileClass,
+                                          long estimatedBytes, UploadRun uploadRun) {
+        String sessionId = SessionLogContext.currentSessionId();
+        lock.lock();
+        try {
+            Flow flow;
+            Job waitingJob;
+            while (true) {
+                if (shuttingDown) {
+                    return CompletableFuture.failedFuture(new IllegalStateException("The upload scheduler is stopped"));
+                }
+                flow = flows.computeIfAbsent(sessionKey + "/" + uploadFileClass,
+                        key -> new Flow(uploadFileClass.getWeight()));
+                waitingJob = flow.waitingJob;
+                if (waitingJob != null || !overBacklogLimit) {
+                    break;
+                }
+                backlogDrained.await();
+            }
+
+            if (waitingJob != null) {
+                if (estimatedBytes > waitingJob.estimatedBytes) {
+                    queuedBytes += estimatedBytes - waitingJob.estimatedBytes;
+                    waitingJob.estimatedBytes = estimatedBytes;
+                }
+                updateBacklogPressure();
+                return waitingJob.completion;
+            }
+
+            // Start where the flow left off, or now if it has been idle. Larger runs finish later.
+            double startTag = Math.max(virtualTime, flow.lastFinishTag);
+            double finishTag = startTag + (1 + estimatedBytes / BYTES_PER_COST_UNIT) / flow.weight;
+            Job job = new Job(flow, sessionId, estimatedBytes, startTag, finishTag, uploadRun);
+            flow.waitingJob = job;
+            flow.lastFinishTag = finishTag;
+            queuedBytes += estimatedBytes;
+            queuedRuns++;
+            updateBacklogPressure();
+            workAvailable.signalAll();
+            return job.completion;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forget the flows of a session that will not upload any more
+     */
+    public void release(String sessionKey) {
+        lock.lock();
+        try {
+            flows.entrySet().removeIf(entry -> entry.getKey().startsWith(sessionKey + "/")
+                    && entry.getValue().waitingJob == null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * True while the producers should hold back
+     */
+    public boolean isOverBacklogLimit() {
+        return overBacklogLimit;
+    }
+
+    int getRunningRuns() {
+        return runningRuns;
+    }
+
+    /**
+     * Let the waiting runs finish, then stop the workers
+     */
+    public void shutdown() throws InterruptedException {
+        lock.lock();
+        try {
+            shuttingDown = true;
+            workAvailable.signalAll();
+            backlogDrained.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    // ~~~~ The workers
+
+    private void work() {
+        try {
+            while (true) {
+                // Charges the last run of this worker, not the requests it left to the S3 client
+                resourceGovernor.pace(() -> false);
+                Job job = takeNextJob();
+                if (job == null) {
+                    break;
+                }
+                runJob(job);
+            }
+        } catch (InterruptedException e) {
+            log.warn("Upload worker interrupted");
+        }
+    }
+
+    private Job takeNextJob() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Job next = earliestFinishingJob();
+                if (next == null && shuttingDown) {
+                    return null;
+                }
+                if (next != null && fitsInFlightBudget(next)) {
+                    next.flow.waitingJob = null;
+                    virtualTime = Math.max(virtualTime, next.startTag);
+                    queuedBytes -= next.estimatedBytes;
+                    queuedRuns--;
+                    inFlightBytes += next.estimatedBytes;
+                    runningRuns++;
+                    return next;
+                }
+                workAvailable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Job earliestFinishingJob() {
+        Job earliest = null;
+        for (Flow flow : flows.values()) {
+            Job job = flow.waitingJob;
+            if (job != null && (earliest == null || job.finishTag < earliest.finishTag)) {
+                earliest = job;
+            }
+        }
+        return earliest;
+    }
+
+    private boolean fitsInFlightBudget(Job job) {
+        // A run larger than the budget still goes through, on its own
+        return runningRuns == 0 || inFlightBytes + job.estimatedBytes <= inFlightBytesBudget;
+    }
+
+    private void runJob(Job job) {
+        if (job.sessionId != null) {
+            SessionLogContext.enter(job.sessionId);
+        }
+        try {
+            job.uploadRun.run();
+            completedRuns.incrementAndGet();
+            job.completion.complete(null);
+        } catch (Exception e) {
+            failedRuns.incrementAndGet();
+            job.completion.completeExceptionally(e);
+        } finally {
+            SessionLogContext.leave();
+            lock.lock();
+            try {
+                inFlightBytes -= job.estimatedBytes;
+                runningRuns--;
+                updateBacklogPressure();
+                workAvailable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void updateBacklogPressure() {
+        boolean isOverLimit = queuedBytes + inFlightBytes > backlogLimitBytes;
+        if (isOverLimit != overBacklogLimit) {
+            overBacklogLimit = isOverLimit;
+            if (isOverLimit) {
+                log.warn("Upload backlog over {} MB. Holding back new work.", backlogLimitBytes / (1024 * 1024));
+            } else {
+                log.info("Upload backlog back under the limit");
+                backlogDrained.signalAll();
+            }
+        }
+    }
+
+    private static final class Flow {
+        private final int weight;
+        private double lastFinishTag;
+        private Job waitingJob;
+
+        Flow(int weight) {
+            this.weight = weight;
+            this.lastFinishTag = 0;
+            this.waitingJob = null;
+        }
+    }
+
+    private static final class Job {
+        private final Flow flow;
+        private final String sessionId;
+        private final double startTag;
+        private final double finishTag;
+        private final UploadRun uploadRun;
+        private final CompletableFuture<Void> completion;
+        private long estimatedBytes;
+
+        Job(Flow flow, String sessionId, long estimatedBytes, double startTag, double finishTag, UploadRun uploadRun) {
+            this.flow = flow;
+            this.sessionId = sessionId;
+            this.estimatedBytes = estimatedBytes;
+            this.startTag = startTag;
+            this.finishTag = finishTag;
+            this.uploadRun = uploadRun;
+            this.completion = new CompletableFuture<>();
+        }
+    }
+
+    // ~~~~ Implement the monitored interface
+
+    @Override
+    public String getStatusKey() {
+        return "uploadScheduler";
+    }
+
+    @Override
+    public boolean isActive() {
+        return overBacklogLimit;
+    }
+
+    @Override
+    public void displayErrors(Logger log) {
+        // Failures are reported by the sync tasks
+    }
+
+    @Override
+    public void displayMetrics(StringBuilder displayBuffer) {
+        displayBuffer.append(String.format("upload backlog over limit, %d MB waiting",
+                (queuedBytes + inFlightBytes) / (1024 * 1024)));
+    }
+
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        statusSection.put("queuedRuns", queuedRuns);
+        statusSection.put("runningRuns", runningRuns);
+        statusSection.put("queuedBytes", queuedBytes);
+        statusSection.put("inFlightBytes", inFlightBytes);
+        statusSection.put("overBacklogLimit", overBacklogLimit);
+        statusSection.put("completedRuns", completedRuns.get());
+        statusSection.put("failedRuns", failedRuns.get());
+    }
+}
@@ -1,11 +1,17 @@
 package io.accelerate.tracking.app.upload;
 
+import io.accelerate.tracking.app.status.StatusSection;
 import org.slf4j.Logger;
 import io.accelerate.tracking.app.tasks.MonitoredSubject;
 import io.accelerate.tracking.sync.sync.progress.UploadStatsProgressListener;
 
 import java.text.NumberFormat;
+import java.util.Collection;
+import java.util.Optional;
 
+/**
+ * The file going up now, the first one found when the runs of several classes upload at once
+ */
 public class UploadStatsProgressStatus implements MonitoredSubject {
     private static final NumberFormat percentageFormatter = NumberFormat.getPercentInstance();
     private static final NumberFormat sizeFormatter = NumberFormat.getNumberInstance();
@@ -22,15 +28,20 @@ public class UploadStatsProgressStatus implements MonitoredSubject {
         formatter.setMaximumFractionDigits(digits);
     }
 
-    private UploadStatsProgressListener uploadStatsProgressListener;
+    private final Collection<UploadStatsProgressListener> uploadStatsProgressListeners;
 
-    public UploadStatsProgressStatus(UploadStatsProgressListener uploadStatsProgressListener) {
-        this.uploadStatsProgressListener = uploadStatsProgressListener;
+    public UploadStatsProgressStatus(Collection<UploadStatsProgressListener> uploadStatsProgressListeners) {
+        this.uploadStatsProgressListeners = uploadStatsProgressListeners;
+    }
+
+    @Override
+    public String getStatusKey() {
+        return "uploadProgress";
     }
 
     @Override
     public boolean isActive() {
-        return uploadStatsProgressListener.isCurrentlyUploading();
+        return currentlyUploading().isPresent();
     }
 
     @Override
@@ -40,7 +51,7 @@ public class UploadStatsProgressStatus implements MonitoredSubject {
 
     @Override
     public void displayMetrics(StringBuilder displayBuffer) {
-        uploadStatsProgressListener.getCurrentStats().ifPresent(fileUploadStat ->
+        currentlyUploading().flatMap(UploadStatsProgressListener::getCurrentStats).ifPresent(fileUploadStat ->
                 displayBuffer.append(
                         String.format("Uploaded %3s of %3s MB at %5s MB/sec",
                                 percentageFormatter.format(fileUploadStat.getUploadRatio()),
@@ -50,8 +61,23 @@ public class UploadStatsProgressStatus implements MonitoredSubject {
         );
     }
 
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        currentlyUploading().flatMap(UploadStatsProgressListener::getCurrentStats).ifPresent(fileUploadStat -> {
+            statusSection.put("uploadRatio", fileUploadStat.getUploadRatio());
+            statusSection.put("totalBytes", (long) fileUploadStat.getTotalBytes());
+            statusSection.put("megabytesPerSecond", fileUploadStat.getMegabytesPerSecond());
+        });
+    }
+
     //~~~ Helpers
 
+    private Optional<UploadStatsProgressListener> currentlyUploading() {
+        return uploadStatsProgressListeners.stream()
+                .filter(UploadStatsProgressListener::isCurrentlyUploading)
+                .findFirst();
+    }
+
     private static double bytes_to_mb(double totalSize) {
         return totalSize/((double)1024*1024);
     }
@@ -0,0 +1,25 @@
+package io.accelerate.tracking.app.util;
+
+public enum DiskPressureLevel {
+    NORMAL(1),
+    ELEVATED(3),
+    CRITICAL(6);
+
+    private final int keySnapshotSpacingMultiplier;
+
+    DiskPressureLevel(int keySnapshotSpacingMultiplier) {
+        this.keySnapshotSpacingMultiplier = keySnapshotSpacingMultiplier;
+    }
+
+    /**
+     * Key snapshots hold the full content of the tracked folder, so they are the first thing to
+     * become rarer when the store runs out of space
+     */
+    public int keySnapshotSpacing(int baseKeySnapshotSpacing) {
+        return baseKeySnapshotSpacing * keySnapshotSpacingMultiplier;
+    }
+
+    public boolean isUnderPressure() {
+        return this != NORMAL;
+    }
+}
@@ -0,0 +1,5 @@
+package io.accelerate.tracking.app.util;
+
+public interface DiskPressureListener {
+    void onDiskPressureChanged(DiskPressureLevel previousLevel, DiskPressureLevel currentLevel);
+}
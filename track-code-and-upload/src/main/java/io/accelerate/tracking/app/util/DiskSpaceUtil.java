@@ -18,6 +18,11 @@ public class DiskSpaceUtil {
     private static final Logger log = getLogger(DiskSpaceUtil.class);
 
     public static boolean hasEnoughFreeDiskspace(long minimumRequiredDiskspaceHumanReadable) {
+        String userDirectory = System.getProperty("user.dir");
+        return hasEnoughFreeDiskspace(Paths.get(userDirectory), minimumRequiredDiskspaceHumanReadable);
+    }
+
+    public static boolean hasEnoughFreeDiskspace(Path location, long minimumRequiredDiskspaceHumanReadable) {
         if (minimumRequiredDiskspaceHumanReadable == 0) {
             // Exit early if we don't require any disk space
             log.info("Skipping diskspace check and proceeding to run the app.");
@@ -27,8 +32,7 @@ public class DiskSpaceUtil {
         log.info("Checking diskspace");
 
         long minimumRequiredDiskspace = minimumRequiredDiskspaceHumanReadable * ONE_GB;
-        String userDirectory = System.getProperty("user.dir");
-        String userDriveOrVolume = Paths.get(userDirectory).getRoot().toString();
+        String userDriveOrVolume = nearestExistingPath(location).toString();
         long availableDiskspace = getAvailableDiskspaceFor(userDriveOrVolume);
         long availableDiskspaceInGB = availableDiskspace / ONE_GB;
         float availableDiskspaceInMB = (float) (availableDiskspace / ONE_MB);
@@ -55,8 +59,23 @@ public class DiskSpaceUtil {
     }
     
     public static long getFreeSpaceKb(String directory) throws IOException, IOException {
-        Path path = Paths.get(directory);
-        FileStore fileStore = Files.getFileStore(path);
+        FileStore fileStore = getFileStoreFor(Paths.get(directory));
         return fileStore.getUsableSpace() / 1024; // Convert bytes to kilobytes
     }
+
+    /**
+     * The volume holding the given path. The path does not need to exist yet,
+     * the closest existing parent decides the volume.
+     */
+    public static FileStore getFileStoreFor(Path location) throws IOException {
+        return Files.getFileStore(nearestExistingPath(location));
+    }
+
+    private static Path nearestExistingPath(Path location) {
+        Path candidate = location.toAbsolutePath().normalize();
+        while (candidate != null && !Files.exists(candidate)) {
+            candidate = candidate.getParent();
+        }
+        return candidate != null ? candidate : location.toAbsolutePath().getRoot();
+    }
 }
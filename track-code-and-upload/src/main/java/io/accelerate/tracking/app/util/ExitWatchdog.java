@@ -0,0 +1,43 @@
+package io.accelerate.tracking.app.util;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The JVM exits on its own once the command returns and its threads are gone.
+ * A thread that does not go, like one of a third-party library, would keep the process around after the upload,
+ * so past a grace period the threads still holding the JVM are named and the JVM is halted.
+ */
+public final class ExitWatchdog {
+    private static final Logger log = getLogger(ExitWatchdog.class);
+    public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofSeconds(10);
+
+    private ExitWatchdog() {
+    }
+
+    public static void haltIfStillRunningAfter(Duration gracePeriod) {
+        Thread.ofPlatform().name("ExitWatchdog").daemon(true).start(() -> {
+            try {
+                Thread.sleep(gracePeriod.toMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+            log.warn("Still running {} ms after the stop, held by {}. Halting",
+                    gracePeriod.toMillis(), threadsHoldingTheJvm());
+            Runtime.getRuntime().halt(0);
+        });
+    }
+
+    private static List<String> threadsHoldingTheJvm() {
+        return Thread.getAllStackTraces().keySet().stream()
+                // The thread waiting for the others to end the JVM is not one of them
+                .filter(thread -> thread.isAlive() && !thread.isDaemon() && !"DestroyJavaVM".equals(thread.getName()))
+                .map(Thread::getName)
+                .sorted()
+                .toList();
+    }
+}
@@ -1,16 +1,19 @@
 package io.accelerate.tracking.app.util;
 
+import io.accelerate.tracking.app.status.StatusSection;
 import org.slf4j.Logger;
 import io.accelerate.tracking.app.tasks.MonitoredBackgroundTask;
 
 public class NoOpThread extends Thread implements MonitoredBackgroundTask {
+    private final String statusKey;
     private boolean isRunning;
     private int tick;
     private NoOpMessageProvider noOpMessageProvider;
     private String lastReceivedExternalEvent;
 
 
-    public NoOpThread(NoOpMessageProvider noOpMessageProvider) {
+    public NoOpThread(String statusKey, NoOpMessageProvider noOpMessageProvider) {
+        this.statusKey = statusKey;
         this.noOpMessageProvider = noOpMessageProvider;
         isRunning = true;
         tick = 0;
@@ -28,6 +31,11 @@ public class NoOpThread extends Thread implements MonitoredBackgroundTask {
         }
     }
 
+    @Override
+    public String getStatusKey() {
+        return statusKey;
+    }
+
     @Override
     public boolean isActive() {
         return isRunning;
@@ -44,6 +52,12 @@ public class NoOpThread extends Thread implements MonitoredBackgroundTask {
         displayBuffer.append(noOpMessageProvider.messageFor(tick, lastReceivedExternalEvent));
     }
 
+    @Override
+    public void reportStatus(StatusSection statusSection) {
+        statusSection.put("tick", tick);
+        statusSection.put("lastExternalEvent", lastReceivedExternalEvent);
+    }
+
     @Override
     public void signalStop() {
         isRunning = false;
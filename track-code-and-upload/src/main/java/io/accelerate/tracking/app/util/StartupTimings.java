@@ -0,0 +1,56 @@
+package io.accelerate.tracking.app.util;
+
+import org.slf4j.Logger;
+
+import java.time.Instant;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Times the phases between the start of the session and the first capture.
+ * Phases running in parallel are timed on their own, the others from the end of the previous phase.
+ */
+public class StartupTimings {
+    private static final Logger log = getLogger(StartupTimings.class);
+
+    private final long startNanos;
+    private long lastPhaseEndNanos;
+
+    public StartupTimings() {
+        this.startNanos = System.nanoTime();
+        this.lastPhaseEndNanos = startNanos;
+    }
+
+    public synchronized void phaseEnded(String phase) {
+        long nowNanos = System.nanoTime();
+        logPhase(phase, nowNanos - lastPhaseEndNanos);
+        lastPhaseEndNanos = nowNanos;
+    }
+
+    public void parallelPhaseEnded(String phase, long phaseStartNanos) {
+        logPhase(phase + " (in parallel)", System.nanoTime() - phaseStartNanos);
+    }
+
+    public void completed() {
+        long totalMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        long sinceProcessStartMillis = millisSinceProcessStart();
+        if (sinceProcessStartMillis >= 0) {
+            log.info("Startup completed in {} ms, {} ms after the process started", totalMillis, sinceProcessStartMillis);
+        } else {
+            log.info("Startup completed in {} ms", totalMillis);
+        }
+    }
+
+    /**
+     * @return -1 when the platform does not tell
+     */
+    public static long millisSinceProcessStart() {
+        return ProcessHandle.current().info().startInstant()
+                .map(startInstant -> Instant.now().toEpochMilli() - startInstant.toEpochMilli())
+                .orElse(-1L);
+    }
+
+    private static void logPhase(String phase, long durationNanos) {
+        log.info("Startup phase {} took {} ms", phase, durationNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,46 @@
+package io.accelerate.tracking.app.soak;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Latencies, each stamped with the virtual time it was seen at, so the start and the end of a session can be compared
+ */
+class LatencyRecorder {
+    private final List<long[]> samples;
+
+    LatencyRecorder() {
+        this.samples = new ArrayList<>();
+    }
+
+    synchronized void record(long virtualNanos, long latencyNanos) {
+        samples.add(new long[]{virtualNanos, latencyNanos});
+    }
+
+    synchronized int count() {
+        return samples.size();
+    }
+
+    Duration percentile(double percentile) {
+        return percentileBetween(percentile, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * @return zero when nothing was recorded in the window
+     */
+    synchronized Duration percentileBetween(double percentile, long fromVirtualNanos, long toVirtualNanos) {
+        List<Long> latencies = new ArrayList<>();
+        for (long[] sample : samples) {
+            if (sample[0] >= fromVirtualNanos && sample[0] < toVirtualNanos) {
+                latencies.add(sample[1]);
+            }
+        }
+        if (latencies.isEmpty()) {
+            return Duration.ZERO;
+        }
+        latencies.sort(Long::compare);
+        int index = (int) Math.ceil(percentile / 100.0 * latencies.size()) - 1;
+        return Duration.ofNanos(latencies.get(Math.max(0, index)));
+    }
+}
@@ -0,0 +1,329 @@
+package io.accelerate.tracking.app.soak;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Stands in for S3 with the calls the uploads make. Keeps the sizes and the ETags of what it receives, not the content.
+ * <p>
+ * The requests are served one at a time at a fixed bandwidth, like a modest uplink.
+ * Any other call fails, so the soak shows when the uploads start relying on something new.
+ */
+class LocalS3Client implements S3AsyncClient {
+    private final long bandwidthBytesPerSecond;
+    private final ExecutorService network;
+    private final Map<String, StoredObject> objects;
+    private final Map<String, MultipartUploadInProgress> multipartUploads;
+    private final AtomicLong receivedBytes;
+    private final AtomicLong requests;
+
+    LocalS3Client(long bandwidthBytesPerSecond) {
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+        this.network = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("LocalS3").daemon(true).factory());
+        this.objects = new ConcurrentHashMap<>();
+        this.multipartUploads = new ConcurrentHashMap<>();
+        this.receivedBytes = new AtomicLong();
+        this.requests = new AtomicLong();
+    }
+
+    long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * What the destination holds for the key, counting the parts of an upload still in progress
+     */
+    long storedBytes(String key) {
+        StoredObject storedObject = objects.get(key);
+        long storedBytes = storedObject != null ? storedObject.size : 0;
+        for (MultipartUploadInProgress upload : multipartUploads.values()) {
+            if (upload.key.equals(key)) {
+                storedBytes = Math.max(storedBytes, upload.size());
+            }
+        }
+        return storedBytes;
+    }
+
+    // ~~~~ Objects
+
+    @Override
+    public CompletableFuture<PutObjectResponse> putObject(PutObjectRequest putObjectRequest,
+                                                          AsyncRequestBody requestBody) {
+        return readBody(requestBody).thenCompose(content -> serve(content.length, () -> {
+            String eTag = eTagOf(md5(content));
+            objects.put(putObjectRequest.key(), new StoredObject(content.length, eTag));
+            return PutObjectResponse.builder().eTag(eTag).build();
+        }));
+    }
+
+    @Override
+    public CompletableFuture<HeadObjectResponse> headObject(HeadObjectRequest headObjectRequest) {
+        return serve(0, () -> {
+            StoredObject storedObject = objects.get(headObjectRequest.key());
+            if (storedObject == null) {
+                throw NoSuchKeyException.builder().message("No object at " + headObjectRequest.key())
+                        .statusCode(404).build();
+            }
+            return HeadObjectResponse.builder()
+                    .contentLength(storedObject.size)
+                    .eTag(storedObject.eTag)
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<HeadBucketResponse> headBucket(HeadBucketRequest headBucketRequest) {
+        return serve(0, () -> HeadBucketResponse.builder().build());
+    }
+
+    @Override
+    public CompletableFuture<ListObjectsV2Response> listObjectsV2(ListObjectsV2Request listObjectsV2Request) {
+        return serve(0, () -> {
+            String prefix = listObjectsV2Request.prefix() != null ? listObjectsV2Request.prefix() : "";
+            List<S3Object> contents = new ArrayList<>();
+            new TreeMap<>(objects).forEach((key, storedObject) -> {
+                if (key.startsWith(prefix)) {
+                    contents.add(S3Object.builder().key(key).size(storedObject.size).eTag(storedObject.eTag).build());
+                }
+            });
+            return ListObjectsV2Response.builder()
+                    .contents(contents)
+                    .keyCount(contents.size())
+                    .isTruncated(false)
+                    .build();
+        });
+    }
+
+    // ~~~~ Multipart uploads
+
+    @Override
+    public CompletableFuture<CreateMultipartUploadResponse> createMultipartUpload(
+            CreateMultipartUploadRequest createMultipartUploadRequest) {
+        return serve(0, () -> {
+            String uploadId = UUID.randomUUID().toString();
+            multipartUploads.put(uploadId, new MultipartUploadInProgress(createMultipartUploadRequest.key()));
+            return CreateMultipartUploadResponse.builder()
+                    .bucket(createMultipartUploadRequest.bucket())
+                    .key(createMultipartUploadRequest.key())
+                    .uploadId(uploadId)
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<UploadPartResponse> uploadPart(UploadPartRequest uploadPartRequest,
+                                                            AsyncRequestBody requestBody) {
+        return readBody(requestBody).thenCompose(content -> serve(content.length, () -> {
+            MultipartUploadInProgress upload = existingUpload(uploadPartRequest.uploadId());
+            byte[] md5 = md5(content);
+            upload.parts.put(uploadPartRequest.partNumber(), new StoredPart(content.length, md5));
+            return UploadPartResponse.builder().eTag(eTagOf(md5)).build();
+        }));
+    }
+
+    @Override
+    public CompletableFuture<ListPartsResponse> listParts(ListPartsRequest listPartsRequest) {
+        return serve(0, () -> {
+            MultipartUploadInProgress upload = existingUpload(listPartsRequest.uploadId());
+            List<Part> parts = new ArrayList<>();
+            upload.parts.forEach((partNumber, storedPart) -> parts.add(Part.builder()
+                    .partNumber(partNumber)
+                    .size(storedPart.size)
+                    .eTag(eTagOf(storedPart.md5))
+                    .build()));
+            return ListPartsResponse.builder()
+                    .bucket(listPartsRequest.bucket())
+                    .key(upload.key)
+                    .uploadId(listPartsRequest.uploadId())
+                    .parts(parts)
+                    .isTruncated(false)
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<ListMultipartUploadsResponse> listMultipartUploads(
+            ListMultipartUploadsRequest listMultipartUploadsRequest) {
+        return serve(0, () -> {
+            String prefix = listMultipartUploadsRequest.prefix() != null ? listMultipartUploadsRequest.prefix() : "";
+            List<MultipartUpload> uploads = new ArrayList<>();
+            multipartUploads.forEach((uploadId, upload) -> {
+                if (upload.key.startsWith(prefix)) {
+                    uploads.add(MultipartUpload.builder().key(upload.key).uploadId(uploadId).build());
+                }
+            });
+            return ListMultipartUploadsResponse.builder()
+                    .bucket(listMultipartUploadsRequest.bucket())
+                    .uploads(uploads)
+                    .isTruncated(false)
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<CompleteMultipartUploadResponse> completeMultipartUpload(
+            CompleteMultipartUploadRequest completeMultipartUploadRequest) {
+        return serve(0, () -> {
+            MultipartUploadInProgress upload = multipartUploads.remove(completeMultipartUploadRequest.uploadId());
+            if (upload == null) {
+                throw NoSuchUploadException.builder().message("No upload " + completeMultipartUploadRequest.uploadId())
+                        .statusCode(404).build();
+            }
+            String eTag = upload.eTag();
+            objects.put(upload.key, new StoredObject(upload.size(), eTag));
+            return CompleteMultipartUploadResponse.builder()
+                    .bucket(completeMultipartUploadRequest.bucket())
+                    .key(upload.key)
+                    .eTag(eTag)
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<AbortMultipartUploadResponse> abortMultipartUpload(
+            AbortMultipartUploadRequest abortMultipartUploadRequest) {
+        return serve(0, () -> {
+            multipartUploads.remove(abortMultipartUploadRequest.uploadId());
+            return AbortMultipartUploadResponse.builder().build();
+        });
+    }
+
+    @Override
+    public String serviceName() {
+        return "s3";
+    }
+
+    @Override
+    public void close() {
+        network.shutdownNow();
+    }
+
+    // ~~~~ Helpers
+
+    private MultipartUploadInProgress existingUpload(String uploadId) {
+        MultipartUploadInProgress upload = multipartUploads.get(uploadId);
+        if (upload == null) {
+            throw NoSuchUploadException.builder().message("No upload " + uploadId).statusCode(404).build();
+        }
+        return upload;
+    }
+
+    private <T> CompletableFuture<T> serve(long bodyBytes, Supplier<T> handler) {
+        return CompletableFuture.supplyAsync(() -> {
+            requests.incrementAndGet();
+            receivedBytes.addAndGet(bodyBytes);
+            try {
+                Thread.sleep(bodyBytes * 1000 / bandwidthBytesPerSecond);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return handler.get();
+        }, network);
+    }
+
+    private static CompletableFuture<byte[]> readBody(AsyncRequestBody requestBody) {
+        CompletableFuture<byte[]> content = new CompletableFuture<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        requestBody.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer byteBuffer) {
+                byte[] bytes = new byte[byteBuffer.remaining()];
+                byteBuffer.get(bytes);
+                buffer.write(bytes, 0, bytes.length);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                content.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                content.complete(buffer.toByteArray());
+            }
+        });
+        return content;
+    }
+
+    private static byte[] md5(byte[] content) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String eTagOf(byte[] md5) {
+        return "\"" + HexFormat.of().formatHex(md5) + "\"";
+    }
+
+    private static final class StoredObject {
+        private final long size;
+        private final String eTag;
+
+        StoredObject(long size, String eTag) {
+            this.size = size;
+            this.eTag = eTag;
+        }
+    }
+
+    private static final class StoredPart {
+        private final long size;
+        private final byte[] md5;
+
+        StoredPart(long size, byte[] md5) {
+            this.size = size;
+            this.md5 = md5;
+        }
+    }
+
+    private static final class MultipartUploadInProgress {
+        private final String key;
+        private final Map<Integer, StoredPart> parts;
+
+        MultipartUploadInProgress(String key) {
+            this.key = key;
+            this.parts = new ConcurrentHashMap<>();
+        }
+
+        long size() {
+            return parts.values().stream().mapToLong(storedPart -> storedPart.size).sum();
+        }
+
+        String eTag() {
+            // Like S3, the MD5 of the part MD5s and the number of parts
+            ByteArrayOutputStream partMd5s = new ByteArrayOutputStream();
+            new TreeMap<>(parts).values().forEach(storedPart -> partMd5s.write(storedPart.md5, 0, storedPart.md5.length));
+            return "\"" + HexFormat.of().formatHex(md5(partMd5s.toByteArray())) + "-" + parts.size() + "\"";
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package io.accelerate.tracking.app.soak;
+
+import io.accelerate.tracking.app.events.ExternalEventServerThread;
+import io.accelerate.tracking.app.session.TrackingSession;
+import io.accelerate.tracking.app.sourcecode.Workspace;
+import io.accelerate.tracking.app.upload.S3BucketDestination;
+import io.accelerate.tracking.app.upload.UploadScheduler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Runs a full tracking session on a virtual clock, against an edited repo and a local S3 stand-in.
+ * Twelve hours of recording go by in a few minutes, so leaks and slowdowns show up before a candidate meets them.
+ * <p>
+ * Tune with system properties: soak.hours, soak.compression (virtual seconds per real second), soak.seed,
+ * soak.bandwidthKbps and the limits below.
+ */
+public class LongSessionSoakTest {
+    private static final String BUCKET = "soak-bucket";
+    private static final String PREFIX = "soak/";
+    private static final Duration SNAPSHOT_INTERVAL = Duration.ofMinutes(3);
+    private static final Duration SYNC_INTERVAL = Duration.ofMinutes(5);
+    private static final Duration CLOCK_STEP = Duration.ofSeconds(5);
+    private static final Duration SAMPLE_EVERY = Duration.ofMinutes(1);
+    private static final Duration PROGRESS_EVERY = Duration.ofHours(1);
+
+    private final Duration sessionLength = Duration.ofHours(Long.getLong("soak.hours", 12));
+    private final long compression = Long.getLong("soak.compression", 240);
+    private final long seed = Long.getLong("soak.seed", 42);
+    private final long bandwidthBytesPerSecond = Long.getLong("soak.bandwidthKbps", 2048) * 1024;
+    private final long maxPeakRssMb = Long.getLong("soak.maxPeakRssMb", 768);
+    private final long maxRetainedHeapGrowthMb = Long.getLong("soak.maxRetainedHeapGrowthMb", 64);
+    private final double maxGcTimeRatio = Double.parseDouble(System.getProperty("soak.maxGcTimeRatio", "0.05"));
+    private final long maxCaptureP99Millis = Long.getLong("soak.maxCaptureP99Millis", 2000);
+    private final long maxUploadLagMinutes = Long.getLong("soak.maxUploadLagMinutes", 15);
+
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void keepsUpWithALongSession() throws Exception {
+        Path repoFolder = tempFolder.resolve("repo");
+        Path storeFolder = tempFolder.resolve("store");
+
+        LatencyRecorder captureLatencies = new LatencyRecorder();
+        VirtualTimeSource timeSource = new VirtualTimeSource(captureLatencies);
+        SyntheticRepoMutator repoMutator = new SyntheticRepoMutator(repoFolder, timeSource, seed);
+        repoMutator.createInitialContent();
+        LocalS3Client localS3 = new LocalS3Client(bandwidthBytesPerSecond);
+        UploadScheduler uploadScheduler = UploadScheduler.withDefaults();
+
+        TrackingSession trackingSession = new TrackingSession(null,
+                storeFolder.toString(),
+                List.of(Workspace.parse("soak=" + repoFolder)),
+                0,
+                () -> S3BucketDestination.sharingClient(localS3, BUCKET, PREFIX),
+                (statusBoard, progressEventStream) -> new ExternalEventServerThread(
+                        "127.0.0.1", 0, statusBoard, progressEventStream),
+                uploadScheduler);
+        trackingSession.useTimeSource(timeSource);
+        trackingSession.useSyncInterval(SYNC_INTERVAL.dividedBy(compression));
+
+        // Run the session
+        long realStartNanos = System.nanoTime();
+        long gcTimeAtStartMillis = ProcessMetrics.gcTimeMillis();
+        AtomicReference<Exception> sessionFailure = new AtomicReference<>();
+        Thread sessionThread = Thread.ofPlatform().name("Main").start(() -> {
+            try {
+                trackingSession.run();
+            } catch (Exception e) {
+                sessionFailure.set(e);
+            }
+        });
+        repoMutator.start();
+
+        UploadLagTracker uploadLagTracker = new UploadLagTracker();
+        long retainedHeapAtFirstQuarter = -1;
+        long nextSampleNanos = 0;
+        long nextProgressNanos = PROGRESS_EVERY.toNanos();
+        while (timeSource.elapsed().compareTo(sessionLength) < 0 && sessionThread.isAlive()) {
+            tick(timeSource);
+            long virtualNanos = timeSource.currentTimeNano();
+            if (virtualNanos >= nextSampleNanos) {
+                nextSampleNanos += SAMPLE_EVERY.toNanos();
+                uploadLagTracker.sample(virtualNanos, localRecordingBytes(storeFolder),
+                        storedRecordingBytes(storeFolder, localS3));
+                if (retainedHeapAtFirstQuarter < 0 && timeSource.elapsed().compareTo(sessionLength.dividedBy(4)) >= 0) {
+                    System.gc();
+                    retainedHeapAtFirstQuarter = ProcessMetrics.retainedHeapBytes();
+                }
+            }
+            if (virtualNanos >= nextProgressNanos) {
+                // A soak that goes wrong shows it on the way, not only in the final report
+                nextProgressNanos += PROGRESS_EVERY.toNanos();
+                System.out.printf("  %d h: %d captures, upload lag %d min, RSS %d MB%n",
+                        timeSource.elapsed().toHours(), captureLatencies.count(),
+                        uploadLagTracker.currentLag(virtualNanos).toMinutes(),
+                        ProcessMetrics.currentRssBytes() / (1024 * 1024));
+            }
+        }
+
+        // Stop, the clock keeps going until the recorders notice
+        repoMutator.stop();
+        trackingSession.signalStop();
+        while (sessionThread.isAlive()) {
+            tick(timeSource);
+        }
+        uploadScheduler.shutdown();
+        long realElapsedMillis = (System.nanoTime() - realStartNanos) / 1_000_000;
+        long gcTimeMillis = ProcessMetrics.gcTimeMillis() - gcTimeAtStartMillis;
+        System.gc();
+        long retainedHeapAtEnd = ProcessMetrics.retainedHeapBytes();
+        long peakRssBytes = ProcessMetrics.peakRssBytes();
+        long localRecordingBytes = localRecordingBytes(storeFolder);
+        long storedRecordingBytes = storedRecordingBytes(storeFolder, localS3);
+        localS3.close();
+
+        // Report
+        long sessionNanos = sessionLength.toNanos();
+        Duration firstQuarterP95 = captureLatencies.percentileBetween(95, 0, sessionNanos / 4);
+        Duration lastQuarterP95 = captureLatencies.percentileBetween(95, sessionNanos * 3 / 4, Long.MAX_VALUE);
+        System.out.printf("Soak of %s in %d s, %d edits%n", sessionLength, realElapsedMillis / 1000,
+                repoMutator.getEdits());
+        System.out.printf("  captures: %d, p50 %d ms, p95 %d ms, p99 %d ms, p95 first quarter %d ms, last quarter %d ms%n",
+                captureLatencies.count(), captureLatencies.percentile(50).toMillis(),
+                captureLatencies.percentile(95).toMillis(), captureLatencies.percentile(99).toMillis(),
+                firstQuarterP95.toMillis(), lastQuarterP95.toMillis());
+        System.out.printf("  uploads: %d requests, %d bytes received, recordings %d of %d bytes stored, max lag %d min%n",
+                localS3.getRequests(), localS3.getReceivedBytes(), storedRecordingBytes, localRecordingBytes,
+                uploadLagTracker.maxLag().toMinutes());
+        System.out.printf("  memory: peak RSS %d MB, retained heap %d MB at the first quarter, %d MB at the end%n",
+                peakRssBytes / (1024 * 1024), retainedHeapAtFirstQuarter / (1024 * 1024),
+                retainedHeapAtEnd / (1024 * 1024));
+        System.out.printf("  gc: %d ms over %d ms%n", gcTimeMillis, realElapsedMillis);
+
+        // Assert
+        assertThat("the session ran to the end", sessionFailure.get(), is(nullValue()));
+        long expectedCaptures = sessionLength.dividedBy(SNAPSHOT_INTERVAL);
+        assertThat("captures on schedule", (long) captureLatencies.count(), greaterThan(expectedCaptures * 9 / 10));
+        assertThat("capture p99 in ms", captureLatencies.percentile(99).toMillis(), lessThan(maxCaptureP99Millis));
+        assertThat("captures do not slow down, p95 of the last quarter in ms", lastQuarterP95.toMillis(),
+                lessThanOrEqualTo(firstQuarterP95.toMillis() * 3 + 50));
+        assertThat("bytes uploaded", localS3.getReceivedBytes(), greaterThan(0L));
+        assertThat("recordings fully uploaded", storedRecordingBytes, is(localRecordingBytes));
+        assertThat("upload lag in minutes", uploadLagTracker.maxLag().toMinutes(), lessThan(maxUploadLagMinutes));
+        if (peakRssBytes > 0) {
+            assertThat("peak RSS in MB", peakRssBytes / (1024 * 1024), lessThan(maxPeakRssMb));
+        }
+        assertThat("retained heap growth in MB", (retainedHeapAtEnd - retainedHeapAtFirstQuarter) / (1024 * 1024),
+                lessThan(maxRetainedHeapGrowthMb));
+        assertThat("share of the time spent in GC", (double) gcTimeMillis / realElapsedMillis, lessThan(maxGcTimeRatio));
+    }
+
+    //~~~ Helpers
+
+    private void tick(VirtualTimeSource timeSource) throws InterruptedException {
+        Thread.sleep(Math.max(1, CLOCK_STEP.toMillis() / compression));
+        timeSource.advanceBy(CLOCK_STEP);
+    }
+
+    private static long localRecordingBytes(Path storeFolder) throws IOException {
+        long localBytes = 0;
+        for (Path recording : recordings(storeFolder)) {
+            localBytes += Files.size(recording);
+        }
+        return localBytes;
+    }
+
+    private static long storedRecordingBytes(Path storeFolder, LocalS3Client localS3) throws IOException {
+        long storedBytes = 0;
+        for (Path recording : recordings(storeFolder)) {
+            storedBytes += localS3.storedBytes(PREFIX + storeFolder.relativize(recording));
+        }
+        return storedBytes;
+    }
+
+    private static List<Path> recordings(Path storeFolder) throws IOException {
+        if (!Files.exists(storeFolder)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.walk(storeFolder)) {
+            return paths.filter(path -> path.toString().endsWith(".srcs")).toList();
+        }
+    }
+}
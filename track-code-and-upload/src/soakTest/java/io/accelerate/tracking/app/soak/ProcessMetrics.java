@@ -0,0 +1,70 @@
+package io.accelerate.tracking.app.soak;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The resource use of the test process, which is the resource use of the app under test
+ */
+final class ProcessMetrics {
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    private ProcessMetrics() {
+    }
+
+    /**
+     * @return -1 where the platform does not tell
+     */
+    static long peakRssBytes() {
+        return procStatusBytes("VmHWM:");
+    }
+
+    /**
+     * @return -1 where the platform does not tell
+     */
+    static long currentRssBytes() {
+        return procStatusBytes("VmRSS:");
+    }
+
+    static long gcTimeMillis() {
+        long gcTimeMillis = 0;
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcTimeMillis += Math.max(0, garbageCollector.getCollectionTime());
+        }
+        return gcTimeMillis;
+    }
+
+    /**
+     * The heap still in use after the last collection, what keeps growing when something leaks
+     */
+    static long retainedHeapBytes() {
+        long retainedBytes = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage collectionUsage = memoryPool.getCollectionUsage();
+            if (memoryPool.getType() == MemoryType.HEAP && collectionUsage != null) {
+                retainedBytes += collectionUsage.getUsed();
+            }
+        }
+        return retainedBytes;
+    }
+
+    private static long procStatusBytes(String field) {
+        try {
+            for (String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith(field)) {
+                    return Long.parseLong(line.substring(field.length()).replace("kB", "").trim()) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not on Linux
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,177 @@
+package io.accelerate.tracking.app.soak;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Edits a source tree the way a candidate would, on the virtual clock.
+ * <p>
+ * Work comes in blocks of about 50 minutes with a 10 minute break in between.
+ * While working, a file or three are changed every 15 to 90 seconds. Most edits touch a line or two,
+ * some add or delete a file, and about every two hours a refactoring touches a large part of the tree.
+ * The edits come from a seeded random, so a run can be replayed.
+ */
+class SyntheticRepoMutator {
+    private static final int INITIAL_FILES = 40;
+    private static final int INITIAL_LINES_PER_FILE = 80;
+    private static final Duration WORK_BLOCK = Duration.ofMinutes(50);
+    private static final Duration BREAK = Duration.ofMinutes(10);
+    private static final Duration REFACTORING_EVERY = Duration.ofHours(2);
+
+    private final Path repoFolder;
+    private final VirtualTimeSource timeSource;
+    private final Random random;
+    private volatile boolean running;
+    private volatile int edits;
+    private Thread thread;
+    private int nextFileNumber;
+
+    SyntheticRepoMutator(Path repoFolder, VirtualTimeSource timeSource, long seed) {
+        this.repoFolder = repoFolder;
+        this.timeSource = timeSource;
+        this.random = new Random(seed);
+        this.nextFileNumber = 0;
+    }
+
+    void createInitialContent() throws IOException {
+        for (int i = 0; i < INITIAL_FILES; i++) {
+            addFile();
+        }
+    }
+
+    void start() {
+        running = true;
+        thread = Thread.ofPlatform().name("RepoMutator").daemon(true).start(this::editUntilStopped);
+    }
+
+    void stop() throws InterruptedException {
+        running = false;
+        thread.interrupt();
+        thread.join();
+    }
+
+    int getEdits() {
+        return edits;
+    }
+
+    private void editUntilStopped() {
+        long nextEditNanos = 0;
+        long nextRefactoringNanos = REFACTORING_EVERY.toNanos();
+        try {
+            while (running) {
+                nextEditNanos = skipBreaks(nextEditNanos + secondsBetween(15, 90));
+                timeSource.sleepUntil(nextEditNanos);
+                if (nextEditNanos >= nextRefactoringNanos) {
+                    refactor();
+                    nextRefactoringNanos += REFACTORING_EVERY.toNanos();
+                } else {
+                    edit();
+                }
+                edits++;
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long skipBreaks(long editNanos) {
+        long cycleNanos = WORK_BLOCK.toNanos() + BREAK.toNanos();
+        long positionInCycle = editNanos % cycleNanos;
+        if (positionInCycle >= WORK_BLOCK.toNanos()) {
+            return editNanos - positionInCycle + cycleNanos;
+        }
+        return editNanos;
+    }
+
+    private long secondsBetween(int min, int max) {
+        return Duration.ofSeconds(min + random.nextInt(max - min + 1)).toNanos();
+    }
+
+    // ~~~~ The edits
+
+    private void edit() throws IOException {
+        int roll = random.nextInt(100);
+        if (roll < 80) {
+            int filesToChange = 1 + random.nextInt(3);
+            for (int i = 0; i < filesToChange; i++) {
+                changeLines(randomFile());
+            }
+        } else if (roll < 92) {
+            addFile();
+        } else {
+            deleteFile();
+        }
+    }
+
+    private void refactor() throws IOException {
+        List<Path> files = sourceFiles();
+        for (Path file : files) {
+            if (random.nextInt(3) == 0) {
+                changeLines(file);
+            }
+        }
+    }
+
+    private void changeLines(Path file) throws IOException {
+        List<String> lines = new ArrayList<>(Files.readAllLines(file));
+        int linesToChange = 1 + random.nextInt(2);
+        for (int i = 0; i < linesToChange; i++) {
+            int lineIndex = 2 + random.nextInt(Math.max(1, lines.size() - 3));
+            if (random.nextBoolean()) {
+                lines.set(lineIndex, randomStatement());
+            } else {
+                lines.add(lineIndex, randomStatement());
+            }
+        }
+        Files.write(file, lines);
+    }
+
+    private void addFile() throws IOException {
+        int fileNumber = nextFileNumber++;
+        Path packageFolder = repoFolder.resolve("src/main/java/module" + (fileNumber % 5));
+        Files.createDirectories(packageFolder);
+        List<String> lines = new ArrayList<>();
+        lines.add("package module" + (fileNumber % 5) + ";");
+        lines.add("public class Type" + fileNumber + " {");
+        for (int i = 0; i < INITIAL_LINES_PER_FILE; i++) {
+            lines.add(randomStatement());
+        }
+        lines.add("}");
+        Files.write(packageFolder.resolve("Type" + fileNumber + ".java"), lines);
+    }
+
+    private void deleteFile() throws IOException {
+        List<Path> files = sourceFiles();
+        if (files.size() > INITIAL_FILES / 2) {
+            Files.delete(files.get(random.nextInt(files.size())));
+        }
+    }
+
+    private Path randomFile() throws IOException {
+        List<Path> files = sourceFiles();
+        return files.get(random.nextInt(files.size()));
+    }
+
+    private List<Path> sourceFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(repoFolder)) {
+            return paths.filter(path -> path.toString().endsWith(".java"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private String randomStatement() {
+        return String.format("    int value%d = compute(%d, \"%s\");", random.nextInt(10_000),
+                random.nextInt(1_000), Long.toHexString(random.nextLong()));
+    }
+}
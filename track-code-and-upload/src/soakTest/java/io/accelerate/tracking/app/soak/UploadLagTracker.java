@@ -0,0 +1,40 @@
+package io.accelerate.tracking.app.soak;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * How long the bytes written to the store wait before the destination holds them, in virtual time
+ */
+class UploadLagTracker {
+    private final Deque<long[]> waitingGrowths;
+    private long maxLagNanos;
+
+    UploadLagTracker() {
+        this.waitingGrowths = new ArrayDeque<>();
+        this.maxLagNanos = 0;
+    }
+
+    void sample(long virtualNanos, long localBytes, long storedBytes) {
+        long[] latestGrowth = waitingGrowths.peekLast();
+        if (localBytes > storedBytes && (latestGrowth == null || localBytes > latestGrowth[1])) {
+            waitingGrowths.addLast(new long[]{virtualNanos, localBytes});
+        }
+        while (!waitingGrowths.isEmpty() && waitingGrowths.peekFirst()[1] <= storedBytes) {
+            maxLagNanos = Math.max(maxLagNanos, virtualNanos - waitingGrowths.pollFirst()[0]);
+        }
+    }
+
+    Duration maxLag() {
+        return Duration.ofNanos(maxLagNanos);
+    }
+
+    /**
+     * @return zero when the destination is up to date
+     */
+    Duration currentLag(long virtualNanos) {
+        long[] oldestGrowth = waitingGrowths.peekFirst();
+        return oldestGrowth != null ? Duration.ofNanos(virtualNanos - oldestGrowth[0]) : Duration.ZERO;
+    }
+}
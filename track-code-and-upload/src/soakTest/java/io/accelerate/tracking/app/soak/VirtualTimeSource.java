@@ -0,0 +1,79 @@
+package io.accelerate.tracking.app.soak;
+
+import io.accelerate.tracking.code.time.TimeSource;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A clock that only moves when told to. The sleepers wake up as soon as the virtual time passes their mark.
+ * <p>
+ * Also measures how long each sleeper works between two sleeps, in real time.
+ * For the recorder, that is the time taken by a capture.
+ */
+class VirtualTimeSource implements TimeSource {
+    private final Lock lock;
+    private final Condition timeMoved;
+    private final LatencyRecorder workLatencies;
+    private final ThreadLocal<Long> wokenUpAtRealNanos;
+    private long virtualNanos;
+
+    VirtualTimeSource(LatencyRecorder workLatencies) {
+        this.lock = new ReentrantLock();
+        this.timeMoved = lock.newCondition();
+        this.workLatencies = workLatencies;
+        this.wokenUpAtRealNanos = new ThreadLocal<>();
+        this.virtualNanos = 0;
+    }
+
+    @Override
+    public long currentTimeNano() {
+        lock.lock();
+        try {
+            return virtualNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void wakeUpAt(long timeMark, TimeUnit timeUnit) throws InterruptedException {
+        Long wokenUpAt = wokenUpAtRealNanos.get();
+        if (wokenUpAt != null) {
+            workLatencies.record(currentTimeNano(), System.nanoTime() - wokenUpAt);
+        }
+        sleepUntil(timeUnit.toNanos(timeMark));
+        wokenUpAtRealNanos.set(System.nanoTime());
+    }
+
+    /**
+     * Sleep without being measured, for the actors of the test itself
+     */
+    void sleepUntil(long markNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            while (virtualNanos < markNanos) {
+                timeMoved.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void advanceBy(Duration duration) {
+        lock.lock();
+        try {
+            virtualNanos += duration.toNanos();
+            timeMoved.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Duration elapsed() {
+        return Duration.ofNanos(currentTimeNano());
+    }
+}
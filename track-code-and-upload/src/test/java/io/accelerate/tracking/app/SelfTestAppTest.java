@@ -0,0 +1,51 @@
+package io.accelerate.tracking.app;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.startsWith;
+
+/**
+ * Runs the self test against a local stand-in for S3.
+ * Also part of the native test run, together with the tracking session of {@link TrackCodeAndUploadAppTest}.
+ */
+public class SelfTestAppTest {
+    private HttpServer localS3;
+    private List<String> receivedRequests;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        receivedRequests = new CopyOnWriteArrayList<>();
+        localS3 = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        localS3.createContext("/", exchange -> {
+            receivedRequests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath());
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        localS3.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        localS3.stop(0);
+    }
+
+    @Test
+    public void probesTheBucketOfTheLocalStandIn() {
+        TrackCodeAndUploadApp.main(new String[]{
+                "self-test",
+                "--minimum-required-diskspace-gb", "0",
+                "--s3-endpoint", "http://127.0.0.1:" + localS3.getAddress().getPort()
+        });
+
+        assertThat("probes the test bucket", receivedRequests, contains(startsWith("HEAD /ping.s3.accelerate.io")));
+    }
+}
@@ -104,7 +104,9 @@ public class TrackCodeAndUploadAppTest {
         Thread.sleep(secondsToMillis(secondsToInitialize));
 
         // Check if server is running
-        assertThat(appThread.getStatus(), is("OK\n"));
+        String status = appThread.getStatus();
+        assertThat("reports the source code subject", status, containsString("\"sourcecode\":{\"isActive\":true"));
+        assertThat("reports the upload subject", status, containsString("\"backlogFiles\""));
 
         // Send some notifications
         appThread.sendNotify("TheExternalTag");
@@ -0,0 +1,81 @@
+package io.accelerate.tracking.app.events;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class EventJournalTest {
+
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void cursorsReadTheEventsInOrderAtTheirOwnPace() throws Exception {
+        EventJournal eventJournal = new EventJournal(tempFolder.resolve("events.journal"));
+        EventJournal.Cursor fastCursor = eventJournal.newCursor();
+        EventJournal.Cursor slowCursor = eventJournal.newCursor();
+
+        eventJournal.append("tag1");
+        eventJournal.append("tag2");
+
+        assertThat(readAll(fastCursor), contains("tag1", "tag2"));
+        assertThat(slowCursor.peek(), is("tag1"));
+        assertThat("peek does not move the cursor", slowCursor.peek(), is("tag1"));
+
+        eventJournal.append("tag3");
+        assertThat(readAll(slowCursor), contains("tag1", "tag2", "tag3"));
+        assertThat(readAll(fastCursor), contains("tag3"));
+        eventJournal.close();
+    }
+
+    @Test
+    public void recordsKeepTheirTargetWorkspace() throws Exception {
+        EventJournal eventJournal = new EventJournal(tempFolder.resolve("events.journal"));
+        eventJournal.append("backend", "tag1");
+        eventJournal.append("tag2");
+
+        EventJournal.Cursor cursor = eventJournal.newCursor();
+        assertThat(cursor.peekTarget(), is("backend"));
+        assertThat(cursor.peek(), is("tag1"));
+        cursor.advance();
+        assertThat("untargeted events go to all workspaces", cursor.peekTarget(), is(""));
+        assertThat(cursor.peek(), is("tag2"));
+        eventJournal.close();
+    }
+
+    @Test
+    public void growsBeyondTheInitialMappingAndTrimsOnClose() throws Exception {
+        Path journalFile = tempFolder.resolve("events.journal");
+        EventJournal eventJournal = new EventJournal(journalFile);
+        String payload = "x".repeat(1000);
+        for (int i = 0; i < 200; i++) {
+            eventJournal.append(payload);
+        }
+
+        assertThat("lock is held while open", Files.exists(Path.of(journalFile + ".lock")), is(true));
+        assertThat(readAll(eventJournal.newCursor()).size(), is(200));
+
+        eventJournal.close();
+        assertThat("lock is released", Files.exists(Path.of(journalFile + ".lock")), is(false));
+        assertThat("file only holds the records", Files.size(journalFile), is(200L * (2 * Integer.BYTES + 1000)));
+    }
+
+    //~~~ Helpers
+
+    private static List<String> readAll(EventJournal.Cursor cursor) {
+        List<String> payloads = new ArrayList<>();
+        while (cursor.hasNext()) {
+            payloads.add(cursor.peek());
+            cursor.advance();
+        }
+        return payloads;
+    }
+}
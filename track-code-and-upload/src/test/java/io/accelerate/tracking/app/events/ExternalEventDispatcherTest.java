@@ -0,0 +1,161 @@
+package io.accelerate.tracking.app.events;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class ExternalEventDispatcherTest {
+    private static final Duration LISTENER_TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    public void retriesAFailingListenerUntilItTakesTheEvent() throws Exception {
+        ExternalEventDispatcher dispatcher = ExternalEventDispatcher.inMemory("notify", LISTENER_TIMEOUT);
+        AtomicInteger calls = new AtomicInteger();
+        List<String> received = new CopyOnWriteArrayList<>();
+        dispatcher.addListener("flaky", eventPayload -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IOException("not yet");
+            }
+            received.add(eventPayload);
+        });
+
+        dispatcher.onExternalEvent("tag1");
+        stopAndJoin(dispatcher);
+
+        assertThat(received, contains("tag1"));
+        assertThat(report(dispatcher).get("flaky.delivered"), is(1L));
+        assertThat(report(dispatcher).get("flaky.failed"), is(0L));
+    }
+
+    @Test
+    public void givesUpAfterTheLastAttempt() throws Exception {
+        ExternalEventDispatcher dispatcher = ExternalEventDispatcher.inMemory("notify", LISTENER_TIMEOUT);
+        AtomicInteger calls = new AtomicInteger();
+        dispatcher.addListener("broken", eventPayload -> {
+            calls.incrementAndGet();
+            throw new IOException("always");
+        });
+
+        dispatcher.onExternalEvent("tag1");
+        stopAndJoin(dispatcher);
+
+        assertThat(calls.get(), is(3));
+        assertThat(report(dispatcher).get("broken.failed"), is(1L));
+        assertThat(report(dispatcher).get("broken.pending"), is(false));
+    }
+
+    @Test
+    public void doesNotRetryAListenerThatTimedOut() throws Exception {
+        ExternalEventDispatcher dispatcher = ExternalEventDispatcher.inMemory("notify", Duration.ofMillis(100));
+        AtomicInteger calls = new AtomicInteger();
+        dispatcher.addListener("slow", eventPayload -> {
+            calls.incrementAndGet();
+            Thread.sleep(1_000);
+        });
+
+        dispatcher.onExternalEvent("tag1");
+        stopAndJoin(dispatcher);
+
+        assertThat("the call might still land", calls.get(), is(1));
+        assertThat(report(dispatcher).get("slow.timedOut"), is(1L));
+    }
+
+    @Test
+    public void dropsTheEventsAListenerHasNoRoomFor() throws Exception {
+        ExternalEventDispatcher dispatcher = ExternalEventDispatcher.inMemory("notify", LISTENER_TIMEOUT);
+        CountDownLatch listenerEntered = new CountDownLatch(1);
+        CountDownLatch releaseListener = new CountDownLatch(1);
+        List<String> fastReceived = new CopyOnWriteArrayList<>();
+        dispatcher.addListener("stuck", eventPayload -> {
+            listenerEntered.countDown();
+            releaseListener.await();
+        });
+        dispatcher.addListener("fast", fastReceived::add);
+
+        dispatcher.onExternalEvent("first");
+        assertThat(listenerEntered.await(5, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < 65; i++) {
+            dispatcher.onExternalEvent("tag" + i);
+        }
+        releaseListener.countDown();
+        stopAndJoin(dispatcher);
+
+        assertThat(report(dispatcher).get("stuck.dropped"), is(1L));
+        assertThat(report(dispatcher).get("stuck.delivered"), is(65L));
+        assertThat("the other listener is not held back", fastReceived.size(), is(66));
+    }
+
+    @Test
+    public void deliversAWorkspaceEventToThatWorkspaceOnly() throws Exception {
+        ExternalEventDispatcher dispatcher = ExternalEventDispatcher.inMemory("stopDispatch", LISTENER_TIMEOUT);
+        List<String> stopped = new CopyOnWriteArrayList<>();
+        dispatcher.addListener("sourcecode.api", "api", eventPayload -> stopped.add("api"));
+        dispatcher.addListener("sourcecode.web", "web", eventPayload -> stopped.add("web"));
+
+        dispatcher.onExternalEvent("web", "");
+        stopAndJoin(dispatcher);
+
+        assertThat(stopped, contains("web"));
+    }
+
+    @Test
+    public void rejectsAnUnknownWorkspace() throws Exception {
+        ExternalEventDispatcher dispatcher = ExternalEventDispatcher.inMemory("stopDispatch", LISTENER_TIMEOUT);
+        dispatcher.addListener("sourcecode.api", "api", eventPayload -> {});
+
+        try {
+            dispatcher.onExternalEvent("unknown", "");
+            throw new AssertionError("Expected the workspace to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Unknown workspace: unknown"));
+        } finally {
+            stopAndJoin(dispatcher);
+        }
+    }
+
+    // ~~~~ Helpers
+
+    private static void stopAndJoin(ExternalEventDispatcher dispatcher) throws InterruptedException {
+        dispatcher.signalStop();
+        dispatcher.join();
+    }
+
+    private static Map<String, Object> report(ExternalEventDispatcher dispatcher) {
+        Map<String, Object> values = new HashMap<>();
+        dispatcher.reportStatus(new StatusSection() {
+            @Override
+            public void put(String key, boolean value) {
+                values.put(key, value);
+            }
+
+            @Override
+            public void put(String key, long value) {
+                values.put(key, value);
+            }
+
+            @Override
+            public void put(String key, double value) {
+                values.put(key, value);
+            }
+
+            @Override
+            public void put(String key, String value) {
+                values.put(key, value);
+            }
+        });
+        return values;
+    }
+}
@@ -0,0 +1,226 @@
+package io.accelerate.tracking.app.events;
+
+import com.sun.net.httpserver.HttpServer;
+import io.accelerate.tracking.app.logging.SessionLogContext;
+import io.accelerate.tracking.app.status.StatusBoard;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class ExternalEventServerThreadTest {
+
+    @Test
+    public void joinsWhenStoppedBeforeStarting() throws Exception {
+        ExternalEventServerThread externalEventServerThread = new ExternalEventServerThread("127.0.0.1", 0,
+                new StatusBoard(), new ProgressEventStream());
+
+        externalEventServerThread.signalStop();
+        externalEventServerThread.start();
+
+        joinWithin5Seconds(externalEventServerThread);
+        assertThat("not started after the stop", externalEventServerThread.isAlive(), is(false));
+    }
+
+    @Test
+    public void holdsNoPortWhenStoppedBeforeStarting() throws Exception {
+        int port = freePort();
+        ExternalEventServerThread externalEventServerThread = new ExternalEventServerThread("127.0.0.1", port,
+                new StatusBoard(), new ProgressEventStream());
+
+        externalEventServerThread.signalStop();
+        joinWithin5Seconds(externalEventServerThread);
+
+        try (ServerSocket ignored = new ServerSocket(port, 0, InetAddress.getByName("127.0.0.1"))) {
+            // Nobody holds the port
+        }
+    }
+
+    @Test
+    public void joinsOnceStopped() throws Exception {
+        ExternalEventServerThread externalEventServerThread = new ExternalEventServerThread("127.0.0.1", 0,
+                new StatusBoard(), new ProgressEventStream());
+
+        externalEventServerThread.start();
+        assertThat(externalEventServerThread.isAlive(), is(true));
+        externalEventServerThread.signalStop();
+
+        joinWithin5Seconds(externalEventServerThread);
+    }
+
+    @Test
+    public void freesTheMountPathWhenStoppedBeforeStarting() throws Exception {
+        HttpServer controlServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        try {
+            ExternalEventServerThread mounted = ExternalEventServerThread.mountedOn(controlServer, "/sessions/s1", "s1",
+                    new StatusBoard(), new ProgressEventStream());
+            mounted.signalStop();
+            joinWithin5Seconds(mounted);
+
+            // Would fail on a context left behind
+            ExternalEventServerThread.mountedOn(controlServer, "/sessions/s1", "s1",
+                    new StatusBoard(), new ProgressEventStream());
+        } finally {
+            controlServer.stop(0);
+        }
+    }
+
+    @Test
+    public void stopsASingleWorkspaceAndRejectsAnUnknownOne() throws Exception {
+        HttpServer controlServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        controlServer.start();
+        ExternalEventDispatcher stopDispatcher = ExternalEventDispatcher.inMemory("stopDispatch",
+                Duration.ofSeconds(5));
+        try {
+            ExternalEventServerThread mounted = ExternalEventServerThread.mountedOn(controlServer, "/sessions/s1", "s1",
+                    new StatusBoard(), new ProgressEventStream());
+            List<String> stopped = new CopyOnWriteArrayList<>();
+            stopDispatcher.addListener("sourcecode.api", "api", eventPayload -> stopped.add("api"));
+            stopDispatcher.addListener("sourcecode.web", "web", eventPayload -> stopped.add("web"));
+            mounted.addStopListener(stopDispatcher);
+            mounted.start();
+            String stopUrl = "http://127.0.0.1:" + controlServer.getAddress().getPort() + "/sessions/s1/stop";
+
+            assertThat(post(stopUrl + "?workspace=api").statusCode(), is(200));
+            HttpResponse<String> unknownWorkspace = post(stopUrl + "?workspace=unknown");
+            assertThat(unknownWorkspace.statusCode(), is(400));
+            assertThat(unknownWorkspace.body(), is("Unknown workspace: unknown\n"));
+
+            stopDispatcher.signalStop();
+            stopDispatcher.join();
+            assertThat(stopped, contains("api"));
+            mounted.signalStop();
+            joinWithin5Seconds(mounted);
+        } finally {
+            controlServer.stop(0);
+        }
+    }
+
+    @Test
+    public void handlesTheRequestsOfAMountedSessionInItsLoggingContext() throws Exception {
+        HttpServer controlServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        controlServer.start();
+        try {
+            ExternalEventServerThread mounted = ExternalEventServerThread.mountedOn(controlServer, "/sessions/s1", "s1",
+                    new StatusBoard(), new ProgressEventStream());
+            List<String> sessionIds = new CopyOnWriteArrayList<>();
+            mounted.addNotifyListener(eventPayload -> sessionIds.add(SessionLogContext.currentSessionId()));
+            mounted.start();
+
+            post("http://127.0.0.1:" + controlServer.getAddress().getPort() + "/sessions/s1/notify");
+
+            assertThat(sessionIds, contains("s1"));
+            mounted.signalStop();
+            joinWithin5Seconds(mounted);
+        } finally {
+            controlServer.stop(0);
+        }
+    }
+
+    @Test
+    public void tagsNothingForASnapshotOfAnUnknownWorkspace() throws Exception {
+        HttpServer controlServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        controlServer.start();
+        try {
+            ExternalEventServerThread mounted = ExternalEventServerThread.mountedOn(controlServer, "/sessions/s1", "s1",
+                    new StatusBoard(), new ProgressEventStream());
+            List<String> tags = new CopyOnWriteArrayList<>();
+            mounted.addNotifyListener(tags::add);
+            mounted.useSnapshotListener(new SnapshotRequestListener() {
+                @Override
+                public boolean isTracked(String workspace) {
+                    return "api".equals(workspace);
+                }
+
+                @Override
+                public CompletableFuture<List<String>> onSnapshotRequest(String workspace) {
+                    return CompletableFuture.completedFuture(List.of("sourcecode_api.srcs#1"));
+                }
+            });
+            mounted.start();
+            String snapshotUrl = "http://127.0.0.1:" + controlServer.getAddress().getPort() + "/sessions/s1/snapshot";
+
+            HttpResponse<String> unknownWorkspace = post(snapshotUrl + "?workspace=unknown", "tests green");
+
+            assertThat(unknownWorkspace.statusCode(), is(400));
+            assertThat(unknownWorkspace.body(), is("Unknown workspace: unknown\n"));
+            assertThat(tags, is(List.of()));
+            mounted.signalStop();
+            joinWithin5Seconds(mounted);
+        } finally {
+            controlServer.stop(0);
+        }
+    }
+
+    @Test
+    public void sendsAnEmptyAnswerWithALengthRatherThanChunked() throws Exception {
+        HttpServer controlServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        controlServer.start();
+        try {
+            ExternalEventServerThread mounted = ExternalEventServerThread.mountedOn(controlServer, "/sessions/s1", "s1",
+                    new StatusBoard(), new ProgressEventStream());
+            mounted.start();
+
+            HttpResponse<String> wrongMethod;
+            try (HttpClient httpClient = HttpClient.newHttpClient()) {
+                wrongMethod = httpClient.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:"
+                                + controlServer.getAddress().getPort() + "/sessions/s1/notify")).GET().build(),
+                        HttpResponse.BodyHandlers.ofString());
+            }
+
+            assertThat(wrongMethod.statusCode(), is(405));
+            assertThat(wrongMethod.headers().firstValue("Content-Length"), is(Optional.of("0")));
+            assertThat(wrongMethod.headers().firstValue("Transfer-Encoding"), is(Optional.empty()));
+            mounted.signalStop();
+            joinWithin5Seconds(mounted);
+        } finally {
+            controlServer.stop(0);
+        }
+    }
+
+    // ~~~~ Helpers
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"))) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static HttpResponse<String> post(String url) throws Exception {
+        return post(url, "");
+    }
+
+    private static HttpResponse<String> post(String url, String body) throws Exception {
+        try (HttpClient httpClient = HttpClient.newHttpClient()) {
+            return httpClient.send(HttpRequest.newBuilder(URI.create(url))
+                    .POST(body.isEmpty() ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    private static void joinWithin5Seconds(ExternalEventServerThread externalEventServerThread) throws Exception {
+        CompletableFuture.runAsync(() -> {
+            try {
+                externalEventServerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,55 @@
+package io.accelerate.tracking.app.events;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class ProgressEventStreamTest {
+
+    @Test
+    public void everySubscriberGetsTheSameEncodedEvent() throws Exception {
+        ProgressEventStream progressEventStream = new ProgressEventStream();
+        ProgressEventStream.Subscriber first = progressEventStream.subscribe();
+        ProgressEventStream.Subscriber second = progressEventStream.subscribe();
+
+        progressEventStream.publish("snapshotTaken", "{\"snapshot\":0}");
+
+        ProgressEvent firstEvent = first.next(1, TimeUnit.SECONDS);
+        assertThat(second.next(1, TimeUnit.SECONDS), is(sameInstance(firstEvent)));
+        assertThat(new String(firstEvent.getFrame(), StandardCharsets.UTF_8),
+                is("event: snapshotTaken\ndata: {\"snapshot\":0}\n\n"));
+    }
+
+    @Test
+    public void dropsTheSubscriberThatFallsBehind() throws Exception {
+        ProgressEventStream progressEventStream = new ProgressEventStream();
+        ProgressEventStream.Subscriber slow = progressEventStream.subscribe();
+        ProgressEventStream.Subscriber keepingUp = progressEventStream.subscribe();
+
+        for (int i = 0; i < 300; i++) {
+            progressEventStream.publish("fileClosed", "{}");
+            assertThat(keepingUp.next(1, TimeUnit.SECONDS).getType(), is("fileClosed"));
+        }
+
+        assertThat(slow.isClosed(), is(true));
+        assertThat("the end of the stream is not an event", slow.next(1, TimeUnit.SECONDS), is(nullValue()));
+        assertThat(keepingUp.isClosed(), is(false));
+    }
+
+    @Test
+    public void closingAllEndsEveryStream() throws Exception {
+        ProgressEventStream progressEventStream = new ProgressEventStream();
+        ProgressEventStream.Subscriber subscriber = progressEventStream.subscribe();
+
+        progressEventStream.closeAll();
+
+        assertThat(subscriber.isClosed(), is(true));
+        assertThat(subscriber.next(1, TimeUnit.SECONDS), is(nullValue()));
+    }
+}
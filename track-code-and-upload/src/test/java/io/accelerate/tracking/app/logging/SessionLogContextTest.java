@@ -0,0 +1,46 @@
+package io.accelerate.tracking.app.logging;
+
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SessionLogContextTest {
+
+    @Test
+    public void theThreadsStartedBySessionWorkForIt() throws Exception {
+        AtomicReference<String> seenByChild = new AtomicReference<>();
+        SessionLogContext.enter("alice");
+        try {
+            Thread child = Thread.ofVirtual().start(() -> seenByChild.set(SessionLogContext.currentSessionId()));
+            child.join();
+        } finally {
+            SessionLogContext.leave();
+        }
+
+        assertThat(seenByChild.get(), is("alice"));
+        assertThat(SessionLogContext.currentSessionId(), is(nullValue()));
+    }
+
+    @Test
+    public void theFilterOnlyLetsThroughItsSession() {
+        SessionLogFilter sessionLogFilter = new SessionLogFilter("alice");
+
+        SessionLogContext.enter("bob");
+        try {
+            assertThat(sessionLogFilter.decide(null), is(FilterReply.DENY));
+        } finally {
+            SessionLogContext.leave();
+        }
+        SessionLogContext.enter("alice");
+        try {
+            assertThat(sessionLogFilter.decide(null), is(FilterReply.NEUTRAL));
+        } finally {
+            SessionLogContext.leave();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.accelerate.tracking.app.metrics;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import io.accelerate.tracking.app.status.StatusSnapshot;
+import io.accelerate.tracking.app.tasks.MonitoredSubject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class MetricsRecorderTest {
+    private static final long MINUTE_MILLIS = 60_000;
+
+    @TempDir
+    Path store;
+
+    @Test
+    public void keepsTheRecentSamplesAndTheAveragesPerMinute() throws Exception {
+        FakeSubject upload = new FakeSubject("upload");
+        Path metricsFile = store.resolve("metrics_20240101T090000" + MetricsFile.EXTENSION);
+        MetricsRecorder metricsRecorder = new MetricsRecorder(metricsFile);
+
+        long start = 10 * MINUTE_MILLIS;
+        upload.bytes = 100;
+        statusTick(start, upload, metricsRecorder);
+        upload.bytes = 300;
+        statusTick(start + 30_000, upload, metricsRecorder);
+        upload.bytes = 1000;
+        statusTick(start + MINUTE_MILLIS, upload, metricsRecorder);
+        metricsRecorder.save();
+
+        assertThat("one report per tick, for the status and the metrics", upload.reports, is(3));
+
+        MetricsFile sessionMetrics = MetricsFile.read(metricsFile);
+        assertThat(sessionMetrics.getColumnNames(), is(List.of("upload.isActive", "upload.bytes")));
+        MetricsFile.Tier recent = sessionMetrics.getTiers().get(0);
+        assertThat(recent.getRowCount(), is(3));
+        assertThat(recent.getValue(1, 2), is(1000.0));
+        MetricsFile.Tier downsampled = sessionMetrics.getTiers().get(1);
+        assertThat("the minute in progress is not closed yet", downsampled.getRowCount(), is(1));
+        assertThat(downsampled.getTimestampMillis(0), is(start));
+        assertThat(downsampled.getValue(1, 0), is(200.0));
+    }
+
+    @Test
+    public void exportsToCsv() throws Exception {
+        FakeSubject upload = new FakeSubject("upload");
+        Path metricsFile = store.resolve("metrics_20240101T090000" + MetricsFile.EXTENSION);
+        MetricsRecorder metricsRecorder = new MetricsRecorder(metricsFile);
+
+        upload.bytes = 42;
+        statusTick(MINUTE_MILLIS, upload, metricsRecorder);
+        metricsRecorder.stop();
+
+        StringBuilder csv = new StringBuilder();
+        MetricsFile.read(metricsFile).writeCsv(csv);
+        assertThat(csv.toString(), is("resolutionMillis,timestampMillis,upload.isActive,upload.bytes\n"
+                + "3000,60000,1,42\n"
+                + "60000,60000,1,42\n"));
+    }
+
+    @Test
+    public void holdsTheLockUntilStopped() throws Exception {
+        Path metricsFile = store.resolve("metrics_20240101T090000" + MetricsFile.EXTENSION);
+        Path lockFile = Path.of(metricsFile + ".lock");
+
+        MetricsRecorder metricsRecorder = new MetricsRecorder(metricsFile);
+        assertThat("the upload keeps picking up the saves", Files.exists(lockFile), is(true));
+
+        metricsRecorder.stop();
+        assertThat(Files.exists(lockFile), is(false));
+        assertThat(Files.exists(metricsFile), is(true));
+    }
+
+    // ~~~~ Helpers
+
+    private static void statusTick(long nowMillis, FakeSubject subject, MetricsRecorder metricsRecorder) {
+        StatusSnapshot.capture(0, nowMillis, List.of(subject), metricsRecorder);
+    }
+
+    private static class FakeSubject implements MonitoredSubject {
+        private final String statusKey;
+        private long bytes;
+        private int reports;
+
+        FakeSubject(String statusKey) {
+            this.statusKey = statusKey;
+        }
+
+        @Override
+        public String getStatusKey() {
+            return statusKey;
+        }
+
+        @Override
+        public boolean isActive() {
+            return true;
+        }
+
+        @Override
+        public void displayErrors(Logger log) {
+        }
+
+        @Override
+        public void displayMetrics(StringBuilder displayBuffer) {
+        }
+
+        @Override
+        public void reportStatus(StatusSection statusSection) {
+            reports++;
+            statusSection.put("bytes", bytes);
+            statusSection.put("phase", "uploading");
+        }
+    }
+}
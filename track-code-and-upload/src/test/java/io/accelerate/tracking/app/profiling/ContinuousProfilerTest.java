@@ -0,0 +1,45 @@
+package io.accelerate.tracking.app.profiling;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+
+public class ContinuousProfilerTest {
+
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void savesTheAppEventsToTheStoreWhenStopped() throws Exception {
+        ContinuousProfiler continuousProfiler = new ContinuousProfiler(tempFolder);
+        continuousProfiler.start();
+
+        NotifyDispatchEvent notifyDispatchEvent = new NotifyDispatchEvent();
+        notifyDispatchEvent.begin();
+        notifyDispatchEvent.listener = "sourcecode";
+        notifyDispatchEvent.outcome = "delivered";
+        notifyDispatchEvent.commit();
+        continuousProfiler.stop();
+
+        List<Path> chunks;
+        try (Stream<Path> files = Files.list(tempFolder)) {
+            chunks = files.toList();
+        }
+        assertThat("only complete chunks are left", chunks, hasSize(1));
+        List<String> eventNames = RecordingFile.readAllEvents(chunks.get(0)).stream()
+                .map(RecordedEvent::getEventType)
+                .map(eventType -> eventType.getName())
+                .toList();
+        assertThat(eventNames, hasItem("io.accelerate.tracking.NotifyDispatch"));
+    }
+}
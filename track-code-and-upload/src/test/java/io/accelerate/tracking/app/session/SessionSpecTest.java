@@ -0,0 +1,71 @@
+package io.accelerate.tracking.app.session;
+
+import io.accelerate.tracking.app.sourcecode.Workspace;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class SessionSpecTest {
+
+    @Test
+    public void readsTheSessionProperties() throws Exception {
+        SessionSpec sessionSpec = SessionSpec.fromProperties(String.join("\n",
+                "id=alice",
+                "store=/data/alice/../alice",
+                "sourcecode=/code/alice/api, ui=/code/alice/ui, /other/api",
+                "config=/etc/trk/aws.properties",
+                "key-snapshot-spacing=10"));
+
+        assertThat(sessionSpec.getSessionId(), is("alice"));
+        assertThat(sessionSpec.getLocalStorageFolder(), is(Paths.get("/data/alice").toAbsolutePath().toString()));
+        assertThat(workspaceNames(sessionSpec.getWorkspaces()), contains("api", "ui", "api-2"));
+        assertThat(sessionSpec.getConfigFile(), is("/etc/trk/aws.properties"));
+        assertThat("defaults to the session id", sessionSpec.getDestinationPrefix(), is("alice/"));
+        assertThat(sessionSpec.getMinimumRequiredDiskspaceInGB(), is(1L));
+        assertThat(sessionSpec.getKeySnapshotSpacing(), is(10));
+    }
+
+    @Test
+    public void tracksNoSourceCodeWhenAskedTo() throws Exception {
+        SessionSpec sessionSpec = SessionSpec.fromProperties(String.join("\n",
+                "id=bob", "store=/data/bob", "sourcecode=none", "config=none", "prefix=team/bob/"));
+
+        assertThat(sessionSpec.getWorkspaces(), hasSize(0));
+        assertThat(sessionSpec.getDestinationPrefix(), is("team/bob/"));
+        assertThat(sessionSpec.getKeySnapshotSpacing(), is(TrackingSession.DEFAULT_KEY_SNAPSHOT_SPACING));
+    }
+
+    @Test
+    public void rejectsAnInvalidSession() {
+        assertRejected("Missing session property: store", "id=alice\nsourcecode=none\nconfig=none");
+        assertRejected("The session id can only use letters, digits, _ and -",
+                "id=../alice\nstore=/data\nsourcecode=none\nconfig=none");
+        assertRejected("No workspace to track for session alice",
+                "id=alice\nstore=/data\nsourcecode=,\nconfig=none");
+        assertRejected("The key-snapshot-spacing must be at least 1",
+                "id=alice\nstore=/data\nsourcecode=none\nconfig=none\nkey-snapshot-spacing=0");
+    }
+
+    // ~~~~ Helpers
+
+    private static List<String> workspaceNames(List<Workspace> workspaces) {
+        return workspaces.stream().map(Workspace::getName).toList();
+    }
+
+    private static void assertRejected(String expectedMessage, String properties) {
+        try {
+            SessionSpec.fromProperties(properties);
+            throw new AssertionError("Expected to be rejected: " + properties);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is(expectedMessage));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package io.accelerate.tracking.app.session;
+
+import io.accelerate.tracking.app.sourcecode.RecordingDurability;
+import io.accelerate.tracking.app.tasks.ResourceGovernor;
+import io.accelerate.tracking.app.upload.S3ClientFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+public class TrackingSessionHostTest {
+    private static final String CONTROL_TOKEN = "s3cr3t";
+
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void takesNoSessionOnceStopping() throws Exception {
+        TrackingSessionHost trackingSessionHost = newHost();
+        trackingSessionHost.start();
+        stopWithin30Seconds(trackingSessionHost);
+
+        try {
+            trackingSessionHost.startSession(sessionSpec("alice", storeRoot().resolve("alice")));
+            throw new AssertionError("Expected the session to be refused");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("The daemon is stopping"));
+        }
+    }
+
+    @Test
+    public void refusesASecondSessionOnTheSameStore() throws Exception {
+        TrackingSessionHost trackingSessionHost = newHost();
+        trackingSessionHost.start();
+        try {
+            trackingSessionHost.startSession(sessionSpec("alice", storeRoot().resolve("shared")));
+
+            assertRejected(() -> trackingSessionHost.startSession(sessionSpec("alice", storeRoot().resolve("other"))),
+                    "Session already exists: alice");
+            assertRejected(() -> trackingSessionHost.startSession(sessionSpec("bob", storeRoot().resolve("shared"))),
+                    "Store already used by session alice");
+            assertRejected(() -> trackingSessionHost.stopSession("carol"), "Unknown session: carol");
+        } finally {
+            stopWithin30Seconds(trackingSessionHost);
+        }
+    }
+
+    @Test
+    public void refusesAStoreOutsideTheStoreRoot() throws Exception {
+        TrackingSessionHost trackingSessionHost = newHost();
+        trackingSessionHost.start();
+        try {
+            assertRejected(() -> trackingSessionHost.startSession(sessionSpec("alice", tempFolder.resolve("elsewhere"))),
+                    "The store must be under");
+            assertRejected(() -> trackingSessionHost.startSession(sessionSpec("alice", storeRoot().resolve(".."))),
+                    "The store must be under");
+            assertRejected(() -> trackingSessionHost.startSession(sessionSpec("alice", storeRoot())),
+                    "The store must be under");
+        } finally {
+            stopWithin30Seconds(trackingSessionHost);
+        }
+    }
+
+    @Test
+    public void turnsAwayTheRequestsWithoutTheTokenOrFromAPage() throws Exception {
+        int port = freePort();
+        TrackingSessionHost trackingSessionHost = new TrackingSessionHost("127.0.0.1", port, CONTROL_TOKEN,
+                storeRoot(), S3ClientFactory.withDefaults(), ResourceGovernor.unlimited(), RecordingDurability.none());
+        trackingSessionHost.start();
+        String sessionsUrl = "http://127.0.0.1:" + port + "/sessions";
+        try {
+            assertThat("no token", send(sessionsUrl, null, null).statusCode(), is(401));
+            assertThat("wrong token", send(sessionsUrl, "Bearer nope", null).statusCode(), is(401));
+            assertThat("from a page", send(sessionsUrl, "Bearer " + CONTROL_TOKEN, "http://example.com")
+                    .statusCode(), is(403));
+            assertThat("from a tool", send(sessionsUrl, "Bearer " + CONTROL_TOKEN, null).statusCode(), is(200));
+        } finally {
+            stopWithin30Seconds(trackingSessionHost);
+        }
+    }
+
+    @Test
+    public void writesTheControlTokenForTheUserOnly() throws Exception {
+        String controlToken = TrackingSessionHost.writeNewControlToken(storeRoot());
+
+        Path tokenFile = storeRoot().resolve("daemon.token");
+        assertThat(Files.readString(tokenFile).trim(), is(controlToken));
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile)), is("rw-------"));
+        assertThat("a new token every time", TrackingSessionHost.writeNewControlToken(storeRoot()),
+                is(not(controlToken)));
+    }
+
+    // ~~~~ Helpers
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+    private Path storeRoot() {
+        return tempFolder.resolve("stores");
+    }
+
+    private TrackingSessionHost newHost() throws Exception {
+        return new TrackingSessionHost("127.0.0.1", 0, CONTROL_TOKEN, storeRoot(), S3ClientFactory.withDefaults(),
+                ResourceGovernor.unlimited(), RecordingDurability.none());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"))) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static HttpResponse<String> send(String url, String authorization, String origin) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url)).GET();
+        if (authorization != null) {
+            request.header("Authorization", authorization);
+        }
+        if (origin != null) {
+            request.header("Origin", origin);
+        }
+        try (HttpClient httpClient = HttpClient.newHttpClient()) {
+            return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    private static SessionSpec sessionSpec(String sessionId, Path store) throws Exception {
+        return SessionSpec.fromProperties(String.join("\n",
+                "id=" + sessionId,
+                "store=" + store,
+                "sourcecode=none",
+                "config=none",
+                "minimum-required-diskspace-gb=0"));
+    }
+
+    private static void assertRejected(Action action, String expectedMessage) throws Exception {
+        try {
+            action.run();
+            throw new AssertionError("Expected to be rejected with: " + expectedMessage);
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), startsWith(expectedMessage));
+        }
+    }
+
+    private static void stopWithin30Seconds(TrackingSessionHost trackingSessionHost) throws Exception {
+        trackingSessionHost.signalStop();
+        CompletableFuture.runAsync(() -> {
+            try {
+                trackingSessionHost.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).get(30, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,152 @@
+package io.accelerate.tracking.app.session;
+
+import io.accelerate.tracking.app.events.ExternalEventServerThread;
+import io.accelerate.tracking.app.upload.DestinationOperationException;
+import io.accelerate.tracking.app.upload.RemoteDestination;
+import io.accelerate.tracking.app.upload.UploadScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TrackingSessionTest {
+    private static final List<String> TIMER_THREADS = List.of("HealthCheck", "DiskCheck", "Profile");
+
+    @TempDir
+    Path tempFolder;
+
+    private UploadScheduler uploadScheduler;
+
+    @BeforeEach
+    public void setUp() {
+        uploadScheduler = new UploadScheduler(1, 1024 * 1024, 1024 * 1024);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        uploadScheduler.shutdown();
+    }
+
+    @Test
+    public void stopsWhatItStartedWhenTheDestinationFails() throws Exception {
+        int port = freePort();
+        TrackingSession trackingSession = newSession(
+                () -> {
+                    throw new DestinationOperationException("Bad credentials", null);
+                },
+                (statusBoard, progressEventStream) ->
+                        new ExternalEventServerThread("127.0.0.1", port, statusBoard, progressEventStream));
+        trackingSession.enableProfiling();
+
+        try {
+            trackingSession.run();
+            throw new AssertionError("Expected the start-up to fail");
+        } catch (DestinationOperationException e) {
+            assertThat(e.getMessage(), is("Bad credentials"));
+        }
+
+        assertThat(trackingSession.isRunning(), is(false));
+        assertThat("timers stopped", timerThreadsGoneWithin5Seconds(), is(true));
+        try (ServerSocket ignored = new ServerSocket(port, 0, InetAddress.getByName("127.0.0.1"))) {
+            // The event server let go of its port
+        }
+    }
+
+    @Test
+    public void closesTheDestinationWhenTheEventServerFails() throws Exception {
+        FakeDestination fakeDestination = new FakeDestination();
+        TrackingSession trackingSession = newSession(
+                () -> fakeDestination,
+                (statusBoard, progressEventStream) -> {
+                    throw new BindException("Address already in use");
+                });
+
+        try {
+            trackingSession.run();
+            throw new AssertionError("Expected the start-up to fail");
+        } catch (BindException e) {
+            assertThat(e.getMessage(), is("Address already in use"));
+        }
+
+        assertThat("destination closed", fakeDestination.closed.get(), is(true));
+        assertThat("timers stopped", timerThreadsGoneWithin5Seconds(), is(true));
+    }
+
+    // ~~~~ Helpers
+
+    private TrackingSession newSession(TrackingSession.DestinationFactory destinationFactory,
+                                       TrackingSession.EventServerFactory eventServerFactory) {
+        return new TrackingSession(null, tempFolder.toString(), List.of(), 0,
+                destinationFactory, eventServerFactory, uploadScheduler);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"))) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static boolean timerThreadsGoneWithin5Seconds() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            boolean anyAlive = Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(thread -> TIMER_THREADS.contains(thread.getName()) && thread.isAlive());
+            if (!anyAlive) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    private static class FakeDestination implements RemoteDestination {
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        @Override
+        public S3AsyncClient getClient() {
+            return null;
+        }
+
+        @Override
+        public String getS3Bucket() {
+            return "bucket";
+        }
+
+        @Override
+        public String getS3Prefix() {
+            return "prefix/";
+        }
+
+        @Override
+        public CompletableFuture<Void> startS3SyncSession() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> stopS3SyncSession(Path stopMarker) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void probe() {
+        }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class GitIndexChangeDetectorTest {
+    private static final List<String> TRACKED_FILES = List.of("README.md", "src/Main.java", "src/util/Strings.java");
+
+    @TempDir
+    Path workTree;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        for (String trackedFile : TRACKED_FILES) {
+            Path file = workTree.resolve(trackedFile);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, "content of " + trackedFile);
+        }
+        writeGitIndex(workTree, TRACKED_FILES);
+    }
+
+    @Test
+    public void readsTheTrackedFilesFromTheIndex() throws Exception {
+        GitIndexChangeDetector changeDetector = GitIndexChangeDetector.forFolder(workTree);
+
+        long signature = changeDetector.signature();
+
+        assertThat(changeDetector.getTrackedFileCount(), is(3));
+        assertThat("nothing changed", changeDetector.signature(), is(signature));
+    }
+
+    @Test
+    public void seesATrackedFileChange() throws Exception {
+        GitIndexChangeDetector changeDetector = GitIndexChangeDetector.forFolder(workTree);
+        long signature = changeDetector.signature();
+
+        Path file = workTree.resolve("src/util/Strings.java");
+        Files.writeString(file, "edited");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(5)));
+
+        assertThat(changeDetector.signature(), is(not(signature)));
+    }
+
+    @Test
+    public void seesANewUntrackedFile() throws Exception {
+        GitIndexChangeDetector changeDetector = GitIndexChangeDetector.forFolder(workTree);
+        Path folder = workTree.resolve("src");
+        long signature = changeDetector.signature();
+
+        Files.writeString(folder.resolve("Untracked.java"), "new");
+        // Some file systems only keep whole seconds
+        Files.setLastModifiedTime(folder, FileTime.from(Instant.now().plusSeconds(5)));
+
+        assertThat(changeDetector.signature(), is(not(signature)));
+    }
+
+    @Test
+    public void seesAnUntrackedFileEditedInPlace() throws Exception {
+        Path file = Files.createDirectories(workTree.resolve("notes")).resolve("todo.txt");
+        Files.writeString(file, "first");
+        GitIndexChangeDetector changeDetector = GitIndexChangeDetector.forFolder(workTree);
+        long signature = changeDetector.signature();
+
+        Files.writeString(file, "second");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(5)));
+
+        assertThat(changeDetector.signature(), is(not(signature)));
+    }
+
+    @Test
+    public void ignoresWhatTheGitignoreIgnores() throws Exception {
+        Files.writeString(workTree.resolve(".gitignore"), "build/\n*.log\n");
+        Path output = Files.createDirectories(workTree.resolve("build/classes")).resolve("Main.class");
+        Files.writeString(output, "compiled");
+        Path log = workTree.resolve("src/run.log");
+        Files.writeString(log, "started");
+        GitIndexChangeDetector changeDetector = GitIndexChangeDetector.forFolder(workTree);
+        long signature = changeDetector.signature();
+
+        Files.writeString(output, "compiled again");
+        Files.setLastModifiedTime(output, FileTime.from(Instant.now().plusSeconds(5)));
+        Files.writeString(log, "started, stopped");
+        Files.setLastModifiedTime(log, FileTime.from(Instant.now().plusSeconds(5)));
+
+        assertThat(changeDetector.signature(), is(signature));
+    }
+
+    @Test
+    public void readsTheObjectFormatFromTheCommonDirOfALinkedWorktree() throws Exception {
+        Path mainGitDir = workTree.resolve(".git");
+        Files.writeString(mainGitDir.resolve("config"), "[extensions]\n\tobjectformat = sha256\n");
+        Path linkedWorkTree = Files.createDirectories(workTree.resolve("linked"));
+        Files.writeString(linkedWorkTree.resolve("README.md"), "content of README.md");
+        Path linkedGitDir = Files.createDirectories(mainGitDir.resolve("worktrees/linked"));
+        Files.writeString(linkedGitDir.resolve("commondir"), "../..\n");
+        Files.writeString(linkedWorkTree.resolve(".git"), "gitdir: " + linkedGitDir + "\n");
+        writeGitIndex(linkedWorkTree, List.of("README.md"), 32, linkedGitDir);
+
+        GitIndexChangeDetector changeDetector = GitIndexChangeDetector.forFolder(linkedWorkTree);
+        long signature = changeDetector.signature();
+
+        assertThat(changeDetector.getTrackedFileCount(), is(1));
+        assertThat("nothing changed", changeDetector.signature(), is(signature));
+    }
+
+    @Test
+    public void leavesOtherFoldersToTheFullCapture() throws Exception {
+        Path notARepo = Files.createDirectories(workTree.resolve("src/util"));
+
+        assertThat(GitIndexChangeDetector.forFolder(notARepo), is(nullValue()));
+    }
+
+    // ~~~~ Helpers
+
+    static void writeGitIndex(Path workTree, List<String> trackedFiles) throws Exception {
+        writeGitIndex(workTree, trackedFiles, 20, Files.createDirectories(workTree.resolve(".git")));
+    }
+
+    /**
+     * A version 2 index with the current stat data of the files, like after a git add
+     */
+    private static void writeGitIndex(Path workTree, List<String> trackedFiles, int objectIdBytes, Path gitDir)
+            throws Exception {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write(ByteBuffer.allocate(12).putInt(0x44495243).putInt(2).putInt(trackedFiles.size()).array());
+        for (String trackedFile : trackedFiles) {
+            BasicFileAttributes attributes = Files.readAttributes(workTree.resolve(trackedFile),
+                    BasicFileAttributes.class);
+            long modifiedNanos = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            byte[] name = trackedFile.getBytes(StandardCharsets.UTF_8);
+            int entryLength = (42 + objectIdBytes + name.length + 8) & ~7;
+            ByteBuffer entry = ByteBuffer.allocate(entryLength);
+            entry.putInt(0).putInt(0);
+            entry.putInt((int) (modifiedNanos / 1_000_000_000L)).putInt((int) (modifiedNanos % 1_000_000_000L));
+            entry.putInt(0).putInt(0);
+            entry.putInt(0100644);
+            entry.putInt(0).putInt(0);
+            entry.putInt((int) attributes.size());
+            entry.put(new byte[objectIdBytes]);
+            entry.putShort((short) name.length);
+            entry.put(name);
+            index.write(entry.array());
+        }
+        Files.write(gitDir.resolve("index"), index.toByteArray());
+    }
+}
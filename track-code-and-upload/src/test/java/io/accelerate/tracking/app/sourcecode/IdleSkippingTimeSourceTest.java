@@ -0,0 +1,105 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.code.time.TimeSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class IdleSkippingTimeSourceTest {
+    private static final Duration SNAPSHOT_INTERVAL = Duration.ofSeconds(3);
+    private static final int MAX_SKIPPED_CAPTURES = 5;
+
+    @TempDir
+    Path workTree;
+
+    private VirtualTimeSource virtualTimeSource;
+    private OnDemandTimeSource onDemandTimeSource;
+    private IdleSkippingTimeSource idleSkippingTimeSource;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Files.writeString(workTree.resolve("README.md"), "content of README.md");
+        GitIndexChangeDetectorTest.writeGitIndex(workTree, List.of("README.md"));
+        virtualTimeSource = new VirtualTimeSource();
+        onDemandTimeSource = new OnDemandTimeSource(virtualTimeSource, 0);
+        idleSkippingTimeSource = new IdleSkippingTimeSource(onDemandTimeSource,
+                GitIndexChangeDetector.forFolder(workTree), SNAPSHOT_INTERVAL, MAX_SKIPPED_CAPTURES);
+    }
+
+    @Test
+    public void sleepsThroughIdleIntervals() throws Exception {
+        idleSkippingTimeSource.wakeUpAt(SNAPSHOT_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+
+        assertThat(idleSkippingTimeSource.getSkippedCaptures(), is((long) MAX_SKIPPED_CAPTURES));
+        assertThat("the capture that goes through anyway",
+                virtualTimeSource.currentTimeNano(), is(SNAPSHOT_INTERVAL.toNanos() * (MAX_SKIPPED_CAPTURES + 1)));
+    }
+
+    @Test
+    public void wakesUpOnAChange() throws Exception {
+        virtualTimeSource.onFirstWakeUp = () -> {
+            Path file = workTree.resolve("README.md");
+            Files.writeString(file, "edited");
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(5)));
+        };
+
+        idleSkippingTimeSource.wakeUpAt(SNAPSHOT_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+
+        assertThat(idleSkippingTimeSource.getSkippedCaptures(), is(0L));
+        assertThat(virtualTimeSource.currentTimeNano(), is(SNAPSHOT_INTERVAL.toNanos()));
+    }
+
+    @Test
+    public void doesNotHoldBackARequestedCapture() throws Exception {
+        onDemandTimeSource.requestSnapshot();
+
+        idleSkippingTimeSource.wakeUpAt(SNAPSHOT_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+
+        assertThat(idleSkippingTimeSource.getSkippedCaptures(), is(0L));
+        assertThat(onDemandTimeSource.isServingRequest(), is(true));
+    }
+
+    // ~~~~ Helpers
+
+    private interface WorkTreeEdit {
+        void run() throws Exception;
+    }
+
+    /**
+     * Jumps straight to the mark
+     */
+    private static class VirtualTimeSource implements TimeSource {
+        private long nowNanos;
+        private WorkTreeEdit onFirstWakeUp;
+
+        @Override
+        public long currentTimeNano() {
+            return nowNanos;
+        }
+
+        @Override
+        public void wakeUpAt(long timeMark, TimeUnit timeUnit) {
+            nowNanos = Math.max(nowNanos, timeUnit.toNanos(timeMark));
+            if (onFirstWakeUp != null) {
+                WorkTreeEdit edit = onFirstWakeUp;
+                onFirstWakeUp = null;
+                try {
+                    edit.run();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.app.events.ProgressEventStream;
+import io.accelerate.tracking.code.time.TimeSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class IndexingTimeSourceTest {
+    private static final long SNAPSHOT_EVERY_NANOS = Duration.ofMinutes(3).toNanos();
+    private static final int SNAPSHOT_BYTES = 256;
+
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void answersARequestedSnapshotOnceItsRecordIsOnTheDisk() throws Exception {
+        Path recording = tempFolder.resolve("sourcecode.srcs");
+        OnDemandTimeSource onDemandTimeSource = new OnDemandTimeSource(new VirtualTimeSource(), 0);
+        RecordingDurability groupCommit = RecordingDurability.groupCommitEvery(Duration.ofHours(1));
+        IndexingTimeSource indexingTimeSource = new IndexingTimeSource(onDemandTimeSource, "sourcecode",
+                new ProgressEventStream(), onDemandTimeSource, recording, 5, groupCommit);
+
+        indexingTimeSource.recordingStarting();
+        captured(recording);
+        CompletableFuture<Integer> request = onDemandTimeSource.requestSnapshot();
+        indexingTimeSource.wakeUpAt(SNAPSHOT_EVERY_NANOS, TimeUnit.NANOSECONDS);
+        captured(recording);
+        indexingTimeSource.wakeUpAt(SNAPSHOT_EVERY_NANOS, TimeUnit.NANOSECONDS);
+
+        assertThat(request.getNow(-1), is(1));
+        try (RecordingIndex recordingIndex = RecordingIndex.open(recording)) {
+            assertThat("not waiting for the group commit", recordingIndex.getSnapshotCount(), is(2));
+        }
+        indexingTimeSource.recordingEnded();
+    }
+
+    // ~~~~ Helpers
+
+    private static void captured(Path recording) throws Exception {
+        Files.write(recording, new byte[SNAPSHOT_BYTES], StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Jumps straight to the mark
+     */
+    private static class VirtualTimeSource implements TimeSource {
+        private long nowNanos;
+
+        @Override
+        public long currentTimeNano() {
+            return nowNanos;
+        }
+
+        @Override
+        public void wakeUpAt(long timeMark, TimeUnit timeUnit) {
+            nowNanos = Math.max(nowNanos, timeUnit.toNanos(timeMark));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.code.time.TimeSource;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class OnDemandTimeSourceTest {
+    private static final long NEXT_MARK_NANOS = Duration.ofMinutes(3).toNanos();
+    private static final long MIN_SPACING_NANOS = Duration.ofMillis(300).toNanos();
+
+    @Test
+    public void requestsWhileAsleepShareTheNextCapture() throws Exception {
+        OnDemandTimeSource onDemandTimeSource = new OnDemandTimeSource(new SleepingTimeSource(), 0);
+        Thread recorder = Thread.ofPlatform().start(() -> {
+            try {
+                onDemandTimeSource.wakeUpAt(onDemandTimeSource.currentTimeNano() + NEXT_MARK_NANOS,
+                        TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+
+        CompletableFuture<Integer> firstRequest;
+        CompletableFuture<Integer> secondRequest;
+        synchronized (onDemandTimeSource) {
+            // The recorder cannot wake up in between
+            firstRequest = onDemandTimeSource.requestSnapshot();
+            secondRequest = onDemandTimeSource.requestSnapshot();
+        }
+        recorder.join(5_000);
+
+        assertThat("woken up before the mark", recorder.isAlive(), is(false));
+        assertThat(secondRequest, is(sameInstance(firstRequest)));
+        assertThat(onDemandTimeSource.takeServedRequest(), is(sameInstance(firstRequest)));
+        assertThat("the capture is not for a request made after it started",
+                onDemandTimeSource.requestSnapshot(), is(not(sameInstance(firstRequest))));
+    }
+
+    @Test
+    public void keepsTheCapturesApart() throws Exception {
+        OnDemandTimeSource onDemandTimeSource = new OnDemandTimeSource(new SleepingTimeSource(), MIN_SPACING_NANOS);
+        long startNanos = onDemandTimeSource.currentTimeNano();
+
+        onDemandTimeSource.requestSnapshot();
+        onDemandTimeSource.wakeUpAt(startNanos + NEXT_MARK_NANOS, TimeUnit.NANOSECONDS);
+
+        long elapsedNanos = onDemandTimeSource.currentTimeNano() - startNanos;
+        assertThat(elapsedNanos, is(greaterThanOrEqualTo(MIN_SPACING_NANOS)));
+        assertThat(elapsedNanos, is(lessThan(NEXT_MARK_NANOS)));
+        assertThat(onDemandTimeSource.isServingRequest(), is(true));
+    }
+
+    @Test
+    public void failsTheRequestsLeftWhenTheRecordingEnds() {
+        OnDemandTimeSource onDemandTimeSource = new OnDemandTimeSource(new SleepingTimeSource(), 0);
+        CompletableFuture<Integer> request = onDemandTimeSource.requestSnapshot();
+
+        onDemandTimeSource.recordingEnded();
+
+        assertThat(request.isCompletedExceptionally(), is(true));
+        assertThat(onDemandTimeSource.requestSnapshot().isCompletedExceptionally(), is(true));
+    }
+
+    // ~~~~ Helpers
+
+    private static class SleepingTimeSource implements TimeSource {
+
+        @Override
+        public long currentTimeNano() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void wakeUpAt(long timeMark, TimeUnit timeUnit) throws InterruptedException {
+            long remainingNanos = timeUnit.toNanos(timeMark) - System.nanoTime();
+            if (remainingNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(remainingNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class RecordingIndexTest {
+    private static final Duration SNAPSHOT_EVERY = Duration.ofMinutes(3);
+    private static final int SNAPSHOT_BYTES = 100;
+
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void seeksToTheSnapshotBeforeAPointInTime() throws Exception {
+        Path recording = recordingOf(25, 10);
+
+        try (RecordingIndex recordingIndex = RecordingIndex.open(recording)) {
+            assertThat(recordingIndex.getSnapshotCount(), is(25));
+            assertThat(recordingIndex.getKeySnapshotSpacing(), is(10));
+
+            RecordingIndex.Snapshot target = recordingIndex.snapshotAt(Duration.ofMinutes(40));
+            assertThat(target.getNumber(), is(13));
+            assertThat(target.getOffset(), is(13L * SNAPSHOT_BYTES));
+            assertThat(target.getEndOffset(), is(14L * SNAPSHOT_BYTES));
+        }
+    }
+
+    @Test
+    public void findsTheFirstAndTheLastSnapshots() throws Exception {
+        Path recording = recordingOf(25, 10);
+
+        try (RecordingIndex recordingIndex = RecordingIndex.open(recording)) {
+            assertThat(recordingIndex.snapshotAt(Duration.ofMinutes(1)).getNumber(), is(0));
+            RecordingIndex.Snapshot last = recordingIndex.snapshotAt(Duration.ofHours(10));
+            assertThat(last.getNumber(), is(24));
+            assertThat("the last one ends with the recording", last.getEndOffset(),
+                    is(25L * SNAPSHOT_BYTES));
+        }
+    }
+
+    @Test
+    public void listsTheTagsWithTheSnapshotTheyGoWith() throws Exception {
+        Path recording = tempFolder.resolve("sourcecode.srcs");
+        Files.write(recording, new byte[2 * SNAPSHOT_BYTES]);
+        RecordingIndexWriter recordingIndexWriter = new RecordingIndexWriter(recording, 10,
+                RecordingDurability.perSnapshot());
+        recordingIndexWriter.snapshotTaken(0, 0, 0, SNAPSHOT_BYTES);
+        recordingIndexWriter.tagged(Duration.ofMinutes(2).toNanos(), "round 1 started");
+        recordingIndexWriter.snapshotTaken(SNAPSHOT_EVERY.toNanos(), 0, SNAPSHOT_BYTES, 2 * SNAPSHOT_BYTES);
+        recordingIndexWriter.tagged(Duration.ofMinutes(4).toNanos(), "round 1 done\nnext: round 2");
+        recordingIndexWriter.close();
+
+        try (RecordingIndex recordingIndex = RecordingIndex.open(recording)) {
+            List<RecordingIndex.Tag> tags = recordingIndex.tags();
+            assertThat(tags, hasSize(2));
+            assertThat(tags.get(0).getPayload(), is("round 1 started"));
+            assertThat(tags.get(0).getSnapshotNumber(), is(1));
+            assertThat(tags.get(1).getPayload(), is("round 1 done\nnext: round 2"));
+            assertThat(tags.get(1).getElapsed(), is(Duration.ofMinutes(4)));
+        }
+    }
+
+    @Test
+    public void holdsTheIndexAndTheTagsLocksUntilTheRecordingEnds() throws Exception {
+        Path recording = tempFolder.resolve("sourcecode.srcs");
+        Files.write(recording, new byte[SNAPSHOT_BYTES]);
+        RecordingIndexWriter recordingIndexWriter = new RecordingIndexWriter(recording, 10,
+                RecordingDurability.none());
+        Path indexLock = Paths.get(recording + RecordingIndex.LOCK_SUFFIX);
+        Path tagsLock = RecordingIndexWriter.tagsLockFor(recording);
+
+        assertThat(Files.exists(indexLock), is(true));
+        assertThat(Files.exists(tagsLock), is(true));
+
+        recordingIndexWriter.close();
+
+        assertThat(Files.exists(indexLock), is(false));
+        assertThat(Files.exists(tagsLock), is(false));
+    }
+
+    @Test
+    public void ignoresARecordCutShort() throws Exception {
+        Path recording = recordingOf(3, 10);
+        Files.write(RecordingIndex.indexFileFor(recording), new byte[7], StandardOpenOption.APPEND);
+
+        try (RecordingIndex recordingIndex = RecordingIndex.open(recording)) {
+            assertThat(recordingIndex.getSnapshotCount(), is(3));
+            assertThat(recordingIndex.snapshotAt(Duration.ofMinutes(-1)), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void ignoresARecordWithABadChecksum() throws Exception {
+        Path recording = recordingOf(3, 10);
+        flipLastByteOf(RecordingIndex.indexFileFor(recording));
+
+        try (RecordingIndex recordingIndex = RecordingIndex.open(recording)) {
+            assertThat(recordingIndex.getSnapshotCount(), is(2));
+        }
+    }
+
+    @Test
+    public void recoversTheRecordingUpToTheLastWholeSnapshot() throws Exception {
+        Path recording = recordingOf(5, 10);
+        flipLastByteOf(RecordingIndex.indexFileFor(recording));
+        Files.write(recording, new byte[SNAPSHOT_BYTES / 2], StandardOpenOption.APPEND);
+        Files.write(RecordingIndex.tagsFileFor(recording), new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        long bytesCut = RecordingIndex.recover(recording);
+
+        assertThat(bytesCut, is((long) SNAPSHOT_BYTES + SNAPSHOT_BYTES / 2));
+        assertThat(Files.size(recording), is(4L * SNAPSHOT_BYTES));
+        assertThat(Files.size(RecordingIndex.tagsFileFor(recording)), is(0L));
+        try (RecordingIndex recordingIndex = RecordingIndex.open(recording)) {
+            assertThat(recordingIndex.getSnapshotCount(), is(4));
+            assertThat(recordingIndex.snapshot(3).getEndOffset(), is(4L * SNAPSHOT_BYTES));
+        }
+    }
+
+    // ~~~~ Helpers
+
+    private Path recordingOf(int snapshots, int keySnapshotSpacing) throws Exception {
+        Path recording = tempFolder.resolve("sourcecode.srcs");
+        Files.write(recording, new byte[snapshots * SNAPSHOT_BYTES]);
+        RecordingIndexWriter recordingIndexWriter = new RecordingIndexWriter(recording, keySnapshotSpacing,
+                RecordingDurability.groupCommitEvery(Duration.ofSeconds(1)));
+        for (int i = 0; i < snapshots; i++) {
+            recordingIndexWriter.snapshotTaken(SNAPSHOT_EVERY.multipliedBy(i).toNanos(),
+                    1_700_000_000_000L + SNAPSHOT_EVERY.multipliedBy(i).toMillis(),
+                    (long) i * SNAPSHOT_BYTES, (long) (i + 1) * SNAPSHOT_BYTES);
+        }
+        recordingIndexWriter.close();
+        return recording;
+    }
+
+    private static void flipLastByteOf(Path file) throws Exception {
+        byte[] content = Files.readAllBytes(file);
+        content[content.length - 1] ^= 1;
+        Files.write(file, content);
+    }
+}
@@ -0,0 +1,81 @@
+package io.accelerate.tracking.app.sourcecode;
+
+import io.accelerate.tracking.app.events.ProgressEventStream;
+import io.accelerate.tracking.app.tasks.ResourceGovernor;
+import io.accelerate.tracking.code.time.SystemMonotonicTimeSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+public class SupervisedRecordingTaskTest {
+    private static final Duration STALL_DEADLINE = Duration.ofMinutes(5);
+
+    @TempDir
+    Path tempFolder;
+
+    private List<SourceCodeRecordingThread> recorders;
+    private List<Path> recordingFiles;
+    private SupervisedRecordingTask supervisedRecordingTask;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Path workspace = Files.createDirectories(tempFolder.resolve("workspace"));
+        Files.writeString(workspace.resolve("Main.java"), "class Main {}");
+        recorders = new CopyOnWriteArrayList<>();
+        recordingFiles = new CopyOnWriteArrayList<>();
+        supervisedRecordingTask = new SupervisedRecordingTask(restarts -> {
+            Path recordingFile = tempFolder.resolve("sourcecode_" + restarts + ".srcs");
+            SourceCodeRecordingThread recorder = new SourceCodeRecordingThread("SourceTrk", "sourcecode",
+                    workspace, recordingFile, 5, new SystemMonotonicTimeSource(), Duration.ZERO,
+                    ResourceGovernor.unlimited(), RecordingDurability.none(), new ProgressEventStream());
+            recorders.add(recorder);
+            recordingFiles.add(recordingFile);
+            return recorder;
+        });
+    }
+
+    @Test
+    public void restartsAStuckRecorderOnANewFile() throws Exception {
+        long now = System.nanoTime();
+        recorders.get(0).getHeartbeat().stepStarted();
+
+        assertThat("within the deadline", supervisedRecordingTask.checkHealth(now, STALL_DEADLINE), is(nullValue()));
+        assertThat(supervisedRecordingTask.checkHealth(now + STALL_DEADLINE.plusSeconds(1).toNanos(), STALL_DEADLINE),
+                startsWith("Capture stuck"));
+
+        supervisedRecordingTask.restart();
+
+        assertThat(recordingFiles, is(List.of(tempFolder.resolve("sourcecode_0.srcs"),
+                tempFolder.resolve("sourcecode_1.srcs"))));
+        assertThat("the replacement is running", recorders.get(1).isAlive(), is(true));
+
+        supervisedRecordingTask.signalStop();
+        supervisedRecordingTask.join();
+        assertThat("join waits for the replacement", recorders.get(1).isAlive(), is(false));
+        assertThat("join waits for the replaced recorder", recorders.get(0).isAlive(), is(false));
+    }
+
+    @Test
+    public void leavesARecorderOnItsWayOutAlone() throws Exception {
+        long now = System.nanoTime();
+        recorders.get(0).getHeartbeat().stepStarted();
+
+        supervisedRecordingTask.signalStop();
+        assertThat(supervisedRecordingTask.checkHealth(now + STALL_DEADLINE.plusSeconds(1).toNanos(), STALL_DEADLINE),
+                is(nullValue()));
+        supervisedRecordingTask.restart();
+
+        assertThat("no replacement", recorders.size(), is(1));
+    }
+}
@@ -0,0 +1,60 @@
+package io.accelerate.tracking.app.tasks;
+
+import io.accelerate.tracking.app.util.DiskPressureLevel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DiskPressureMonitorTaskTest {
+    private static final long ONE_GB = 1024 * 1024 * 1024;
+
+    @Test
+    public void raisesThePressureAsTheStoreVolumeFillsUp() throws Exception {
+        long[] usableBytes = {10 * ONE_GB};
+        DiskPressureMonitorTask diskPressureMonitorTask = new DiskPressureMonitorTask(() -> usableBytes[0], 1);
+        List<String> changes = new ArrayList<>();
+        diskPressureMonitorTask.addListener((previous, current) -> changes.add(previous + "->" + current));
+        try {
+            assertThat(diskPressureMonitorTask.getCurrentLevel(), is(DiskPressureLevel.NORMAL));
+
+            usableBytes[0] = ONE_GB + ONE_GB / 2;
+            diskPressureMonitorTask.sample();
+            assertThat("below twice the minimum", diskPressureMonitorTask.getCurrentLevel(),
+                    is(DiskPressureLevel.ELEVATED));
+
+            usableBytes[0] = ONE_GB / 2;
+            diskPressureMonitorTask.sample();
+            diskPressureMonitorTask.sample();
+            assertThat(diskPressureMonitorTask.getCurrentLevel(), is(DiskPressureLevel.CRITICAL));
+
+            usableBytes[0] = 10 * ONE_GB;
+            diskPressureMonitorTask.sample();
+            assertThat("listeners only hear about the changes", changes,
+                    is(List.of("NORMAL->ELEVATED", "ELEVATED->CRITICAL", "CRITICAL->NORMAL")));
+        } finally {
+            diskPressureMonitorTask.cancel();
+        }
+    }
+
+    @Test
+    public void keepsAFloorUnderTheCriticalThreshold() throws Exception {
+        DiskPressureMonitorTask diskPressureMonitorTask = new DiskPressureMonitorTask(() -> 100 * 1024 * 1024, 0);
+        try {
+            assertThat("no minimum required, still critical under 256 MB", diskPressureMonitorTask.getCurrentLevel(),
+                    is(DiskPressureLevel.CRITICAL));
+        } finally {
+            diskPressureMonitorTask.cancel();
+        }
+    }
+
+    @Test
+    public void spacesTheKeySnapshotsFurtherApartUnderPressure() {
+        assertThat(DiskPressureLevel.NORMAL.keySnapshotSpacing(10), is(10));
+        assertThat(DiskPressureLevel.ELEVATED.keySnapshotSpacing(10), is(30));
+        assertThat(DiskPressureLevel.CRITICAL.keySnapshotSpacing(10), is(60));
+    }
+}
@@ -0,0 +1,117 @@
+package io.accelerate.tracking.app.tasks;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class HealthCheckTaskTest {
+    private static final Duration STALL_DEADLINE = Duration.ofMinutes(5);
+
+    @Test
+    public void restartsAStalledComponentInPlace() {
+        FakeService service = new FakeService();
+        FakeComponent component = new FakeComponent();
+        HealthCheckTask healthCheckTask = new HealthCheckTask(List.of(service), STALL_DEADLINE, 3);
+        healthCheckTask.supervise(component);
+        long now = System.nanoTime();
+
+        component.heartbeat.stepStarted();
+        healthCheckTask.checkHealth(now);
+        assertThat("within the deadline", component.restarts, is(0));
+
+        healthCheckTask.checkHealth(now + STALL_DEADLINE.plusSeconds(1).toNanos());
+        assertThat(component.restarts, is(1));
+        assertThat("the rest carries on", service.stopSignals, is(0));
+    }
+
+    @Test
+    public void stopsEverythingOnceTheRestartsRunOut() {
+        FakeService service = new FakeService();
+        FakeComponent component = new FakeComponent();
+        HealthCheckTask healthCheckTask = new HealthCheckTask(List.of(service), STALL_DEADLINE, 2);
+        healthCheckTask.supervise(component);
+        long now = System.nanoTime();
+
+        component.heartbeat.stepStarted();
+        for (int check = 1; check <= 3; check++) {
+            healthCheckTask.checkHealth(now + STALL_DEADLINE.toNanos() * check * 2);
+        }
+
+        assertThat(component.restarts, is(2));
+        assertThat(service.stopSignals, is(1));
+    }
+
+    @Test
+    public void aThreadStoppedOnPurposeDoesNotStopTheOthers() {
+        FakeService stoppedWorkspace = new FakeService();
+        FakeService otherWorkspace = new FakeService();
+        HealthCheckTask healthCheckTask = new HealthCheckTask(List.of(stoppedWorkspace, otherWorkspace),
+                STALL_DEADLINE, 3);
+
+        healthCheckTask.release(stoppedWorkspace);
+        stoppedWorkspace.alive = false;
+        healthCheckTask.checkHealth(System.nanoTime());
+        assertThat(otherWorkspace.stopSignals, is(0));
+
+        otherWorkspace.alive = false;
+        healthCheckTask.checkHealth(System.nanoTime());
+        assertThat("an unexpected end still stops everything", stoppedWorkspace.stopSignals, is(1));
+    }
+
+    @Test
+    public void waitingBetweenStepsIsNotAStall() {
+        Heartbeat heartbeat = new Heartbeat();
+        long now = System.nanoTime();
+
+        heartbeat.stepStarted();
+        heartbeat.stepEnded();
+
+        assertThat(heartbeat.stalledNanos(now + Duration.ofHours(1).toNanos()), is(0L));
+        assertThat("no step to interrupt", heartbeat.interruptStep(), is(false));
+    }
+
+    // ~~~~ Helpers
+
+    private static class FakeComponent implements Restartable {
+        private final Heartbeat heartbeat = new Heartbeat();
+        private int restarts;
+
+        @Override
+        public String getStatusKey() {
+            return "fake";
+        }
+
+        @Override
+        public String checkHealth(long nowNanos, Duration stallDeadline) {
+            return heartbeat.stalledNanos(nowNanos) > stallDeadline.toNanos() ? "stuck" : null;
+        }
+
+        @Override
+        public void restart() {
+            restarts++;
+        }
+    }
+
+    private static class FakeService implements Stoppable {
+        private boolean alive = true;
+        private int stopSignals;
+
+        @Override
+        public boolean isAlive() {
+            return alive;
+        }
+
+        @Override
+        public void join() {
+        }
+
+        @Override
+        public void signalStop() {
+            stopSignals++;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.accelerate.tracking.app.tasks;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class ResourceGovernorTest {
+    private static final long ONE_MB = 1024 * 1024;
+    private final Thread worker = new Thread("Worker");
+
+    @Test
+    public void pausesUntilTheCpuBudgetCoversTheWorkDone() {
+        ResourceGovernor resourceGovernor = new ResourceGovernor(0.5, 0);
+        long now = System.nanoTime();
+
+        assertThat("first call sets the starting point", resourceGovernor.charge(now, worker, 0, -1), is(0L));
+        // The burst covers 2.5 s of CPU, the last second is paid back at half a core
+        long cpuNanos = Duration.ofMillis(3_500).toNanos();
+        assertThat(resourceGovernor.charge(now, worker, cpuNanos, -1), is(Duration.ofSeconds(2).toNanos()));
+        assertThat(resourceGovernor.charge(now + Duration.ofSeconds(2).toNanos(), worker, cpuNanos, -1), is(0L));
+    }
+
+    @Test
+    public void pausesUntilTheDiskReadBudgetCoversTheBytesRead() {
+        ResourceGovernor resourceGovernor = new ResourceGovernor(0, 10 * ONE_MB);
+        long now = System.nanoTime();
+
+        resourceGovernor.charge(now, worker, -1, 100 * ONE_MB);
+        // The burst covers 50 MB, the next 10 MB take a second
+        assertThat(resourceGovernor.charge(now, worker, -1, 160 * ONE_MB), is(Duration.ofSeconds(1).toNanos()));
+    }
+
+    @Test
+    public void neverPausesForLongerThanHalfAMinute() {
+        ResourceGovernor resourceGovernor = new ResourceGovernor(0.1, 0);
+        long now = System.nanoTime();
+
+        resourceGovernor.charge(now, worker, 0, -1);
+        assertThat(resourceGovernor.charge(now, worker, Duration.ofMinutes(1).toNanos(), -1),
+                is(Duration.ofSeconds(30).toNanos()));
+    }
+
+    @Test
+    public void reportsTheSameRecentUsageToEverySession() {
+        ResourceGovernor resourceGovernor = new ResourceGovernor(0.5, 0);
+        long now = System.nanoTime();
+
+        resourceGovernor.charge(now, worker, 0, -1);
+        resourceGovernor.charge(now + Duration.ofSeconds(5).toNanos(), worker, Duration.ofSeconds(5).toNanos(), -1);
+        // The metrics ticks of two sessions, a second apart
+        resourceGovernor.sampleUsage(now + Duration.ofSeconds(10).toNanos());
+        double firstSessionShare = resourceGovernor.getRecentCpuShare();
+        resourceGovernor.sampleUsage(now + Duration.ofSeconds(11).toNanos());
+
+        assertThat(firstSessionShare, is(closeTo(0.5, 0.01)));
+        assertThat(resourceGovernor.getRecentCpuShare(), is(firstSessionShare));
+    }
+
+    @Test
+    public void doesNotChargeWithoutBudgets() {
+        ResourceGovernor resourceGovernor = ResourceGovernor.unlimited();
+        long now = System.nanoTime();
+
+        resourceGovernor.charge(now, worker, 0, 0);
+        assertThat(resourceGovernor.charge(now, worker, Duration.ofMinutes(1).toNanos(), 1024 * ONE_MB), is(0L));
+    }
+}
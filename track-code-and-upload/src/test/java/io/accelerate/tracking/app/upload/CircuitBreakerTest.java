@@ -0,0 +1,71 @@
+package io.accelerate.tracking.app.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class CircuitBreakerTest {
+    private final AtomicLong clockMillis = new AtomicLong(1_000);
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(3,
+            Duration.ofSeconds(5), Duration.ofSeconds(12), clockMillis::get);
+
+    @Test
+    public void opensAfterConsecutiveFailuresAndClosesOnASuccessfulProbe() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertThat(circuitBreaker.allowsCalls(), is(true));
+
+        circuitBreaker.recordFailure();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(circuitBreaker.allowsCalls(), is(false));
+        assertThat("too early to probe", circuitBreaker.isProbeDue(), is(false));
+
+        clockMillis.addAndGet(5_000);
+        assertThat(circuitBreaker.isProbeDue(), is(true));
+        assertThat("only the probe goes through", circuitBreaker.allowsCalls(), is(false));
+
+        circuitBreaker.recordSuccess();
+        assertThat(circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.allowsCalls(), is(true));
+    }
+
+    @Test
+    public void waitsLongerAfterEachFailedProbe() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure();
+        }
+
+        clockMillis.addAndGet(5_000);
+        assertThat(circuitBreaker.isProbeDue(), is(true));
+        circuitBreaker.recordFailure();
+
+        clockMillis.addAndGet(9_999);
+        assertThat(circuitBreaker.isProbeDue(), is(false));
+        clockMillis.addAndGet(1);
+        assertThat(circuitBreaker.isProbeDue(), is(true));
+        circuitBreaker.recordFailure();
+
+        clockMillis.addAndGet(12_000);
+        assertThat("capped at the longest pause", circuitBreaker.isProbeDue(), is(true));
+    }
+
+    @Test
+    public void callsFailingTogetherCountOnce() {
+        long callStartMillis = clockMillis.get();
+        clockMillis.addAndGet(100);
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.recordFailure(callStartMillis);
+        }
+        assertThat("one outage hit the concurrent runs", circuitBreaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        clockMillis.addAndGet(1_000);
+        circuitBreaker.recordFailure(clockMillis.get());
+        clockMillis.addAndGet(1_000);
+        circuitBreaker.recordFailure(clockMillis.get());
+        assertThat("the retries failed as well", circuitBreaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+}
@@ -0,0 +1,82 @@
+package io.accelerate.tracking.app.upload;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.zip.CRC32C;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class ContentChecksumTest {
+
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void savesTheChecksumOfWhatWasWritten() throws Exception {
+        Path file = tempFolder.resolve("events.journal");
+        ContentChecksum contentChecksum = new ContentChecksum(file);
+        appendTo(file, contentChecksum, "first record");
+        appendTo(file, contentChecksum, "second record");
+        contentChecksum.save();
+
+        assertThat(ContentChecksum.checksumOf(file, Files.size(file)), is(checksumReadFrom(file)));
+    }
+
+    @Test
+    public void onlyVouchesForTheLengthItCovers() throws Exception {
+        Path file = tempFolder.resolve("events.journal");
+        ContentChecksum contentChecksum = new ContentChecksum(file);
+        appendTo(file, contentChecksum, "saved record");
+        contentChecksum.save();
+        long savedLength = Files.size(file);
+        appendTo(file, contentChecksum, "record written since");
+
+        assertThat("the file grew since", ContentChecksum.checksumOf(file, Files.size(file)), is(nullValue()));
+        assertThat(ContentChecksum.checksumOf(file, savedLength), is(checksumReadFrom(file, savedLength)));
+        assertThat(ContentChecksum.checksumOf(tempFolder.resolve("no-sidecar.log"), 0), is(nullValue()));
+    }
+
+    @Test
+    public void findsTheLocalFileOfAnUpload() {
+        ContentChecksumInterceptor.registerStore("bucket", "prefix/", tempFolder);
+        ContentChecksumInterceptor.registerStore("bucket", "prefix/session-b/", tempFolder.resolve("b"));
+        try {
+            assertThat(ContentChecksumInterceptor.localFileFor("bucket", "prefix/sourcecode.srcs"),
+                    is(tempFolder.resolve("sourcecode.srcs")));
+            assertThat(ContentChecksumInterceptor.localFileFor("bucket", "prefix/session-b/sourcecode.srcs"),
+                    is(tempFolder.resolve("b").resolve("sourcecode.srcs")));
+            assertThat(ContentChecksumInterceptor.localFileFor("other-bucket", "prefix/sourcecode.srcs"),
+                    is(nullValue()));
+        } finally {
+            ContentChecksumInterceptor.unregisterStore("bucket", "prefix/");
+            ContentChecksumInterceptor.unregisterStore("bucket", "prefix/session-b/");
+        }
+    }
+
+    // ~~~~ Helpers
+
+    private static void appendTo(Path file, ContentChecksum contentChecksum, String content) throws Exception {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        contentChecksum.update(bytes, 0, bytes.length);
+    }
+
+    private static String checksumReadFrom(Path file) throws Exception {
+        return checksumReadFrom(file, Files.size(file));
+    }
+
+    private static String checksumReadFrom(Path file, long length) throws Exception {
+        CRC32C crc = new CRC32C();
+        crc.update(Files.readAllBytes(file), 0, (int) length);
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array());
+    }
+}
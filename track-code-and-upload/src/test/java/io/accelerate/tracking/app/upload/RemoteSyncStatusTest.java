@@ -0,0 +1,91 @@
+package io.accelerate.tracking.app.upload;
+
+import io.accelerate.tracking.app.status.StatusSection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class RemoteSyncStatusTest {
+    @TempDir
+    Path store;
+
+    @Test
+    public void servesTheCachedBacklogUntilASyncEnds() throws IOException {
+        RemoteSyncStatus status = new RemoteSyncStatus(store);
+        Files.write(store.resolve("one.srcs"), new byte[10]);
+        Files.write(store.resolve("ignored.txt"), new byte[100]);
+        assertThat(report(status).get("backlogFiles"), is(1L));
+        assertThat(report(status).get("backlogBytes"), is(10L));
+
+        Files.write(store.resolve("two.srcs"), new byte[20]);
+        assertThat("the store is not walked at every tick", report(status).get("backlogFiles"), is(1L));
+
+        status.syncFailed(System.currentTimeMillis(), new IOException("offline"));
+        assertThat(report(status).get("backlogFiles"), is(2L));
+        assertThat(report(status).get("backlogBytes"), is(30L));
+    }
+
+    @Test
+    public void leavesOutWhatThePreviousSessionsLeftBehind() throws IOException {
+        Path previousRecording = Files.write(store.resolve("previous.srcs"), new byte[10]);
+        Files.setLastModifiedTime(previousRecording, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+
+        RemoteSyncStatus status = new RemoteSyncStatus(store);
+
+        assertThat(report(status).get("backlogFiles"), is(0L));
+    }
+
+    @Test
+    public void sizesTheRunsOfEachClassWithTheWalkTheStatusShows() throws IOException {
+        RemoteSyncStatus status = new RemoteSyncStatus(store);
+        Files.write(store.resolve("one.srcs"), new byte[10]);
+        Files.write(store.resolve("one.srcs.idx"), new byte[5]);
+        Files.write(store.resolve("session.log"), new byte[20]);
+
+        Map<UploadFileClass, Long> backlogBytes = status.refreshBacklog(System.currentTimeMillis());
+        assertThat(backlogBytes.get(UploadFileClass.SOURCECODE), is(15L));
+        assertThat(backlogBytes.get(UploadFileClass.LOGS), is(20L));
+
+        Files.write(store.resolve("two.srcs"), new byte[20]);
+        assertThat("the status does not walk the store again", report(status).get("backlogBytes"), is(35L));
+    }
+
+    // ~~~~ Helpers
+
+    private static Map<String, Object> report(RemoteSyncStatus status) {
+        Map<String, Object> values = new HashMap<>();
+        status.reportStatus(new StatusSection() {
+            @Override
+            public void put(String key, boolean value) {
+                values.put(key, value);
+            }
+
+            @Override
+            public void put(String key, long value) {
+                values.put(key, value);
+            }
+
+            @Override
+            public void put(String key, double value) {
+                values.put(key, value);
+            }
+
+            @Override
+            public void put(String key, String value) {
+                values.put(key, value);
+            }
+        });
+        return values;
+    }
+}
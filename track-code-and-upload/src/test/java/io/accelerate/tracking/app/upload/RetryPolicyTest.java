@@ -0,0 +1,44 @@
+package io.accelerate.tracking.app.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class RetryPolicyTest {
+    private final RetryPolicy retryPolicy = new RetryPolicy(4, Duration.ofSeconds(1), Duration.ofSeconds(30));
+
+    @Test
+    public void theCeilingDoublesWithEachAttemptUpToTheMaximum() {
+        assertThat(longestDelayAfter(1), is(lessThan(1_001L)));
+        assertThat(longestDelayAfter(3), is(lessThan(4_001L)));
+        assertThat(longestDelayAfter(3), is(greaterThanOrEqualTo(2_001L)));
+        assertThat("capped", longestDelayAfter(40), is(lessThan(30_001L)));
+        assertThat(retryPolicy.getMaxAttempts(), is(4));
+    }
+
+    @Test
+    public void theDelaysAreSpreadOut() {
+        long shortest = Long.MAX_VALUE;
+        for (int i = 0; i < 1_000; i++) {
+            shortest = Math.min(shortest, retryPolicy.delayAfter(5).toMillis());
+        }
+        assertThat("full jitter, sessions hit together do not retry together", shortest, is(lessThan(16_000L)));
+    }
+
+    // ~~~~ Helpers
+
+    private long longestDelayAfter(int failedAttempt) {
+        long longest = 0;
+        for (int i = 0; i < 1_000; i++) {
+            long delayMillis = retryPolicy.delayAfter(failedAttempt).toMillis();
+            assertThat(delayMillis, is(greaterThanOrEqualTo(0L)));
+            longest = Math.max(longest, delayMillis);
+        }
+        return longest;
+    }
+}
@@ -0,0 +1,79 @@
+package io.accelerate.tracking.app.upload;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class S3SettingsTest {
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void readsTheDocumentedConfigFile() throws Exception {
+        S3Settings s3Settings = S3Settings.fromPlainTextFile(configFile(
+                "aws_access_key_id=KEY",
+                "aws_secret_access_key=SECRET",
+                "s3_region=ap-southeast-1",
+                "s3_bucket=bucketname",
+                "s3_prefix=prefix/"));
+
+        assertThat(s3Settings.getAccessKeyId(), is("KEY"));
+        assertThat(s3Settings.getSecretAccessKey(), is("SECRET"));
+        assertThat(s3Settings.getRegion(), is("ap-southeast-1"));
+        assertThat(s3Settings.getS3Bucket(), is("bucketname"));
+        assertThat(s3Settings.getS3Prefix(), is("prefix/"));
+        assertThat("AWS itself", s3Settings.getEndpoint(), is(nullValue()));
+    }
+
+    @Test
+    public void pointsAtACompatibleService() throws Exception {
+        S3Settings s3Settings = S3Settings.fromPlainTextFile(configFile(
+                "aws_access_key_id=KEY",
+                "aws_secret_access_key=SECRET",
+                "s3_region=us-east-1",
+                "s3_bucket=bucketname",
+                "s3_prefix=",
+                "s3_endpoint=http://127.0.0.1:9000"));
+
+        assertThat(s3Settings.getEndpoint(), is(URI.create("http://127.0.0.1:9000")));
+    }
+
+    @Test
+    public void rejectsAConfigWithoutCredentials() throws Exception {
+        Path configFile = configFile(
+                "s3_region=ap-southeast-1",
+                "s3_bucket=bucketname",
+                "s3_prefix=prefix/");
+        try {
+            S3Settings.fromPlainTextFile(configFile);
+            throw new AssertionError("Expected the config to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("aws_access_key_id"));
+        }
+    }
+
+    @Test
+    public void theCrtEngineTakesNoConnectionTimeToLive() {
+        try {
+            new S3ClientFactory(S3ClientFactory.HttpEngine.CRT, 50, Duration.ofSeconds(30));
+            throw new AssertionError("Expected the setting to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("The crt http engine does not take a connection time to live. Use netty"));
+        }
+    }
+
+    // ~~~~ Helpers
+
+    private Path configFile(String... lines) throws Exception {
+        return Files.write(tempFolder.resolve("aws-test-secrets"), String.join("\n", lines).getBytes());
+    }
+}
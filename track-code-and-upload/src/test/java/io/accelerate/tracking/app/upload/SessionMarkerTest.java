@@ -0,0 +1,41 @@
+package io.accelerate.tracking.app.upload;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SessionMarkerTest {
+    @TempDir
+    Path tempFolder;
+
+    @Test
+    public void writesTheStopTime() throws Exception {
+        Path stopMarker = SessionMarker.writeStopMarker(tempFolder, 1700000000000L);
+
+        assertThat(stopMarker.getFileName().toString(), is("last_sync_stop.txt"));
+        assertThat(Files.readString(stopMarker), is("timestamp: 1700000000000"));
+    }
+
+    @Test
+    public void replacesTheStopOfThePreviousSession() throws Exception {
+        Path firstStop = SessionMarker.writeStopMarker(tempFolder, 1700000000000L);
+        Path secondStop = SessionMarker.writeStopMarker(tempFolder, 1700000001000L);
+
+        assertThat("the same key", secondStop, is(firstStop));
+        assertThat(Files.readString(secondStop), is("timestamp: 1700000001000"));
+    }
+
+    @Test
+    public void isLeftOutOfTheSyncRuns() throws Exception {
+        Path stopMarker = SessionMarker.writeStopMarker(tempFolder, 1700000000000L);
+
+        for (UploadFileClass uploadFileClass : UploadFileClass.values()) {
+            assertThat(uploadFileClass + " does not upload it", uploadFileClass.matches(stopMarker), is(false));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.accelerate.tracking.app.upload;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class UploadCancellationInterceptorTest {
+
+    @Test
+    public void failsTheBodyOfAStuckClass() {
+        UploadCancellationInterceptor.CancellableBody body = UploadCancellationInterceptor.track(
+                "bucket", "prefix/sourcecode_1.srcs", AsyncRequestBody.fromString("content"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        body.subscribe(subscriber);
+
+        UploadCancellationInterceptor.cancelUploads("bucket", "prefix/", UploadFileClass.SOURCECODE);
+
+        assertThat(subscriber.failure, is(instanceOf(CancellationException.class)));
+        UploadCancellationInterceptor.untrack(body);
+    }
+
+    @Test
+    public void leavesTheOtherClassesAndStoresAlone() {
+        UploadCancellationInterceptor.CancellableBody video = UploadCancellationInterceptor.track(
+                "bucket", "prefix/screencast_1.mp4", AsyncRequestBody.fromString("content"));
+        UploadCancellationInterceptor.CancellableBody otherStore = UploadCancellationInterceptor.track(
+                "bucket", "other/sourcecode_1.srcs", AsyncRequestBody.fromString("content"));
+        RecordingSubscriber videoSubscriber = new RecordingSubscriber();
+        RecordingSubscriber otherStoreSubscriber = new RecordingSubscriber();
+        video.subscribe(videoSubscriber);
+        otherStore.subscribe(otherStoreSubscriber);
+
+        UploadCancellationInterceptor.cancelUploads("bucket", "prefix/", UploadFileClass.SOURCECODE);
+        videoSubscriber.subscription.request(1);
+
+        assertThat(videoSubscriber.failure, is(nullValue()));
+        assertThat(videoSubscriber.completed, is(true));
+        assertThat(otherStoreSubscriber.failure, is(nullValue()));
+        UploadCancellationInterceptor.untrack(video);
+        UploadCancellationInterceptor.untrack(otherStore);
+    }
+
+    // ~~~~ Helpers
+
+    /**
+     * Requests nothing on its own, the body stays in flight
+     */
+    private static class RecordingSubscriber implements Subscriber<ByteBuffer> {
+        Subscription subscription;
+        Throwable failure;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(ByteBuffer byteBuffer) {
+        }
+
+        @Override
+        public void onError(Throwable failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+}
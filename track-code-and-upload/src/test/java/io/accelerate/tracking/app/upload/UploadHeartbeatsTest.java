@@ -0,0 +1,45 @@
+package io.accelerate.tracking.app.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class UploadHeartbeatsTest {
+    private static final Duration STALL_DEADLINE = Duration.ofMinutes(2);
+
+    @Test
+    public void onlyTheClassSendingBytesProgresses() {
+        Map<UploadFileClass, Double> uploadedBytes = new EnumMap<>(UploadFileClass.class);
+        UploadHeartbeats heartbeats = new UploadHeartbeats(
+                uploadFileClass -> Optional.ofNullable(uploadedBytes.get(uploadFileClass)));
+        heartbeats.of(UploadFileClass.SOURCECODE).stepStarted();
+        heartbeats.of(UploadFileClass.VIDEO).stepStarted();
+        long now = System.nanoTime();
+
+        uploadedBytes.put(UploadFileClass.SOURCECODE, 100.0);
+        uploadedBytes.put(UploadFileClass.VIDEO, 100.0);
+        assertThat(heartbeats.stuckClasses(now, STALL_DEADLINE), is(List.of()));
+
+        uploadedBytes.put(UploadFileClass.VIDEO, 200.0);
+        assertThat(heartbeats.stuckClasses(now + STALL_DEADLINE.plusSeconds(1).toNanos(), STALL_DEADLINE),
+                is(List.of(UploadFileClass.SOURCECODE)));
+    }
+
+    @Test
+    public void aClassBetweenRunsIsNotStuck() {
+        UploadHeartbeats heartbeats = new UploadHeartbeats(uploadFileClass -> Optional.empty());
+
+        heartbeats.of(UploadFileClass.LOGS).stepStarted();
+        heartbeats.of(UploadFileClass.LOGS).stepEnded();
+
+        assertThat(heartbeats.stuckClasses(System.nanoTime() + STALL_DEADLINE.multipliedBy(2).toNanos(),
+                STALL_DEADLINE), is(List.of()));
+    }
+}
@@ -0,0 +1,100 @@
+package io.accelerate.tracking.app.upload;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class UploadSchedulerTest {
+    private static final long ONE_MB = 1024 * 1024;
+
+    @Test
+    public void aLargeBacklogDoesNotHoldBackTheOtherSessions() throws Exception {
+        UploadScheduler uploadScheduler = new UploadScheduler(1, 10 * ONE_MB, 1024 * ONE_MB);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> runOrder = new CopyOnWriteArrayList<>();
+
+        // Keep the only worker busy while the queue fills up
+        uploadScheduler.submit("busy", UploadFileClass.SOURCECODE, 0, release::await);
+        waitUntilRunning(uploadScheduler);
+        CompletableFuture<Void> last = uploadScheduler.submit("busy", UploadFileClass.VIDEO, 100 * ONE_MB,
+                () -> runOrder.add("busy/video"));
+        uploadScheduler.submit("quiet", UploadFileClass.VIDEO, ONE_MB, () -> runOrder.add("quiet/video"));
+        uploadScheduler.submit("quiet", UploadFileClass.SOURCECODE, ONE_MB, () -> runOrder.add("quiet/sourcecode"));
+
+        release.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        assertThat(runOrder, contains("quiet/sourcecode", "quiet/video", "busy/video"));
+        uploadScheduler.shutdown();
+    }
+
+    @Test
+    public void callersShareTheRunWaitingForTheSameFlow() throws Exception {
+        UploadScheduler uploadScheduler = new UploadScheduler(1, 10 * ONE_MB, 1024 * ONE_MB);
+        CountDownLatch release = new CountDownLatch(1);
+        uploadScheduler.submit("busy", UploadFileClass.SOURCECODE, 0, release::await);
+        waitUntilRunning(uploadScheduler);
+
+        CompletableFuture<Void> first = uploadScheduler.submit("session", UploadFileClass.LOGS, ONE_MB, () -> {});
+        CompletableFuture<Void> second = uploadScheduler.submit("session", UploadFileClass.LOGS, 2 * ONE_MB, () -> {});
+
+        assertThat(second, sameInstance(first));
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        uploadScheduler.shutdown();
+    }
+
+    @Test
+    public void reportsWhenTheBacklogIsOverTheLimit() throws Exception {
+        UploadScheduler uploadScheduler = new UploadScheduler(1, 10 * ONE_MB, 5 * ONE_MB);
+        CountDownLatch release = new CountDownLatch(1);
+        uploadScheduler.submit("busy", UploadFileClass.SOURCECODE, 0, release::await);
+        waitUntilRunning(uploadScheduler);
+
+        CompletableFuture<Void> video = uploadScheduler.submit("session", UploadFileClass.VIDEO, 6 * ONE_MB, () -> {});
+        assertThat(uploadScheduler.isOverBacklogLimit(), is(true));
+
+        release.countDown();
+        video.get(5, TimeUnit.SECONDS);
+        uploadScheduler.shutdown();
+        assertThat(uploadScheduler.isOverBacklogLimit(), is(false));
+    }
+
+    @Test
+    public void holdsBackANewRunWhileTheBacklogIsOverTheLimit() throws Exception {
+        UploadScheduler uploadScheduler = new UploadScheduler(1, 10 * ONE_MB, 5 * ONE_MB);
+        CountDownLatch release = new CountDownLatch(1);
+        uploadScheduler.submit("busy", UploadFileClass.SOURCECODE, 0, release::await);
+        waitUntilRunning(uploadScheduler);
+        CompletableFuture<Void> video = uploadScheduler.submit("session", UploadFileClass.VIDEO, 6 * ONE_MB, () -> {});
+
+        CompletableFuture<CompletableFuture<Void>> logsSubmitted = CompletableFuture.supplyAsync(
+                () -> uploadScheduler.submit("session", UploadFileClass.LOGS, ONE_MB, () -> {}));
+        assertThat("a run already waiting is shared",
+                uploadScheduler.submit("session", UploadFileClass.VIDEO, ONE_MB, () -> {}), sameInstance(video));
+        Thread.sleep(200);
+        assertThat("the new run waits for the backlog to drain", logsSubmitted.isDone(), is(false));
+
+        release.countDown();
+        logsSubmitted.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        uploadScheduler.shutdown();
+    }
+
+    private static void waitUntilRunning(UploadScheduler uploadScheduler) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (uploadScheduler.getRunningRuns() == 0) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("The scheduler did not start the run within 5 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+}